@@ -0,0 +1,22 @@
+/**
+ * AllTests.java
+ * @author William Richard willster3021@gmail.com
+ * Runs all of the tests.  Use java -ea AllTests, so the asserts in the solver are checked too.
+ * Exits with 1 if any of them failed.
+ */
+public class AllTests {
+
+	public static void main(String[] args) {
+		SsatTest.run(
+				new ClauseDatabaseTest(),
+				new SsatSolverTest(),
+				new PlanTest(),
+				new BatchSolverTest(),
+				new SsatParserTest(),
+				new SsatGeneratorTest(),
+				new DecisionDiagramTest(),
+				new MonteCarloSamplerTest(),
+				new PreprocessorTest()
+				);
+	}
+}
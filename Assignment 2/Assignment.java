@@ -11,6 +11,9 @@ public class Assignment {
 	// the 1st index of the array stores the value of the 1st variable in the ordering
 	// the 0th index is a dummy index.
 	private boolean[] assignment;
+	// Which variables the assignment sets.  The others are don't-cares - the plan
+	// got to its result without looking at them.  null if all of them are set.
+	private boolean[] set;
 	// The probability of the assignment succeeding.
 	private Double probability;
 	
@@ -30,11 +33,35 @@ public class Assignment {
 			//assume assignments are true unless explicitly set to false
 			assignment[i] = ! (variables.get(i).getAssignment() == Variable.FALSE);
 		}
+		set = null;
 
 		//store the probability.
 		probability = prob;
 	}
 
+	/**
+	 * Constructor.
+	 * @param values - the value of each variable, with a dummy in the 0th index.  It is copied.
+	 * @param prob - the probability that it succeeds.
+	 */
+	public Assignment(boolean[] values, double prob) {
+		assert prob <= 1.0 && prob >= 0.0;
+		assignment = values.clone();
+		set = null;
+		probability = prob;
+	}
+
+	/**
+	 * Constructor.
+	 * @param values - the value of each variable, with a dummy in the 0th index.  It is copied.
+	 * @param set - which variables are set, with a dummy in the 0th index.  The rest are don't-cares.  It is copied.
+	 * @param prob - the probability that it succeeds.
+	 */
+	public Assignment(boolean[] values, boolean[] set, double prob) {
+		this(values, prob);
+		this.set = set.clone();
+	}
+
 	/**
 	 * @return the assignment array
 	 */
@@ -42,6 +69,14 @@ public class Assignment {
 		return assignment;
 	}
 
+	/**
+	 * @param variable - the name of a variable
+	 * @return true if the assignment sets the variable, false if it is a don't-care
+	 */
+	public boolean isSet(int variable) {
+		return set == null || set[variable];
+	}
+
 	/**
 	 * @return the probability
 	 */
@@ -78,12 +113,15 @@ public class Assignment {
 	 * Returns a human-readable representation of the assignment.
 	 * Has the variable's number by itself it is is stored as being positive
 	 * or with a negative sign (-) in front if it is stored as being negative.
+	 * Don't-cares have a star (*) in front, since either value does the same.
 	 */
 	public String toString() {
 		String returnString = "";
 		//go to length-1, since 
 		for(int i = 1; i < assignment.length; i++) {
-			if(assignment[i]) {
+			if(! isSet(i)) {
+				returnString = returnString.concat("*" + i + "\t");
+			} else if(assignment[i]) {
 				returnString = returnString.concat(" " + i + "\t");
 			} else {
 				returnString = returnString.concat("-" + i + "\t");
@@ -0,0 +1,337 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BatchSolver.java
+ * @author William Richard willster3021@gmail.com
+ * Solves a whole suite of ssat files in one JVM, so each one doesn't pay for starting
+ * Java and warming up the JIT.  The files are solved by a fixed number of workers, and
+ * each result is written out as soon as it is done, as a line of a CSV or JSON lines file.
+ *
+ * Usage: java BatchSolver [batch options] [solver options] <directory or manifest>
+ * A directory is solved by solving every .ssat and .ssat.gz file in it.  Anything else is
+ * read as a manifest, with one ssat file on each line.  Blank lines and lines starting with #
+ * are skipped, and files are relative to the manifest's directory.
+ *
+ * Each line of the results has the file, if it was solved, timed out, stopped early with
+ * -anytime or had an error (or, with -threshold, if the threshold was met or missed), the
+ * probability of success (only a bound with -threshold, and the best plan found so far if it
+ * stopped early), how long it took, how many nodes of the search tree were explored, the most
+ * heap memory the JVM was using while it was being solved, and the error, if any.
+ * With -stats, each JSON line also has what the search counted.
+ * The memory is for the whole JVM, so when several workers are running it includes what the
+ * files being solved at the same time were using.
+ */
+public class BatchSolver {
+
+	//how often to look at how much memory is being used, in milliseconds
+	private static final long MEMORY_SAMPLE_MILLIS = 10;
+	private static final double MEGABYTE = 1024.0 * 1024.0;
+
+	//how to solve each file
+	private SolverOptions options;
+	//where the results go
+	private PrintWriter out;
+	//if the results are JSON lines instead of CSV
+	private boolean json;
+	//the files being solved right now, so their memory can be tracked
+	private Vector<Job> running;
+	//how many results there have been of each kind
+	private int numSolved;
+	private int numTimedOut;
+	private int numErrors;
+
+	public static void main(String[] args) {
+		//take out the batch options, and leave the rest for SolverOptions
+		int workers = Runtime.getRuntime().availableProcessors();
+		String outFile = null;
+		String format = null;
+		Vector<String> solverArgs = new Vector<String>();
+		try {
+			for(int i = 0; i < args.length; i++) {
+				if(args[i].equals("-workers")) {
+					workers = Integer.parseInt(nextArgument(args, i++));
+					if(workers < 1) throw new IllegalArgumentException("There has to be at least 1 worker");
+				} else if(args[i].equals("-out")) {
+					outFile = nextArgument(args, i++);
+				} else if(args[i].equals("-format")) {
+					format = nextArgument(args, i++);
+					if(! format.equals("csv") && ! format.equals("jsonl")) throw new IllegalArgumentException("The format has to be csv or jsonl");
+				} else {
+					solverArgs.add(args[i]);
+				}
+			}
+		} catch(IllegalArgumentException e) {
+			System.out.println("Incorrect arguments - " + e.getMessage());
+			System.out.println(getUsage());
+			System.exit(0);
+		}
+
+		SolverOptions options = null;
+		try {
+			options = new SolverOptions(solverArgs.toArray(new String[solverArgs.size()]));
+			if(options.planFile != null) throw new IllegalArgumentException("-plan can't be used for a batch");
+			if(options.compileFile != null) throw new IllegalArgumentException("-compile can't be used for a batch");
+			if(options.isSampling()) throw new IllegalArgumentException("-sample can't be used for a batch");
+		} catch(IllegalArgumentException e) {
+			System.out.println("Incorrect arguments - " + e.getMessage());
+			System.out.println(getUsage());
+			System.exit(0);
+		}
+		if(format == null) format = outFile != null && (outFile.endsWith(".jsonl") || outFile.endsWith(".json")) ? "jsonl" : "csv";
+
+		Vector<String> files = null;
+		try {
+			files = findFiles(options.fileLocation);
+		} catch(IOException e) {
+			System.out.println("Error: couldn't read '" + options.fileLocation + "': " + e.getMessage());
+			System.exit(2);
+		}
+
+		PrintWriter out = null;
+		try {
+			if(outFile == null) out = new PrintWriter(new OutputStreamWriter(System.out));
+			else out = new PrintWriter(new FileWriter(outFile));
+		} catch(IOException e) {
+			System.out.println("Couldn't write to '" + outFile + "': " + e.getMessage());
+			System.exit(1);
+		}
+
+		long startTime = System.currentTimeMillis();
+		BatchSolver batch = new BatchSolver(options, out, format.equals("jsonl"));
+		batch.solveAll(files, workers);
+		out.close();
+
+		//the results might be going to System.out, so the summary goes to System.err
+		System.err.println("Solved " + batch.numSolved + " of " + files.size() + " files, " + batch.numTimedOut + " timed out and " +
+				batch.numErrors + " had errors, in " + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds.");
+	}
+
+	/**
+	 * Constructor.
+	 * @param options - how to solve each file
+	 * @param out - where to write the results
+	 * @param json - if the results should be JSON lines instead of CSV
+	 */
+	public BatchSolver(SolverOptions options, PrintWriter out, boolean json) {
+		this.options = options;
+		this.out = out;
+		this.json = json;
+		running = new Vector<Job>();
+		numSolved = 0;
+		numTimedOut = 0;
+		numErrors = 0;
+	}
+
+	/**
+	 * Solves all of the files, writing out each result as soon as it is done.
+	 * The results are in the order the files finish, not the order they are given.
+	 * @param files - the ssat files
+	 * @param workers - how many files to solve at once
+	 */
+	public void solveAll(Vector<String> files, int workers) {
+		if(! json) out.println("file,status,probability,time_ms,nodes,peak_memory_mb,error");
+
+		//watch how much memory is being used while files are being solved
+		ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "memory sampler");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		sampler.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				sampleMemory();
+			}
+		}, MEMORY_SAMPLE_MILLIS, MEMORY_SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		try {
+			for(String file : files) pool.execute(new Job(file));
+			pool.shutdown();
+			while(! pool.awaitTermination(1, TimeUnit.SECONDS)) {}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			pool.shutdownNow();
+		} finally {
+			sampler.shutdownNow();
+		}
+	}
+
+	/**
+	 * Records how much memory is being used for each file being solved.
+	 */
+	private void sampleMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		long used = runtime.totalMemory() - runtime.freeMemory();
+		synchronized(running) {
+			for(Job job : running) {
+				if(used > job.peakMemory) job.peakMemory = used;
+			}
+		}
+	}
+
+	/**
+	 * Writes out the result for one file, and counts it.
+	 * @param result
+	 * @param peakMemory - the most memory the JVM used while it was being solved, in bytes
+	 */
+	private synchronized void write(SsatResult result, long peakMemory) {
+		String status = "solved";
+		if(result.isTimedOut()) {
+			status = "timeout";
+			numTimedOut++;
+		} else if(! result.isSolved()) {
+			status = "error";
+			numErrors++;
+		} else {
+			numSolved++;
+			//with a threshold, we only know if it was met
+			if(result.hasThreshold()) status = result.meetsThreshold() ? "met" : "missed";
+			//with -anytime, the probability is only the best plan found so far if it ran out of time
+			if(result.isStoppedEarly()) status = "stopped";
+		}
+
+		String error = result.isSolved() ? "" : String.valueOf(result.getError().getMessage());
+		String probability = result.isSolved() ? Double.toString(result.getProbability()) : "";
+		//rounded by hand, since String.format would use a comma for the decimal point in some places
+		String memory = Double.toString(Math.round(peakMemory / MEGABYTE * 10) / 10.0);
+
+		if(json) {
+			out.println("{\"file\":" + jsonString(result.getFileLocation()) + ",\"status\":\"" + status + "\"" +
+					",\"probability\":" + (result.isSolved() ? probability : "null") + ",\"time_ms\":" + result.getTimeMillis() +
+					",\"nodes\":" + result.getNodes() + ",\"peak_memory_mb\":" + memory +
+					",\"error\":" + (result.isSolved() ? "null" : jsonString(error)) +
+					(result.getStats() != null ? ",\"stats\":" + result.getStats().toJson() : "") + "}");
+		} else {
+			out.println(csvField(result.getFileLocation()) + "," + status + "," + probability + "," + result.getTimeMillis() + "," +
+					result.getNodes() + "," + memory + "," + csvField(error));
+		}
+		//so the results can be watched as they come in
+		out.flush();
+	}
+
+	/**
+	 * Solves one file.
+	 */
+	private class Job implements Runnable {
+		private String fileLocation;
+		//the most memory the JVM has used while this was being solved
+		private volatile long peakMemory;
+
+		public Job(String fileLocation) {
+			this.fileLocation = fileLocation;
+			peakMemory = 0;
+		}
+
+		public void run() {
+			running.add(this);
+			sampleMemory();
+			SsatResult result;
+			try {
+				result = SsatSolver.run(fileLocation, options);
+			} catch(OutOfMemoryError e) {
+				result = new SsatResult(fileLocation, new IllegalStateException("Ran out of memory"), 0, 0);
+			}
+			sampleMemory();
+			running.remove(this);
+			write(result, peakMemory);
+		}
+	}
+
+	/**
+	 * @param location - a directory or manifest file
+	 * @return the ssat files in the directory, in order, or the files listed in the manifest
+	 * @throws IOException if the manifest can't be read
+	 */
+	public static Vector<String> findFiles(String location) throws IOException {
+		File file = new File(location);
+		Vector<String> files = new Vector<String>();
+
+		if(file.isDirectory()) {
+			String[] names = file.list();
+			if(names == null) throw new IOException("Couldn't list the directory");
+			Arrays.sort(names);
+			for(String name : names) {
+				if(name.endsWith(".ssat") || name.endsWith(".ssat.gz")) files.add(new File(file, name).getPath());
+			}
+			return files;
+		}
+
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while((line = reader.readLine()) != null) {
+				line = line.trim();
+				if(line.length() == 0 || line.startsWith("#")) continue;
+				File listed = new File(line);
+				if(! listed.isAbsolute()) listed = new File(file.getAbsoluteFile().getParentFile(), line);
+				files.add(listed.getPath());
+			}
+		} finally {
+			reader.close();
+		}
+		return files;
+	}
+
+	/**
+	 * @param s
+	 * @return s, quoted if it needs to be to go in a CSV file
+	 */
+	private static String csvField(String s) {
+		if(s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0) return s;
+		return "\"" + s.replace("\"", "\"\"") + "\"";
+	}
+
+	/**
+	 * @param s
+	 * @return s as a JSON string
+	 */
+	private static String jsonString(String s) {
+		StringBuilder json = new StringBuilder("\"");
+		for(int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if(c == '"' || c == '\\') json.append('\\').append(c);
+			else if(c == '\n') json.append("\\n");
+			else if(c < ' ') json.append(String.format("\\u%04x", (int) c));
+			else json.append(c);
+		}
+		return json.append('"').toString();
+	}
+
+	/**
+	 * @param args
+	 * @param i - the index of an option that needs a value
+	 * @return the value after the option
+	 */
+	private static String nextArgument(String[] args, int i) {
+		if(i + 1 >= args.length) throw new IllegalArgumentException("Option '" + args[i] + "' needs a value");
+		return args[i + 1];
+	}
+
+	/**
+	 * @return how to use the batch solver from the command line
+	 */
+	public static String getUsage() {
+		return "Correct usage: java BatchSolver [options] <directory or manifest file>\n" +
+				"Options:\n" +
+				"  -workers <n>\t\thow many files to solve at once (default: the number of processors)\n" +
+				"  -out <file>\t\twhere to write the results (default: the screen)\n" +
+				"  -format <csv|jsonl>\tthe format of the results (default: jsonl if the file ends in .jsonl, or csv)\n" +
+				"  -timeout <seconds>\tgive up on a file if solving it takes longer than this\n" +
+				"  and any of the options for SsatSolver except -plan, -compile, -sample and -progress";
+	}
+}
@@ -0,0 +1,185 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Vector;
+
+/**
+ * BatchSolverTest.java
+ * @author William Richard willster3021@gmail.com
+ * Tests solving whole batches of ssat files in one JVM, each with its own solver.
+ * The files are written to a temporary directory, which is deleted afterwards.
+ */
+public class BatchSolverTest extends SsatTest {
+
+	//how many random formulas are written out
+	private static final int NUM_FILES = 12;
+
+	//where the files are written
+	private File dir;
+	//the random formula files, and their probabilities of success
+	private Vector<String> files;
+	private double[] exact;
+
+	public static void main(String[] args) {
+		run(new BatchSolverTest());
+	}
+
+	protected void runChecks() throws Exception {
+		dir = Files.createTempDirectory("ssat").toFile();
+		try {
+			files = new Vector<String>();
+			exact = new double[NUM_FILES];
+			for(int i = 0; i < NUM_FILES; i++) {
+				SsatGenerator generator = new SsatGenerator(10 + i % 3, 30 + i, 3, 0.5, i % 4, 0, i);
+				File file = new File(dir, "formula" + i + ".ssat");
+				generator.writeFile(file);
+				files.add(file.getPath());
+				exact[i] = exact(generator.generate());
+			}
+
+			checkRunAll("", 1);
+			checkRunAll("", 4);
+			checkRunAll("-probonly -cache 0", 3);
+			checkBatch();
+			checkErrors();
+			checkTimeouts();
+		} finally {
+			delete(dir);
+		}
+	}
+
+	/**
+	 * Solving the files at the same time gets each one's answer, in the order the files were given.
+	 * @param args - the options, separated by spaces
+	 * @param numThreads - how many files to solve at once
+	 */
+	private void checkRunAll(String args, int numThreads) {
+		SolverOptions options = options(args.isEmpty() ? new String[0] : args.split(" "));
+		Vector<SsatResult> results = SsatSolver.runAll(files, options, numThreads);
+		check(results.size() == NUM_FILES, "there is a result for every file");
+		for(int i = 0; i < results.size(); i++) {
+			SsatResult result = results.get(i);
+			String what = "file " + i + " with options '" + args + "' and " + numThreads + " threads";
+			check(result.getFileLocation().equals(files.get(i)) && result.isSolved(), what + " is solved, in order");
+			checkClose(exact[i], result.getProbability(), what);
+			check((result.getPlan() == null) == options.probabilityOnly, what + " only has a plan if it was asked for");
+			if(result.getPlan() != null) checkClose(exact[i], result.getPlan().getProbability(), what + " has the plan");
+		}
+	}
+
+	/**
+	 * A BatchSolver finds the files in the directory, and writes a line for each of them with its
+	 * probability, as CSV or JSON.
+	 */
+	private void checkBatch() throws IOException {
+		Vector<String> found = BatchSolver.findFiles(dir.getPath());
+		check(found.size() == NUM_FILES, "the " + NUM_FILES + " files in the directory are found: " + found.size());
+
+		String[] lines = solveAll(found, "", false);
+		check(lines.length == NUM_FILES + 1 && lines[0].startsWith("file,status,probability,"), "there is a header, and a line for each file");
+		for(int i = 1; i < lines.length; i++) {
+			String[] fields = lines[i].split(",");
+			int file = files.indexOf(fields[0]);
+			check(file >= 0 && fields[1].equals("solved"), "line " + i + " is a solved file: " + lines[i]);
+			if(file >= 0) checkClose(exact[file], Double.parseDouble(fields[2]), "line " + i + " has the probability of " + fields[0]);
+		}
+
+		lines = solveAll(found, "-probonly", true);
+		boolean allJson = lines.length == NUM_FILES;
+		for(String line : lines) allJson &= line.startsWith("{\"file\":") && line.contains("\"status\":\"solved\"") && line.endsWith("}");
+		check(allJson, "with json, there is a JSON line for each file");
+	}
+
+	/**
+	 * Files that can't be read or aren't in the right format are errors in their results,
+	 * and don't stop the other files being solved.
+	 */
+	private void checkErrors() throws IOException {
+		File bad = new File(dir, "bad.ssat");
+		Writer out = new FileWriter(bad);
+		out.write("p cnf 2 1\n1 3 0\n1 -1\n2 0.5\n");
+		out.close();
+
+		Vector<String> batch = new Vector<String>();
+		batch.add(new File(dir, "missing.ssat").getPath());
+		batch.add(bad.getPath());
+		batch.add(files.get(0));
+		Vector<SsatResult> results = SsatSolver.runAll(batch, options(), 2);
+		check(! results.get(0).isSolved() && results.get(0).getError() instanceof IOException && ! results.get(0).isTimedOut(),
+				"a file that isn't there is an error: " + results.get(0).getError());
+		check(! results.get(1).isSolved() && results.get(1).getError() instanceof SsatFormatException,
+				"a variable that isn't in the formula is a format error: " + results.get(1).getError());
+		check(results.get(2).isSolved(), "the good file is still solved");
+		checkClose(exact[0], results.get(2).getProbability(), "the good file after the bad ones");
+	}
+
+	/**
+	 * A file that takes too long is marked as timed out, soon after the time limit, whether it is
+	 * the search, reading the file or preprocessing it that takes too long.
+	 */
+	private void checkTimeouts() throws IOException {
+		//far too many variables to search in time
+		File hard = new File(dir, "hard.ssat");
+		new SsatGenerator(300, 1200, 3, 0.5, SsatGenerator.ORDER_ALTERNATE, 0, 1).writeFile(hard);
+		//a big file whose search is over straight away, since its choice variable is pure
+		File big = new File(dir, "big.ssat");
+		Writer out = new FileWriter(big);
+		out.write("p cnf 1000 300000\n");
+		for(int c = 0; c < 300000; c++) out.write("1 " + (c % 999 + 2) + " -" + ((c * 7) % 999 + 2) + " 0\n");
+		out.write("1 -1\n");
+		for(int v = 2; v <= 1000; v++) out.write(v + " 0.5\n");
+		out.close();
+
+		Vector<String> batch = new Vector<String>();
+		batch.add(hard.getPath());
+		String[] lines = solveAll(batch, "-timeout 0.5", false);
+		check(lines.length == 2 && lines[1].startsWith(hard.getPath() + ",timeout,"), "the hard file times out: " + lines[lines.length - 1]);
+
+		long start = System.nanoTime();
+		SsatResult result = SsatSolver.run(big.getPath(), options("-timeout", "0.001"));
+		check(result.isTimedOut(), "reading the big file times out: " + (result.isSolved() ? "solved" : result.getError()));
+		check(System.nanoTime() - start < 1000000000L, "reading the big file gives up within a second");
+		batch.set(0, big.getPath());
+		check(solveAll(batch, "", false)[1].startsWith(big.getPath() + ",solved,1.0,"), "the big file is solved without a time limit");
+
+		ClauseDatabase formula = SsatParser.parse(big.getPath());
+		try {
+			SsatSolver.preprocess(formula, options("-preprocess", "subsume"), System.nanoTime() + 1000000);
+			check(false, "preprocessing the big file should time out");
+		} catch(SsatTimeoutException e) {
+			check(true, "preprocessing the big file times out");
+		}
+	}
+
+	/**
+	 * Solves the files with a BatchSolver, with 2 workers.
+	 * @param args - the options, separated by spaces
+	 * @param json - if the results should be JSON lines
+	 * @return the lines it wrote
+	 */
+	private String[] solveAll(Vector<String> batch, String args, boolean json) {
+		StringWriter lines = new StringWriter();
+		PrintWriter out = new PrintWriter(lines);
+		long start = System.nanoTime();
+		new BatchSolver(options(args.isEmpty() ? new String[0] : args.split(" ")), out, json).solveAll(batch, 2);
+		check(System.nanoTime() - start < 10000000000L, "the batch with options '" + args + "' takes less than 10 seconds");
+		out.flush();
+		return lines.toString().split("\n");
+	}
+
+	/**
+	 * Deletes a file, or a directory and everything in it.
+	 * @param file
+	 */
+	private static void delete(File file) {
+		File[] inside = file.listFiles();
+		if(inside != null) {
+			for(File f : inside) delete(f);
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,17 @@
+/**
+ * BoundsListener.java
+ * @author William Richard willster3021@gmail.com
+ * Is told how an anytime search is going.  See SsatSolver.solveAnytime.
+ */
+public interface BoundsListener {
+
+	/**
+	 * Called every so often while an anytime search is running, and once more when it stops.
+	 * It is called from the thread doing the search, so the search waits for it.
+	 * @param lower - the probability of success of the best plan found so far
+	 * @param upper - no plan can succeed with more than this probability
+	 * @param nodes - how many nodes of the search tree have been explored
+	 * @param seconds - how long the search has been running
+	 */
+	public void bounds(double lower, double upper, long nodes, double seconds);
+}
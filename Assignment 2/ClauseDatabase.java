@@ -0,0 +1,1230 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Vector;
+
+/**
+ * ClauseDatabase.java
+ * @author William Richard willster3021@gmail.com
+ * Stores all the clauses of a SSAT formula packed one after another into a single array of ints,
+ * along with everything that changes as variables are assigned and unassigned:
+ * the assignments, the number of satisfied literals in each clause, the watched literals
+ * and the number of times each variable appears in unsatisfied clauses.
+ *
+ * Everything is kept in arrays of primitives, so assigning a variable never has to go
+ * through a Vector or follow a Literal to its Variable.  Clause, Literal and Variable are
+ * just views over the arrays in here.
+ *
+ * A literal is stored the same way it is written in the ssat file: the name of its variable,
+ * negated if the variable appears negatively.
+ */
+public class ClauseDatabase {
+
+	//all of the literals of all of the clauses, one clause after another
+	private int[] literals;
+	private int numLiterals;
+	//clause i is stored in literals from clauseStart[i] up to, but not including, clauseStart[i+1]
+	private int[] clauseStart;
+	private int numClauses;
+
+	//the views over this database, indexed by name and by clause index
+	//the 0th variable is a dummy, like in SsatSolver.variables
+	private Variable[] variables;
+	private Clause[] clauses;
+
+	//the assignment of each variable, as one of the constants in Variable
+	private byte[] assignments;
+	//the names of the assigned variables, in the order they were assigned
+	private int[] trail;
+	private int trailSize;
+	//why each assigned variable was assigned: the clause that was unit on it (see getReason),
+	//or -1 if it was a decision, like a branch.  And how many decisions had been made when it was.
+	private int[] reasons;
+	private int[] levels;
+	private int decisionLevel;
+
+	//how many of the literals in each clause are satisfied
+	private int[] numSatisfied;
+	//how many clauses have at least 1 satisfied literal
+	private int numSatisfiedClauses;
+	//how many clauses have all their literals false.
+	//emptiedClauses holds how many clauses became empty when each variable was assigned
+	private int numEmptyClauses;
+	private int[] emptiedClauses;
+	//the positions in literals of the two literals each clause is watching.
+	//as long as the clause is not satisfied, unit, or empty, neither of them is false.
+	//a clause with a single literal watches it twice.
+	private int[] watchA;
+	private int[] watchB;
+
+	//how many times each variable appears positively and negatively in unsatisfied clauses
+	private int[] timesPositive;
+	private int[] timesNegative;
+
+	//the unassigned choice variables that are pure, because they only appear one way in the
+	//unsatisfied clauses, or not at all.  They are kept up to date as the counts above change,
+	//so the solver never has to look for them.  pureVariables holds them in no particular order,
+	//and purePosition is where each variable is in it, or -1 if it isn't pure.
+	//These are null until the watches are set up, since we don't know which variables are choice before then.
+	private int[] pureVariables;
+	private int numPure;
+	private int[] purePosition;
+
+	//for each literal (see literalIndex), the clauses it appears in.
+	//a clause is in here once for every time the literal appears in it.
+	private int[][] occurrences;
+	//for each literal, the clauses watching it, and how many there are
+	private int[][] watches;
+	private int[] numWatches;
+
+	//the variables that have become unit, in the order they became unit, so the solver
+	//can assign them without looking through every variable.  Some of them might not be
+	//unit anymore, or have been assigned, by the time the solver gets to them.
+	private int[] unitQueue;
+	private int unitQueueHead;
+	private int unitQueueTail;
+	//for each variable in the unit queue, the clause it became unit in, the same way as getReason
+	private int[] unitQueueReason;
+	//the clauses with only 1 literal, which are put on the unit queue at the start of every search
+	private int[] unitClauses;
+	//the reason for the unit pollUnit returned last
+	private int polledReason;
+
+	//the clauses learned from conflicts, or null if clauses aren't being learned
+	private LearnedClauses learned;
+	//the clause that made the formula UNSAT, if it hasn't been learned from yet, or -1
+	private int conflict;
+	//how many times a learned clause has assigned a variable or made the formula UNSAT
+	private long learnedUses;
+
+	//the comment lines from the ssat file
+	private Vector<String> comments;
+
+	//room for working out the clauses and components of a scope, so a small component doesn't need
+	//arrays as big as the whole formula.  A variable or clause has been seen this time if its stamp
+	//is scopeStamp, and the rest of what is kept for it only means anything then.
+	private int scopeStamp;
+	private int[] clauseStamp;
+	private int[] variableStamp;
+	//the clauses that have been seen
+	private int[] scopeClauses;
+	//for the union-find in findComponents: each variable's parent, and how many variables and clauses
+	//are in the group it is the root of
+	private int[] componentParent;
+	private int[] componentSize;
+	private int[] componentClauses;
+	//where the component a root's group becomes is in the list findComponents returns
+	private int[] componentIndex;
+
+	/**
+	 * Constructor.  Makes the variables, and room for the clauses.
+	 * @param numVars - the number of variables in the formula
+	 * @param expectedClauses - the number of clauses we expect to be added
+	 */
+	public ClauseDatabase(int numVars, int expectedClauses) {
+		variables = new Variable[numVars + 1];
+		for(int i = 1; i <= numVars; i++) {
+			variables[i] = new Variable(i, this);
+		}
+
+		clauses = new Clause[expectedClauses];
+		clauseStart = new int[expectedClauses + 1];
+		numClauses = 0;
+		//guess that clauses have about 3 literals - the array grows if needed
+		literals = new int[Math.max(4, expectedClauses * 3)];
+		numLiterals = 0;
+
+		assignments = new byte[numVars + 1];
+		for(int i = 0; i <= numVars; i++) {
+			assignments[i] = Variable.UNASSIGNED;
+		}
+		trail = new int[numVars];
+		trailSize = 0;
+		reasons = new int[numVars + 1];
+		levels = new int[numVars + 1];
+		decisionLevel = 0;
+
+		timesPositive = new int[numVars + 1];
+		timesNegative = new int[numVars + 1];
+
+		numSatisfiedClauses = 0;
+		numEmptyClauses = 0;
+		emptiedClauses = new int[numVars + 1];
+
+		unitQueue = new int[numVars + 1];
+		unitQueueReason = new int[numVars + 1];
+		unitQueueHead = 0;
+		unitQueueTail = 0;
+
+		learned = null;
+		conflict = -1;
+		learnedUses = 0;
+
+		comments = new Vector<String>();
+		initScopeSpace();
+	}
+
+	/**
+	 * Copy constructor.  The copy has the same clauses, and starts out with the same
+	 * assignments, but the two can be assigned separately, e.g. in different threads.
+	 * The clauses and occurrence lists never change once they are set up, so they are shared.
+	 * @param other - a database that has had its watches set up
+	 */
+	public ClauseDatabase(ClauseDatabase other) {
+		assert other.numSatisfied != null;
+		literals = other.literals;
+		numLiterals = other.numLiterals;
+		clauseStart = other.clauseStart;
+		numClauses = other.numClauses;
+		occurrences = other.occurrences;
+		unitClauses = other.unitClauses;
+
+		clauses = new Clause[numClauses];
+		for(int c = 0; c < numClauses; c++) {
+			clauses[c] = new Clause(this, c);
+		}
+		variables = new Variable[other.variables.length];
+		for(int i = 1; i < variables.length; i++) {
+			variables[i] = new Variable(other.variables[i], this);
+		}
+
+		assignments = other.assignments.clone();
+		trail = other.trail.clone();
+		trailSize = other.trailSize;
+		reasons = other.reasons.clone();
+		levels = other.levels.clone();
+		decisionLevel = other.decisionLevel;
+
+		numSatisfied = other.numSatisfied.clone();
+		numSatisfiedClauses = other.numSatisfiedClauses;
+		numEmptyClauses = other.numEmptyClauses;
+		emptiedClauses = other.emptiedClauses.clone();
+		watchA = other.watchA.clone();
+		watchB = other.watchB.clone();
+
+		timesPositive = other.timesPositive.clone();
+		timesNegative = other.timesNegative.clone();
+
+		pureVariables = other.pureVariables.clone();
+		numPure = other.numPure;
+		purePosition = other.purePosition.clone();
+
+		watches = new int[other.watches.length][];
+		for(int i = 0; i < watches.length; i++) {
+			watches[i] = other.watches[i].clone();
+		}
+		numWatches = other.numWatches.clone();
+
+		//the copy is only ever made where nothing is waiting to be propagated
+		unitQueue = new int[other.unitQueue.length];
+		unitQueueReason = new int[other.unitQueue.length];
+		unitQueueHead = 0;
+		unitQueueTail = 0;
+
+		//the copy learns its own clauses, starting from the ones learned so far.
+		//it counts its own uses of them, which are added in when its branch is done
+		learned = other.learned == null ? null : new LearnedClauses(other.learned, this);
+		conflict = other.conflict;
+		learnedUses = 0;
+
+		comments = other.comments;
+		initScopeSpace();
+	}
+
+	/**
+	 * Makes the room for working out scopes.  The clause arrays are made once the clauses are all in.
+	 */
+	private void initScopeSpace() {
+		scopeStamp = 0;
+		variableStamp = new int[variables.length];
+		componentParent = new int[variables.length];
+		componentSize = new int[variables.length];
+		componentClauses = new int[variables.length];
+		componentIndex = new int[variables.length];
+		clauseStamp = new int[numClauses];
+		scopeClauses = new int[numClauses];
+	}
+
+	/**
+	 * Remember a comment line from the ssat file.
+	 * @param comment - the comment, without the c
+	 */
+	public void addComment(String comment) {
+		comments.add(comment);
+	}
+
+	/**
+	 * @return the comment lines from the ssat file, without the c
+	 */
+	public Vector<String> getComments() {
+		return comments;
+	}
+
+	/**
+	 * Add a literal to the clause currently being read in.
+	 * Only used when setting up the clauses.
+	 * @param literal - the literal, as it appears in the ssat file.
+	 */
+	public void addLiteral(int literal) {
+		assert literal != 0 && Math.abs(literal) < variables.length;
+
+		if(numLiterals == literals.length) {
+			int[] bigger = new int[literals.length * 2];
+			System.arraycopy(literals, 0, bigger, 0, numLiterals);
+			literals = bigger;
+		}
+		literals[numLiterals++] = literal;
+
+		//make sure the variable has the number of times it appears positive or negative correct
+		if(literal > 0) timesPositive[literal]++;
+		else timesNegative[-literal]++;
+	}
+
+	/**
+	 * Finish the clause currently being read in.
+	 * Only used when setting up the clauses.
+	 * @return the view of the clause that was just finished
+	 */
+	public Clause endClause() {
+		if(numClauses == clauses.length) {
+			Clause[] biggerClauses = new Clause[clauses.length * 2 + 1];
+			System.arraycopy(clauses, 0, biggerClauses, 0, numClauses);
+			clauses = biggerClauses;
+			int[] biggerStart = new int[biggerClauses.length + 1];
+			System.arraycopy(clauseStart, 0, biggerStart, 0, numClauses + 1);
+			clauseStart = biggerStart;
+		}
+
+		Clause c = new Clause(this, numClauses);
+		clauses[numClauses] = c;
+		numClauses++;
+		clauseStart[numClauses] = numLiterals;
+		return c;
+	}
+
+	/**
+	 * Called once all the clauses have been read in.
+	 * Builds the occurrence lists and sets up the watched literals,
+	 * which also finds any unit clauses we start out with.
+	 */
+	public void initWatches() {
+		numSatisfied = new int[numClauses];
+		clauseStamp = new int[numClauses];
+		scopeClauses = new int[numClauses];
+		watchA = new int[numClauses];
+		watchB = new int[numClauses];
+
+		//count how many times each literal appears, so we can make the occurrence lists the right size
+		int numLiteralIndexes = variables.length * 2;
+		int[] counts = new int[numLiteralIndexes];
+		for(int p = 0; p < numLiterals; p++) {
+			counts[literalIndex(literals[p])]++;
+		}
+		occurrences = new int[numLiteralIndexes][];
+		watches = new int[numLiteralIndexes][];
+		numWatches = new int[numLiteralIndexes];
+		for(int i = 0; i < numLiteralIndexes; i++) {
+			occurrences[i] = new int[counts[i]];
+			watches[i] = new int[Math.max(2, counts[i])];
+			counts[i] = 0;
+		}
+		for(int c = 0; c < numClauses; c++) {
+			for(int p = clauseStart[c]; p < clauseStart[c+1]; p++) {
+				int index = literalIndex(literals[p]);
+				occurrences[index][counts[index]++] = c;
+			}
+		}
+
+		//a clause with no literals at all starts out empty
+		int numUnitClauses = 0;
+		for(int c = 0; c < numClauses; c++) {
+			int size = clauseStart[c+1] - clauseStart[c];
+			if(size == 0) numEmptyClauses++;
+			//a clause with only 1 literal starts out unit
+			else if(size == 1) numUnitClauses++;
+		}
+		unitClauses = new int[numUnitClauses];
+		numUnitClauses = 0;
+		for(int c = 0; c < numClauses; c++) {
+			if(clauseStart[c+1] - clauseStart[c] == 1) unitClauses[numUnitClauses++] = c;
+		}
+
+		pureVariables = new int[variables.length];
+		purePosition = new int[variables.length];
+		startSearch();
+	}
+
+	/**
+	 * Gets the formula ready for a search, by putting the unit clauses on the unit queue.
+	 * If nothing is assigned, the watched literals and the pure set are also put back the way
+	 * they started out, since the last search moved them around.  Otherwise a search after the
+	 * first would propagate in a different order, and could take a different number of nodes
+	 * and find a different one of the best plans.
+	 */
+	public void startSearch() {
+		if(trailSize == 0) {
+			clearUnitQueue();
+			watchFirstLiterals();
+			findPureVariables();
+		}
+		queueUnitClauses();
+	}
+
+	/**
+	 * Watches the first 2 literals of each clause, or the only one.
+	 */
+	private void watchFirstLiterals() {
+		Arrays.fill(numWatches, 0);
+		for(int c = 0; c < numClauses; c++) {
+			int start = clauseStart[c];
+			int size = clauseStart[c+1] - start;
+			if(size == 0) continue;
+
+			watchA[c] = start;
+			watchB[c] = size > 1 ? start + 1 : start;
+			addWatch(literals[watchA[c]], c);
+			if(watchB[c] != watchA[c]) addWatch(literals[watchB[c]], c);
+		}
+	}
+
+	/**
+	 * Builds the pure set from scratch.  The variables know if they are choice by now.
+	 */
+	private void findPureVariables() {
+		numPure = 0;
+		Arrays.fill(purePosition, -1);
+		for(int i = 1; i < variables.length; i++) {
+			updatePurity(i);
+		}
+	}
+
+	/**
+	 * @param literal
+	 * @return where the literal's occurrence and watch lists are stored.
+	 */
+	public static int literalIndex(int literal) {
+		return literal > 0 ? 2 * literal : -2 * literal + 1;
+	}
+
+	/**
+	 * Add a clause to the list of clauses watching the passed literal
+	 * @param literal
+	 * @param c - the index of the clause
+	 */
+	private void addWatch(int literal, int c) {
+		int index = literalIndex(literal);
+		if(numWatches[index] == watches[index].length) {
+			int[] bigger = new int[watches[index].length * 2];
+			System.arraycopy(watches[index], 0, bigger, 0, numWatches[index]);
+			watches[index] = bigger;
+		}
+		watches[index][numWatches[index]++] = c;
+	}
+
+	/**
+	 * @param literal
+	 * @return if the literal is satisfied under the current assignment
+	 */
+	public boolean isTrue(int literal) {
+		byte a = assignments[Math.abs(literal)];
+		if(a == Variable.UNASSIGNED) return false;
+		return (a == Variable.TRUE) == (literal > 0);
+	}
+
+	/**
+	 * @param literal
+	 * @return if the literal is false under the current assignment
+	 */
+	public boolean isFalse(int literal) {
+		byte a = assignments[Math.abs(literal)];
+		if(a == Variable.UNASSIGNED) return false;
+		return (a == Variable.TRUE) != (literal > 0);
+	}
+
+	/**
+	 * Assign a variable, and update everything that depends on it.
+	 * The clauses where its literal just became true update their satisfied literal counts,
+	 * and the clauses watching its literal that just became false look for a new watch.
+	 * The assignment is a decision, that isn't forced by any clause.
+	 * @param name - the variable to assign
+	 * @param value - Variable.TRUE or Variable.FALSE
+	 */
+	public void assign(int name, int value) {
+		decisionLevel++;
+		assign(name, value, -1);
+	}
+
+	/**
+	 * Assign the variable of the unit pollUnit just returned, so that it is true.
+	 * @param literal - the literal pollUnit returned
+	 */
+	public void assignUnit(int literal) {
+		assign(Math.abs(literal), literal > 0 ? Variable.TRUE : Variable.FALSE, polledReason);
+	}
+
+	/**
+	 * Assign a variable, and update everything that depends on it.
+	 * @param name - the variable to assign
+	 * @param value - Variable.TRUE or Variable.FALSE
+	 * @param reason - the clause that forced it, or -1 if it is a decision
+	 */
+	private void assign(int name, int value, int reason) {
+		assert assignments[name] == Variable.UNASSIGNED;
+		assert value == Variable.TRUE || value == Variable.FALSE;
+
+		assignments[name] = (byte) value;
+		trail[trailSize++] = name;
+		reasons[name] = reason;
+		levels[name] = decisionLevel;
+		//only unassigned variables are kept in the pure set
+		updatePurity(name);
+
+		int trueLiteral = value == Variable.TRUE ? name : -name;
+		//only the clauses where the variable's literal just became true change their stats
+		int[] satisfiedClauses = occurrences[literalIndex(trueLiteral)];
+		for(int i = 0; i < satisfiedClauses.length; i++) {
+			literalSatisfied(satisfiedClauses[i]);
+		}
+
+		//let the clauses watching the literal that just became false find a new watch
+		//this also finds the clauses that just became empty
+		updateWatches(name, -trueLiteral);
+		if(learned != null) learned.literalFalsified(name, -trueLiteral);
+	}
+
+	/**
+	 * Unassign the most recently assigned variable, and undo everything that depended on it.
+	 * The watches can stay where they are.  The clauses that became unit because of this
+	 * assignment are not unit anymore, but pollUnit checks that before it returns one.
+	 * @param name - the variable to unassign
+	 */
+	public void unassign(int name) {
+		assert trailSize > 0 && trail[trailSize - 1] == name;
+
+		int trueLiteral = assignments[name] == Variable.TRUE ? name : -name;
+		assignments[name] = Variable.UNASSIGNED;
+		trailSize--;
+		if(reasons[name] < 0) decisionLevel--;
+
+		//make sure the clauses the variable was satisfying update the stats of the variables
+		int[] satisfiedClauses = occurrences[literalIndex(trueLiteral)];
+		for(int i = 0; i < satisfiedClauses.length; i++) {
+			literalUnsatisfied(satisfiedClauses[i]);
+		}
+
+		updatePurity(name);
+
+		//the clauses this variable emptied have a literal that isn't false again
+		numEmptyClauses -= emptiedClauses[name];
+		emptiedClauses[name] = 0;
+
+		//learned clauses that were only waiting on this variable might be unit now
+		if(learned != null) learned.unassigned(name, -trueLiteral);
+	}
+
+	/**
+	 * Called after one of the literals in the clause becomes satisfied.
+	 * If it is the first satisfied literal, the clause just became satisfied,
+	 * so none of its literals count towards their variable's statistics anymore.
+	 * @param c - the index of the clause
+	 */
+	private void literalSatisfied(int c) {
+		numSatisfied[c]++;
+		//if some other literal was already satisfied, the clause already was too
+		if(numSatisfied[c] > 1) return;
+		numSatisfiedClauses++;
+
+		for(int p = clauseStart[c]; p < clauseStart[c+1]; p++) {
+			int literal = literals[p];
+			if(literal > 0) {
+				timesPositive[literal]--;
+				assert timesPositive[literal] >= 0;
+				if(timesPositive[literal] == 0) updatePurity(literal);
+			} else {
+				timesNegative[-literal]--;
+				assert timesNegative[-literal] >= 0;
+				if(timesNegative[-literal] == 0) updatePurity(-literal);
+			}
+		}
+	}
+
+	/**
+	 * Called after a literal in the clause that was satisfied is unassigned.
+	 * If it was the only satisfied literal, the clause is not satisfied anymore,
+	 * so all of its literals count towards their variable's statistics again.
+	 * @param c - the index of the clause
+	 */
+	private void literalUnsatisfied(int c) {
+		numSatisfied[c]--;
+		assert numSatisfied[c] >= 0;
+		if(numSatisfied[c] > 0) return;
+		numSatisfiedClauses--;
+
+		for(int p = clauseStart[c]; p < clauseStart[c+1]; p++) {
+			int literal = literals[p];
+			if(literal > 0) {
+				if(++timesPositive[literal] == 1) updatePurity(literal);
+			} else {
+				if(++timesNegative[-literal] == 1) updatePurity(-literal);
+			}
+		}
+	}
+
+	/**
+	 * Goes through the clauses watching the literal that just became false,
+	 * and lets each of them move its watch, or find out that it is unit.
+	 * Clauses that move their watch are removed from the literal's watch list.
+	 * @param name - the variable that was just assigned
+	 * @param falseLiteral - the literal of that variable that is now false
+	 */
+	private void updateWatches(int name, int falseLiteral) {
+		int index = literalIndex(falseLiteral);
+		int[] watchers = watches[index];
+		int i = 0;
+		while(i < numWatches[index]) {
+			if(watchedLiteralFalsified(watchers[i], name, falseLiteral)) {
+				i++;
+			} else {
+				//the clause is watching something else now.
+				//order doesn't matter, so move the last watcher into this spot
+				numWatches[index]--;
+				watchers[i] = watchers[numWatches[index]];
+			}
+		}
+	}
+
+	/**
+	 * Called when one of the literals the clause is watching has just become false.
+	 * Tries to move the watch to a literal that is not false.  If it can't, the clause
+	 * is either satisfied by the other watch, unit on the other watch, or empty.
+	 * If it becomes unit, the variable of the other watch goes on the unit queue.
+	 * @param c - the index of the clause
+	 * @param name - the variable that was just assigned
+	 * @param falseLiteral - the literal that became false
+	 * @return true if the clause is still watching falseLiteral, false if the watch moved.
+	 */
+	private boolean watchedLiteralFalsified(int c, int name, int falseLiteral) {
+		//figure out which of the watches became false
+		boolean falsifiedIsA = literals[watchA[c]] == falseLiteral;
+		int other = falsifiedIsA ? watchB[c] : watchA[c];
+		assert falsifiedIsA || literals[watchB[c]] == falseLiteral;
+
+		//if the other watch is satisfied, so is the clause, so leave the watch where it is
+		if(isTrue(literals[other])) return true;
+
+		//look for another literal that is not false to watch instead
+		for(int p = clauseStart[c]; p < clauseStart[c+1]; p++) {
+			if(p == watchA[c] || p == watchB[c]) continue;
+			if(! isFalse(literals[p])) {
+				if(falsifiedIsA) watchA[c] = p;
+				else watchB[c] = p;
+				addWatch(literals[p], c);
+				return false;
+			}
+		}
+
+		//there is nothing else to watch.
+		//if the other watch is unassigned, it is the only literal left, so this clause is now unit.
+		//otherwise all the literals are false and the clause is empty.
+		int otherName = Math.abs(literals[other]);
+		if(assignments[otherName] == Variable.UNASSIGNED) {
+			enqueueUnit(otherName, c);
+		} else {
+			if(SsatSolver.DEBUG) System.out.println("Clause " + c + " became empty when assigning variable " + name);
+			if(numEmptyClauses == 0) conflict = c;
+			numEmptyClauses++;
+			emptiedClauses[name]++;
+		}
+		return true;
+	}
+
+	/**
+	 * @param c - a clause of the formula
+	 * @param name - an unassigned variable in it
+	 * @return if the clause is unit on the variable: it isn't satisfied, and all its other literals are false
+	 */
+	private boolean isUnitOn(int c, int name) {
+		if(numSatisfied[c] > 0) return false;
+		for(int p = clauseStart[c]; p < clauseStart[c+1]; p++) {
+			int v = Math.abs(literals[p]);
+			if(v != name && assignments[v] == Variable.UNASSIGNED) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Looks through the clauses the variable is in for one that is unit on it.
+	 * Only used for debugging - the solver gets its units from pollUnit.
+	 * @param name - an unassigned variable
+	 * @return the clause, or -1 if the variable isn't unit
+	 */
+	public int findUnitClause(int name) {
+		for(int literal = name; literal >= -name; literal -= 2 * name) {
+			for(int c : occurrences[literalIndex(literal)]) {
+				if(isUnitOn(c, name)) return c;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param name
+	 * @return the current assignment of the variable, as one of the constants in Variable
+	 */
+	public int getAssignment(int name) {
+		return assignments[name];
+	}
+
+	/**
+	 * @param name
+	 * @return the view of the variable with that name
+	 */
+	public Variable getVariable(int name) {
+		return variables[name];
+	}
+
+	/**
+	 * @return the number of variables in the formula, not counting the dummy 0th variable
+	 */
+	public int getNumVariables() {
+		return variables.length - 1;
+	}
+
+	/**
+	 * @param c
+	 * @return the view of the clause with that index
+	 */
+	public Clause getClause(int c) {
+		return clauses[c];
+	}
+
+	/**
+	 * @return the number of clauses in the formula
+	 */
+	public int getNumClauses() {
+		return numClauses;
+	}
+
+	/**
+	 * @param c
+	 * @return where the clause starts in the literal array
+	 */
+	public int getClauseStart(int c) {
+		return clauseStart[c];
+	}
+
+	/**
+	 * @param c
+	 * @return where the clause ends (exclusive) in the literal array
+	 */
+	public int getClauseEnd(int c) {
+		return clauseStart[c+1];
+	}
+
+	/**
+	 * @param position
+	 * @return the literal at that position in the literal array
+	 */
+	public int getLiteral(int position) {
+		return literals[position];
+	}
+
+	/**
+	 * Like Clause.getLiteral, but doesn't make a Literal, so it can be used while searching.
+	 * @param c - the clause
+	 * @param name - the variable
+	 * @return the literal the variable appears as in the clause, or 0 if it isn't in the clause.
+	 */
+	public int findLiteral(int c, int name) {
+		for(int p = clauseStart[c]; p < clauseStart[c+1]; p++) {
+			if(literals[p] == name || literals[p] == -name) return literals[p];
+		}
+		return 0;
+	}
+
+	/**
+	 * @param c
+	 * @return how many satisfied literals the clause has
+	 */
+	public int getNumSatisfied(int c) {
+		return numSatisfied[c];
+	}
+
+	/**
+	 * @param c
+	 * @return if all of the clause's literals are false
+	 */
+	public boolean isEmpty(int c) {
+		for(int p = clauseStart[c]; p < clauseStart[c+1]; p++) {
+			if(! isFalse(literals[p])) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Works out a canonical form of the residual formula: the variables that are still
+	 * unassigned, and the clauses that aren't satisfied yet, without their false literals.
+	 * The literals in each clause are sorted, the clauses are sorted, and duplicate clauses are
+	 * dropped, so two residual formulas that are the same always give the same key, no matter
+	 * which clauses they came from.
+	 * @param scope - only look at the variables and clauses in this component, or null for the whole formula
+	 * @return the unassigned variables in order, then a 0, then each residual clause followed by a 0.
+	 */
+	public int[] getResidualKey(Component scope) {
+		//collect the unassigned literals of each clause that isn't satisfied
+		int numScopeClauses = findScopeClauses(scope);
+		int[][] residualClauses = new int[numScopeClauses][];
+		int numResidual = 0;
+		for(int i = 0; i < numScopeClauses; i++) {
+			int c = scopeClauses[i];
+			int size = 0;
+			for(int p = clauseStart[c]; p < clauseStart[c+1]; p++) {
+				if(assignments[Math.abs(literals[p])] == Variable.UNASSIGNED) size++;
+			}
+			int[] residual = new int[size];
+			size = 0;
+			for(int p = clauseStart[c]; p < clauseStart[c+1]; p++) {
+				if(assignments[Math.abs(literals[p])] == Variable.UNASSIGNED) residual[size++] = literals[p];
+			}
+			Arrays.sort(residual);
+			residualClauses[numResidual++] = residual;
+		}
+		Arrays.sort(residualClauses, 0, numResidual, CLAUSE_ORDER);
+
+		//work out how big the key could be, then fill it in
+		int keySize = getNumVariables() - trailSize + 1;
+		for(int i = 0; i < numResidual; i++) {
+			keySize += residualClauses[i].length + 1;
+		}
+		int[] key = new int[keySize];
+		int k = 0;
+		if(scope == null) {
+			for(int v = 1; v < variables.length; v++) {
+				if(assignments[v] == Variable.UNASSIGNED) key[k++] = v;
+			}
+		} else {
+			for(int v : scope.getVariables()) {
+				if(assignments[v] == Variable.UNASSIGNED) key[k++] = v;
+			}
+		}
+		key[k++] = 0;
+		for(int i = 0; i < numResidual; i++) {
+			//the clauses are sorted, so duplicates are next to each other
+			if(i > 0 && Arrays.equals(residualClauses[i], residualClauses[i-1])) continue;
+			for(int literal : residualClauses[i]) {
+				key[k++] = literal;
+			}
+			key[k++] = 0;
+		}
+
+		if(k < keySize) {
+			int[] trimmed = new int[k];
+			System.arraycopy(key, 0, trimmed, 0, k);
+			key = trimmed;
+		}
+		return key;
+	}
+
+	/**
+	 * Finds the clauses that aren't satisfied, and have an unassigned variable in scope,
+	 * and puts them in scopeClauses.  Since components don't share clauses, if a clause
+	 * has one unassigned variable in a component, all of its unassigned variables are in it.
+	 * With a scope, only the clauses its variables are in are looked at.
+	 * @param scope - a component, or null for the whole formula
+	 * @return how many clauses there are
+	 */
+	private int findScopeClauses(Component scope) {
+		int count = 0;
+		if(scope == null) {
+			for(int c = 0; c < numClauses; c++) {
+				if(numSatisfied[c] == 0) scopeClauses[count++] = c;
+			}
+			return count;
+		}
+		nextScopeStamp();
+		for(int v : scope.getVariables()) {
+			if(assignments[v] != Variable.UNASSIGNED) continue;
+			for(int literal = v; literal >= -v; literal -= 2 * v) {
+				for(int c : occurrences[literalIndex(literal)]) {
+					if(clauseStamp[c] == scopeStamp || numSatisfied[c] > 0) continue;
+					clauseStamp[c] = scopeStamp;
+					scopeClauses[count++] = c;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Starts a new stamp, so every variable and clause counts as not seen.
+	 */
+	private void nextScopeStamp() {
+		scopeStamp++;
+		if(scopeStamp == Integer.MAX_VALUE) {
+			//start again from 1, once nothing has the old stamps
+			Arrays.fill(variableStamp, 0);
+			Arrays.fill(clauseStamp, 0);
+			scopeStamp = 1;
+		}
+	}
+
+	/**
+	 * Splits the residual formula into components: groups of unassigned variables that
+	 * share unsatisfied clauses.  Variables that aren't in any unsatisfied clause aren't in any component.
+	 * @param scope - only split up the variables and clauses in this component, or null for the whole formula
+	 * @return the components, in order of their smallest variable
+	 */
+	public Vector<Component> findComponents(Component scope) {
+		int numScopeClauses = findScopeClauses(scope);
+		//findScopeClauses is done with its stamp, so the variables can have a new one
+		nextScopeStamp();
+
+		//union-find over the unassigned variables of the clauses.  A variable is its own
+		//parent when it is first seen, and the root of each group is its smallest variable.
+		for(int i = 0; i < numScopeClauses; i++) {
+			int c = scopeClauses[i];
+			int first = 0;
+			for(int p = clauseStart[c]; p < clauseStart[c+1]; p++) {
+				int v = Math.abs(literals[p]);
+				if(assignments[v] != Variable.UNASSIGNED) continue;
+				if(variableStamp[v] != scopeStamp) {
+					variableStamp[v] = scopeStamp;
+					componentParent[v] = v;
+					componentSize[v] = 0;
+					componentClauses[v] = 0;
+				}
+				if(first == 0) {
+					first = v;
+				} else {
+					//join the two groups
+					int rootA = findRoot(componentParent, first);
+					int rootB = findRoot(componentParent, v);
+					if(rootA != rootB) componentParent[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+				}
+			}
+			//remember a variable of the clause, to count it in its group once they are all joined
+			scopeClauses[i] = first;
+		}
+
+		//count the variables and clauses in each group, by its root
+		for(int i = 0; i < numScopeClauses; i++) {
+			componentClauses[findRoot(componentParent, scopeClauses[i])]++;
+		}
+		int[] candidates = scope == null ? null : scope.getVariables();
+		int numCandidates = scope == null ? getNumVariables() : candidates.length;
+		for(int i = 0; i < numCandidates; i++) {
+			int v = scope == null ? i + 1 : candidates[i];
+			if(variableStamp[v] == scopeStamp) componentSize[findRoot(componentParent, v)]++;
+		}
+
+		//the root of each group is its smallest variable, so going through the variables in order
+		//gets to each root before the rest of its group, and finds the roots in order
+		Vector<int[]> groups = new Vector<int[]>();
+		for(int i = 0; i < numCandidates; i++) {
+			int v = scope == null ? i + 1 : candidates[i];
+			if(variableStamp[v] != scopeStamp) continue;
+			int root = findRoot(componentParent, v);
+			if(root == v) {
+				componentIndex[root] = groups.size();
+				groups.add(new int[componentSize[root]]);
+				//from now on, it is how many of the group's variables have been filled in
+				componentSize[root] = 0;
+			}
+			groups.get(componentIndex[root])[componentSize[root]++] = v;
+		}
+
+		Vector<Component> components = new Vector<Component>(groups.size());
+		for(int[] group : groups) {
+			components.add(new Component(group, componentClauses[group[0]]));
+		}
+		return components;
+	}
+
+	/**
+	 * @param parent
+	 * @param v
+	 * @return the root of v's group, shortening the path to it along the way
+	 */
+	private static int findRoot(int[] parent, int v) {
+		while(parent[v] != v) {
+			parent[v] = parent[parent[v]];
+			v = parent[v];
+		}
+		return v;
+	}
+
+	/**
+	 * Orders clauses (stored as sorted arrays of literals) by size, then by their literals.
+	 */
+	private static final Comparator<int[]> CLAUSE_ORDER = new Comparator<int[]>() {
+		public int compare(int[] a, int[] b) {
+			if(a.length != b.length) return a.length - b.length;
+			for(int i = 0; i < a.length; i++) {
+				if(a[i] != b[i]) return a[i] < b[i] ? -1 : 1;
+			}
+			return 0;
+		}
+	};
+
+	/**
+	 * @return if every clause in the formula is satisfied.  
+	 */
+	public boolean isFormulaSAT() {
+		return numSatisfiedClauses == numClauses;
+	}
+
+	/**
+	 * @return how many clauses in the formula are satisfied
+	 */
+	public int getNumSatisfiedClauses() {
+		return numSatisfiedClauses;
+	}
+
+	/**
+	 * @return if any clause in the formula has all of its literals false.
+	 */
+	public boolean isFormulaUnSAT() {
+		return numEmptyClauses > 0;
+	}
+
+	/**
+	 * @param name
+	 * @return how many times the variable appears positively in unsatisfied clauses
+	 */
+	public int getTimesPositive(int name) {
+		return timesPositive[name];
+	}
+
+	/**
+	 * @param name
+	 * @return how many times the variable appears negatively in unsatisfied clauses
+	 */
+	public int getTimesNegative(int name) {
+		return timesNegative[name];
+	}
+
+	/**
+	 * Adds the variable to the pure set, or takes it out, if that has changed.
+	 * Called whenever its assignment changes, or one of its counts goes to or from 0.
+	 * @param name
+	 */
+	private void updatePurity(int name) {
+		if(purePosition == null) return;
+		boolean pure = assignments[name] == Variable.UNASSIGNED && variables[name].isChoice() &&
+				(timesPositive[name] == 0 || timesNegative[name] == 0);
+		int position = purePosition[name];
+		if(pure && position < 0) {
+			purePosition[name] = numPure;
+			pureVariables[numPure++] = name;
+		} else if(!pure && position >= 0) {
+			//move the last one into its place
+			int last = pureVariables[--numPure];
+			pureVariables[position] = last;
+			purePosition[last] = position;
+			purePosition[name] = -1;
+		}
+	}
+
+	/**
+	 * @param scope - the variables to look at, or null for all of them
+	 * @return an unassigned choice variable in scope that is pure, or 0 if there aren't any
+	 */
+	public int findPure(Component scope) {
+		//when solving a component, the pure variables outside of it were assigned before it was split off,
+		//so the first one is nearly always in scope
+		for(int i = 0; i < numPure; i++) {
+			int name = pureVariables[i];
+			if(scope == null || scope.contains(name)) return name;
+		}
+		return 0;
+	}
+
+	/**
+	 * @param name
+	 * @return if the variable is in the set of pure variables
+	 */
+	public boolean isInPureSet(int name) {
+		return purePosition[name] >= 0;
+	}
+
+	/**
+	 * Remember that a variable just became unit.
+	 * @param name
+	 * @param reason - the clause it is unit in: the index of a clause of the formula,
+	 * or getNumClauses() plus the number of a learned clause
+	 */
+	private void enqueueUnit(int name, int reason) {
+		if(unitQueueTail == unitQueue.length) {
+			//make room by moving what is left to the front, or growing if that isn't enough
+			int waiting = unitQueueTail - unitQueueHead;
+			int[] queue = unitQueue;
+			int[] queueReason = unitQueueReason;
+			if(waiting * 2 > unitQueue.length) {
+				queue = new int[unitQueue.length * 2];
+				queueReason = new int[unitQueue.length * 2];
+			}
+			System.arraycopy(unitQueue, unitQueueHead, queue, 0, waiting);
+			System.arraycopy(unitQueueReason, unitQueueHead, queueReason, 0, waiting);
+			unitQueue = queue;
+			unitQueueReason = queueReason;
+			unitQueueHead = 0;
+			unitQueueTail = waiting;
+		}
+		unitQueue[unitQueueTail] = name;
+		unitQueueReason[unitQueueTail] = reason;
+		unitQueueTail++;
+	}
+
+	/**
+	 * Puts the variables of the clauses with only 1 literal on the unit queue, if they are unassigned.
+	 * Nothing ever makes them unit again once they have been propagated, so this has to be done
+	 * at the start of every search, or a search after the first would branch on them instead.
+	 */
+	private void queueUnitClauses() {
+		for(int c : unitClauses) {
+			int name = Math.abs(literals[clauseStart[c]]);
+			if(assignments[name] == Variable.UNASSIGNED) enqueueUnit(name, c);
+		}
+	}
+
+	/**
+	 * Takes variables off the queue of variables that have become unit, until it finds one
+	 * that is still unit, unassigned and in scope.  assignUnit assigns it.
+	 * @param scope - the variables being solved, or null for all of them
+	 * @return the literal the unit clause needs to be true, or 0 if there aren't any more units
+	 */
+	public int pollUnit(Component scope) {
+		while(unitQueueHead < unitQueueTail) {
+			int name = unitQueue[unitQueueHead];
+			int reason = unitQueueReason[unitQueueHead];
+			unitQueueHead++;
+			if(assignments[name] != Variable.UNASSIGNED || (scope != null && !scope.contains(name))) continue;
+
+			if(reason < numClauses) {
+				//a variable it was unit on might have been unassigned since
+				if(!isUnitOn(reason, name)) continue;
+				polledReason = reason;
+				return findLiteral(reason, name);
+			}
+			int literal = learned.getUnitLiteral(reason - numClauses, name);
+			if(literal == 0) continue;
+			polledReason = reason;
+			learnedUses++;
+			return literal;
+		}
+		unitQueueHead = 0;
+		unitQueueTail = 0;
+		return 0;
+	}
+
+	/**
+	 * Forget about the variables waiting in the unit queue.
+	 * Only do this when none of them need to be propagated, e.g. when the formula is already SAT or UNSAT.
+	 */
+	public void clearUnitQueue() {
+		unitQueueHead = 0;
+		unitQueueTail = 0;
+	}
+
+	/**
+	 * Start learning clauses from conflicts.
+	 * @param maxBytes - roughly how much memory the learned clauses may use
+	 */
+	public void enableLearning(long maxBytes) {
+		learned = new LearnedClauses(this, maxBytes);
+	}
+
+	/**
+	 * @return the learned clauses, or null if clauses aren't being learned
+	 */
+	public LearnedClauses getLearnedClauses() {
+		return learned;
+	}
+
+	/**
+	 * If the formula has just become UNSAT, learns a clause from why it did.
+	 * Does nothing if clauses aren't being learned, or this conflict has already been learned from.
+	 */
+	public void learnFromConflict() {
+		if(learned == null || conflict < 0 || numEmptyClauses == 0) return;
+		learned.learn(conflict);
+		conflict = -1;
+	}
+
+	/**
+	 * Called by the learned clauses when one of them becomes unit.
+	 * @param name - the variable it is unit on
+	 * @param learnedClause - the learned clause
+	 */
+	public void learnedClauseUnit(int name, int learnedClause) {
+		enqueueUnit(name, numClauses + learnedClause);
+	}
+
+	/**
+	 * Called by the learned clauses when one of them has all of its literals false.
+	 * The formula is UNSAT until the variable is unassigned again.
+	 * @param name - the variable whose assignment made it empty
+	 * @param learnedClause - the learned clause
+	 */
+	public void learnedClauseEmptied(int name, int learnedClause) {
+		if(SsatSolver.DEBUG) System.out.println("Learned clause " + learnedClause + " became empty when assigning variable " + name);
+		if(numEmptyClauses == 0) conflict = numClauses + learnedClause;
+		numEmptyClauses++;
+		emptiedClauses[name]++;
+		learnedUses++;
+	}
+
+	/**
+	 * @return how many times a learned clause has assigned a variable or made the formula UNSAT.
+	 * A copy of the database starts counting from 0.
+	 */
+	public long getLearnedUses() {
+		return learnedUses;
+	}
+
+	/**
+	 * Count the learned clause uses of a copy of this database.
+	 * @param uses
+	 */
+	public void addLearnedUses(long uses) {
+		learnedUses += uses;
+	}
+
+	/**
+	 * @param name - an assigned variable
+	 * @return why the variable was assigned: the index of the clause of the formula that was unit on it,
+	 * getNumClauses() plus the number of the learned clause that was, or -1 if it was a decision
+	 */
+	public int getReason(int name) {
+		return reasons[name];
+	}
+
+	/**
+	 * @param name - an assigned variable
+	 * @return how many decisions had been made when the variable was assigned, including it
+	 */
+	public int getLevel(int name) {
+		return levels[name];
+	}
+
+	/**
+	 * @return how many of the assigned variables are decisions
+	 */
+	public int getDecisionLevel() {
+		return decisionLevel;
+	}
+
+	/**
+	 * @param i
+	 * @return the ith variable that was assigned
+	 */
+	public int getTrailVariable(int i) {
+		return trail[i];
+	}
+
+	/**
+	 * @return how many variables are currently assigned
+	 */
+	public int getTrailSize() {
+		return trailSize;
+	}
+}
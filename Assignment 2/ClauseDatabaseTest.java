@@ -0,0 +1,278 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Vector;
+
+/**
+ * ClauseDatabaseTest.java
+ * @author William Richard willster3021@gmail.com
+ * Tests that the ClauseDatabase keeps track of the clauses correctly as variables are
+ * assigned and unassigned.  Random formulas are walked through the way the solver does it -
+ * deciding variables, propagating units, and backtracking - and after every step what the
+ * database says is checked against looking through all the clauses.
+ */
+public class ClauseDatabaseTest extends SsatTest {
+
+	public static void main(String[] args) {
+		run(new ClauseDatabaseTest());
+	}
+
+	protected void runChecks() throws Exception {
+		checkUnitFound();
+		checkUnitReleased();
+		checkClausesStored();
+		checkCopy();
+		checkComponents();
+		for(long seed = 1; seed <= 30; seed++) {
+			randomWalk(randomFormula(20, 60, SsatGenerator.ORDER_RANDOM, seed), seed);
+		}
+	}
+
+	/**
+	 * A clause with all but one of its literals false is unit on the last one.
+	 */
+	private void checkUnitFound() throws Exception {
+		ClauseDatabase db = formula("p cnf 3 2\n1 2 3 0\n-1 2 0\n1 -1\n2 -1\n3 -1\n");
+		check(db.pollUnit(null) == 0, "a formula without unit clauses has no units");
+		db.assign(1, Variable.FALSE);
+		check(db.pollUnit(null) == 0, "a clause with 2 literals left isn't unit");
+		db.assign(2, Variable.FALSE);
+		check(db.pollUnit(null) == 3, "the watch moves to the last literal that isn't false");
+		check(db.pollUnit(null) == 0, "3 is queued as a unit once");
+
+		db = formula("p cnf 2 2\n-1 2 0\n1 0\n1 -1\n2 -1\n");
+		check(db.pollUnit(null) == 1, "a clause with 1 literal starts out unit");
+		db.assignUnit(1);
+		check(db.pollUnit(null) == 2, "assigning the unit makes the next clause unit");
+	}
+
+	/**
+	 * A clause that became unit isn't unit anymore once the variable that made it unit is unassigned.
+	 */
+	private void checkUnitReleased() throws Exception {
+		ClauseDatabase db = formula("p cnf 3 1\n1 2 3 0\n1 -1\n2 -1\n3 -1\n");
+		db.assign(1, Variable.FALSE);
+		db.assign(2, Variable.FALSE);
+		db.unassign(2);
+		check(db.pollUnit(null) == 0, "the clause isn't unit after backtracking");
+		db.assign(2, Variable.FALSE);
+		check(db.pollUnit(null) == 3, "the clause is unit again when the variable is assigned again");
+	}
+
+	/**
+	 * The clauses are packed into one array, in the order they were read, with their literals as written.
+	 */
+	private void checkClausesStored() throws Exception {
+		ClauseDatabase db = formula("p cnf 4 3\n1 -2 0\n-3 0\n2 3 -4 1 0\n1 -1\n2 0.25\n3 -1\n4 0.5\n");
+		int[][] expected = {{1, -2}, {-3}, {2, 3, -4, 1}};
+		check(db.getNumClauses() == 3 && db.getNumVariables() == 4, "the formula has 3 clauses and 4 variables");
+		for(int c = 0; c < expected.length; c++) {
+			int[] literals = new int[db.getClauseEnd(c) - db.getClauseStart(c)];
+			for(int p = db.getClauseStart(c); p < db.getClauseEnd(c); p++) {
+				literals[p - db.getClauseStart(c)] = db.getLiteral(p);
+			}
+			check(Arrays.equals(expected[c], literals), "clause " + c + " is " + Arrays.toString(literals));
+		}
+		check(db.getVariable(2).isChance() && db.getVariable(2).getChanceTrue() == 0.25 && db.getVariable(3).isChoice(),
+				"the variables know if they are chance or choice");
+	}
+
+	/**
+	 * A copy can be assigned without changing the original.
+	 */
+	private void checkCopy() throws Exception {
+		ClauseDatabase db = formula("p cnf 3 2\n1 2 0\n-1 3 0\n1 -1\n2 -1\n3 -1\n");
+		db.assign(2, Variable.FALSE);
+		ClauseDatabase copy = new ClauseDatabase(db);
+		copy.assign(1, Variable.TRUE);
+		check(copy.pollUnit(null) == 3, "the copy finds its own units");
+		check(db.getAssignment(1) == Variable.UNASSIGNED && db.getNumSatisfiedClauses() == 0,
+				"assigning the copy doesn't change the original");
+		check(copy.getAssignment(2) == Variable.FALSE && copy.getNumSatisfiedClauses() == 1,
+				"the copy starts out with the original's assignments");
+		copy.unassign(1);
+		db.assign(1, Variable.FALSE);
+		check(db.isFormulaUnSAT() && !copy.isFormulaUnSAT(), "the original can be assigned without changing the copy");
+	}
+
+	/**
+	 * Variables that share unsatisfied clauses are in the same component, and the components
+	 * of a component are found from its own clauses.
+	 */
+	private void checkComponents() throws Exception {
+		ClauseDatabase db = formula("p cnf 7 5\n1 2 0\n2 -3 0\n4 5 0\n-5 6 7 0\n6 -1 0\n" +
+				"1 -1\n2 0.5\n3 -1\n4 0.5\n5 -1\n6 0.5\n7 -1\n");
+		Vector<Component> components = db.findComponents(null);
+		check(components.size() == 1, "the formula is all one component");
+		db.assign(6, Variable.TRUE);
+		components = db.findComponents(null);
+		check(components.size() == 2, "it splits into 2 once the clauses with 6 are satisfied");
+		check(Arrays.equals(components.get(0).getVariables(), new int[] {1, 2, 3}) && components.get(0).getNumClauses() == 2,
+				"the first component is 1, 2 and 3, with 2 clauses");
+		check(Arrays.equals(components.get(1).getVariables(), new int[] {4, 5}) && components.get(1).getNumClauses() == 1,
+				"the second component is 4 and 5, with 1 clause, and 7 isn't in any clause");
+		check(components.get(0).contains(3) && !components.get(0).contains(4) && !components.get(1).contains(7),
+				"the components know which variables are in them");
+
+		Component first = components.get(0);
+		db.assign(2, Variable.FALSE);
+		components = db.findComponents(first);
+		check(components.size() == 2 && components.get(0).getVariables()[0] == 1 && components.get(1).getVariables()[0] == 3,
+				"the first component splits into 1 and 3 once 2 is assigned");
+		check(db.findComponents(first).size() == 2, "finding the components again finds the same ones");
+	}
+
+	/**
+	 * Decides, propagates and backtracks at random, checking the database after each step.
+	 * @param db - a formula with nothing assigned
+	 * @param seed
+	 */
+	private void randomWalk(ClauseDatabase db, long seed) {
+		Random random = new Random(seed);
+		//how many variables were assigned before each decision that hasn't been backtracked
+		int[] decisions = new int[db.getNumVariables() + 1];
+		int numDecisions = 0;
+		for(int step = 0; step < 300; step++) {
+			propagate(db, seed);
+			checkCounts(db, seed);
+			if(!db.isFormulaUnSAT()) checkNoUnits(db, seed);
+
+			boolean stuck = db.isFormulaUnSAT() || db.getTrailSize() == db.getNumVariables();
+			if(numDecisions > 0 && (stuck || random.nextInt(4) == 0)) {
+				//go back to before a random one of the decisions
+				numDecisions = random.nextInt(numDecisions);
+				while(db.getTrailSize() > decisions[numDecisions]) {
+					db.unassign(db.getTrailVariable(db.getTrailSize() - 1));
+				}
+				checkCounts(db, seed);
+				continue;
+			}
+			if(stuck) break;
+
+			int name;
+			do {
+				name = random.nextInt(db.getNumVariables()) + 1;
+			} while(db.getAssignment(name) != Variable.UNASSIGNED);
+			decisions[numDecisions++] = db.getTrailSize();
+			db.assign(name, random.nextBoolean() ? Variable.TRUE : Variable.FALSE);
+			checkCounts(db, seed);
+		}
+	}
+
+	/**
+	 * Assigns units until there aren't any more, or the formula is UNSAT,
+	 * checking that each one really is unit.
+	 */
+	private void propagate(ClauseDatabase db, long seed) {
+		while(!db.isFormulaUnSAT()) {
+			int literal = db.pollUnit(null);
+			if(literal == 0) return;
+			check(db.getAssignment(Math.abs(literal)) == Variable.UNASSIGNED && isUnitOn(db, literal),
+					"seed " + seed + ": pollUnit returned " + literal + ", which isn't unit");
+			db.assignUnit(literal);
+		}
+	}
+
+	/**
+	 * Checks the satisfied literal count of each clause, and the number of times each
+	 * variable appears each way in the unsatisfied clauses.
+	 */
+	private void checkCounts(ClauseDatabase db, long seed) {
+		int[] timesPositive = new int[db.getNumVariables() + 1];
+		int[] timesNegative = new int[db.getNumVariables() + 1];
+		boolean satisfiedRight = true;
+		for(int c = 0; c < db.getNumClauses(); c++) {
+			int numSatisfied = 0;
+			for(int p = db.getClauseStart(c); p < db.getClauseEnd(c); p++) {
+				if(db.isTrue(db.getLiteral(p))) numSatisfied++;
+			}
+			satisfiedRight &= db.getNumSatisfied(c) == numSatisfied;
+			if(numSatisfied > 0) continue;
+			for(int p = db.getClauseStart(c); p < db.getClauseEnd(c); p++) {
+				int literal = db.getLiteral(p);
+				if(literal > 0) timesPositive[literal]++;
+				else timesNegative[-literal]++;
+			}
+		}
+		check(satisfiedRight, "seed " + seed + ": a clause has the wrong number of satisfied literals");
+		checkSatUnsat(db, seed);
+		boolean timesRight = true;
+		for(int name = 1; name <= db.getNumVariables(); name++) {
+			timesRight &= db.getTimesPositive(name) == timesPositive[name] && db.getTimesNegative(name) == timesNegative[name];
+		}
+		check(timesRight, "seed " + seed + ": a variable has the wrong number of times positive or negative");
+		checkPure(db, timesPositive, timesNegative, seed);
+	}
+
+	/**
+	 * The pure set has exactly the unassigned choice variables that don't appear both ways
+	 * in the unsatisfied clauses, and findPure finds one of them if there are any.
+	 */
+	private void checkPure(ClauseDatabase db, int[] timesPositive, int[] timesNegative, long seed) {
+		boolean setRight = true;
+		boolean anyPure = false;
+		for(int name = 1; name <= db.getNumVariables(); name++) {
+			boolean pure = db.getAssignment(name) == Variable.UNASSIGNED && db.getVariable(name).isChoice() &&
+					(timesPositive[name] == 0 || timesNegative[name] == 0);
+			setRight &= db.isInPureSet(name) == pure;
+			anyPure |= pure;
+		}
+		check(setRight, "seed " + seed + ": the pure set has the wrong variables in it");
+		int found = db.findPure(null);
+		check(anyPure ? found != 0 && db.isInPureSet(found) : found == 0, "seed " + seed + ": findPure found " + found);
+	}
+
+	/**
+	 * Checks the number of satisfied clauses, and if the formula is SAT or UNSAT.
+	 */
+	private void checkSatUnsat(ClauseDatabase db, long seed) {
+		int numSatisfied = 0;
+		boolean empty = false;
+		for(int c = 0; c < db.getNumClauses(); c++) {
+			if(db.getClause(c).isSatisfied()) numSatisfied++;
+			boolean allFalse = true;
+			for(int p = db.getClauseStart(c); p < db.getClauseEnd(c); p++) {
+				allFalse &= db.isFalse(db.getLiteral(p));
+			}
+			empty |= allFalse;
+		}
+		check(db.getNumSatisfiedClauses() == numSatisfied, "seed " + seed + ": " + db.getNumSatisfiedClauses() +
+				" clauses are counted as satisfied, but " + numSatisfied + " are");
+		check(db.isFormulaSAT() == (numSatisfied == db.getNumClauses()), "seed " + seed + ": the formula is wrongly SAT or not");
+		check(db.isFormulaUnSAT() == empty, "seed " + seed + ": the formula is wrongly UNSAT or not");
+	}
+
+	/**
+	 * Once the units have all been propagated, no clause should be left unit.
+	 */
+	private void checkNoUnits(ClauseDatabase db, long seed) {
+		int unitClause = -1;
+		for(int c = 0; c < db.getNumClauses() && unitClause < 0; c++) {
+			int unassigned = 0;
+			boolean satisfied = false;
+			for(int p = db.getClauseStart(c); p < db.getClauseEnd(c); p++) {
+				int literal = db.getLiteral(p);
+				if(db.isTrue(literal)) satisfied = true;
+				if(db.getAssignment(Math.abs(literal)) == Variable.UNASSIGNED) unassigned++;
+			}
+			if(!satisfied && unassigned == 1) unitClause = c;
+		}
+		check(unitClause < 0, "seed " + seed + ": clause " + unitClause + " is unit, but pollUnit didn't find it");
+	}
+
+	/**
+	 * @return if some clause with the literal has all its other literals false
+	 */
+	private static boolean isUnitOn(ClauseDatabase db, int literal) {
+		for(int c = 0; c < db.getNumClauses(); c++) {
+			boolean has = false;
+			boolean unit = true;
+			for(int p = db.getClauseStart(c); p < db.getClauseEnd(c); p++) {
+				int other = db.getLiteral(p);
+				if(other == literal) has = true;
+				else if(!db.isFalse(other)) unit = false;
+			}
+			if(has && unit) return true;
+		}
+		return false;
+	}
+}
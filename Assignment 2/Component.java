@@ -0,0 +1,82 @@
+import java.util.Arrays;
+
+/**
+ * Component.java
+ * @author William Richard willster3021@gmail.com
+ * Stores a component of the residual formula: a group of unassigned variables
+ * that share unsatisfied clauses with each other, but not with any variable outside the group.
+ * The probability of satisfying a component doesn't depend on how any other component is
+ * assigned, so each component can be solved on its own, and the probabilities multiplied.
+ */
+public class Component {
+
+	//the names of the variables in the component, in order, so contains can binary search them.
+	//A component is found at nearly every node of the search, so it doesn't get an array
+	//as big as the whole formula.
+	private int[] variables;
+	//how many unsatisfied clauses the component had when it was found
+	private int numClauses;
+	//how many clauses in the whole formula will be satisfied once this component is
+	private int satisfiedTarget;
+
+	/**
+	 * Constructor.
+	 * @param vars - the names of the variables in the component, in order.  There has to be at least 1.
+	 * @param clauseCount - how many unsatisfied clauses the component has
+	 */
+	public Component(int[] vars, int clauseCount) {
+		assert vars.length > 0;
+		variables = vars;
+		numClauses = clauseCount;
+		satisfiedTarget = -1;
+	}
+
+	/**
+	 * @param name
+	 * @return if the variable with that name is in this component
+	 */
+	public boolean contains(int name) {
+		if(name < variables[0] || name > variables[variables.length - 1]) return false;
+		return Arrays.binarySearch(variables, name) >= 0;
+	}
+
+	/**
+	 * @return the names of the variables in this component, in order
+	 */
+	public int[] getVariables() {
+		return variables;
+	}
+
+	/**
+	 * @return how many unsatisfied clauses the component had when it was found
+	 */
+	public int getNumClauses() {
+		return numClauses;
+	}
+
+	/**
+	 * @return how many clauses in the whole formula are satisfied once this component is
+	 */
+	public int getSatisfiedTarget() {
+		return satisfiedTarget;
+	}
+
+	/**
+	 * Called right before solving the component.
+	 * @param numSatisfiedNow - how many clauses in the whole formula are satisfied right now
+	 */
+	public void setSatisfiedTarget(int numSatisfiedNow) {
+		satisfiedTarget = numSatisfiedNow + numClauses;
+	}
+
+	/**
+	 * @return the variables in the component in a human readable format
+	 */
+	public String toString() {
+		String returnString = "Component with " + numClauses + " clauses:";
+		for(int v : variables) {
+			returnString = returnString.concat(" " + v);
+		}
+		return returnString;
+	}
+}
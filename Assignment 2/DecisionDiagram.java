@@ -0,0 +1,473 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * DecisionDiagram.java
+ * @author William Richard willster3021@gmail.com
+ * A compiled form of a SSAT formula, that gives the probability of success of the best plan
+ * for any chance probabilities, without searching again.  DiagramCompiler makes it, by
+ * searching the formula once without looking at the probabilities at all, and keeping every
+ * branch it tries.  Working out the probability is then one pass over the nodes, in the time
+ * it takes to look at each of them once.
+ *
+ * The nodes are numbered so that children always come before their parents.  0 is FALSE
+ * and 1 is TRUE, the same as a formula that is UNSAT or SAT.  The other kinds of node are:
+ * ASSIGN - a chance variable was forced to a value, so the probability is multiplied by the chance of it.
+ * BRANCH - a variable was tried both ways.  For a choice variable the better way is taken,
+ * 			and for a chance variable each way is weighted by its chance.
+ * PRODUCT - the formula fell apart into independent components, so their probabilities are multiplied.
+ * Identical nodes are only made once, so a node can have many parents.
+ *
+ * The diagram remembers a fingerprint of the clauses, and which variables are chance, so it
+ * can tell if a formula it is given new probabilities from has the same structure.
+ *
+ * A diagram can be written to a compact binary file and read back in.  The file is: the magic
+ * number, the fingerprint, the number of variables, each variable's value, the number of nodes,
+ * then the nodes, not counting FALSE and TRUE, and then the root.  The counts and node numbers
+ * are variable length ints, like they are in a plan file.
+ *
+ * Usage: java DecisionDiagram <diagram file> [ssat files...]
+ * Prints the probability of success for each ssat file, which has to have the same clauses as
+ * the one the diagram was compiled from, or for the probabilities it was compiled with if there aren't any.
+ */
+public class DecisionDiagram {
+
+	//the first four bytes of a diagram file
+	private static final int MAGIC = 0x53444431;
+
+	//the two leaves
+	public static final int FALSE = 0;
+	public static final int TRUE = 1;
+
+	//the kinds of node, other than FALSE and TRUE
+	private static final int ASSIGN = 1;
+	private static final int BRANCH = 2;
+	private static final int PRODUCT = 3;
+
+	//the value of each variable when the diagram was compiled: its chance of being true,
+	//or negative if it is a choice variable.  The 0th index is a dummy index.
+	private double[] values;
+	//a hash of the clauses and which variables are chance, to check new probabilities are for the same formula
+	private long fingerprint;
+
+	//the nodes.  For an ASSIGN node, first is the child and second is 1 if the variable is true.
+	//For a BRANCH node, first is followed when the variable is true and second when it is false.
+	private byte[] types;
+	private int[] variables;
+	private int[] firsts;
+	private int[] seconds;
+	private int numNodes;
+	private int root;
+
+	//the number of each node, while the diagram is being made, so identical ones are only made once.
+	//null once it is finished
+	private HashMap<NodeKey, Integer> unique;
+
+	/**
+	 * Constructor.  Makes an empty diagram for the formula, for DiagramCompiler to add nodes to.
+	 * @param formula
+	 */
+	DecisionDiagram(ClauseDatabase formula) {
+		values = new double[formula.getNumVariables() + 1];
+		for(int i = 1; i < values.length; i++) {
+			values[i] = formula.getVariable(i).getValue();
+		}
+		fingerprint = fingerprint(formula);
+		types = new byte[64];
+		variables = new int[64];
+		firsts = new int[64];
+		seconds = new int[64];
+		numNodes = 2;
+		root = FALSE;
+		unique = new HashMap<NodeKey, Integer>();
+	}
+
+	/**
+	 * Constructor, for a diagram read in from a file.
+	 * @param capacity - how many nodes to make room for, counting the leaves.  There can be more.
+	 */
+	private DecisionDiagram(double[] values, long fingerprint, int capacity) {
+		this.values = values;
+		this.fingerprint = fingerprint;
+		types = new byte[capacity];
+		variables = new int[capacity];
+		firsts = new int[capacity];
+		seconds = new int[capacity];
+		this.numNodes = 2;
+		root = FALSE;
+		unique = null;
+	}
+
+	/**
+	 * @param name - a chance variable
+	 * @param value - the value it was forced to
+	 * @param child - the node for the rest of the formula
+	 * @return a node that multiplies the child by the chance of the value.
+	 * Choice variables that are forced don't change the probability, so for them it is the child.
+	 */
+	int assign(int name, boolean value, int child) {
+		if(child == FALSE || values[name] < 0) return child;
+		return makeNode(ASSIGN, name, child, value ? 1 : 0);
+	}
+
+	/**
+	 * @param name - the variable that was tried both ways
+	 * @param whenTrue - the node for when it is true
+	 * @param whenFalse - the node for when it is false
+	 * @return a node that takes the best of them for a choice variable, or weights them for a chance variable
+	 */
+	int branch(int name, int whenTrue, int whenFalse) {
+		//it doesn't matter which way the variable goes
+		if(whenTrue == whenFalse) return whenTrue;
+		return makeNode(BRANCH, name, whenTrue, whenFalse);
+	}
+
+	/**
+	 * @param a - the node for a component
+	 * @param b - the node for another component, that shares no variables with it
+	 * @return a node that multiplies them
+	 */
+	int product(int a, int b) {
+		if(a == FALSE || b == FALSE) return FALSE;
+		if(a == TRUE) return b;
+		if(b == TRUE) return a;
+		//the order doesn't matter, so always put them the same way round, so they can be shared
+		return makeNode(PRODUCT, 0, Math.min(a, b), Math.max(a, b));
+	}
+
+	/**
+	 * @param root - the node for the whole formula.  No more nodes can be made after this.
+	 */
+	void setRoot(int root) {
+		this.root = root;
+		unique = null;
+	}
+
+	/**
+	 * @return the number of the node, which is made if it doesn't already exist
+	 */
+	private int makeNode(int type, int variable, int first, int second) {
+		NodeKey key = new NodeKey(type, variable, first, second);
+		Integer existing = unique.get(key);
+		if(existing != null) return existing;
+		addNode(type, variable, first, second);
+		unique.put(key, numNodes - 1);
+		return numNodes - 1;
+	}
+
+	/**
+	 * Adds a node to the end of the arrays, making them bigger if they need to be.
+	 */
+	private void addNode(int type, int variable, int first, int second) {
+		if(numNodes == types.length) {
+			int size = types.length * 2;
+			types = Arrays.copyOf(types, size);
+			variables = Arrays.copyOf(variables, size);
+			firsts = Arrays.copyOf(firsts, size);
+			seconds = Arrays.copyOf(seconds, size);
+		}
+		types[numNodes] = (byte) type;
+		variables[numNodes] = variable;
+		firsts[numNodes] = first;
+		seconds[numNodes] = second;
+		numNodes++;
+	}
+
+	/**
+	 * @return how many nodes the diagram has, not counting FALSE and TRUE
+	 */
+	public int getNumNodes() {
+		return numNodes - 2;
+	}
+
+	/**
+	 * @return the number of variables in the formula
+	 */
+	public int getNumVariables() {
+		return values.length - 1;
+	}
+
+	/**
+	 * @return the probability of success of the best plan, with the probabilities the diagram was compiled with
+	 */
+	public double getProbability() {
+		return evaluate(values);
+	}
+
+	/**
+	 * Works out the probability of success of the best plan with new probabilities for the chance variables.
+	 * @param formula - a formula with the same clauses as the one the diagram was compiled from,
+	 * 					and the same choice and chance variables, but any chances
+	 * @return the probability of success
+	 * @throws IllegalArgumentException if the formula isn't the same
+	 */
+	public double evaluate(ClauseDatabase formula) {
+		if(formula.getNumVariables() != getNumVariables() || fingerprint(formula) != fingerprint) {
+			throw new IllegalArgumentException("The formula doesn't have the same clauses and variables as the one the diagram was compiled from");
+		}
+		double[] chances = new double[values.length];
+		for(int i = 1; i < chances.length; i++) {
+			chances[i] = formula.getVariable(i).getValue();
+		}
+		return evaluate(chances);
+	}
+
+	/**
+	 * Works out the probability of success of the best plan with new probabilities for the chance variables.
+	 * Each node is looked at once, children first.
+	 * @param chances - the chance of each chance variable being true, with a dummy in the 0th index.
+	 * 					The values for the choice variables aren't used.
+	 * @return the probability of success
+	 */
+	public double evaluate(double[] chances) {
+		if(chances.length != values.length) throw new IllegalArgumentException("There has to be a chance for each of the " + getNumVariables() + " variables");
+		double[] probability = new double[numNodes];
+		probability[FALSE] = 0.0;
+		probability[TRUE] = 1.0;
+		for(int i = 2; i < numNodes; i++) {
+			int v = variables[i];
+			switch(types[i]) {
+			case ASSIGN:
+				probability[i] = (seconds[i] == 1 ? chances[v] : 1.0 - chances[v]) * probability[firsts[i]];
+				break;
+			case BRANCH:
+				if(values[v] < 0) {
+					probability[i] = Math.max(probability[firsts[i]], probability[seconds[i]]);
+				} else {
+					probability[i] = chances[v] * probability[firsts[i]] + (1.0 - chances[v]) * probability[seconds[i]];
+				}
+				break;
+			default:
+				assert types[i] == PRODUCT;
+				probability[i] = probability[firsts[i]] * probability[seconds[i]];
+			}
+		}
+		return probability[root];
+	}
+
+	/**
+	 * @param formula
+	 * @return a hash of the formula's clauses and which of its variables are chance variables
+	 */
+	public static long fingerprint(ClauseDatabase formula) {
+		long hash = formula.getNumVariables();
+		for(int i = 1; i <= formula.getNumVariables(); i++) {
+			hash = hash * 31 + (formula.getVariable(i).isChance() ? 1 : 2);
+		}
+		hash = hash * 31 + formula.getNumClauses();
+		for(int c = 0; c < formula.getNumClauses(); c++) {
+			for(int p = formula.getClauseStart(c); p < formula.getClauseEnd(c); p++) {
+				hash = hash * 31 + formula.getLiteral(p);
+			}
+			//so clauses that are split up differently don't look the same
+			hash = hash * 31;
+		}
+		return hash;
+	}
+
+	/**
+	 * Writes the diagram to a file.
+	 * @param fileLocation
+	 * @throws IOException
+	 */
+	public void write(String fileLocation) throws IOException {
+		OutputStream out = new FileOutputStream(fileLocation);
+		try {
+			write(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes the diagram in the compact binary format.
+	 * @param stream
+	 * @throws IOException
+	 */
+	public void write(OutputStream stream) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+		out.writeInt(MAGIC);
+		out.writeLong(fingerprint);
+		Plan.writeVarInt(out, values.length - 1);
+		for(int i = 1; i < values.length; i++) {
+			out.writeDouble(values[i]);
+		}
+		Plan.writeVarInt(out, numNodes - 2);
+		for(int i = 2; i < numNodes; i++) {
+			out.writeByte(types[i]);
+			if(types[i] != PRODUCT) Plan.writeVarInt(out, variables[i]);
+			Plan.writeVarInt(out, firsts[i]);
+			Plan.writeVarInt(out, seconds[i]);
+		}
+		Plan.writeVarInt(out, root);
+		out.flush();
+	}
+
+	/**
+	 * Reads a diagram in from a file.
+	 * @param fileLocation
+	 * @return the diagram
+	 * @throws IOException if the file can't be read or isn't a diagram
+	 */
+	public static DecisionDiagram read(String fileLocation) throws IOException {
+		File file = new File(fileLocation);
+		InputStream in = new FileInputStream(file);
+		try {
+			return read(in, file.isFile() ? file.length() : Long.MAX_VALUE);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads a diagram that was written in the compact binary format.
+	 * @param stream
+	 * @return the diagram
+	 * @throws IOException if the stream can't be read or doesn't hold a diagram
+	 */
+	public static DecisionDiagram read(InputStream stream) throws IOException {
+		return read(stream, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Reads a diagram that was written in the compact binary format.
+	 * The counts in the file are checked against how big it is before anything is made for them.
+	 * @param stream
+	 * @param size - how many bytes the diagram takes up, or Long.MAX_VALUE if we don't know
+	 * @return the diagram
+	 * @throws IOException if the stream can't be read or doesn't hold a diagram
+	 */
+	private static DecisionDiagram read(InputStream stream, long size) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+		try {
+			return read(in, size);
+		} catch(EOFException e) {
+			throw new IOException("The diagram file ends too soon");
+		}
+	}
+
+	/**
+	 * Reads a diagram, after the stream has been set up.
+	 */
+	private static DecisionDiagram read(DataInputStream in, long size) throws IOException {
+		if(in.readInt() != MAGIC) throw new IOException("Not a diagram file");
+		long fingerprint = in.readLong();
+
+		//each variable's value takes 8 bytes
+		int numVars = Plan.readCount(in, size, 8, "variables");
+		double[] values = new double[Math.min(numVars, Plan.MAX_PREALLOCATE) + 1];
+		for(int i = 1; i <= numVars; i++) {
+			if(i == values.length) values = Arrays.copyOf(values, (int) Math.min(numVars + 1L, values.length * 2L));
+			values[i] = in.readDouble();
+		}
+
+		//each node takes at least 3 bytes: the type, and two numbers
+		int numNodes = Plan.readCount(in, size, 3, "nodes") + 2;
+		DecisionDiagram diagram = new DecisionDiagram(values, fingerprint, Math.min(numNodes, Plan.MAX_PREALLOCATE + 2));
+		for(int i = 2; i < numNodes; i++) {
+			int type = in.readUnsignedByte();
+			int variable = 0;
+			if(type != PRODUCT) {
+				variable = Plan.readVarInt(in);
+				if(variable < 1 || variable > numVars) throw new IOException("Bad variable " + variable + " in node " + i);
+			}
+			int first = child(Plan.readVarInt(in), i);
+			int second = Plan.readVarInt(in);
+			if(type == ASSIGN) {
+				if(second > 1) throw new IOException("Bad value " + second + " in node " + i);
+			} else if(type == BRANCH || type == PRODUCT) {
+				second = child(second, i);
+			} else {
+				throw new IOException("Bad node type " + type);
+			}
+			diagram.addNode(type, variable, first, second);
+		}
+		diagram.root = child(Plan.readVarInt(in), numNodes);
+		return diagram;
+	}
+
+	/**
+	 * @return the number of a child read in, which has to come before the node being read
+	 */
+	private static int child(int id, int reading) throws IOException {
+		if(id < 0 || id >= reading) throw new IOException("Bad child " + id + " in node " + reading);
+		return id;
+	}
+
+	/**
+	 * Prints the probability of success for each ssat file, using a compiled diagram.
+	 * @param args - the diagram file, then the ssat files
+	 */
+	public static void main(String[] args) {
+		if(args.length < 1) {
+			System.out.println("Correct usage: java DecisionDiagram <diagram file> [ssat files...]");
+			System.exit(0);
+		}
+		DecisionDiagram diagram = null;
+		try {
+			diagram = read(args[0]);
+		} catch(IOException e) {
+			System.out.println("Couldn't read the diagram '" + args[0] + "': " + e.getMessage());
+			System.exit(1);
+		}
+		System.out.println("Diagram with " + diagram.getNumNodes() + " nodes for " + diagram.getNumVariables() + " variables");
+		if(args.length == 1) {
+			SsatSolver.printProbability(diagram.getProbability());
+			return;
+		}
+
+		for(int i = 1; i < args.length; i++) {
+			try {
+				ClauseDatabase formula = SsatSolver.readFormula(args[i]);
+				long start = System.nanoTime();
+				double probability = diagram.evaluate(formula);
+				long stop = System.nanoTime();
+				System.out.println(args[i] + "\t" + probability + "\t(" + ((stop - start) / 1e6) + " ms)");
+			} catch(IOException e) {
+				System.out.println(args[i] + "\tcouldn't be read: " + e.getMessage());
+			} catch(IllegalArgumentException e) {
+				System.out.println(args[i] + "\t" + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * A node, as a key in the table of nodes that have already been made.
+	 */
+	private static class NodeKey {
+		private int type;
+		private int variable;
+		private int first;
+		private int second;
+
+		public NodeKey(int type, int variable, int first, int second) {
+			this.type = type;
+			this.variable = variable;
+			this.first = first;
+			this.second = second;
+		}
+
+		@Override
+		public int hashCode() {
+			return ((type * 31 + variable) * 31 + first) * 31 + second;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof NodeKey)) return false;
+			NodeKey other = (NodeKey) obj;
+			return type == other.type && variable == other.variable && first == other.first && second == other.second;
+		}
+	}
+}
@@ -0,0 +1,176 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * DecisionDiagramTest.java
+ * @author William Richard willster3021@gmail.com
+ * Tests that a compiled diagram gives the right probability of success, both for the chances
+ * it was compiled with and for new ones, and that it comes back the same after being written
+ * to a diagram file and read back in.  Diagram files that are cut short or corrupt have to be
+ * an IOException, and not run out of memory or throw anything else.
+ */
+public class DecisionDiagramTest extends SsatTest {
+
+	public static void main(String[] args) {
+		run(new DecisionDiagramTest());
+	}
+
+	protected void runChecks() throws Exception {
+		for(long seed = 1; seed <= 24; seed++) {
+			ClauseDatabase formula = randomFormula(10, 25 + (int) seed, (int) (seed % 4), seed);
+			String[] args = seed % 3 == 0 ? new String[] {"-nocomponents"} : seed % 3 == 1 ? new String[] {"-cache", "0"} : new String[0];
+			DecisionDiagram diagram = new DiagramCompiler(formula, options(args)).compile();
+			checkClose(exact(formula), diagram.getProbability(), "seed " + seed + " " + Arrays.toString(args) + ": the compiled probability");
+			checkNewChances(formula, diagram, seed);
+			checkRoundTrip(formula, diagram, seed);
+			if(seed <= 4) checkCorrupt(diagram, seed);
+		}
+		checkBadCounts();
+		checkOtherFormula();
+	}
+
+	/**
+	 * Evaluating the diagram with new chances gives the same probability as solving the
+	 * formula with those chances.
+	 */
+	private void checkNewChances(ClauseDatabase formula, DecisionDiagram diagram, long seed) {
+		Random random = new Random(seed);
+		for(int i = 0; i < 3; i++) {
+			for(int name = 1; name <= formula.getNumVariables(); name++) {
+				Variable v = formula.getVariable(name);
+				if(v.isChance()) v.setValue(i == 0 ? random.nextInt(2) * 0.5 + 0.25 : random.nextDouble());
+			}
+			checkClose(exact(formula), diagram.evaluate(formula), "seed " + seed + ": the probability with new chances " + i);
+		}
+	}
+
+	/**
+	 * Writing a diagram out and reading it back in gives the same nodes and probabilities.
+	 */
+	private void checkRoundTrip(ClauseDatabase formula, DecisionDiagram diagram, long seed) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		diagram.write(out);
+		DecisionDiagram copy = DecisionDiagram.read(new ByteArrayInputStream(out.toByteArray()));
+		check(copy.getNumNodes() == diagram.getNumNodes() && copy.getNumVariables() == diagram.getNumVariables(),
+				"seed " + seed + ": the diagram read back in has " + copy.getNumNodes() + " nodes instead of " + diagram.getNumNodes());
+		check(copy.getProbability() == diagram.getProbability(), "seed " + seed + ": the probability changed after reading it back in");
+		check(copy.evaluate(formula) == diagram.evaluate(formula), "seed " + seed + ": the probability with new chances changed after reading it back in");
+	}
+
+	/**
+	 * Every way of cutting the diagram file short is an IOException, and random changes to its
+	 * bytes are either still a diagram or an IOException, and not run out of memory or throw anything else.
+	 */
+	private void checkCorrupt(DecisionDiagram diagram, long seed) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		diagram.write(out);
+		byte[] bytes = out.toByteArray();
+
+		String failure = null;
+		for(int length = 0; length < bytes.length && failure == null; length++) {
+			failure = readCorrupt(Arrays.copyOf(bytes, length), false);
+			if(failure != null) failure = "cut short to " + length + " bytes: " + failure;
+		}
+		Random random = new Random(seed);
+		for(int i = 0; i < 500 && failure == null; i++) {
+			byte[] changed = bytes.clone();
+			for(int j = 0; j <= random.nextInt(3); j++) changed[random.nextInt(changed.length)] = (byte) random.nextInt(256);
+			failure = readCorrupt(changed, true);
+		}
+		check(failure == null, "seed " + seed + ": a corrupt diagram file " + failure);
+	}
+
+	/**
+	 * @param bytes - a corrupt diagram file
+	 * @param mayBeDiagram - if it could still be a diagram
+	 * @return what went wrong reading it, or null if it was an IOException, or a diagram if it could be one
+	 */
+	private static String readCorrupt(byte[] bytes, boolean mayBeDiagram) {
+		try {
+			DecisionDiagram diagram = DecisionDiagram.read(new ByteArrayInputStream(bytes));
+			//a diagram with changed bytes still has to be evaluated without throwing anything
+			diagram.getProbability();
+			return mayBeDiagram ? null : "was read in as a diagram";
+		} catch(IOException e) {
+			return null;
+		} catch(Throwable e) {
+			return "threw " + e;
+		}
+	}
+
+	/**
+	 * Counts that are too big, or negative, are found before any room is made for them.
+	 */
+	private void checkBadCounts() throws IOException {
+		//the most variables an int can count, with nothing after
+		checkBadDiagram(new byte[] {(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07}, "too many variables");
+		//a number that would be negative
+		checkBadDiagram(new byte[] {(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x0f}, "a negative number of variables");
+		//no variables, then nearly as many nodes as an int can count
+		checkBadDiagram(new byte[] {0, (byte) 0xfd, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07}, "too many nodes");
+
+		//a file knows how big it is, so a count too big for it is found without reading any further
+		File dir = Files.createTempDirectory("diagram").toFile();
+		File file = new File(dir, "bad.diagram");
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			out.write(badDiagram(new byte[] {(byte) 0x80, (byte) 0x80, 0x40}));
+			out.close();
+			DecisionDiagram.read(file.getPath());
+			check(false, "a file with a million variables in 15 bytes should be an error");
+		} catch(IOException e) {
+			check(e.getMessage().contains("15 bytes"), "a file with a million variables in 15 bytes: " + e.getMessage());
+		} finally {
+			file.delete();
+			dir.delete();
+		}
+	}
+
+	/**
+	 * Checks that reading a diagram file fails with an IOException, and not run out of memory or throw anything else.
+	 * @param afterHeader - the bytes after the magic number and fingerprint
+	 * @param what - what is wrong with it
+	 */
+	private void checkBadDiagram(byte[] afterHeader, String what) throws IOException {
+		String failure = readCorrupt(badDiagram(afterHeader), false);
+		check(failure == null, "a diagram with " + what + " " + failure);
+	}
+
+	/**
+	 * @return a diagram file with the magic number and a fingerprint, then the bytes
+	 */
+	private static byte[] badDiagram(byte[] afterHeader) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(0x53444431);
+		out.writeLong(0);
+		out.write(afterHeader);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * A formula with different clauses, or a choice variable that is now chance, can't be evaluated.
+	 */
+	private void checkOtherFormula() throws IOException {
+		DecisionDiagram diagram = new DiagramCompiler(formula("p cnf 2 2\n1 2 0\n-1 -2 0\n1 0.5\n2 -1\n"), options()).compile();
+		checkClose(1.0, diagram.getProbability(), "the choice variable can always be the opposite of the chance variable");
+		String[] others = {"p cnf 2 2\n1 2 0\n-1 2 0\n1 0.5\n2 -1\n", "p cnf 2 2\n1 2 0\n-1 -2 0\n1 0.5\n2 0.5\n", "p cnf 2 1\n1 2 0\n1 0.5\n2 -1\n"};
+		for(String other : others) {
+			try {
+				diagram.evaluate(formula(other));
+				check(false, "a diagram shouldn't evaluate a different formula:\n" + other);
+			} catch(IllegalArgumentException e) {
+				check(true, "a diagram doesn't evaluate a different formula");
+			}
+		}
+		checkClose(1.0, diagram.evaluate(formula("p cnf 2 2\n1 2 0\n-1 -2 0\n1 0.9\n2 -1\n")), "a new chance for the chance variable");
+	}
+}
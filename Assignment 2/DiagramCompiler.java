@@ -0,0 +1,380 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Vector;
+
+/**
+ * DiagramCompiler.java
+ * @author William Richard willster3021@gmail.com
+ * Compiles a SSAT formula into a DecisionDiagram, so it can be solved again with different
+ * chance probabilities without searching again.
+ *
+ * It searches the formula the same way SsatSolver does: unit variables first, then pure choice
+ * variables, then splitting into components, then branching on the next variable in the
+ * quantifier order.  None of those depend on the probabilities.  What SsatSolver does that does
+ * depend on them - cutting off branches that can't beat the best plan so far - isn't done, so
+ * every branch is kept in the diagram, and the search takes as long as SsatSolver does without
+ * any pruning.
+ *
+ * Residual formulas that have already been compiled are remembered, keyed the same way as
+ * in the FormulaCache, so each one only becomes nodes of the diagram once.
+ *
+ * Like SsatSolver, it keeps its own stack instead of recursing, so formulas with any number
+ * of variables can be compiled.
+ */
+public class DiagramCompiler {
+
+	//how many nodes are compiled between looking at the clock, minus 1.  Has to be one less than a power of 2.
+	private static final long DEADLINE_CHECK_MASK = 1023;
+	//about how much memory each remembered residual formula takes, on top of its key
+	private static final long ENTRY_OVERHEAD = 64;
+
+	//the kinds of frame on the stack
+	//the variables assigned by unit propagation, which only has one branch
+	private static final int PROPAGATE_FRAME = 0;
+	//a variable that is tried both ways
+	private static final int BRANCH_FRAME = 1;
+	//a residual formula that was split into components
+	private static final int COMPONENTS_FRAME = 2;
+	//a pure choice variable, which only has one branch
+	private static final int PURE_FRAME = 3;
+
+	private ClauseDatabase database;
+	private DecisionDiagram diagram;
+	private boolean useComponents;
+	//the component being compiled, or null for the whole formula
+	private Component scope;
+
+	//the node each residual formula compiled to, or null if they aren't remembered
+	private HashMap<FormulaKey, Integer> compiled;
+	private long compiledBytes;
+	private long maxCompiledBytes;
+
+	//how long the compiling may take, in nanoseconds, or 0 for as long as it needs
+	private long timeLimit;
+	private long deadline;
+	private long nodes;
+
+	//the stack
+	private Frame[] frames;
+	private int stackSize;
+	//the node the last thing to finish compiled to
+	private int result;
+
+	/**
+	 * Constructor.
+	 * @param formula - the formula, from SsatSolver.readFormula.  Variables are assigned in it while it is compiled.
+	 * @param options - -cache is how much memory may be used remembering residual formulas, 0 for none,
+	 * 					-nocomponents turns off splitting into components, and -timeout limits how long it takes.
+	 */
+	public DiagramCompiler(ClauseDatabase formula, SolverOptions options) {
+		database = formula;
+		useComponents = options.useComponents;
+		scope = null;
+		maxCompiledBytes = options.cacheMegabytes * 1024L * 1024L;
+		compiled = maxCompiledBytes > 0 ? new HashMap<FormulaKey, Integer>() : null;
+		timeLimit = (long) (options.timeoutSeconds * 1e9);
+		frames = new Frame[64];
+		stackSize = 0;
+	}
+
+	/**
+	 * Compiles the whole formula.
+	 * @return the diagram
+	 * @throws SsatTimeoutException if it takes longer than the timeout.  The formula is left as it was.
+	 */
+	public DecisionDiagram compile() {
+		diagram = new DecisionDiagram(database);
+		nodes = 0;
+		deadline = timeLimit > 0 ? System.nanoTime() + timeLimit : 0;
+		int trailBase = database.getTrailSize();
+		try {
+			while(true) {
+				if(startNode()) continue;
+
+				//pass the result up until a frame has another branch to compile
+				boolean started = false;
+				while(stackSize > 0 && !started) {
+					started = finishBranch(frames[stackSize - 1]);
+				}
+				if(!started) break;
+			}
+		} catch(SsatTimeoutException e) {
+			//put the formula back how it was
+			while(database.getTrailSize() > trailBase) {
+				database.unassign(database.getTrailVariable(database.getTrailSize() - 1));
+			}
+			stackSize = 0;
+			scope = null;
+			throw e;
+		}
+		diagram.setRoot(result);
+		return diagram;
+	}
+
+	/**
+	 * @return how many nodes of the search tree the last compile looked at
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Looks at a node of the search tree.  Either it compiles to a node straight away,
+	 * or a frame is pushed and variables are assigned to start its first branch.
+	 * @return true if a branch was started, or false if the node it compiled to is in result
+	 */
+	private boolean startNode() {
+		countNode();
+
+		if(isSAT()) {
+			result = DecisionDiagram.TRUE;
+			return false;
+		}
+		if(database.isFormulaUnSAT()) {
+			result = DecisionDiagram.FALSE;
+			return false;
+		}
+
+		//assign all the unit variables, and everything they imply, in one frame
+		int unitLiteral = database.pollUnit(scope);
+		if(unitLiteral != 0) {
+			Frame frame = pushFrame(PROPAGATE_FRAME, null);
+			while(unitLiteral != 0) {
+				database.assignUnit(unitLiteral);
+				frame.addAssigned(Math.abs(unitLiteral));
+				if(isSAT() || database.isFormulaUnSAT()) break;
+				unitLiteral = database.pollUnit(scope);
+			}
+			return true;
+		}
+
+		//a pure choice variable can always be set the way it appears
+		int pureName = database.findPure(scope);
+		if(pureName != 0) {
+			Frame frame = pushFrame(PURE_FRAME, null);
+			frame.variable = pureName;
+			database.assign(pureName, database.getVariable(pureName).isPure() > 0 ? Variable.TRUE : Variable.FALSE);
+			return true;
+		}
+
+		//see if this residual formula has been compiled already
+		int[] residualKey = null;
+		if(compiled != null) {
+			residualKey = database.getResidualKey(scope);
+			Integer node = compiled.get(new FormulaKey(residualKey));
+			if(node != null) {
+				result = node;
+				return false;
+			}
+		}
+
+		//see if it falls apart into components
+		if(useComponents) {
+			Vector<Component> components = database.findComponents(scope);
+			if(components.size() > 1) {
+				Frame frame = pushFrame(COMPONENTS_FRAME, residualKey);
+				frame.components = components;
+				frame.nextComponent = 0;
+				frame.outerScope = scope;
+				frame.product = DecisionDiagram.TRUE;
+				startComponent(frame);
+				return true;
+			}
+		}
+
+		//branch on the next variable in the quantifier order
+		Frame frame = pushFrame(BRANCH_FRAME, residualKey);
+		frame.variable = nextVariable();
+		frame.value = true;
+		database.assign(frame.variable, Variable.TRUE);
+		return true;
+	}
+
+	/**
+	 * Called when the branch under the passed frame is done, with the node it compiled to in result.
+	 * Unassigns what the frame assigned, and either starts its next branch, or makes its node and pops it.
+	 * @param frame - the frame on top of the stack
+	 * @return true if another branch was started, or false if the frame was popped
+	 */
+	private boolean finishBranch(Frame frame) {
+		switch(frame.kind) {
+		case PROPAGATE_FRAME:
+			//the last one assigned is the first one unassigned
+			for(int i = frame.numAssigned - 1; i >= 0; i--) {
+				int name = frame.assigned[i];
+				result = diagram.assign(name, database.getAssignment(name) == Variable.TRUE, result);
+				database.unassign(name);
+			}
+			stackSize--;
+			return false;
+
+		case PURE_FRAME:
+			//setting a choice variable doesn't change the probability
+			database.unassign(frame.variable);
+			stackSize--;
+			return false;
+
+		case BRANCH_FRAME:
+			database.unassign(frame.variable);
+			if(frame.value) {
+				frame.whenTrue = result;
+				frame.value = false;
+				database.assign(frame.variable, Variable.FALSE);
+				return true;
+			}
+			result = diagram.branch(frame.variable, frame.whenTrue, result);
+			remember(frame.key, result);
+			stackSize--;
+			return false;
+
+		default:
+			assert frame.kind == COMPONENTS_FRAME;
+			scope = frame.outerScope;
+			frame.product = diagram.product(frame.product, result);
+			//once one component can't succeed, none of the rest matter
+			if(frame.product != DecisionDiagram.FALSE && frame.nextComponent < frame.components.size()) {
+				startComponent(frame);
+				return true;
+			}
+			result = frame.product;
+			remember(frame.key, result);
+			stackSize--;
+			return false;
+		}
+	}
+
+	/**
+	 * Starts compiling the next component of a components frame.
+	 * @param frame
+	 */
+	private void startComponent(Frame frame) {
+		Component component = frame.components.get(frame.nextComponent++);
+		component.setSatisfiedTarget(database.getNumSatisfiedClauses());
+		scope = component;
+	}
+
+	/**
+	 * @return the first unassigned variable in scope, in the quantifier order
+	 */
+	private int nextVariable() {
+		if(scope != null) {
+			for(int name : scope.getVariables()) {
+				if(database.getAssignment(name) == Variable.UNASSIGNED) return name;
+			}
+		} else {
+			for(int name = 1; name <= database.getNumVariables(); name++) {
+				if(database.getAssignment(name) == Variable.UNASSIGNED) return name;
+			}
+		}
+		//if the formula isn't SAT or UNSAT, some clause still has an unassigned variable
+		throw new IllegalStateException("There are no variables left to branch on, but the formula is not SAT or UNSAT");
+	}
+
+	/**
+	 * Remembers the node a residual formula compiled to, if there is room.
+	 * @param key - the residual formula, or null if they aren't being remembered
+	 * @param node
+	 */
+	private void remember(int[] key, int node) {
+		if(key == null) return;
+		long bytes = key.length * 4L + ENTRY_OVERHEAD;
+		if(compiledBytes + bytes > maxCompiledBytes) return;
+		compiled.put(new FormulaKey(key), node);
+		compiledBytes += bytes;
+	}
+
+	/**
+	 * @return if the whole formula, or the component being compiled, is satisfied
+	 */
+	private boolean isSAT() {
+		if(scope == null) return database.isFormulaSAT();
+		return database.getNumSatisfiedClauses() == scope.getSatisfiedTarget();
+	}
+
+	/**
+	 * Counts a node of the search tree, and every so often makes sure there is still time left.
+	 * @throws SsatTimeoutException if the time is up
+	 */
+	private void countNode() {
+		nodes++;
+		if(deadline != 0 && (nodes & DEADLINE_CHECK_MASK) == 0 && System.nanoTime() - deadline > 0) {
+			throw new SsatTimeoutException("Gave up compiling after the time limit of " + (timeLimit / 1e9) + " seconds");
+		}
+	}
+
+	/**
+	 * @return a frame on top of the stack, ready to be filled in
+	 */
+	private Frame pushFrame(int kind, int[] key) {
+		if(stackSize == frames.length) frames = Arrays.copyOf(frames, frames.length * 2);
+		Frame frame = frames[stackSize];
+		if(frame == null) {
+			frame = new Frame();
+			frames[stackSize] = frame;
+		}
+		stackSize++;
+		frame.kind = kind;
+		frame.key = key;
+		frame.numAssigned = 0;
+		frame.components = null;
+		frame.outerScope = null;
+		return frame;
+	}
+
+	/**
+	 * What a node of the search tree needs to remember while the branches under it are compiled.
+	 * Frames are reused, so only the fields for its kind mean anything.
+	 */
+	private static class Frame {
+		private int kind;
+		//the residual formula, so what it compiles to can be remembered
+		private int[] key;
+
+		//for a propagate frame, the units it assigned, in order
+		private int[] assigned = new int[8];
+		private int numAssigned;
+
+		//for a branch or pure frame, the variable, and for a branch frame, which way it is now,
+		//and what the true branch compiled to
+		private int variable;
+		private boolean value;
+		private int whenTrue;
+
+		//for a components frame, the components, the next one to compile, the scope to go back to,
+		//and the product of the ones compiled so far
+		private Vector<Component> components;
+		private int nextComponent;
+		private Component outerScope;
+		private int product;
+
+		private void addAssigned(int name) {
+			if(numAssigned == assigned.length) assigned = Arrays.copyOf(assigned, assigned.length * 2);
+			assigned[numAssigned++] = name;
+		}
+	}
+
+	/**
+	 * Wraps a residual formula so it can be used as a key in a HashMap.
+	 */
+	private static class FormulaKey {
+		private int[] residual;
+		private int hash;
+
+		public FormulaKey(int[] residual) {
+			this.residual = residual;
+			hash = Arrays.hashCode(residual);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof FormulaKey)) return false;
+			FormulaKey other = (FormulaKey) obj;
+			return hash == other.hash && Arrays.equals(residual, other.residual);
+		}
+	}
+}
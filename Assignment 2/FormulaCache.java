@@ -0,0 +1,216 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * FormulaCache.java
+ * @author William Richard willster3021@gmail.com
+ * Remembers the plans that have already been found for residual formulas,
+ * or just their probabilities of success when the solver isn't making plans.
+ * A residual formula is what is left of the formula after some variables are assigned:
+ * the clauses that aren't satisfied, without their false literals, along with the
+ * variables that are still unassigned.  Two residual formulas that are the same
+ * always have the same best plan, no matter how we got to them.
+ * 
+ * The cache only uses about as much memory as it is allowed to.  When it is full,
+ * the entries that were used least recently are thrown out.
+ * 
+ * Solvers searching in different threads share one cache, so it is synchronized.
+ */
+public class FormulaCache {
+
+	//roughly how much memory an object and a map entry take up, used to estimate entry sizes
+	private static final int OBJECT_OVERHEAD = 16;
+	private static final int ENTRY_OVERHEAD = 64;
+
+	//roughly how much memory a cached probability takes up
+	private static final int PROBABILITY_SIZE = 16;
+	//roughly how much memory a plan node takes up.  Most of the nodes under a cached plan
+	//are shared with the rest of the plan, so only the node itself is counted.
+	private static final int PLAN_NODE_SIZE = 48;
+
+	//the cached plans or probabilities, in order of when they were last used.
+	//each value is either a PlanNode or a Double, and its key says which.
+	private LinkedHashMap<Key, Object> entries;
+
+	//roughly how much memory the entries are using, and how much they are allowed to use
+	private long bytesUsed;
+	private long maxBytes;
+
+	//statistics
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * Constructor.
+	 * @param maxBytes - roughly how much memory the cache may use
+	 */
+	public FormulaCache(long maxBytes) {
+		assert maxBytes > 0;
+		this.maxBytes = maxBytes;
+		//access ordered, so iterating goes from least to most recently used
+		entries = new LinkedHashMap<Key, Object>(1024, 0.75f, true);
+		bytesUsed = 0;
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+	}
+
+	/**
+	 * Look up the plan for a residual formula.
+	 * @param residual - the residual formula, from ClauseDatabase.getResidualKey
+	 * @return the plan stored for it, or null if there isn't one.
+	 */
+	public synchronized PlanNode get(int[] residual) {
+		PlanNode plan = (PlanNode) entries.get(new Key(residual, true));
+		if(plan == null) misses++;
+		else hits++;
+		return plan;
+	}
+
+	/**
+	 * Remember the plan for a residual formula.
+	 * @param residual - the residual formula, from ClauseDatabase.getResidualKey
+	 * @param plan
+	 */
+	public synchronized void put(int[] residual, PlanNode plan) {
+		putEntry(new Key(residual, true), plan);
+	}
+
+	/**
+	 * Look up the probability of success of a residual formula.
+	 * @param residual - the residual formula, from ClauseDatabase.getResidualKey
+	 * @return the probability stored for it, or -1.0 if there isn't one.
+	 */
+	public synchronized double getProbability(int[] residual) {
+		Double probability = (Double) entries.get(new Key(residual, false));
+		if(probability == null) {
+			misses++;
+			return -1.0;
+		}
+		hits++;
+		return probability;
+	}
+
+	/**
+	 * Remember the probability of success of a residual formula.
+	 * @param residual - the residual formula, from ClauseDatabase.getResidualKey
+	 * @param probability
+	 */
+	public synchronized void putProbability(int[] residual, double probability) {
+		putEntry(new Key(residual, false), probability);
+	}
+
+	/**
+	 * Adds an entry, and throws out old ones if the cache is too big.
+	 * @param key - the residual formula, and if the value is a plan
+	 * @param value - a plan or a probability
+	 */
+	private void putEntry(Key key, Object value) {
+		long size = estimateSize(key.residual, value);
+		//don't bother with anything that would take up most of the cache by itself
+		if(size > maxBytes / 2) return;
+
+		Object old = entries.put(key, value);
+		if(old != null) bytesUsed -= estimateSize(key.residual, old);
+		bytesUsed += size;
+
+		//throw out the least recently used entries until we fit again
+		Iterator<Map.Entry<Key, Object>> leastRecent = entries.entrySet().iterator();
+		while(bytesUsed > maxBytes && leastRecent.hasNext()) {
+			Map.Entry<Key, Object> eldest = leastRecent.next();
+			bytesUsed -= estimateSize(eldest.getKey().residual, eldest.getValue());
+			leastRecent.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * @param residual
+	 * @param value - a plan or a probability
+	 * @return roughly how many bytes an entry takes up
+	 */
+	private static long estimateSize(int[] residual, Object value) {
+		long size = ENTRY_OVERHEAD + OBJECT_OVERHEAD + 4L * residual.length;
+		if(value instanceof Double) return size + PROBABILITY_SIZE;
+		return size + PLAN_NODE_SIZE;
+	}
+
+	/**
+	 * @return how many times a plan or probability was found in the cache
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return how many times a plan or probability was not found in the cache
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return how many entries were thrown out to make room
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return how many entries are in the cache
+	 */
+	public synchronized int getNumEntries() {
+		return entries.size();
+	}
+
+	/**
+	 * @return roughly how much memory the cache is using
+	 */
+	public synchronized long getBytesUsed() {
+		return bytesUsed;
+	}
+
+	/**
+	 * @return the statistics of the cache in a human readable format
+	 */
+	public synchronized String toString() {
+		return "Cache hits = " + hits + ", misses = " + misses + ", entries = " + entries.size() +
+				", evictions = " + evictions + ", memory used = " + (bytesUsed / 1024) + " KB";
+	}
+
+	/**
+	 * Wraps a residual formula so it can be used as a key in a HashMap.
+	 * The hash is worked out once, since the residual is never changed.
+	 * A solver can make plans and work out probabilities one after the other,
+	 * so the plan and the probability of the same residual formula have different keys.
+	 */
+	private static class Key {
+		private int[] residual;
+		private boolean plan;
+		private int hash;
+
+		public Key(int[] r, boolean isPlan) {
+			residual = r;
+			plan = isPlan;
+			hash = Arrays.hashCode(r) * 2 + (isPlan ? 1 : 0);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return hash == other.hash && plan == other.plan && Arrays.equals(residual, other.residual);
+		}
+	}
+}
@@ -0,0 +1,458 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Vector;
+
+/**
+ * LearnedClauses.java
+ * @author William Richard willster3021@gmail.com
+ * The clauses learned from conflicts, kept apart from the clauses of the formula.
+ *
+ * When the formula becomes UNSAT, the clauses that were unit on the way there are resolved
+ * together, going back along the trail, until only one literal assigned since the last decision
+ * is left (the first unique implication point).  The clause that comes out follows from the
+ * formula, so adding it doesn't change which assignments satisfy the formula, or the probability
+ * of any plan.  It lets the solver find the same conflict straight away the next time, e.g. in
+ * the other branch of a chance variable, instead of searching for it again.
+ *
+ * Learned clauses are only used to find units and conflicts.  The solver still backtracks one
+ * branch at a time, since skipping over a chance variable's other branch would lose part of its
+ * probability.  They don't count towards the formula being SAT, its residual formula, its
+ * components, or which variables are pure, so all of those stay the same as without learning.
+ *
+ * The clauses only use about as much memory as they are allowed to.  When they use more, the
+ * less active half are thrown out.  A clause is more active the more it has helped find recent
+ * conflicts.  Clauses that are the reason a variable is assigned right now are kept.
+ */
+public class LearnedClauses {
+
+	//roughly how much memory a clause takes up on top of its literals
+	private static final int CLAUSE_OVERHEAD = 48;
+	//how much less the activity of a clause counts after each conflict
+	private static final double ACTIVITY_DECAY = 0.999;
+	//when activities get this big, they are all scaled down so they don't overflow
+	private static final double ACTIVITY_LIMIT = 1e100;
+
+	//the formula the clauses were learned from
+	private ClauseDatabase database;
+
+	//the literals of each learned clause, or null if its slot isn't being used.
+	//the first two literals are the ones being watched.  A clause with one literal only watches it.
+	private int[][] clauses;
+	private double[] activity;
+	//how many slots have ever been used, and the ones that are free again
+	private int numSlots;
+	private int[] freeSlots;
+	private int numFree;
+
+	//for each literal (see ClauseDatabase.literalIndex), the learned clauses watching it, and how many there are
+	private int[][] watches;
+	private int[] numWatches;
+
+	//how much the activity of a clause goes up when it helps find a conflict.
+	//this grows instead of every other activity shrinking.
+	private double activityIncrement;
+
+	//roughly how much memory the clauses are using, and how much they are allowed to use
+	private long bytesUsed;
+	private long maxBytes;
+
+	//statistics
+	private long numLearned;
+	private long numEvicted;
+
+	//used while learning a clause: which variables are in it already, and its literals
+	private boolean[] seen;
+	private int[] learnedLiterals;
+
+	/**
+	 * Constructor.
+	 * @param database - the formula, which has had its watches set up
+	 * @param maxBytes - roughly how much memory the learned clauses may use
+	 */
+	public LearnedClauses(ClauseDatabase database, long maxBytes) {
+		assert maxBytes > 0;
+		this.database = database;
+		this.maxBytes = maxBytes;
+
+		clauses = new int[16][];
+		activity = new double[16];
+		numSlots = 0;
+		freeSlots = new int[16];
+		numFree = 0;
+
+		int numVars = database.getNumVariables();
+		watches = new int[2 * numVars + 2][];
+		numWatches = new int[2 * numVars + 2];
+
+		activityIncrement = 1.0;
+		bytesUsed = 0;
+		numLearned = 0;
+		numEvicted = 0;
+
+		seen = new boolean[numVars + 1];
+		learnedLiterals = new int[numVars];
+	}
+
+	/**
+	 * Copy constructor.  The copy starts out with the same clauses, and learns its own from then on.
+	 * @param other
+	 * @param database - the copy of the formula the copy goes with
+	 */
+	public LearnedClauses(LearnedClauses other, ClauseDatabase database) {
+		this.database = database;
+		maxBytes = other.maxBytes;
+
+		//the watches move the literals around, so each clause is copied
+		clauses = new int[other.clauses.length][];
+		for(int i = 0; i < other.numSlots; i++) {
+			if(other.clauses[i] != null) clauses[i] = other.clauses[i].clone();
+		}
+		activity = other.activity.clone();
+		numSlots = other.numSlots;
+		freeSlots = other.freeSlots.clone();
+		numFree = other.numFree;
+
+		watches = new int[other.watches.length][];
+		for(int i = 0; i < watches.length; i++) {
+			if(other.watches[i] != null) watches[i] = other.watches[i].clone();
+		}
+		numWatches = other.numWatches.clone();
+
+		activityIncrement = other.activityIncrement;
+		bytesUsed = other.bytesUsed;
+		numLearned = 0;
+		numEvicted = 0;
+
+		seen = new boolean[other.seen.length];
+		learnedLiterals = new int[other.learnedLiterals.length];
+	}
+
+	/**
+	 * Called by the database after a variable is assigned.  The learned clauses watching the literal
+	 * that became false look for a new watch, or find out they are unit or empty and tell the database.
+	 * @param name - the variable that was just assigned
+	 * @param falseLiteral - the literal of that variable that is now false
+	 */
+	public void literalFalsified(int name, int falseLiteral) {
+		int index = ClauseDatabase.literalIndex(falseLiteral);
+		int[] watchers = watches[index];
+		int i = 0;
+		while(i < numWatches[index]) {
+			int slot = watchers[i];
+			int[] literals = clauses[slot];
+
+			if(literals.length == 1) {
+				database.learnedClauseEmptied(name, slot);
+				i++;
+				continue;
+			}
+
+			//make the literal that became false the second one
+			if(literals[0] == falseLiteral) {
+				literals[0] = literals[1];
+				literals[1] = falseLiteral;
+			}
+			//if the other watch is satisfied, so is the clause
+			if(database.isTrue(literals[0])) {
+				i++;
+				continue;
+			}
+
+			//look for another literal that is not false to watch instead
+			boolean moved = false;
+			for(int k = 2; k < literals.length; k++) {
+				if(!database.isFalse(literals[k])) {
+					literals[1] = literals[k];
+					literals[k] = falseLiteral;
+					addWatch(literals[1], slot);
+					moved = true;
+					break;
+				}
+			}
+			if(moved) {
+				//order doesn't matter, so move the last watcher into this spot
+				numWatches[index]--;
+				watchers[i] = watchers[numWatches[index]];
+				continue;
+			}
+
+			//there is nothing else to watch, so the clause is unit on the other watch, or empty
+			if(database.isFalse(literals[0])) database.learnedClauseEmptied(name, slot);
+			else database.learnedClauseUnit(Math.abs(literals[0]), slot);
+			i++;
+		}
+	}
+
+	/**
+	 * Called by the database after a variable is unassigned.  A clause that is watching the literal
+	 * that was false, and whose other watch is false, might be unit on the variable now, e.g. a clause
+	 * that was just learned from a conflict this variable was part of.  The database checks when it gets to it.
+	 * @param name - the variable that was just unassigned
+	 * @param falseLiteral - the literal of that variable that was false
+	 */
+	public void unassigned(int name, int falseLiteral) {
+		int index = ClauseDatabase.literalIndex(falseLiteral);
+		int[] watchers = watches[index];
+		for(int i = 0; i < numWatches[index]; i++) {
+			int slot = watchers[i];
+			int[] literals = clauses[slot];
+			if(literals.length == 1 || database.isFalse(literals[0] == falseLiteral ? literals[1] : literals[0])) {
+				database.learnedClauseUnit(name, slot);
+			}
+		}
+	}
+
+	/**
+	 * @param slot - a learned clause
+	 * @param name - a variable
+	 * @return the literal of the variable in the clause, if every other literal in it is false, or 0
+	 */
+	public int getUnitLiteral(int slot, int name) {
+		int[] literals = clauses[slot];
+		//the clause might have been thrown out
+		if(literals == null) return 0;
+		int unit = 0;
+		for(int literal : literals) {
+			if(Math.abs(literal) == name) unit = literal;
+			else if(!database.isFalse(literal)) return 0;
+		}
+		return unit;
+	}
+
+	/**
+	 * Learns a clause from the conflict that just made the formula UNSAT.
+	 * Everything in the new clause is false right now.  The literal of the implication point is
+	 * watched, along with the literal that was assigned latest after it, so when the search
+	 * backtracks past the implication point, the clause becomes unit.
+	 * @param conflict - the clause that became empty, numbered like ClauseDatabase.getReason
+	 */
+	public void learn(int conflict) {
+		int level = database.getDecisionLevel();
+		//with no decisions, the formula is UNSAT no matter what, so there is nothing to learn
+		if(level == 0) return;
+
+		int numOriginal = database.getNumClauses();
+		//the first literal is saved for the implication point
+		int size = 1;
+		//how many of the variables seen so far were assigned since the last decision
+		int pathCount = 0;
+		int trailIndex = database.getTrailSize() - 1;
+		int reason = conflict;
+		int implied = 0;
+		while(true) {
+			int[] learned = null;
+			int start, end;
+			if(reason >= numOriginal) {
+				learned = clauses[reason - numOriginal];
+				bumpActivity(reason - numOriginal);
+				start = 0;
+				end = learned.length;
+			} else {
+				start = database.getClauseStart(reason);
+				end = database.getClauseEnd(reason);
+			}
+
+			for(int p = start; p < end; p++) {
+				int literal = learned != null ? learned[p] : database.getLiteral(p);
+				int name = Math.abs(literal);
+				if(name == implied || seen[name]) continue;
+				//variables assigned before any decision always have the same value, so they can be left out
+				int variableLevel = database.getLevel(name);
+				if(variableLevel == 0) continue;
+				seen[name] = true;
+				if(variableLevel == level) pathCount++;
+				else learnedLiterals[size++] = literal;
+			}
+
+			//resolve on the variable that was assigned latest, until only one from this level is left
+			do {
+				implied = database.getTrailVariable(trailIndex--);
+			} while(!seen[implied]);
+			seen[implied] = false;
+			pathCount--;
+			if(pathCount == 0) break;
+
+			reason = database.getReason(implied);
+			if(reason < 0) {
+				//only the decision has no reason, and it is the last one from this level, so this shouldn't happen
+				for(int i = 1; i < size; i++) {
+					seen[Math.abs(learnedLiterals[i])] = false;
+				}
+				while(trailIndex >= 0) seen[database.getTrailVariable(trailIndex--)] = false;
+				return;
+			}
+		}
+		learnedLiterals[0] = database.getAssignment(implied) == Variable.TRUE ? -implied : implied;
+		for(int i = 1; i < size; i++) {
+			seen[Math.abs(learnedLiterals[i])] = false;
+		}
+
+		//watch the literal assigned latest of the rest
+		int latest = 1;
+		for(int i = 2; i < size; i++) {
+			if(database.getLevel(Math.abs(learnedLiterals[i])) > database.getLevel(Math.abs(learnedLiterals[latest]))) latest = i;
+		}
+		if(size > 2) {
+			int swap = learnedLiterals[1];
+			learnedLiterals[1] = learnedLiterals[latest];
+			learnedLiterals[latest] = swap;
+		}
+
+		addClause(Arrays.copyOf(learnedLiterals, size));
+		decayActivity();
+		if(bytesUsed > maxBytes) reduce();
+	}
+
+	/**
+	 * Adds a learned clause, and starts watching it.
+	 * @param literals - the clause, with the literals to watch first
+	 */
+	private void addClause(int[] literals) {
+		int slot;
+		if(numFree > 0) {
+			slot = freeSlots[--numFree];
+		} else {
+			if(numSlots == clauses.length) {
+				clauses = Arrays.copyOf(clauses, numSlots * 2);
+				activity = Arrays.copyOf(activity, numSlots * 2);
+				freeSlots = Arrays.copyOf(freeSlots, numSlots * 2);
+			}
+			slot = numSlots++;
+		}
+		clauses[slot] = literals;
+		activity[slot] = activityIncrement;
+		addWatch(literals[0], slot);
+		if(literals.length > 1) addWatch(literals[1], slot);
+
+		bytesUsed += clauseSize(literals);
+		numLearned++;
+		if(SsatSolver.DEBUG) System.out.println("Learned clause " + slot + ": " + Arrays.toString(literals));
+	}
+
+	/**
+	 * @param literal
+	 * @param slot - a learned clause that is now watching the literal
+	 */
+	private void addWatch(int literal, int slot) {
+		int index = ClauseDatabase.literalIndex(literal);
+		if(watches[index] == null) {
+			watches[index] = new int[4];
+		} else if(numWatches[index] == watches[index].length) {
+			watches[index] = Arrays.copyOf(watches[index], numWatches[index] * 2);
+		}
+		watches[index][numWatches[index]++] = slot;
+	}
+
+	/**
+	 * Throws out the less active half of the clauses, except the ones that are the reason
+	 * a variable is assigned right now.  Ties go to the shorter clause.
+	 */
+	private void reduce() {
+		int numOriginal = database.getNumClauses();
+		Integer[] candidates = new Integer[numSlots];
+		int numCandidates = 0;
+		for(int slot = 0; slot < numSlots; slot++) {
+			int[] literals = clauses[slot];
+			if(literals == null) continue;
+			boolean locked = false;
+			for(int i = 0; i < literals.length && i < 2; i++) {
+				int name = Math.abs(literals[i]);
+				if(database.getAssignment(name) != Variable.UNASSIGNED && database.getReason(name) == numOriginal + slot) locked = true;
+			}
+			if(!locked) candidates[numCandidates++] = slot;
+		}
+
+		Arrays.sort(candidates, 0, numCandidates, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				int byActivity = Double.compare(activity[a], activity[b]);
+				if(byActivity != 0) return byActivity;
+				return clauses[b].length - clauses[a].length;
+			}
+		});
+		for(int i = 0; i < numCandidates / 2; i++) {
+			int slot = candidates[i];
+			bytesUsed -= clauseSize(clauses[slot]);
+			clauses[slot] = null;
+			freeSlots[numFree++] = slot;
+			numEvicted++;
+		}
+
+		//start the watches over, since the clauses keep the literals they watch first
+		Arrays.fill(numWatches, 0);
+		for(int slot = 0; slot < numSlots; slot++) {
+			int[] literals = clauses[slot];
+			if(literals == null) continue;
+			addWatch(literals[0], slot);
+			if(literals.length > 1) addWatch(literals[1], slot);
+		}
+	}
+
+	/**
+	 * @param literals
+	 * @return roughly how many bytes a clause takes up, including its watches
+	 */
+	private static long clauseSize(int[] literals) {
+		return CLAUSE_OVERHEAD + 4L * literals.length + 8;
+	}
+
+	/**
+	 * A clause helped find a conflict, so make it more active.
+	 * @param slot
+	 */
+	private void bumpActivity(int slot) {
+		activity[slot] += activityIncrement;
+		if(activity[slot] > ACTIVITY_LIMIT) {
+			for(int i = 0; i < numSlots; i++) {
+				activity[i] /= ACTIVITY_LIMIT;
+			}
+			activityIncrement /= ACTIVITY_LIMIT;
+		}
+	}
+
+	/**
+	 * Makes the clauses that helped find the conflicts before this one count for less.
+	 */
+	private void decayActivity() {
+		activityIncrement /= ACTIVITY_DECAY;
+	}
+
+	/**
+	 * @return how many clauses have been learned
+	 */
+	public long getNumLearned() {
+		return numLearned;
+	}
+
+	/**
+	 * @return how many learned clauses were thrown out to make room
+	 */
+	public long getNumEvicted() {
+		return numEvicted;
+	}
+
+	/**
+	 * @return how many learned clauses are being kept
+	 */
+	public int getNumClauses() {
+		return numSlots - numFree;
+	}
+
+	/**
+	 * @return the literals of each of the learned clauses being kept
+	 */
+	public Vector<int[]> getClauses() {
+		Vector<int[]> kept = new Vector<int[]>(getNumClauses());
+		for(int slot = 0; slot < numSlots; slot++) {
+			if(clauses[slot] != null) kept.add(clauses[slot].clone());
+		}
+		return kept;
+	}
+
+	/**
+	 * @return the statistics of the learned clauses in a human readable format
+	 */
+	public String toString() {
+		return "Learned clauses = " + numLearned + ", kept = " + getNumClauses() + ", evicted = " + numEvicted +
+				", memory used = " + (bytesUsed / 1024) + " KB";
+	}
+}
@@ -1,64 +1,55 @@
 /**
  * Literal.java 
  * @author William Richard willster3021@gmail.com
- * Stores a Literal in a Clause.  This consists of a Variable, and if it appears
- * positively or negativey.
+ * A view of one Literal in a Clause stored in a ClauseDatabase.  
+ * This consists of a Variable, and if it appears positively or negativey.
  */
 public class Literal {	
 	
-	//the variable that is in the literal
-	private Variable variable;
-	//it's sign i.e. if it is positive or negative
-	private boolean sign;
+	//the database the literal is stored in
+	private ClauseDatabase database;
+	//where the literal is in the database's literal array
+	private int position;
 	
 	/**
 	 * Basic constructor.
-	 * @param v - variable for the clause
-	 * @param s - it's sign - true for positive, false for negative.
+	 * @param db - the database the literal is stored in
+	 * @param p - where it is in the database's literal array
 	 */
-	public Literal(Variable v, boolean s) {
-		variable = v;
-		sign = s;
+	public Literal(ClauseDatabase db, int p) {
+		database = db;
+		position = p;
 	}
 
 	/**
 	 * @return the variable
 	 */
 	public Variable getVariable() {
-		return variable;
+		return database.getVariable(Math.abs(database.getLiteral(position)));
 	}
 
 	/**
 	 * @return the sign of the literal
 	 */
 	public boolean getSign() {
-		return sign;
+		return database.getLiteral(position) > 0;
 	}
 
 	/** 
-	 * Looks at the variable and figures out if this literal is satisfied
+	 * Looks at the variable's assignment and figures out if this literal is satisfied
 	 * @return if the literal is satisfied
 	 */
 	public boolean isSatisfied() {
-		if(sign) {
-			return variable.getAssignment() == Variable.TRUE;
-		} else {
-			return variable.getAssignment() == Variable.FALSE;
-		}
+		return database.isTrue(database.getLiteral(position));
 	}
 	
 	/**
 	 * @return a human readable representation of this Literal.
 	 */
 	public String toString() {
-		String returnString = "";
 		//put nothing for a positive variable, a "-" for a negative variable
-		if(! getSign()) returnString = returnString.concat("-");
-		
-		//put the variable name
-		returnString = returnString.concat("" + getVariable().getName());
-		
-		return returnString;
+		//which is exactly how it is stored
+		return "" + database.getLiteral(position);
 	}
 
 	/* (non-Javadoc)
@@ -74,13 +65,6 @@ public class Literal {
 		if (!(obj instanceof Literal))
 			return false;
 		Literal other = (Literal) obj;
-		if (sign != other.sign)
-			return false;
-		if (variable == null) {
-			if (other.variable != null)
-				return false;
-		} else if (!variable.equals(other.variable))
-			return false;
-		return true;
+		return database.getLiteral(position) == other.database.getLiteral(other.position);
 	}
 }
@@ -0,0 +1,301 @@
+import java.util.SplittableRandom;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * MonteCarloSampler.java
+ * @author William Richard willster3021@gmail.com
+ * Estimates the probability of success for formulas that are too big to solve exactly.
+ * Each sample picks an outcome for every chance variable, by its chance of being true,
+ * and then searches the choice variables to see if the formula can be satisfied with those
+ * outcomes.  The fraction of samples that can be is the estimate.
+ *
+ * In a sample, the choice variables are set knowing how all the chance variables turned out.
+ * If every choice variable comes after every chance variable in the quantifier order, that is
+ * how it is in the formula too, and the estimate is of the probability of success.  Otherwise,
+ * the choice variables that come before a chance variable know more than a plan can, so it is
+ * an estimate of an upper bound on it.
+ *
+ * The samples are taken in batches, and each batch has its own stream of random numbers, split
+ * off from the seed in order.  The worker threads take batches as they need them, but the
+ * estimate only uses the batches in order, up to the first one that isn't done yet, so the
+ * same seed always gives the same estimate, with any number of threads.
+ *
+ * Sampling stops once the confidence interval is no wider than the precision either side of
+ * the estimate, or the maximum number of samples or the time limit is reached.
+ */
+public class MonteCarloSampler {
+
+	//how many samples are in each batch
+	private static final int BATCH_SIZE = 256;
+	//for a 95% confidence interval
+	private static final double Z = 1.959963984540054;
+
+	private ClauseDatabase formula;
+	//the options each sample is solved with
+	private SolverOptions sampleOptions;
+	private int numThreads;
+	private double precision;
+	private long maxSamples;
+	private long timeLimit;
+
+	//where each batch's random numbers come from
+	private SplittableRandom seeds;
+	//the next batch to hand out, and how many successes each batch has, or -1 if it isn't done yet
+	private int nextBatch;
+	private Vector<Integer> batchSuccesses;
+	private volatile boolean stopped;
+
+	//the results
+	private long samples;
+	private long successes;
+	private boolean precise;
+
+	/**
+	 * Constructor.
+	 * @param formula - the formula, from SsatSolver.readFormula.  Each thread samples its own copy of it.
+	 * @param options - -sample is the precision, -samples the most samples to take, -seed the seed,
+	 * 					-threads how many threads take samples, and -timeout how long they can take.
+	 * 					-cache, -learn and -nocomponents are used to solve each sample.
+	 */
+	public MonteCarloSampler(ClauseDatabase formula, SolverOptions options) {
+		this.formula = formula;
+		sampleOptions = new SolverOptions();
+		sampleOptions.cacheMegabytes = options.cacheMegabytes;
+		sampleOptions.learnMegabytes = options.learnMegabytes;
+		sampleOptions.useComponents = options.useComponents;
+		numThreads = options.threads;
+		precision = options.samplePrecision;
+		maxSamples = options.maxSamples;
+		timeLimit = (long) (options.timeoutSeconds * 1e9);
+		seeds = new SplittableRandom(options.seed);
+	}
+
+	/**
+	 * Takes samples until the estimate is precise enough, or the samples or time run out.
+	 * @return the estimate of the probability of success
+	 */
+	public double sample() {
+		nextBatch = 0;
+		batchSuccesses = new Vector<Integer>();
+		stopped = false;
+		final long deadline = timeLimit > 0 ? System.nanoTime() + timeLimit : 0;
+
+		ExecutorService workers = Executors.newFixedThreadPool(numThreads);
+		try {
+			Vector<Future<Object>> futures = new Vector<Future<Object>>(numThreads);
+			for(int t = 0; t < numThreads; t++) {
+				futures.add(workers.submit(new Callable<Object>() {
+					public Object call() {
+						work(deadline);
+						return null;
+					}
+				}));
+			}
+			for(Future<Object> future : futures) {
+				try {
+					future.get();
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					stopped = true;
+				} catch(ExecutionException e) {
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+		} finally {
+			workers.shutdownNow();
+		}
+		//the batches that were done after the estimate was good enough are left out
+		count();
+		return getEstimate();
+	}
+
+	/**
+	 * What each thread does: solves batches of samples with its own copy of the formula,
+	 * until sampling is stopped.
+	 * @param deadline - when sampling has to stop, from System.nanoTime, or 0 if there is no time limit
+	 */
+	private void work(long deadline) {
+		ClauseDatabase database = new ClauseDatabase(formula);
+		SsatSolver solver = new SsatSolver(database, sampleOptions);
+		//a single sample can take longer than the time limit, so the search has to stop at it too
+		solver.setDeadline(deadline);
+		int[] chance = chanceVariables(database);
+
+		while(!stopped) {
+			int batch;
+			SplittableRandom random;
+			synchronized(this) {
+				if((long) nextBatch * BATCH_SIZE >= maxSamples) return;
+				batch = nextBatch++;
+				random = seeds.split();
+				batchSuccesses.add(-1);
+			}
+
+			int size = (int) Math.min(BATCH_SIZE, maxSamples - (long) batch * BATCH_SIZE);
+			int batchSuccessCount = 0;
+			for(int s = 0; s < size; s++) {
+				try {
+					if(sampleSucceeds(database, solver, chance, random)) batchSuccessCount++;
+				} catch(SsatTimeoutException e) {
+					//the batch is left not done, so the estimate is from the batches before it.
+					//the search left the copy of the formula part way through, but it isn't used again
+					stopped = true;
+					return;
+				}
+			}
+
+			synchronized(this) {
+				batchSuccesses.set(batch, batchSuccessCount);
+				count();
+				if(precise || (deadline != 0 && System.nanoTime() - deadline > 0)) stopped = true;
+			}
+		}
+	}
+
+	/**
+	 * Picks an outcome for each chance variable, and sees if the choice variables can satisfy the formula.
+	 * @param database - the thread's copy of the formula
+	 * @param solver - the thread's solver, for the copy
+	 * @param chance - the names of the chance variables
+	 * @param random - the batch's random numbers
+	 * @return true if the formula can be satisfied
+	 * @throws SsatTimeoutException if the time limit is up before the search is done
+	 */
+	private static boolean sampleSucceeds(ClauseDatabase database, SsatSolver solver, int[] chance, SplittableRandom random) {
+		int numAssigned = 0;
+		boolean success = false;
+		for(int name : chance) {
+			Variable v = database.getVariable(name);
+			database.assign(name, random.nextDouble() < v.getChanceTrue() ? Variable.TRUE : Variable.FALSE);
+			numAssigned++;
+			if(database.isFormulaUnSAT()) break;
+		}
+		//with all the chance variables set, the probability is either 0 or 1
+		if(!database.isFormulaUnSAT()) success = solver.solveThreshold(1.0) >= 1.0;
+
+		//the last one assigned is the first one unassigned
+		for(int i = numAssigned - 1; i >= 0; i--) {
+			database.unassign(chance[i]);
+		}
+		database.clearUnitQueue();
+		return success;
+	}
+
+	/**
+	 * @param database
+	 * @return the names of the chance variables, in order
+	 */
+	private static int[] chanceVariables(ClauseDatabase database) {
+		int count = 0;
+		for(int i = 1; i <= database.getNumVariables(); i++) {
+			if(database.getVariable(i).isChance()) count++;
+		}
+		int[] chance = new int[count];
+		count = 0;
+		for(int i = 1; i <= database.getNumVariables(); i++) {
+			if(database.getVariable(i).isChance()) chance[count++] = i;
+		}
+		return chance;
+	}
+
+	/**
+	 * Adds up the batches that are done, in order, up to the first one that isn't,
+	 * and works out if the estimate is precise enough yet.
+	 */
+	private synchronized void count() {
+		samples = 0;
+		successes = 0;
+		for(int batch = 0; batch < batchSuccesses.size(); batch++) {
+			int batchSuccessCount = batchSuccesses.get(batch);
+			if(batchSuccessCount < 0) break;
+			samples += Math.min(BATCH_SIZE, maxSamples - (long) batch * BATCH_SIZE);
+			successes += batchSuccessCount;
+			//stop at the first batch where it was precise enough, so it doesn't depend on the threads
+			if(getHalfWidth() <= precision) break;
+		}
+		precise = samples > 0 && getHalfWidth() <= precision;
+	}
+
+	/**
+	 * @return how many samples the estimate is from
+	 */
+	public synchronized long getSamples() {
+		return samples;
+	}
+
+	/**
+	 * @return how many of the samples could be satisfied
+	 */
+	public synchronized long getSuccesses() {
+		return successes;
+	}
+
+	/**
+	 * @return the fraction of the samples that could be satisfied
+	 */
+	public synchronized double getEstimate() {
+		return samples == 0 ? 0.0 : (double) successes / samples;
+	}
+
+	/**
+	 * @return if sampling stopped because the estimate was precise enough,
+	 * rather than because the samples or time ran out
+	 */
+	public synchronized boolean isPrecise() {
+		return precise;
+	}
+
+	/**
+	 * @return the bottom of the 95% confidence interval
+	 */
+	public synchronized double getLowerLimit() {
+		return Math.max(0.0, getCenter() - getHalfWidth());
+	}
+
+	/**
+	 * @return the top of the 95% confidence interval
+	 */
+	public synchronized double getUpperLimit() {
+		return Math.min(1.0, getCenter() + getHalfWidth());
+	}
+
+	/**
+	 * The confidence interval is the Wilson score interval, which unlike the usual one
+	 * doesn't shrink to nothing when none or all of the samples succeed.
+	 * @return the middle of the confidence interval
+	 */
+	private double getCenter() {
+		if(samples == 0) return 0.5;
+		double p = (double) successes / samples;
+		double z2n = Z * Z / samples;
+		return (p + z2n / 2) / (1 + z2n);
+	}
+
+	/**
+	 * @return half the width of the confidence interval
+	 */
+	private double getHalfWidth() {
+		if(samples == 0) return 0.5;
+		double p = (double) successes / samples;
+		double z2n = Z * Z / samples;
+		return Z * Math.sqrt(p * (1 - p) / samples + z2n / (4 * samples)) / (1 + z2n);
+	}
+
+	/**
+	 * @param formula
+	 * @return if some choice variable comes before a chance variable, so the samples estimate an upper bound
+	 */
+	public static boolean estimatesUpperBound(ClauseDatabase formula) {
+		boolean seenChoice = false;
+		for(int i = 1; i <= formula.getNumVariables(); i++) {
+			if(formula.getVariable(i).isChoice()) seenChoice = true;
+			else if(seenChoice) return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,155 @@
+import java.util.Vector;
+
+/**
+ * MonteCarloSamplerTest.java
+ * @author William Richard willster3021@gmail.com
+ * Tests that the sampler's estimates are close to the probability they are estimating, that the
+ * same seed gives the same estimate with any number of threads, and that sampling stops when
+ * the samples or time run out.
+ */
+public class MonteCarloSamplerTest extends SsatTest {
+
+	public static void main(String[] args) {
+		run(new MonteCarloSamplerTest());
+	}
+
+	protected void runChecks() throws Exception {
+		for(long seed = 1; seed <= 12; seed++) {
+			ClauseDatabase formula = randomFormula(10, 30 + (int) seed, (int) (seed % 4), seed);
+			checkEstimate(formula, seed);
+			if(seed <= 4) checkSameWithThreads(formula, seed);
+		}
+		checkSamplesLimit();
+		checkTimeout();
+		checkTimeoutInSample();
+	}
+
+	/**
+	 * The estimate is close to the probability of success, or the upper bound on it when some
+	 * choice variables come before chance variables.  The confidence interval only holds the
+	 * right answer 95% of the time, so it is checked with twice the interval, which should
+	 * only miss about once in 15000 formulas.
+	 */
+	private void checkEstimate(ClauseDatabase formula, long seed) {
+		double expected = MonteCarloSampler.estimatesUpperBound(formula) ? chanceFirst(formula) : exact(formula);
+		check(expected >= exact(formula) - TOLERANCE, "seed " + seed + ": the upper bound " + expected + " is less than the probability");
+		MonteCarloSampler sampler = new MonteCarloSampler(formula, options("-sample", "0.02", "-seed", "" + seed));
+		double estimate = sampler.sample();
+		check(sampler.isPrecise(), "seed " + seed + ": sampling stopped before it was precise enough");
+		check(sampler.getLowerLimit() <= estimate && estimate <= sampler.getUpperLimit(), "seed " + seed + ": the estimate is in its confidence interval");
+		check(sampler.getUpperLimit() - sampler.getLowerLimit() <= 0.04 + TOLERANCE, "seed " + seed + ": the confidence interval is within the precision");
+		double halfWidth = (sampler.getUpperLimit() - sampler.getLowerLimit()) / 2;
+		check(Math.abs(estimate - expected) <= 2 * halfWidth + 1.0 / sampler.getSamples(),
+				"seed " + seed + ": the estimate " + estimate + " is too far from " + expected);
+		check(estimate == (double) sampler.getSuccesses() / sampler.getSamples(), "seed " + seed + ": the estimate is the fraction of samples that succeeded");
+	}
+
+	/**
+	 * The same seed gives the same samples with any number of threads, whether sampling stops
+	 * because it is precise enough or because the samples run out.
+	 */
+	private void checkSameWithThreads(ClauseDatabase formula, long seed) {
+		String[][] settings = {{"-sample", "0.01"}, {"-sample", "0.0001", "-samples", "2000"}};
+		for(String[] setting : settings) {
+			MonteCarloSampler one = sample(formula, setting, seed, 1);
+			for(int threads = 2; threads <= 4; threads++) {
+				MonteCarloSampler many = sample(formula, setting, seed, threads);
+				check(many.getSamples() == one.getSamples() && many.getSuccesses() == one.getSuccesses(),
+						"seed " + seed + " with " + threads + " threads: " + many.getSuccesses() + " of " + many.getSamples() + " samples succeeded instead of "
+						+ one.getSuccesses() + " of " + one.getSamples());
+			}
+		}
+		MonteCarloSampler other = sample(formula, settings[1], seed + 1000, 1);
+		MonteCarloSampler same = sample(formula, settings[1], seed, 1);
+		check(other.getSamples() == same.getSamples(), "seed " + seed + ": another seed takes as many samples when they run out");
+	}
+
+	/**
+	 * @return a sampler that has taken its samples
+	 */
+	private static MonteCarloSampler sample(ClauseDatabase formula, String[] setting, long seed, int threads) {
+		String[] args = new String[setting.length + 4];
+		System.arraycopy(setting, 0, args, 0, setting.length);
+		args[setting.length] = "-seed";
+		args[setting.length + 1] = "" + seed;
+		args[setting.length + 2] = "-threads";
+		args[setting.length + 3] = "" + threads;
+		MonteCarloSampler sampler = new MonteCarloSampler(formula, options(args));
+		sampler.sample();
+		return sampler;
+	}
+
+	/**
+	 * Sampling stops at the most samples, even part way through a batch.
+	 */
+	private void checkSamplesLimit() {
+		ClauseDatabase formula = randomFormula(20, 60, SsatGenerator.ORDER_CHOICE_FIRST, 5);
+		long[] limits = {1, 255, 256, 300, 1000};
+		for(long limit : limits) {
+			MonteCarloSampler sampler = new MonteCarloSampler(formula, options("-sample", "0.0001", "-samples", "" + limit, "-threads", "2"));
+			sampler.sample();
+			check(sampler.getSamples() == limit, "with -samples " + limit + ", " + sampler.getSamples() + " samples were taken");
+			check(! sampler.isPrecise(), "with -samples " + limit + ", sampling wasn't precise enough");
+		}
+	}
+
+	/**
+	 * With -timeout, sampling stops with the estimate so far, instead of taking all the samples.
+	 */
+	private void checkTimeout() {
+		ClauseDatabase formula = new SsatGenerator(200, 800, 3, 0.5, SsatGenerator.ORDER_CHOICE_FIRST, 0, 11).generate();
+		MonteCarloSampler sampler = new MonteCarloSampler(formula, options("-sample", "0.00001", "-samples", "100000000", "-timeout", "0.2"));
+		long start = System.nanoTime();
+		double estimate = sampler.sample();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		check(seconds < 10, "sampling with -timeout 0.2 took " + seconds + " seconds");
+		check(! sampler.isPrecise() && sampler.getSamples() < 100000000, "sampling stopped before it was precise enough");
+		check(estimate == sampler.getEstimate(), "sampling gives the estimate so far");
+	}
+
+	/**
+	 * The time limit stops the search of a sample part way through, so samples that each take
+	 * longer than it don't hold sampling up until their batch is done.
+	 */
+	private void checkTimeoutInSample() {
+		//each sample takes seconds to search, so a batch of them would take many minutes
+		ClauseDatabase formula = new SsatGenerator(200, 852, 3, 0.05, SsatGenerator.ORDER_CHANCE_FIRST, 0, 1).generate();
+		MonteCarloSampler sampler = new MonteCarloSampler(formula, options("-sample", "0.01", "-timeout", "0.3", "-threads", "2"));
+		long start = System.nanoTime();
+		double estimate = sampler.sample();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		check(seconds < 5, "sampling hard samples with -timeout 0.3 took " + seconds + " seconds");
+		check(! sampler.isPrecise() && sampler.getSamples() == 0 && estimate == 0.0, "no batch was done, so there is no estimate: " +
+				sampler.getSamples() + " samples");
+	}
+
+	/**
+	 * Works out the probability of success if the choice variables were all set after the chance
+	 * variables, knowing how they all turned out, which is what the sampler estimates.
+	 */
+	private static double chanceFirst(ClauseDatabase formula) {
+		Vector<Integer> chance = new Vector<Integer>();
+		Vector<Integer> choice = new Vector<Integer>();
+		for(int name = 1; name <= formula.getNumVariables(); name++) {
+			if(formula.getVariable(name).isChance()) chance.add(name);
+			else choice.add(name);
+		}
+		boolean[] values = new boolean[formula.getNumVariables() + 1];
+		double total = 0.0;
+		for(int outcome = 0; outcome < 1 << chance.size(); outcome++) {
+			double weight = 1.0;
+			for(int i = 0; i < chance.size(); i++) {
+				Variable v = formula.getVariable(chance.get(i));
+				values[v.getName()] = (outcome >> i & 1) == 1;
+				weight *= values[v.getName()] ? v.getChanceTrue() : v.getChanceFalse();
+			}
+			boolean satisfiable = false;
+			for(int setting = 0; setting < 1 << choice.size() && !satisfiable; setting++) {
+				for(int i = 0; i < choice.size(); i++) values[choice.get(i)] = (setting >> i & 1) == 1;
+				satisfiable = satisfies(formula, values);
+			}
+			if(satisfiable) total += weight;
+		}
+		return total;
+	}
+}
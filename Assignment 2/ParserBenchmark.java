@@ -0,0 +1,149 @@
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Scanner;
+import java.util.Vector;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * ParserBenchmark.java
+ * @author William Richard willster3021@gmail.com
+ * Times how fast SsatParser reads ssat files, in MB/s.
+ *
+ * Usage: java ParserBenchmark [-generate <MB>] [-repeat <n>] [files...]
+ * -generate makes a random ssat file of about that many MB, and a gzipped copy of it, to time.
+ * -repeat is how many times to read each file.  The first read is not counted, so the JIT has warmed up.
+ *
+ * Each file is read from a memory mapped file, from an InputStream, and, to compare,
+ * with a Scanner reading the same numbers the way the solver used to.
+ */
+public class ParserBenchmark {
+
+	private static final double MEGABYTE = 1024.0 * 1024.0;
+
+	public static void main(String[] args) throws IOException {
+		int repeat = 5;
+		Vector<String> files = new Vector<String>();
+		for(int i = 0; i < args.length; i++) {
+			if(args[i].equals("-generate") && i + 1 < args.length) {
+				File plain = generate(Double.parseDouble(args[++i]), 42);
+				files.add(plain.getPath());
+				files.add(gzip(plain).getPath());
+			} else if(args[i].equals("-repeat") && i + 1 < args.length) {
+				repeat = Integer.parseInt(args[++i]);
+			} else {
+				files.add(args[i]);
+			}
+		}
+		if(files.isEmpty() || repeat < 1) {
+			System.out.println("Usage: java ParserBenchmark [-generate <MB>] [-repeat <n>] [files...]");
+			System.exit(1);
+		}
+
+		for(String fileLocation : files) {
+			double megabytes = new File(fileLocation).length() / MEGABYTE;
+			System.out.printf("%s (%.1f MB)%n", fileLocation, megabytes);
+
+			double mapped = time(fileLocation, repeat, 0);
+			System.out.printf("  SsatParser, file:   %8.1f MB/s%n", megabytes / mapped);
+			double stream = time(fileLocation, repeat, 1);
+			System.out.printf("  SsatParser, stream: %8.1f MB/s%n", megabytes / stream);
+			if(! fileLocation.endsWith(".gz")) {
+				double scanner = time(fileLocation, repeat, 2);
+				System.out.printf("  Scanner:            %8.1f MB/s%n", megabytes / scanner);
+			}
+		}
+	}
+
+	/**
+	 * @param fileLocation - the file to read
+	 * @param repeat - how many times to read it, not counting the first
+	 * @param how - 0 to read the file with SsatParser, 1 to read a stream with SsatParser, 2 to use a Scanner
+	 * @return the average number of seconds each read took
+	 * @throws IOException
+	 */
+	private static double time(String fileLocation, int repeat, int how) throws IOException {
+		long total = 0;
+		for(int i = 0; i <= repeat; i++) {
+			long start = System.nanoTime();
+			if(how == 0) {
+				SsatParser.parse(fileLocation);
+			} else if(how == 1) {
+				InputStream in = new FileInputStream(fileLocation);
+				try {
+					SsatParser.parse(in);
+				} finally {
+					in.close();
+				}
+			} else {
+				scan(fileLocation);
+			}
+			//the first read warms up the JIT
+			if(i > 0) total += System.nanoTime() - start;
+		}
+		return total / 1e9 / repeat;
+	}
+
+	/**
+	 * Reads all the numbers in a ssat file with a Scanner, like the solver used to.
+	 * @param fileLocation
+	 * @return the sum of the numbers, so the reading isn't optimised away
+	 * @throws IOException
+	 */
+	private static double scan(String fileLocation) throws IOException {
+		Scanner reader = new Scanner(new BufferedInputStream(new FileInputStream(fileLocation)));
+		double sum = 0;
+		try {
+			while(reader.hasNext()) {
+				if(reader.hasNextInt()) sum += reader.nextInt();
+				else if(reader.hasNextDouble()) sum += reader.nextDouble();
+				else reader.nextLine();
+			}
+		} finally {
+			reader.close();
+		}
+		return sum;
+	}
+
+	/**
+	 * Writes a random 3-literal ssat file, with every other variable a chance variable.
+	 * @param megabytes - about how big the file should be
+	 * @param seed - for SsatGenerator
+	 * @return the file, which is deleted when the program ends
+	 * @throws IOException
+	 */
+	private static File generate(double megabytes, long seed) throws IOException {
+		//each clause, and its share of the variable lines, takes about 26 bytes
+		int numClauses = Math.max(1, (int) (megabytes * MEGABYTE / 26));
+		int numVars = Math.max(3, numClauses / 4);
+
+		File file = File.createTempFile("benchmark", ".ssat");
+		file.deleteOnExit();
+		new SsatGenerator(numVars, numClauses, 3, 0.5, SsatGenerator.ORDER_ALTERNATE, 0, seed).writeFile(file);
+		return file;
+	}
+
+	/**
+	 * @param plain - a file
+	 * @return a gzipped copy of the file, which is deleted when the program ends
+	 * @throws IOException
+	 */
+	private static File gzip(File plain) throws IOException {
+		File file = new File(plain.getPath() + ".gz");
+		file.deleteOnExit();
+		InputStream in = new FileInputStream(plain);
+		GZIPOutputStream out = new GZIPOutputStream(new FileOutputStream(file));
+		try {
+			byte[] buffer = new byte[1 << 16];
+			int read;
+			while((read = in.read(buffer)) > 0) out.write(buffer, 0, read);
+		} finally {
+			in.close();
+			out.close();
+		}
+		return file;
+	}
+}
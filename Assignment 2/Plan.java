@@ -0,0 +1,495 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Vector;
+
+/**
+ * Plan.java
+ * @author William Richard willster3021@gmail.com
+ * A plan for a SSAT formula, stored as a graph of PlanNodes.
+ * The assignments in the plan, one for every way the chance variables can turn out,
+ * are only made when they are iterated over, one at a time.
+ *
+ * A plan can be written to a compact binary file and read back in.  Each node is
+ * only written once, however many times it is used in the plan.  The file is:
+ * the magic number, the number of variables, each variable's value, the number of nodes,
+ * then the nodes, with children before their parents, and then the root.
+ * Nodes are referred to by number: 0 is FAILURE, 1 is SUCCESS, and the nodes in the file
+ * are numbered from 2.  All the counts and numbers are written as variable length ints.
+ */
+public class Plan implements Iterable<Assignment> {
+
+	//the first four bytes of a plan file
+	private static final int MAGIC = 0x53504c31;
+	//the most room that is made for the variables or nodes before they have been read in,
+	//so a file that is cut short or corrupt can't make us run out of memory
+	static final int MAX_PREALLOCATE = 1 << 16;
+
+	//the start of the plan
+	private PlanNode root;
+	//the value of each variable: its chance of being true, or negative if it is a choice variable.
+	//the 0th index is a dummy index.
+	private double[] values;
+
+	/**
+	 * Constructor.
+	 * @param root - the start of the plan
+	 * @param variables - the variables of the formula, with a null in the 0th index
+	 */
+	public Plan(PlanNode root, Vector<Variable> variables) {
+		this.root = root;
+		values = new double[variables.size()];
+		for(int i = 1; i < variables.size(); i++) {
+			values[i] = variables.get(i).getValue();
+		}
+	}
+
+	/**
+	 * Constructor.
+	 * @param root - the start of the plan
+	 * @param values - the value of each variable, with a dummy in the 0th index
+	 */
+	public Plan(PlanNode root, double[] values) {
+		this.root = root;
+		this.values = values;
+	}
+
+	/**
+	 * @return the start of the plan
+	 */
+	public PlanNode getRoot() {
+		return root;
+	}
+
+	/**
+	 * @return the number of variables in the formula
+	 */
+	public int getNumVariables() {
+		return values.length - 1;
+	}
+
+	/**
+	 * @return the probability that the plan succeeds
+	 */
+	public double getProbability() {
+		return root.getProbability();
+	}
+
+	/**
+	 * @return how many different nodes the plan has, not counting the leaves
+	 */
+	public int getNumNodes() {
+		return numberNodes().size();
+	}
+
+	/**
+	 * Goes through the assignments in the plan, making each one when it is asked for.
+	 */
+	public Iterator<Assignment> iterator() {
+		return new AssignmentIterator();
+	}
+
+	/**
+	 * Writes the plan to a file.
+	 * @param fileLocation
+	 * @throws IOException
+	 */
+	public void write(String fileLocation) throws IOException {
+		OutputStream out = new FileOutputStream(fileLocation);
+		try {
+			write(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes the plan in the compact binary format.
+	 * @param stream
+	 * @throws IOException
+	 */
+	public void write(OutputStream stream) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+		out.writeInt(MAGIC);
+		writeVarInt(out, values.length - 1);
+		for(int i = 1; i < values.length; i++) {
+			out.writeDouble(values[i]);
+		}
+
+		IdentityHashMap<PlanNode, Integer> ids = numberNodes();
+		PlanNode[] nodes = new PlanNode[ids.size()];
+		for(PlanNode node : ids.keySet()) {
+			nodes[ids.get(node) - 2] = node;
+		}
+
+		writeVarInt(out, nodes.length);
+		for(PlanNode node : nodes) {
+			out.writeByte(node.getType() * 2 + (node.getValue() ? 1 : 0));
+			if(node.getType() != PlanNode.PRODUCT) writeVarInt(out, node.getVariable());
+			writeVarInt(out, id(ids, node.getFirst()));
+			if(node.getType() != PlanNode.ASSIGN) writeVarInt(out, id(ids, node.getSecond()));
+		}
+		writeVarInt(out, id(ids, root));
+		out.flush();
+	}
+
+	/**
+	 * Reads a plan in from a file.
+	 * @param fileLocation
+	 * @return the plan
+	 * @throws IOException if the file can't be read or isn't a plan
+	 */
+	public static Plan read(String fileLocation) throws IOException {
+		File file = new File(fileLocation);
+		InputStream in = new FileInputStream(file);
+		try {
+			return read(in, file.isFile() ? file.length() : Long.MAX_VALUE);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads a plan that was written in the compact binary format.
+	 * @param stream
+	 * @return the plan
+	 * @throws IOException if the stream can't be read or doesn't hold a plan
+	 */
+	public static Plan read(InputStream stream) throws IOException {
+		return read(stream, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Reads a plan that was written in the compact binary format.
+	 * The counts in the file are checked against how big it is before anything is made for them.
+	 * @param stream
+	 * @param size - how many bytes the plan takes up, or Long.MAX_VALUE if we don't know
+	 * @return the plan
+	 * @throws IOException if the stream can't be read or doesn't hold a plan
+	 */
+	private static Plan read(InputStream stream, long size) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+		try {
+			return read(in, size);
+		} catch(EOFException e) {
+			throw new IOException("The plan file ends too soon");
+		}
+	}
+
+	/**
+	 * Reads a plan, after the stream has been set up.
+	 */
+	private static Plan read(DataInputStream in, long size) throws IOException {
+		if(in.readInt() != MAGIC) throw new IOException("Not a plan file");
+
+		//each variable's value takes 8 bytes
+		int numVars = readCount(in, size, 8, "variables");
+		double[] values = new double[Math.min(numVars, MAX_PREALLOCATE) + 1];
+		for(int i = 1; i <= numVars; i++) {
+			if(i == values.length) values = Arrays.copyOf(values, (int) Math.min(numVars + 1L, values.length * 2L));
+			values[i] = in.readDouble();
+		}
+
+		//each node takes at least 3 bytes: the header, and two numbers
+		int numNodes = readCount(in, size, 3, "nodes");
+		PlanNode[] nodes = new PlanNode[Math.min(numNodes, MAX_PREALLOCATE) + 2];
+		nodes[0] = PlanNode.FAILURE;
+		nodes[1] = PlanNode.SUCCESS;
+		for(int i = 2; i < numNodes + 2; i++) {
+			if(i == nodes.length) nodes = Arrays.copyOf(nodes, (int) Math.min(numNodes + 2L, nodes.length * 2L));
+			int header = in.readUnsignedByte();
+			int type = header / 2;
+			boolean value = header % 2 == 1;
+			int variable = 0;
+			if(type != PlanNode.PRODUCT) {
+				variable = readVarInt(in);
+				if(variable < 1 || variable > numVars) throw new IOException("Bad variable " + variable + " in node " + i);
+			}
+			PlanNode first = node(nodes, readVarInt(in), i);
+			if(type == PlanNode.ASSIGN) {
+				nodes[i] = PlanNode.assign(variable, values[variable], value, first);
+			} else if(type == PlanNode.CHANCE) {
+				if(values[variable] < 0) throw new IOException("Choice variable " + variable + " in a chance node");
+				nodes[i] = PlanNode.chance(variable, values[variable], first, node(nodes, readVarInt(in), i));
+			} else if(type == PlanNode.PRODUCT) {
+				nodes[i] = PlanNode.product(first, node(nodes, readVarInt(in), i));
+			} else {
+				throw new IOException("Bad node type " + type);
+			}
+		}
+
+		return new Plan(node(nodes, readVarInt(in), numNodes + 2), values);
+	}
+
+	/**
+	 * Numbers the nodes of the plan, so that children always have lower numbers than their parents.
+	 * @return the number of each node, starting from 2, since 0 and 1 are used for the leaves.
+	 */
+	private IdentityHashMap<PlanNode, Integer> numberNodes() {
+		IdentityHashMap<PlanNode, Integer> ids = new IdentityHashMap<PlanNode, Integer>();
+		numberNodes(root, ids);
+		return ids;
+	}
+
+	/**
+	 * Numbers the node and everything under it that isn't numbered yet.
+	 * Plans can be as deep as there are variables, so this keeps its own stack instead of recursing.
+	 * @param node
+	 * @param ids
+	 */
+	private static void numberNodes(PlanNode node, IdentityHashMap<PlanNode, Integer> ids) {
+		Vector<PlanNode> stack = new Vector<PlanNode>();
+		stack.add(node);
+		while(! stack.isEmpty()) {
+			PlanNode top = stack.lastElement();
+			if(top.getType() == PlanNode.LEAF || ids.containsKey(top)) {
+				stack.remove(stack.size() - 1);
+			} else if(needsNumber(top.getFirst(), ids)) {
+				stack.add(top.getFirst());
+			} else if(needsNumber(top.getSecond(), ids)) {
+				stack.add(top.getSecond());
+			} else {
+				//both children are numbered, so this one can be
+				stack.remove(stack.size() - 1);
+				ids.put(top, ids.size() + 2);
+			}
+		}
+	}
+
+	/**
+	 * @return if the node is there, isn't a leaf, and isn't numbered yet
+	 */
+	private static boolean needsNumber(PlanNode node, IdentityHashMap<PlanNode, Integer> ids) {
+		return node != null && node.getType() != PlanNode.LEAF && ! ids.containsKey(node);
+	}
+
+	/**
+	 * @return the number of the node in the file
+	 */
+	private static int id(IdentityHashMap<PlanNode, Integer> ids, PlanNode node) {
+		if(node == PlanNode.FAILURE) return 0;
+		if(node == PlanNode.SUCCESS) return 1;
+		return ids.get(node);
+	}
+
+	/**
+	 * @return the node with the number read in, which has to come before the node being read.
+	 */
+	private static PlanNode node(PlanNode[] nodes, int id, int reading) throws IOException {
+		if(id < 0 || id >= reading) throw new IOException("Bad child " + id + " in node " + reading);
+		return nodes[id];
+	}
+
+	/**
+	 * Writes a non-negative int in as few bytes as it needs, 7 bits at a time.
+	 * DecisionDiagram files use these too.
+	 */
+	static void writeVarInt(DataOutputStream out, int value) throws IOException {
+		assert value >= 0;
+		while(value >= 0x80) {
+			out.writeByte((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	/**
+	 * Reads an int written by writeVarInt.
+	 * @throws IOException if it isn't a non-negative int
+	 */
+	static int readVarInt(DataInputStream in) throws IOException {
+		int value = 0;
+		for(int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			//the fifth byte only has room for the last 3 bits, since the number isn't negative
+			if(shift == 28 && b > 0x07) break;
+			value |= (b & 0x7f) << shift;
+			if(b < 0x80) return value;
+		}
+		throw new IOException("Bad number in file");
+	}
+
+	/**
+	 * Reads how many of something are in a file, and makes sure the file is big enough to hold them.
+	 * DecisionDiagram files use these too.
+	 * @param in
+	 * @param size - how many bytes the file has, or Long.MAX_VALUE if we don't know
+	 * @param bytesEach - the fewest bytes each of them takes up in the file
+	 * @param what - what they are, for the error message
+	 * @return how many there are
+	 * @throws IOException if there can't be that many
+	 */
+	static int readCount(DataInputStream in, long size, int bytesEach, String what) throws IOException {
+		int count = readVarInt(in);
+		//the 2 leaves are numbered before the nodes, so there can't be quite as many as an int holds
+		if(count > Integer.MAX_VALUE - 2) throw new IOException("The file says it has " + count + " " + what + ", which is too many");
+		if((long) count * bytesEach > size) {
+			throw new IOException("The file says it has " + count + " " + what + ", but it is only " + size + " bytes long");
+		}
+		return count;
+	}
+
+	/**
+	 * Prints out the assignments and probability of success of a plan file.
+	 * @param args - the plan file
+	 */
+	public static void main(String[] args) {
+		if(args.length != 1) {
+			System.out.println("Correct usage: java Plan <plan file>");
+			System.exit(0);
+		}
+		try {
+			Plan plan = read(args[0]);
+			SsatSolver.printAssignments(plan);
+			SsatSolver.printProbability(plan.getProbability());
+		} catch(IOException e) {
+			System.out.println("Couldn't read the plan '" + args[0] + "': " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Walks through the plan depth first, making an Assignment each time it gets to a leaf.
+	 * Variables that aren't set on the way to a leaf are don't-cares in the Assignment, since the
+	 * plan got to its result without them.
+	 * The PRODUCT nodes whose first child we are in are kept as a linked list, so when we
+	 * get to a leaf we know which second child to carry on with.
+	 */
+	private class AssignmentIterator implements Iterator<Assignment> {
+
+		//the values of the variables on the way to where we are now
+		private boolean[] current;
+		//which of the variables have been set on the way to where we are now
+		private boolean[] set;
+		//the variables that have been set on the way to where we are now, in order
+		private int[] trail;
+		private int trailSize;
+		//the places we still have to go
+		private Vector<Frame> stack;
+		//the next assignment, if it has been found already
+		private Assignment next;
+
+		public AssignmentIterator() {
+			current = new boolean[values.length];
+			Arrays.fill(current, true);
+			set = new boolean[values.length];
+			trail = new int[values.length + 1];
+			trailSize = 0;
+			stack = new Vector<Frame>();
+			stack.add(new Frame(root, 1.0, null, 0, 0, true));
+			next = null;
+		}
+
+		public boolean hasNext() {
+			if(next == null) next = findNext();
+			return next != null;
+		}
+
+		public Assignment next() {
+			if(! hasNext()) throw new NoSuchElementException();
+			Assignment a = next;
+			next = null;
+			return a;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * @return the next assignment in the plan, or null if there aren't any more.
+		 */
+		private Assignment findNext() {
+			while(! stack.isEmpty()) {
+				Frame f = stack.remove(stack.size() - 1);
+
+				//go back to the node we were at when this frame was pushed
+				while(trailSize > f.trailSize) {
+					int variable = trail[--trailSize];
+					current[variable] = true;
+					set[variable] = false;
+				}
+				if(f.variable != 0) {
+					current[f.variable] = f.value;
+					set[f.variable] = true;
+					if(trailSize == trail.length) trail = Arrays.copyOf(trail, trail.length * 2);
+					trail[trailSize++] = f.variable;
+				}
+
+				PlanNode node = f.node;
+				switch(node.getType()) {
+				case PlanNode.LEAF:
+					double prob = node.getValue() ? f.probability : 0.0;
+					if(f.after != null) {
+						stack.add(new Frame(f.after.node, prob, f.after.next, trailSize, 0, true));
+					} else {
+						//adjusting it rounds it, like every other Assignment's probability
+						Assignment a = new Assignment(current, set, 1.0);
+						a.adjustProbability(prob);
+						return a;
+					}
+					break;
+				case PlanNode.ASSIGN:
+					stack.add(new Frame(node.getFirst(), f.probability * node.getFactor(), f.after, trailSize, node.getVariable(), node.getValue()));
+					break;
+				case PlanNode.CHANCE:
+					//push false first, so true comes out first
+					stack.add(new Frame(node.getSecond(), f.probability * (1.0 - node.getFactor()), f.after, trailSize, node.getVariable(), false));
+					stack.add(new Frame(node.getFirst(), f.probability * node.getFactor(), f.after, trailSize, node.getVariable(), true));
+					break;
+				default:
+					assert node.getType() == PlanNode.PRODUCT;
+					stack.add(new Frame(node.getFirst(), f.probability, new After(node.getSecond(), f.after), trailSize, 0, true));
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * A place the iterator still has to go: a node, the probability of getting there,
+	 * what to do after it, and the variable to set on the way.
+	 */
+	private static class Frame {
+		private PlanNode node;
+		private double probability;
+		private After after;
+		private int trailSize;
+		private int variable;
+		private boolean value;
+
+		public Frame(PlanNode node, double probability, After after, int trailSize, int variable, boolean value) {
+			this.node = node;
+			this.probability = probability;
+			this.after = after;
+			this.trailSize = trailSize;
+			this.variable = variable;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * The second children of the PRODUCT nodes we are in, innermost first.
+	 */
+	private static class After {
+		private PlanNode node;
+		private After next;
+
+		public After(PlanNode node, After next) {
+			this.node = node;
+			this.next = next;
+		}
+	}
+}
@@ -0,0 +1,159 @@
+/**
+ * PlanNode.java
+ * @author William Richard willster3021@gmail.com
+ * One node of a plan.  Instead of listing a full assignment for every way the chance
+ * variables can turn out, a plan is a graph of these nodes, and parts of it that are
+ * the same are only stored once.  Nodes never change once they are made, so they can
+ * be shared between plans, and kept in the cache.
+ *
+ * There are four kinds of node:
+ * LEAF - the end of the plan, which either succeeds or fails.
+ * ASSIGN - a variable is set to a value, and then the child is followed.  For a chance
+ * 			variable, this is an outcome that was forced, and the probability is multiplied
+ * 			by the chance of that outcome.
+ * CHANCE - a chance variable is set both ways, and each way has its own child.
+ * PRODUCT - the first child is followed, and then wherever it ends the second child is followed.
+ * 			This is how plans for independent components are put together.
+ */
+public class PlanNode {
+
+	//the kinds of node
+	public static final int LEAF = 0;
+	public static final int ASSIGN = 1;
+	public static final int CHANCE = 2;
+	public static final int PRODUCT = 3;
+
+	//the two leaves.  Every plan ends in one of these.
+	public static final PlanNode SUCCESS = new PlanNode(LEAF, 0, true, 1.0, null, null);
+	public static final PlanNode FAILURE = new PlanNode(LEAF, 0, false, 0.0, null, null);
+
+	//what kind of node this is
+	private int type;
+	//the variable set by an ASSIGN or CHANCE node
+	private int variable;
+	//the value an ASSIGN node sets, or if a LEAF succeeds
+	private boolean value;
+	//for an ASSIGN node, what the probability is multiplied by.
+	//for a CHANCE node, the chance that the variable is true
+	private double factor;
+	//the children.  For an ASSIGN node, first is the only child.
+	//for a CHANCE node, first is followed when the variable is true and second when it is false.
+	private PlanNode first;
+	private PlanNode second;
+	//the probability that following the plan from this node succeeds
+	private double probability;
+
+	/**
+	 * Constructor.  Use the static methods to make nodes.
+	 */
+	private PlanNode(int type, int variable, boolean value, double factor, PlanNode first, PlanNode second) {
+		this.type = type;
+		this.variable = variable;
+		this.value = value;
+		this.factor = factor;
+		this.first = first;
+		this.second = second;
+
+		switch(type) {
+		case LEAF:
+			probability = value ? 1.0 : 0.0;
+			break;
+		case ASSIGN:
+			probability = factor * first.probability;
+			break;
+		case CHANCE:
+			probability = factor * first.probability + (1.0 - factor) * second.probability;
+			break;
+		default:
+			assert type == PRODUCT;
+			probability = first.probability * second.probability;
+		}
+	}
+
+	/**
+	 * @param name - the variable to set
+	 * @param variableValue - the variable's value: its chance of being true, or negative if it is a choice variable
+	 * @param value - what to set the variable to
+	 * @param child - the rest of the plan
+	 * @return a node that sets the variable and then follows the child
+	 */
+	public static PlanNode assign(int name, double variableValue, boolean value, PlanNode child) {
+		assert child != null;
+		double factor = 1.0;
+		if(variableValue >= 0) factor = value ? variableValue : 1.0 - variableValue;
+		return new PlanNode(ASSIGN, name, value, factor, child, null);
+	}
+
+	/**
+	 * @param name - the chance variable
+	 * @param chanceTrue - the chance that it is true
+	 * @param whenTrue - the rest of the plan if it is true
+	 * @param whenFalse - the rest of the plan if it is false
+	 * @return a node that tries both values of the chance variable
+	 */
+	public static PlanNode chance(int name, double chanceTrue, PlanNode whenTrue, PlanNode whenFalse) {
+		assert chanceTrue >= 0 && whenTrue != null && whenFalse != null;
+		return new PlanNode(CHANCE, name, true, chanceTrue, whenTrue, whenFalse);
+	}
+
+	/**
+	 * @param first - a plan
+	 * @param second - a plan that doesn't share any variables with the first
+	 * @return a plan that follows the first plan, and then the second
+	 */
+	public static PlanNode product(PlanNode first, PlanNode second) {
+		assert first != null && second != null;
+		return new PlanNode(PRODUCT, 0, true, 1.0, first, second);
+	}
+
+	/**
+	 * @return what kind of node this is
+	 */
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * @return the variable an ASSIGN or CHANCE node sets
+	 */
+	public int getVariable() {
+		return variable;
+	}
+
+	/**
+	 * @return the value an ASSIGN node sets, or if a LEAF succeeds
+	 */
+	public boolean getValue() {
+		return value;
+	}
+
+	/**
+	 * @return what an ASSIGN node multiplies the probability by,
+	 * or the chance the variable of a CHANCE node is true.
+	 */
+	public double getFactor() {
+		return factor;
+	}
+
+	/**
+	 * @return the only child of an ASSIGN node, the true child of a CHANCE node,
+	 * or the first child of a PRODUCT node.
+	 */
+	public PlanNode getFirst() {
+		return first;
+	}
+
+	/**
+	 * @return the false child of a CHANCE node, or the second child of a PRODUCT node.
+	 */
+	public PlanNode getSecond() {
+		return second;
+	}
+
+	/**
+	 * @return the probability that following the plan from this node succeeds
+	 */
+	public double getProbability() {
+		return probability;
+	}
+}
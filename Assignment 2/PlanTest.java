@@ -0,0 +1,227 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * PlanTest.java
+ * @author William Richard willster3021@gmail.com
+ * Tests that plans have the right assignments in them, and come back the same after
+ * being written to a plan file and read back in.  Plan files that are cut short or corrupt
+ * have to be an IOException, and not run out of memory or throw anything else.
+ */
+public class PlanTest extends SsatTest {
+
+	public static void main(String[] args) {
+		run(new PlanTest());
+	}
+
+	protected void runChecks() throws Exception {
+		checkSmallPlan();
+		checkDontCares();
+		for(long seed = 1; seed <= 20; seed++) {
+			ClauseDatabase formula = randomFormula(10, 30 + (int) seed, (int) (seed % 4), seed);
+			Plan plan = new SsatSolver(formula, options()).solve();
+			checkAssignmentsSatisfy(formula, plan, seed);
+			checkRoundTrip(plan, seed);
+			if(seed <= 5) checkCorrupt(plan, seed);
+		}
+		checkBadCounts();
+	}
+
+	/**
+	 * A formula where the choice variable has to copy the chance variable before it, and 3 isn't in any clause.
+	 */
+	private void checkSmallPlan() throws Exception {
+		ClauseDatabase formula = formula("p cnf 3 2\n1 -2 0\n-1 2 0\n1 0.3\n2 -1\n3 0.5\n");
+		Plan plan = new SsatSolver(formula, options()).solve();
+		checkClose(1.0, plan.getProbability(), "the plan always succeeds");
+		Iterator<Assignment> assignments = plan.iterator();
+		Assignment a = assignments.next();
+		check(a.toString().startsWith(" 1\t 2\t*3"), "when 1 is true, 2 is set true and 3 doesn't matter: " + a);
+		checkClose(0.3, a.getProbability(), "the first assignment happens with the chance of 1");
+		a = assignments.next();
+		check(a.toString().startsWith("-1\t-2\t*3"), "when 1 is false, 2 is set false: " + a);
+		checkClose(0.7, a.getProbability(), "the second assignment happens with the chance of 1 being false");
+		check(! assignments.hasNext(), "there are only 2 assignments");
+	}
+
+	/**
+	 * Once the formula is decided, the chance variables left over aren't split on, so they are
+	 * don't-cares, instead of there being an assignment for every way they can turn out.
+	 */
+	private void checkDontCares() throws Exception {
+		int numVars = 16;
+		StringBuilder text = new StringBuilder("p cnf " + numVars + " " + (numVars - 1) * 2 + "\n");
+		for(int k = 2; k <= numVars; k++) text.append("1 ").append(k).append(" 0\n1 ").append(-k).append(" 0\n");
+		text.append("1 0.3\n");
+		for(int k = 2; k <= numVars; k++) text.append(k).append(" 0.5\n");
+
+		for(String args : new String[] {"", "-cache 0 -learn 0 -nocomponents"}) {
+			Plan plan = new SsatSolver(formula(text.toString()), options(args.isEmpty() ? new String[0] : args.split(" "))).solve();
+			checkClose(0.3, plan.getProbability(), "the plan succeeds when 1 is true, with options '" + args + "'");
+			int numAssignments = 0;
+			int dontCares = 0;
+			for(Assignment a : plan) {
+				numAssignments++;
+				if(a.getProbability() == 0) continue;
+				for(int name = 2; name <= numVars; name++) {
+					if(! a.isSet(name)) dontCares++;
+				}
+			}
+			check(numAssignments <= 2 && plan.getNumNodes() <= 4, "with options '" + args + "', the plan has " + numAssignments +
+					" assignments and " + plan.getNumNodes() + " nodes, instead of one for each way the chance variables turn out");
+			check(dontCares == numVars - 1, "with options '" + args + "', the chance variables that don't matter are don't-cares");
+		}
+	}
+
+	/**
+	 * Every assignment that succeeds has to satisfy the formula whatever its don't-cares are,
+	 * and the assignments add up to the plan's probability, give or take their rounding.
+	 */
+	private void checkAssignmentsSatisfy(ClauseDatabase formula, Plan plan, long seed) {
+		double total = 0;
+		int numAssignments = 0;
+		boolean allSatisfy = true;
+		for(Assignment a : plan) {
+			numAssignments++;
+			total += a.getProbability();
+			if(a.getProbability() == 0) continue;
+			for(boolean dontCare : new boolean[] {true, false}) {
+				boolean[] values = a.getAssignment().clone();
+				for(int name = 1; name < values.length; name++) {
+					if(! a.isSet(name)) values[name] = dontCare;
+				}
+				allSatisfy &= satisfies(formula, values);
+			}
+		}
+		check(allSatisfy, "seed " + seed + ": an assignment that succeeds doesn't satisfy the formula");
+		check(Math.abs(total - plan.getProbability()) <= 0.0005 * numAssignments + TOLERANCE,
+				"seed " + seed + ": the assignments add up to " + total + " instead of " + plan.getProbability());
+	}
+
+	/**
+	 * Writing a plan out and reading it back in gives the same nodes and assignments.
+	 */
+	private void checkRoundTrip(Plan plan, long seed) throws IOException {
+		Plan copy = roundTrip(plan);
+		check(copy.getProbability() == plan.getProbability(), "seed " + seed + ": the probability changed after reading it back in");
+		check(copy.getNumNodes() == plan.getNumNodes() && copy.getNumVariables() == plan.getNumVariables(),
+				"seed " + seed + ": the plan read back in has " + copy.getNumNodes() + " nodes instead of " + plan.getNumNodes());
+		Iterator<Assignment> expected = plan.iterator();
+		Iterator<Assignment> actual = copy.iterator();
+		boolean same = true;
+		while(expected.hasNext() && actual.hasNext()) {
+			Assignment a = expected.next();
+			Assignment b = actual.next();
+			same &= a.toString().equals(b.toString()) && a.getProbability() == b.getProbability();
+		}
+		check(same && ! expected.hasNext() && ! actual.hasNext(), "seed " + seed + ": the assignments changed after reading it back in");
+	}
+
+	/**
+	 * Every way of cutting the plan file short, and random changes to its bytes, are either
+	 * still a plan or an IOException.
+	 */
+	private void checkCorrupt(Plan plan, long seed) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		plan.write(out);
+		byte[] bytes = out.toByteArray();
+
+		String failure = null;
+		for(int length = 0; length < bytes.length && failure == null; length++) {
+			failure = readCorrupt(Arrays.copyOf(bytes, length), false);
+			if(failure != null) failure = "cut short to " + length + " bytes: " + failure;
+		}
+		Random random = new Random(seed);
+		for(int i = 0; i < 500 && failure == null; i++) {
+			byte[] changed = bytes.clone();
+			for(int j = 0; j <= random.nextInt(3); j++) changed[random.nextInt(changed.length)] = (byte) random.nextInt(256);
+			failure = readCorrupt(changed, true);
+		}
+		check(failure == null, "seed " + seed + ": a corrupt plan file " + failure);
+	}
+
+	/**
+	 * @param bytes - a corrupt plan file
+	 * @param mayBePlan - if it could still be a plan
+	 * @return what went wrong reading it, or null if it was an IOException, or a plan if it could be one
+	 */
+	private static String readCorrupt(byte[] bytes, boolean mayBePlan) {
+		try {
+			Plan.read(new ByteArrayInputStream(bytes));
+			return mayBePlan ? null : "was read in as a plan";
+		} catch(IOException e) {
+			return null;
+		} catch(Throwable e) {
+			return "threw " + e;
+		}
+	}
+
+	/**
+	 * Counts that are too big, or negative, are found before any room is made for them.
+	 */
+	private void checkBadCounts() throws IOException {
+		//the most variables an int can count, with nothing after
+		checkBadPlan(new byte[] {(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07}, "too many variables");
+		//a number that would be negative
+		checkBadPlan(new byte[] {(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x0f}, "a negative number of variables");
+		//1 variable, then nearly as many nodes as an int can count
+		checkBadPlan(new byte[] {1, 0, 0, 0, 0, 0, 0, 0, 0, (byte) 0xfd, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07}, "too many nodes");
+		//1 variable, then a node that is the second child of its own child
+		checkBadPlan(new byte[] {1, 0, 0, 0, 0, 0, 0, 0, 0, 1, PlanNode.PRODUCT * 2, 1, 2, 2}, "a node that is its own child");
+
+		//a file knows how big it is, so a count too big for it is found without reading any further
+		File dir = Files.createTempDirectory("plan").toFile();
+		File file = new File(dir, "bad.plan");
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			out.write(badPlan(new byte[] {(byte) 0x80, (byte) 0x80, 0x40}));
+			out.close();
+			Plan.read(file.getPath());
+			check(false, "a file with a million variables in 7 bytes should be an error");
+		} catch(IOException e) {
+			check(e.getMessage().contains("7 bytes"), "a file with a million variables in 7 bytes: " + e.getMessage());
+		} finally {
+			file.delete();
+			dir.delete();
+		}
+	}
+
+	/**
+	 * Checks that reading a plan file fails with an IOException.
+	 * @param afterMagic - the bytes after the magic number
+	 * @param what - what is wrong with it
+	 */
+	private void checkBadPlan(byte[] afterMagic, String what) throws IOException {
+		String failure = readCorrupt(badPlan(afterMagic), false);
+		check(failure == null, "a plan with " + what + " " + failure);
+	}
+
+	/**
+	 * @return a plan file with the magic number, then the bytes
+	 */
+	private static byte[] badPlan(byte[] afterMagic) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(0x53504c31);
+		out.write(afterMagic);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @return the plan, written to a plan file and read back in
+	 */
+	private static Plan roundTrip(Plan plan) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		plan.write(out);
+		return Plan.read(new ByteArrayInputStream(out.toByteArray()));
+	}
+}
@@ -0,0 +1,462 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Vector;
+
+/**
+ * Preprocessor.java
+ * @author William Richard willster3021@gmail.com
+ * Simplifies the clauses of a formula once, before it is searched, so the search doesn't
+ * keep looking at clauses that can't make a difference.  Each step can be turned on on its own:
+ *
+ * units - a variable in a clause on its own has to be that way.  The other clauses it satisfies
+ * 		are removed, and it is taken out of the clauses where it is false.  Its own clause is kept,
+ * 		so the search still multiplies by the chance of it, for a chance variable, and the plan
+ * 		still sets it.
+ * subsume - a clause that has all the literals of another clause is satisfied whenever the
+ * 		other one is, so it is removed.  This includes duplicate clauses.
+ * strengthen - self-subsuming resolution.  If a clause C has a literal l, and another clause D has
+ * 		-l and the rest of C, then resolving them on l gives D without -l, which replaces D.
+ * pure - a choice variable that only appears one way is set that way, since that can never
+ * 		make a plan worse, and the clauses it is in are removed.  It gets a clause of its own,
+ * 		so the plan still sets it.  A choice variable that isn't in any clause, from the start or
+ * 		once the other steps have removed its clauses, doesn't affect the formula, so it is set
+ * 		true the same way, and the search doesn't set it again in every branch.
+ *
+ * All of the steps but pure give a formula that is satisfied by exactly the same assignments,
+ * so the probability of success is the same whatever the order the variables are quantified in.
+ * pure only ever sets choice variables, which is safe wherever they are in the order.  Chance
+ * variables are never set or removed, since that would change the probability.
+ *
+ * Literals that are in a clause twice are merged, and clauses with a variable both ways are
+ * removed, whichever steps are on.  The steps are repeated until none of them change anything.
+ * The variables keep their names, so plans for the simplified formula are plans for the original.
+ */
+public class Preprocessor {
+
+	//how many clauses or variables are looked at between looking at the clock
+	private static final int TIME_CHECK_STEPS = 1024;
+
+	private boolean useUnits;
+	private boolean useSubsume;
+	private boolean useStrengthen;
+	private boolean usePure;
+
+	//the formula being simplified.  Removed clauses are null.
+	private Vector<int[]> clauses;
+	private int numVars;
+	private boolean[] choice;
+	//+1 or -1 once a variable has been set by units or pure, otherwise 0
+	private int[] fixed;
+	//if a clause became empty, so the formula can never be satisfied
+	private boolean unsat;
+	//the System.nanoTime() to give up at, or 0 to take as long as it needs
+	private long deadline;
+	//how many steps have been taken since the time was last checked
+	private int sinceTimeChecked;
+
+	//what was eliminated
+	private int clausesBefore;
+	private int literalsBefore;
+	private int tautologies;
+	private int mergedLiterals;
+	private int unitsFixed;
+	private int unitSatisfiedClauses;
+	private int unitFalseLiterals;
+	private int duplicates;
+	private int subsumed;
+	private int strengthened;
+	private int pureVariables;
+	private int pureClauses;
+	private int unusedChoice;
+
+	/**
+	 * Constructor.
+	 * @param options - which steps to use
+	 */
+	public Preprocessor(SolverOptions options) {
+		useUnits = options.preprocessUnits;
+		useSubsume = options.preprocessSubsume;
+		useStrengthen = options.preprocessStrengthen;
+		usePure = options.preprocessPure;
+		deadline = 0;
+	}
+
+	/**
+	 * Makes preprocess give up if it is still going at deadline.
+	 * @param deadline - the System.nanoTime() to give up at, or 0 for no limit
+	 */
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Called for each clause or variable looked at.  Every so often, makes sure there is still time left.
+	 * @throws SsatTimeoutException if the deadline has gone by
+	 */
+	private void checkTime() {
+		if(deadline == 0 || ++sinceTimeChecked < TIME_CHECK_STEPS) return;
+		sinceTimeChecked = 0;
+		if(System.nanoTime() - deadline > 0) throw new SsatTimeoutException("Gave up preprocessing after the time limit");
+	}
+
+	/**
+	 * Simplifies a formula.
+	 * @param formula - a formula that hasn't been searched yet.  It isn't changed.
+	 * @return a new formula with the same variables and comments, and the simplified clauses, ready to be solved
+	 * @throws SsatTimeoutException if it is still going at the deadline, from setDeadline
+	 */
+	public ClauseDatabase preprocess(ClauseDatabase formula) {
+		numVars = formula.getNumVariables();
+		choice = new boolean[numVars + 1];
+		for(int i = 1; i <= numVars; i++) {
+			choice[i] = formula.getVariable(i).isChoice();
+		}
+		fixed = new int[numVars + 1];
+		unsat = false;
+
+		//read in the clauses, merging literals that are there twice and dropping the ones that are always true
+		clauses = new Vector<int[]>(formula.getNumClauses());
+		clausesBefore = formula.getNumClauses();
+		literalsBefore = 0;
+		//the last clause each variable was seen in, plus 1, and which way it was
+		int[] seenIn = new int[numVars + 1];
+		int[] seenAs = new int[numVars + 1];
+		for(int c = 0; c < formula.getNumClauses(); c++) {
+			checkTime();
+			int start = formula.getClauseStart(c);
+			int end = formula.getClauseEnd(c);
+			literalsBefore += end - start;
+			int[] clause = new int[end - start];
+			int size = 0;
+			boolean tautology = false;
+			for(int p = start; p < end; p++) {
+				int literal = formula.getLiteral(p);
+				int v = Math.abs(literal);
+				if(seenIn[v] == c + 1) {
+					if(seenAs[v] == literal) mergedLiterals++;
+					else tautology = true;
+					continue;
+				}
+				seenIn[v] = c + 1;
+				seenAs[v] = literal;
+				clause[size++] = literal;
+			}
+			if(tautology) {
+				tautologies++;
+				continue;
+			}
+			clause = Arrays.copyOf(clause, size);
+			Arrays.sort(clause);
+			clauses.add(clause);
+			if(size == 0) unsat = true;
+		}
+
+		//each step can let the others do more, so keep going until nothing changes
+		boolean changed = true;
+		while(changed && !unsat) {
+			changed = false;
+			if(useUnits) changed |= propagateUnits();
+			if(unsat) break;
+			if(usePure) changed |= setPure();
+			if(useSubsume) changed |= subsume();
+			if(useStrengthen) changed |= strengthen();
+		}
+		if(unsat) {
+			//one empty clause says it all
+			clauses.clear();
+			clauses.add(new int[0]);
+		}
+
+		return build(formula);
+	}
+
+	/**
+	 * Sets the variables in unit clauses, and everything that follows from them.
+	 * @return if anything changed
+	 */
+	private boolean propagateUnits() {
+		int[][] occurrences = findOccurrences();
+		int[] queue = new int[clauses.size() + 1];
+		int head = 0;
+		int tail = 0;
+		for(int[] clause : clauses) {
+			if(clause != null && clause.length == 1) {
+				if(tail == queue.length) queue = Arrays.copyOf(queue, queue.length * 2);
+				queue[tail++] = clause[0];
+			}
+		}
+
+		boolean changed = false;
+		while(head < tail) {
+			checkTime();
+			int literal = queue[head++];
+			int v = Math.abs(literal);
+			int sign = literal > 0 ? 1 : -1;
+			if(fixed[v] == sign) continue;
+			if(fixed[v] == -sign) {
+				unsat = true;
+				return true;
+			}
+			fixed[v] = sign;
+			unitsFixed++;
+			changed = true;
+
+			//the clauses it satisfies can go, except for the unit clauses that say what it is
+			for(int c : occurrences[ClauseDatabase.literalIndex(literal)]) {
+				int[] clause = clauses.get(c);
+				if(clause == null || clause.length == 1) continue;
+				clauses.set(c, null);
+				unitSatisfiedClauses++;
+			}
+			//and it is false in the others
+			for(int c : occurrences[ClauseDatabase.literalIndex(-literal)]) {
+				int[] clause = clauses.get(c);
+				if(clause == null || Arrays.binarySearch(clause, -literal) < 0) continue;
+				clause = without(clause, -literal);
+				clauses.set(c, clause);
+				unitFalseLiterals++;
+				if(clause.length == 0) {
+					unsat = true;
+					return true;
+				}
+				if(clause.length == 1) {
+					if(tail == queue.length) queue = Arrays.copyOf(queue, queue.length * 2);
+					queue[tail++] = clause[0];
+				}
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Sets the choice variables that only appear one way, or not at all, until there aren't any more.
+	 * @return if anything changed
+	 */
+	private boolean setPure() {
+		boolean changed = false;
+		boolean found = true;
+		while(found) {
+			found = false;
+			int[][] occurrences = findOccurrences();
+			for(int v = 1; v <= numVars; v++) {
+				checkTime();
+				if(!choice[v] || fixed[v] != 0) continue;
+				int[] positive = occurrences[ClauseDatabase.literalIndex(v)];
+				int[] negative = occurrences[ClauseDatabase.literalIndex(-v)];
+				//one that appears both ways isn't pure
+				if(positive.length > 0 && negative.length > 0) continue;
+
+				int literal = negative.length > 0 ? -v : v;
+				if(positive.length == 0 && negative.length == 0) {
+					//it doesn't affect any clause, so either way is as good
+					unusedChoice++;
+				} else {
+					for(int c : positive.length > 0 ? positive : negative) {
+						//the occurrences are from before this pass, so some of the clauses may be gone
+						if(clauses.get(c) == null) continue;
+						clauses.set(c, null);
+						pureClauses++;
+					}
+					pureVariables++;
+				}
+				clauses.add(new int[] {literal});
+				fixed[v] = literal > 0 ? 1 : -1;
+				found = true;
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Removes the clauses that have all the literals of another clause.
+	 * @return if anything changed
+	 */
+	private boolean subsume() {
+		int[][] occurrences = findOccurrences();
+		boolean changed = false;
+		for(int c : bySize()) {
+			checkTime();
+			int[] clause = clauses.get(c);
+			if(clause == null || clause.length == 0) continue;
+			//any clause it subsumes has all its literals, so only look at the clauses with its rarest one
+			int rarest = clause[0];
+			for(int literal : clause) {
+				if(occurrences[ClauseDatabase.literalIndex(literal)].length < occurrences[ClauseDatabase.literalIndex(rarest)].length) rarest = literal;
+			}
+			for(int d : occurrences[ClauseDatabase.literalIndex(rarest)]) {
+				int[] other = clauses.get(d);
+				if(d == c || other == null || other.length < clause.length) continue;
+				if(!isSubset(clause, 0, other, 0)) continue;
+				if(other.length == clause.length) duplicates++;
+				else subsumed++;
+				clauses.set(d, null);
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Self-subsuming resolution: takes -l out of any clause that has the rest of a clause with l.
+	 * @return if anything changed
+	 */
+	private boolean strengthen() {
+		int[][] occurrences = findOccurrences();
+		boolean changed = false;
+		for(int c = 0; c < clauses.size(); c++) {
+			checkTime();
+			int[] clause = clauses.get(c);
+			if(clause == null || clause.length < 2) continue;
+			for(int literal : clause) {
+				for(int d : occurrences[ClauseDatabase.literalIndex(-literal)]) {
+					int[] other = clauses.get(d);
+					if(other == null || other.length < clause.length || Arrays.binarySearch(other, -literal) < 0) continue;
+					if(!isSubset(clause, literal, other, -literal)) continue;
+					clauses.set(d, without(other, -literal));
+					strengthened++;
+					changed = true;
+				}
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * @param small - a sorted clause
+	 * @param skipSmall - a literal of small to leave out, or 0
+	 * @param big - a sorted clause
+	 * @param skipBig - a literal of big to leave out, or 0
+	 * @return if every literal of small, other than skipSmall, is in big, other than skipBig
+	 */
+	private static boolean isSubset(int[] small, int skipSmall, int[] big, int skipBig) {
+		int j = 0;
+		for(int literal : small) {
+			if(literal == skipSmall) continue;
+			while(j < big.length && (big[j] < literal || big[j] == skipBig)) j++;
+			if(j == big.length || big[j] != literal) return false;
+			j++;
+		}
+		return true;
+	}
+
+	/**
+	 * @param clause - a sorted clause
+	 * @param literal - one of its literals
+	 * @return the clause without it
+	 */
+	private static int[] without(int[] clause, int literal) {
+		int[] smaller = new int[clause.length - 1];
+		int size = 0;
+		for(int l : clause) {
+			if(l != literal) smaller[size++] = l;
+		}
+		return smaller;
+	}
+
+	/**
+	 * @return the clauses that haven't been removed, for each literal, by ClauseDatabase.literalIndex
+	 */
+	private int[][] findOccurrences() {
+		int[] counts = new int[(numVars + 1) * 2];
+		for(int[] clause : clauses) {
+			if(clause == null) continue;
+			for(int literal : clause) counts[ClauseDatabase.literalIndex(literal)]++;
+		}
+		int[][] occurrences = new int[counts.length][];
+		for(int i = 0; i < counts.length; i++) {
+			occurrences[i] = new int[counts[i]];
+			counts[i] = 0;
+		}
+		for(int c = 0; c < clauses.size(); c++) {
+			int[] clause = clauses.get(c);
+			if(clause == null) continue;
+			for(int literal : clause) {
+				int index = ClauseDatabase.literalIndex(literal);
+				occurrences[index][counts[index]++] = c;
+			}
+		}
+		return occurrences;
+	}
+
+	/**
+	 * @return the indexes of the clauses that haven't been removed, smallest first,
+	 * so a clause is always looked at before the ones it could subsume
+	 */
+	private Integer[] bySize() {
+		Vector<Integer> order = new Vector<Integer>(clauses.size());
+		for(int c = 0; c < clauses.size(); c++) {
+			if(clauses.get(c) != null) order.add(c);
+		}
+		Integer[] sorted = order.toArray(new Integer[order.size()]);
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return clauses.get(a).length - clauses.get(b).length;
+			}
+		});
+		return sorted;
+	}
+
+	/**
+	 * @param formula - the original formula, for its variables and comments
+	 * @return a database with the clauses that are left
+	 */
+	private ClauseDatabase build(ClauseDatabase formula) {
+		int numClauses = 0;
+		for(int[] clause : clauses) {
+			if(clause != null) numClauses++;
+		}
+		ClauseDatabase database = new ClauseDatabase(numVars, numClauses);
+		for(String comment : formula.getComments()) database.addComment(comment);
+		for(int[] clause : clauses) {
+			if(clause == null) continue;
+			for(int literal : clause) database.addLiteral(literal);
+			database.endClause();
+		}
+		for(int i = 1; i <= numVars; i++) {
+			database.getVariable(i).setValue(formula.getVariable(i).getValue());
+		}
+		database.initWatches();
+		return database;
+	}
+
+	/**
+	 * @return how many clauses there are now
+	 */
+	public int getNumClauses() {
+		int numClauses = 0;
+		for(int[] clause : clauses) {
+			if(clause != null) numClauses++;
+		}
+		return numClauses;
+	}
+
+	/**
+	 * @return how many literals there are now
+	 */
+	public int getNumLiterals() {
+		int numLiterals = 0;
+		for(int[] clause : clauses) {
+			if(clause != null) numLiterals += clause.length;
+		}
+		return numLiterals;
+	}
+
+	/**
+	 * @return what each step eliminated, on one line for each step that was used
+	 */
+	public String toString() {
+		StringBuilder report = new StringBuilder();
+		report.append("Preprocessing: " + clausesBefore + " clauses with " + literalsBefore + " literals became " +
+				getNumClauses() + " clauses with " + getNumLiterals() + " literals");
+		if(unsat) report.append(", and the formula can't be satisfied");
+		report.append("\n  removed " + tautologies + " clauses that are always true, and merged " + mergedLiterals + " repeated literals");
+		if(useUnits) report.append("\n  units: set " + unitsFixed + " variables, removing " + unitSatisfiedClauses +
+				" satisfied clauses and " + unitFalseLiterals + " false literals");
+		if(useSubsume) report.append("\n  subsume: removed " + duplicates + " duplicate and " + subsumed + " subsumed clauses");
+		if(useStrengthen) report.append("\n  strengthen: removed " + strengthened + " literals by self-subsuming resolution");
+		if(usePure) report.append("\n  pure: set " + pureVariables + " choice variables, removing " + pureClauses +
+				" clauses, and removed " + unusedChoice + " choice variables that aren't in any clause");
+		return report.toString();
+	}
+}
@@ -0,0 +1,130 @@
+/**
+ * PreprocessorTest.java
+ * @author William Richard willster3021@gmail.com
+ * Tests that each preprocessing step leaves the probability of success the same, that they
+ * remove what they say they do, and that chance variables are never set.
+ */
+public class PreprocessorTest extends SsatTest {
+
+	//the steps on their own, then all of them
+	private static final String[] STEPS = {"units", "subsume", "strengthen", "pure", "units,subsume", "all"};
+
+	public static void main(String[] args) {
+		run(new PreprocessorTest());
+	}
+
+	protected void runChecks() throws Exception {
+		for(long seed = 1; seed <= 30; seed++) {
+			//clauses of 2 literals give the steps more to do
+			ClauseDatabase formula = new SsatGenerator(10, 14 + (int) seed, seed % 2 == 0 ? 2 : 3, 0.5, (int) (seed % 4), 0, seed).generate();
+			double expected = exact(formula);
+			for(String steps : STEPS) {
+				checkSameProbability(formula, expected, steps, seed);
+			}
+		}
+		checkCounts();
+		checkChanceKept();
+		checkUnsat();
+	}
+
+	/**
+	 * The simplified formula has the same probability of success, and isn't any bigger, and the
+	 * formula it came from isn't changed.
+	 */
+	private void checkSameProbability(ClauseDatabase formula, double expected, String steps, long seed) {
+		int numClauses = formula.getNumClauses();
+		Preprocessor preprocessor = new Preprocessor(options("-preprocess", steps));
+		ClauseDatabase simplified = preprocessor.preprocess(formula);
+		String what = "seed " + seed + " with " + steps;
+		checkClose(expected, exact(simplified), what + ": the probability");
+		check(simplified.getNumClauses() <= Math.max(numClauses, 1) && simplified.getNumClauses() == preprocessor.getNumClauses(),
+				what + ": there are " + simplified.getNumClauses() + " clauses instead of at most " + numClauses);
+		check(formula.getNumClauses() == numClauses, what + ": the original formula was changed");
+		checkClose(expected, new SsatSolver(simplified, options()).solve().getProbability(), what + ": the probability the solver finds");
+
+		boolean chanceSame = simplified.getNumVariables() == formula.getNumVariables();
+		for(int name = 1; chanceSame && name <= formula.getNumVariables(); name++) {
+			chanceSame = simplified.getVariable(name).getValue() == formula.getVariable(name).getValue();
+		}
+		check(chanceSame, what + ": the variables kept their chances");
+		if(steps.equals("pure")) {
+			check(! hasNewChanceUnit(formula, simplified), what + ": pure set a chance variable");
+		}
+	}
+
+	/**
+	 * @return if the simplified formula has a unit clause for a chance variable that the original doesn't
+	 */
+	private static boolean hasNewChanceUnit(ClauseDatabase formula, ClauseDatabase simplified) {
+		for(int c = 0; c < simplified.getNumClauses(); c++) {
+			if(simplified.getClauseEnd(c) - simplified.getClauseStart(c) != 1) continue;
+			int literal = simplified.getLiteral(simplified.getClauseStart(c));
+			if(simplified.getVariable(Math.abs(literal)).isChoice()) continue;
+			boolean inOriginal = false;
+			for(int d = 0; d < formula.getNumClauses() && !inOriginal; d++) {
+				inOriginal = formula.getClauseEnd(d) - formula.getClauseStart(d) == 1 && formula.getLiteral(formula.getClauseStart(d)) == literal;
+			}
+			if(!inOriginal) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Each step removes what it should from small formulas, and says so.
+	 */
+	private void checkCounts() throws Exception {
+		checkReport("p cnf 3 2\n1 -1 2 0\n2 2 3 0\n1 0.5\n2 0.5\n3 0.5\n", "subsume", 1,
+				"removed 1 clauses that are always true, and merged 1 repeated literals");
+		checkReport("p cnf 3 3\n1 2 0\n2 1 0\n1 2 3 0\n1 0.5\n2 0.5\n3 0.5\n", "subsume", 1,
+				"subsume: removed 1 duplicate and 1 subsumed clauses");
+		checkReport("p cnf 3 2\n1 2 0\n-1 2 3 0\n1 0.5\n2 0.5\n3 0.5\n", "strengthen", 2,
+				"strengthen: removed 1 literals by self-subsuming resolution");
+		checkReport("p cnf 3 3\n1 0\n-1 2 0\n1 3 0\n1 0.5\n2 0.5\n3 0.5\n", "units", 2,
+				"units: set 2 variables, removing 1 satisfied clauses and 1 false literals");
+		//2 and 4 aren't in any clause, so they are set with a clause each too
+		checkReport("p cnf 4 2\n1 3 0\n-1 3 0\n1 0.5\n2 -1\n3 -1\n4 -1\n", "pure", 3,
+				"pure: set 1 choice variables, removing 2 clauses, and removed 2 choice variables that aren't in any clause");
+	}
+
+	/**
+	 * Checks what preprocessing a formula says it did.
+	 * @param text - the formula
+	 * @param steps - the steps to use
+	 * @param numClauses - how many clauses should be left
+	 * @param report - a line the report should have
+	 */
+	private void checkReport(String text, String steps, int numClauses, String report) throws Exception {
+		ClauseDatabase formula = formula(text);
+		Preprocessor preprocessor = new Preprocessor(options("-preprocess", steps));
+		ClauseDatabase simplified = preprocessor.preprocess(formula);
+		check(simplified.getNumClauses() == numClauses, steps + " left " + simplified.getNumClauses() + " clauses instead of " + numClauses + " in:\n" + text);
+		check(preprocessor.toString().contains(report), steps + " should say '" + report + "' but said:\n" + preprocessor);
+		checkClose(exact(formula), exact(simplified), steps + ": the probability");
+	}
+
+	/**
+	 * A chance variable that only appears one way isn't set like a pure choice variable would be,
+	 * since its chance of being that way is part of the probability.
+	 */
+	private void checkChanceKept() throws Exception {
+		ClauseDatabase formula = formula("p cnf 2 1\n1 2 0\n1 0.5\n2 0.5\n");
+		ClauseDatabase simplified = new Preprocessor(options("-preprocess", "all")).preprocess(formula);
+		check(simplified.getNumClauses() == 1 && simplified.getClauseEnd(0) - simplified.getClauseStart(0) == 2, "the clause of chance variables is kept as it was");
+		checkClose(0.75, exact(simplified), "the chance variables still have to turn out right");
+	}
+
+	/**
+	 * A formula that can't be satisfied becomes one empty clause.
+	 */
+	private void checkUnsat() throws Exception {
+		String[] texts = {"p cnf 2 2\n1 0\n-1 0\n1 0.5\n2 -1\n", "p cnf 3 3\n1 0\n-1 2 0\n-2 -1 0\n1 -1\n2 0.5\n3 0.5\n"};
+		for(String text : texts) {
+			Preprocessor preprocessor = new Preprocessor(options("-preprocess", "units"));
+			ClauseDatabase simplified = preprocessor.preprocess(formula(text));
+			check(simplified.getNumClauses() == 1 && simplified.getClauseEnd(0) == simplified.getClauseStart(0), "the formula that can't be satisfied is one empty clause:\n" + text);
+			check(preprocessor.toString().contains("the formula can't be satisfied"), "preprocessing says the formula can't be satisfied:\n" + preprocessor);
+			checkClose(0.0, exact(simplified), "the formula that can't be satisfied never succeeds");
+			checkClose(0.0, new SsatSolver(simplified, options()).solve().getProbability(), "the solver finds the formula that can't be satisfied never succeeds");
+		}
+	}
+}
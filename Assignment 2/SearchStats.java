@@ -0,0 +1,187 @@
+/**
+ * SearchStats.java
+ * @author William Richard willster3021@gmail.com
+ * Counts where a solver spends its effort: how many nodes of the search tree it explored,
+ * how many variables were assigned as units, as pure, and by branching, how many times it
+ * backed up the tree and ran into a conflict, how deep it got, and how long it spent
+ * updating the clauses when variables were assigned and unassigned, compared to checking
+ * if the formula was SAT or UNSAT.
+ *
+ * A solver only keeps these if it is asked to (see SolverOptions.stats), so when they
+ * aren't wanted they don't cost anything but a null check.  Each solver working in parallel
+ * keeps its own, and they are added together when its branch is done.
+ */
+public class SearchStats {
+
+	//how many nodes of the search tree were explored
+	private long nodes;
+	//how many variables were assigned because they were in unit clauses, because they were pure,
+	//and by branching on them
+	private long units;
+	private long pures;
+	private long branches;
+	//how many times the search went back up the tree to a node, and how many nodes were UNSAT
+	private long backtracks;
+	private long conflicts;
+	//the most variables that were assigned at once
+	private int maxDepth;
+	//how long was spent, in nanoseconds, updating the clauses when variables were assigned or
+	//unassigned, and checking if the formula was SAT or UNSAT
+	private long assignNanos;
+	private long checkNanos;
+
+	/**
+	 * Counts a node of the search tree.
+	 * @param depth - how many variables are assigned at the node
+	 */
+	public void countNode(int depth) {
+		nodes++;
+		if(depth > maxDepth) maxDepth = depth;
+	}
+
+	/**
+	 * Counts a variable assigned because it was in a unit clause.
+	 */
+	public void countUnit() {
+		units++;
+	}
+
+	/**
+	 * Counts a variable assigned because it was pure.
+	 */
+	public void countPure() {
+		pures++;
+	}
+
+	/**
+	 * Counts a branch started on a choice or chance variable.
+	 */
+	public void countBranch() {
+		branches++;
+	}
+
+	/**
+	 * Counts the search going back up to a node once the branch under it is done.
+	 */
+	public void countBacktrack() {
+		backtracks++;
+	}
+
+	/**
+	 * Counts a node where the formula was UNSAT.
+	 */
+	public void countConflict() {
+		conflicts++;
+	}
+
+	/**
+	 * @param nanos - how long was just spent assigning or unassigning a variable
+	 */
+	public void addAssignTime(long nanos) {
+		assignNanos += nanos;
+	}
+
+	/**
+	 * @param nanos - how long was just spent checking if the formula was SAT or UNSAT
+	 */
+	public void addCheckTime(long nanos) {
+		checkNanos += nanos;
+	}
+
+	/**
+	 * Adds in the stats of a solver that solved a branch in parallel.
+	 * @param other
+	 */
+	public void add(SearchStats other) {
+		nodes += other.nodes;
+		units += other.units;
+		pures += other.pures;
+		branches += other.branches;
+		backtracks += other.backtracks;
+		conflicts += other.conflicts;
+		maxDepth = Math.max(maxDepth, other.maxDepth);
+		assignNanos += other.assignNanos;
+		checkNanos += other.checkNanos;
+	}
+
+	/**
+	 * @return how many nodes of the search tree were explored
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @return how many variables were assigned because they were in unit clauses
+	 */
+	public long getUnits() {
+		return units;
+	}
+
+	/**
+	 * @return how many variables were assigned because they were pure
+	 */
+	public long getPures() {
+		return pures;
+	}
+
+	/**
+	 * @return how many branches were started on choice and chance variables
+	 */
+	public long getBranches() {
+		return branches;
+	}
+
+	/**
+	 * @return how many times the search went back up the tree
+	 */
+	public long getBacktracks() {
+		return backtracks;
+	}
+
+	/**
+	 * @return how many nodes were UNSAT
+	 */
+	public long getConflicts() {
+		return conflicts;
+	}
+
+	/**
+	 * @return the most variables that were assigned at once
+	 */
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * @return how long was spent updating the clauses when variables were assigned or unassigned, in nanoseconds
+	 */
+	public long getAssignNanos() {
+		return assignNanos;
+	}
+
+	/**
+	 * @return how long was spent checking if the formula was SAT or UNSAT, in nanoseconds
+	 */
+	public long getCheckNanos() {
+		return checkNanos;
+	}
+
+	/**
+	 * @return the stats as a JSON object, with the times in milliseconds
+	 */
+	public String toJson() {
+		return "{\"nodes\":" + nodes + ",\"units\":" + units + ",\"pures\":" + pures + ",\"branches\":" + branches +
+				",\"backtracks\":" + backtracks + ",\"conflicts\":" + conflicts + ",\"max_depth\":" + maxDepth +
+				",\"assign_ms\":" + (assignNanos / 1000000) + ",\"check_ms\":" + (checkNanos / 1000000) + "}";
+	}
+
+	/**
+	 * @return the stats on one line, for watching the search as it goes
+	 */
+	public String toString() {
+		return "Nodes = " + nodes + ", units = " + units + ", pures = " + pures + ", branches = " + branches +
+				", backtracks = " + backtracks + ", conflicts = " + conflicts + ", max depth = " + maxDepth +
+				", assigning = " + (assignNanos / 1000000) + " ms, checking = " + (checkNanos / 1000000) + " ms";
+	}
+}
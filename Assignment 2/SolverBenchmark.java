@@ -0,0 +1,222 @@
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+import java.util.Vector;
+
+/**
+ * SolverBenchmark.java
+ * @author William Richard willster3021@gmail.com
+ * Times the solver on random formulas from SsatGenerator, for a range of sizes, so we can see
+ * how it scales and if a change made it faster or slower.
+ *
+ * For each size, it times three things:
+ * parse - reading the formula with SsatParser
+ * propagate - assigning variables in the ClauseDatabase, and the units that follows from them,
+ *   until the formula is SAT or UNSAT, and then unassigning them all.  This is the work of
+ *   updating the clauses that every node of the search does.
+ * solve - finding the best plan, from start to end
+ *
+ * Usage: java SolverBenchmark [-vars <n,n,...>] [-ratio <clauses per variable>] [-width <n>] [-chance <fraction>]
+ *                             [-order <order>] [-window <n>] [-seed <n>] [-instances <n>] [-repeat <n>] [-csv <file>] [solver options]
+ * Each size is timed on that many instances, made with seeds seed, seed + 1, ...
+ * -repeat is how many times to time each instance.  The first time is not counted, so the JIT has warmed up.
+ * -csv adds a line for each size to the file, so the results can be kept from one version to the next.
+ * Any other options are passed on to the solver, e.g. -cache 0 or -nocomponents.
+ */
+public class SolverBenchmark {
+
+	//how many times to go down to a SAT or UNSAT formula and back up for each propagate timing
+	private static final int PROPAGATE_DESCENTS = 1000;
+
+	public static void main(String[] args) throws IOException {
+		int[] sizes = {20, 30, 40, 50};
+		double ratio = 4.26;
+		int width = 3;
+		double chanceFraction = 0.5;
+		int order = SsatGenerator.ORDER_ALTERNATE;
+		int window = 0;
+		long seed = 42;
+		int instances = 3;
+		int repeat = 3;
+		String csvFile = null;
+		SolverOptions options = null;
+		try {
+			Vector<String> solverArgs = new Vector<String>();
+			for(int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if(arg.equals("-vars")) {
+					String[] parts = nextArgument(args, i++).split(",");
+					sizes = new int[parts.length];
+					for(int s = 0; s < parts.length; s++) sizes[s] = Integer.parseInt(parts[s].trim());
+				}
+				else if(arg.equals("-ratio")) ratio = Double.parseDouble(nextArgument(args, i++));
+				else if(arg.equals("-width")) width = Integer.parseInt(nextArgument(args, i++));
+				else if(arg.equals("-chance")) chanceFraction = Double.parseDouble(nextArgument(args, i++));
+				else if(arg.equals("-order")) order = SsatGenerator.parseOrder(nextArgument(args, i++));
+				else if(arg.equals("-window")) window = Integer.parseInt(nextArgument(args, i++));
+				else if(arg.equals("-seed")) seed = Long.parseLong(nextArgument(args, i++));
+				else if(arg.equals("-instances")) instances = Integer.parseInt(nextArgument(args, i++));
+				else if(arg.equals("-repeat")) repeat = Integer.parseInt(nextArgument(args, i++));
+				else if(arg.equals("-csv")) csvFile = nextArgument(args, i++);
+				else solverArgs.add(arg);
+			}
+			if(instances < 1 || repeat < 1) throw new IllegalArgumentException("-instances and -repeat have to be at least 1");
+			//the solver options want a file, but the formulas don't come from one
+			solverArgs.add("benchmark");
+			options = new SolverOptions(solverArgs.toArray(new String[solverArgs.size()]));
+			if(options.planFile != null || options.anytime || options.progressSeconds > 0)
+				throw new IllegalArgumentException("-plan, -anytime and -progress can't be used in the benchmark");
+		} catch(IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			System.out.println("Usage: java SolverBenchmark [-vars <n,n,...>] [-ratio <clauses per variable>] [-width <n>] [-chance <fraction>]");
+			System.out.println("                            [-order <order>] [-window <n>] [-seed <n>] [-instances <n>] [-repeat <n>] [-csv <file>] [solver options]");
+			System.exit(1);
+		}
+
+		PrintWriter csv = null;
+		if(csvFile != null) {
+			boolean exists = new File(csvFile).length() > 0;
+			csv = new PrintWriter(new FileWriter(csvFile, true));
+			if(!exists) csv.println("vars,clauses,width,chance,order,window,seed,instances,parse_ms,propagate_ns_per_assignment,solve_ms,nodes");
+		}
+
+		System.out.println("  vars  clauses    parse ms  ns/assignment    solve ms       nodes");
+		try {
+			for(int numVars : sizes) {
+				int numClauses = (int) Math.round(numVars * ratio);
+				double parseSeconds = 0;
+				double propagateNanos = 0;
+				double solveSeconds = 0;
+				long nodes = 0;
+				for(int n = 0; n < instances; n++) {
+					byte[] formula = new SsatGenerator(numVars, numClauses, width, chanceFraction, order, window, seed + n).toBytes();
+					parseSeconds += timeParse(formula, repeat);
+					propagateNanos += timePropagate(formula, repeat, new Random(seed + n));
+					long[] solveNodes = new long[1];
+					solveSeconds += timeSolve(formula, repeat, options, solveNodes);
+					nodes += solveNodes[0];
+				}
+				parseSeconds /= instances;
+				propagateNanos /= instances;
+				solveSeconds /= instances;
+				nodes /= instances;
+
+				System.out.printf("%6d %8d %11.3f %14.1f %11.3f %11d%n", numVars, numClauses, parseSeconds * 1000, propagateNanos, solveSeconds * 1000, nodes);
+				if(csv != null) {
+					csv.printf("%d,%d,%d,%s,%s,%d,%d,%d,%.3f,%.1f,%.3f,%d%n", numVars, numClauses, width, chanceFraction, SsatGenerator.orderName(order), window, seed, instances,
+							parseSeconds * 1000, propagateNanos, solveSeconds * 1000, nodes);
+					csv.flush();
+				}
+			}
+		} finally {
+			if(csv != null) csv.close();
+		}
+	}
+
+	/**
+	 * @param formula - the bytes of a ssat file
+	 * @param repeat - how many times to read it, not counting the first
+	 * @return the average number of seconds each read took
+	 * @throws IOException
+	 */
+	private static double timeParse(byte[] formula, int repeat) throws IOException {
+		long total = 0;
+		for(int i = 0; i <= repeat; i++) {
+			long start = System.nanoTime();
+			SsatParser.parse(new ByteArrayInputStream(formula));
+			//the first read warms up the JIT
+			if(i > 0) total += System.nanoTime() - start;
+		}
+		return total / 1e9 / repeat;
+	}
+
+	/**
+	 * Goes down to a SAT or UNSAT formula PROPAGATE_DESCENTS times, assigning random variables
+	 * random values and propagating the units after each one, and backs all the way up each time.
+	 * @param formula - the bytes of a ssat file
+	 * @param repeat - how many times to time it, not counting the first
+	 * @param random - picks the variables and values
+	 * @return the average number of nanoseconds each assignment took, including unassigning it
+	 * @throws IOException
+	 */
+	private static double timePropagate(byte[] formula, int repeat, Random random) throws IOException {
+		ClauseDatabase database = SsatParser.parse(new ByteArrayInputStream(formula));
+		int numVars = database.getNumVariables();
+		int[] order = new int[numVars];
+		for(int v = 0; v < numVars; v++) order[v] = v + 1;
+
+		long total = 0;
+		long assignments = 0;
+		for(int i = 0; i <= repeat; i++) {
+			long start = System.nanoTime();
+			long assigned = 0;
+			for(int d = 0; d < PROPAGATE_DESCENTS; d++) {
+				//pick the order to branch on as we go, like a shuffle
+				for(int next = 0; next < numVars && !database.isFormulaSAT() && !database.isFormulaUnSAT(); next++) {
+					int j = next + random.nextInt(numVars - next);
+					int name = order[j];
+					order[j] = order[next];
+					order[next] = name;
+					if(database.getAssignment(name) != Variable.UNASSIGNED) continue;
+
+					database.assign(name, random.nextBoolean() ? Variable.TRUE : Variable.FALSE);
+					assigned++;
+					int unit;
+					while(!database.isFormulaUnSAT() && (unit = database.pollUnit(null)) != 0) {
+						database.assignUnit(unit);
+						assigned++;
+					}
+				}
+				//back all the way up
+				while(database.getTrailSize() > 0) {
+					database.unassign(database.getTrailVariable(database.getTrailSize() - 1));
+				}
+				database.clearUnitQueue();
+			}
+			//the first time warms up the JIT
+			if(i > 0) {
+				total += System.nanoTime() - start;
+				assignments += assigned;
+			}
+		}
+		return assignments == 0 ? 0.0 : (double) total / assignments;
+	}
+
+	/**
+	 * @param formula - the bytes of a ssat file
+	 * @param repeat - how many times to solve it, not counting the first
+	 * @param options - how to solve it
+	 * @param nodes - the number of nodes the search explored is put in nodes[0]
+	 * @return the average number of seconds each solve took, not counting reading the formula
+	 * @throws IOException
+	 */
+	private static double timeSolve(byte[] formula, int repeat, SolverOptions options, long[] nodes) throws IOException {
+		long total = 0;
+		for(int i = 0; i <= repeat; i++) {
+			//the solver changes the formula as it goes, and caches what it finds, so each time starts over
+			SsatSolver solver = new SsatSolver(SsatParser.parse(new ByteArrayInputStream(formula)), options);
+			long start = System.nanoTime();
+			if(options.hasThreshold()) solver.solveThreshold(options.threshold);
+			else if(options.probabilityOnly) solver.solveProbability();
+			else solver.solve();
+			//the first time warms up the JIT
+			if(i > 0) total += System.nanoTime() - start;
+			nodes[0] = solver.getNodes();
+		}
+		return total / 1e9 / repeat;
+	}
+
+	/**
+	 * @param args
+	 * @param i - the index of an option that needs a value
+	 * @return the value after it
+	 * @throws IllegalArgumentException if there isn't one
+	 */
+	private static String nextArgument(String[] args, int i) {
+		if(i + 1 >= args.length) throw new IllegalArgumentException("Missing value after " + args[i]);
+		return args[i + 1];
+	}
+}
@@ -0,0 +1,235 @@
+/**
+ * SolverOptions.java
+ * @author William Richard willster3021@gmail.com
+ * Holds the settings for the SSAT solver, read in from the command line.
+ * Anything that isn't passed keeps its default value.
+ */
+public class SolverOptions {
+
+	//the ssat file to solve
+	public String fileLocation = null;
+
+	//how much memory, in megabytes, the cache of solved sub-formulas may use.
+	//0 turns the cache off.
+	public int cacheMegabytes = 64;
+
+	//how much memory, in megabytes, the clauses learned from conflicts may use.
+	//0 turns learning off.
+	public int learnMegabytes = 16;
+
+	//if the residual formula should be split into independent components
+	public boolean useComponents = true;
+
+	//if only the probability of success should be worked out, without making the plan
+	public boolean probabilityOnly = false;
+
+	//if set, only find out if the best plan succeeds with at least this probability,
+	//instead of working out what its probability is.  NaN if not set.
+	public double threshold = Double.NaN;
+
+	//where to write the plan, or null to print out its assignments instead
+	public String planFile = null;
+
+	//where to write the formula compiled into a DecisionDiagram, or null to solve it as usual
+	public String compileFile = null;
+
+	//if set, estimate the probability of success by sampling the chance variables, until the
+	//95% confidence interval is no more than this either side of the estimate.  NaN if not set.
+	//See MonteCarloSampler.
+	public double samplePrecision = Double.NaN;
+
+	//the most samples to take
+	public long maxSamples = 1000000;
+
+	//the seed for the samples' random numbers
+	public long seed = 1;
+
+	//which steps of preprocessing to simplify the formula with before it is solved.  See Preprocessor.
+	public boolean preprocessUnits = false;
+	public boolean preprocessSubsume = false;
+	public boolean preprocessStrengthen = false;
+	public boolean preprocessPure = false;
+
+	//how many threads to search with
+	public int threads = 1;
+
+	//how many seconds the search may take before giving up, or 0 for as long as it needs
+	public double timeoutSeconds = 0;
+
+	//how many nodes of the search tree may be explored before giving up, or 0 for as many as it takes
+	public long nodeLimit = 0;
+
+	//if the search should keep track of the best plan found so far, and stop with it instead of
+	//giving up when the time or nodes run out
+	public boolean anytime = false;
+
+	//for an anytime search, how many seconds apart to report the bounds on the probability, or 0 to not report them
+	public double reportSeconds = 0;
+
+	//if the search should count where it spends its effort.  See SearchStats.
+	public boolean stats = false;
+
+	//how many seconds apart to print the stats while searching, or 0 to not print them
+	public double progressSeconds = 0;
+
+	/**
+	 * Constructor that uses all the default values.
+	 */
+	public SolverOptions() {
+	}
+
+	/**
+	 * Constructor that extracts values from main method argument string.
+	 * Options start with a "-", and the one argument that doesn't is the ssat file.
+	 * @param args
+	 * @throws IllegalArgumentException if the arguments don't make sense
+	 */
+	public SolverOptions(String[] args) {
+		for(int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if(arg.equals("-cache")) {
+				cacheMegabytes = Integer.parseInt(nextArgument(args, i++));
+				if(cacheMegabytes < 0) throw new IllegalArgumentException("The cache size can't be negative");
+			} else if(arg.equals("-learn")) {
+				learnMegabytes = Integer.parseInt(nextArgument(args, i++));
+				if(learnMegabytes < 0) throw new IllegalArgumentException("The learned clause memory can't be negative");
+			} else if(arg.equals("-nocomponents")) {
+				useComponents = false;
+			} else if(arg.equals("-plan")) {
+				planFile = nextArgument(args, i++);
+			} else if(arg.equals("-compile")) {
+				compileFile = nextArgument(args, i++);
+			} else if(arg.equals("-sample")) {
+				samplePrecision = Double.parseDouble(nextArgument(args, i++));
+				if(!(samplePrecision > 0)) throw new IllegalArgumentException("The precision has to be more than 0");
+			} else if(arg.equals("-samples")) {
+				maxSamples = Long.parseLong(nextArgument(args, i++));
+				if(maxSamples < 1) throw new IllegalArgumentException("There has to be at least 1 sample");
+			} else if(arg.equals("-seed")) {
+				seed = Long.parseLong(nextArgument(args, i++));
+			} else if(arg.equals("-preprocess")) {
+				for(String step : nextArgument(args, i++).split(",")) {
+					if(step.equals("all")) {
+						preprocessUnits = preprocessSubsume = preprocessStrengthen = preprocessPure = true;
+					} else if(step.equals("units")) {
+						preprocessUnits = true;
+					} else if(step.equals("subsume")) {
+						preprocessSubsume = true;
+					} else if(step.equals("strengthen")) {
+						preprocessStrengthen = true;
+					} else if(step.equals("pure")) {
+						preprocessPure = true;
+					} else {
+						throw new IllegalArgumentException("Unknown preprocessing step '" + step + "' - it has to be units, subsume, strengthen, pure or all");
+					}
+				}
+			} else if(arg.equals("-threads")) {
+				threads = Integer.parseInt(nextArgument(args, i++));
+				if(threads < 1) throw new IllegalArgumentException("There has to be at least 1 thread");
+			} else if(arg.equals("-timeout")) {
+				timeoutSeconds = Double.parseDouble(nextArgument(args, i++));
+				if(timeoutSeconds < 0) throw new IllegalArgumentException("The timeout can't be negative");
+			} else if(arg.equals("-nodes")) {
+				nodeLimit = Long.parseLong(nextArgument(args, i++));
+				if(nodeLimit < 0) throw new IllegalArgumentException("The node limit can't be negative");
+			} else if(arg.equals("-anytime")) {
+				anytime = true;
+				reportSeconds = Double.parseDouble(nextArgument(args, i++));
+				if(reportSeconds < 0) throw new IllegalArgumentException("The report interval can't be negative");
+			} else if(arg.equals("-stats")) {
+				stats = true;
+			} else if(arg.equals("-progress")) {
+				//the progress lines are the stats
+				stats = true;
+				progressSeconds = Double.parseDouble(nextArgument(args, i++));
+				if(progressSeconds <= 0) throw new IllegalArgumentException("The progress interval has to be more than 0");
+			} else if(arg.equals("-probonly")) {
+				probabilityOnly = true;
+			} else if(arg.equals("-threshold")) {
+				threshold = Double.parseDouble(nextArgument(args, i++));
+				if(Double.isNaN(threshold)) throw new IllegalArgumentException("The threshold has to be a number");
+			} else if(arg.startsWith("-")) {
+				throw new IllegalArgumentException("Unknown option '" + arg + "'");
+			} else if(fileLocation == null) {
+				fileLocation = arg;
+			} else {
+				throw new IllegalArgumentException("Only one ssat file can be given");
+			}
+		}
+
+		if(fileLocation == null) throw new IllegalArgumentException("No ssat file given");
+		if(hasThreshold() && planFile != null) throw new IllegalArgumentException("-plan can't be used with -threshold");
+		if(anytime && hasThreshold()) throw new IllegalArgumentException("-anytime can't be used with -threshold");
+		//the bounds come from the search stack, and each thread has its own
+		if(anytime && threads > 1) throw new IllegalArgumentException("-anytime can only search with 1 thread");
+		//and so does the count of nodes
+		if(nodeLimit > 0 && threads > 1) throw new IllegalArgumentException("-nodes can only be used with 1 thread");
+		//the diagram is checked against the formula in the ssat file, so it has to be compiled from that
+		if(compileFile != null && (preprocesses() || planFile != null || hasThreshold() || anytime || probabilityOnly || threads > 1 || nodeLimit > 0 || stats)) {
+			throw new IllegalArgumentException("-compile can only be used with -cache, -nocomponents and -timeout");
+		}
+		if(isSampling() && (compileFile != null || planFile != null || hasThreshold() || anytime || probabilityOnly || nodeLimit > 0 || stats)) {
+			throw new IllegalArgumentException("-sample can only be used with -samples, -seed, -threads, -timeout, -cache, -learn, -nocomponents and -preprocess");
+		}
+	}
+
+	/**
+	 * @return if the probability of success should be estimated by sampling, instead of worked out exactly
+	 */
+	public boolean isSampling() {
+		return ! Double.isNaN(samplePrecision);
+	}
+
+	/**
+	 * @return if any of the preprocessing steps are turned on
+	 */
+	public boolean preprocesses() {
+		return preprocessUnits || preprocessSubsume || preprocessStrengthen || preprocessPure;
+	}
+
+	/**
+	 * @return if only the question of whether the threshold is met should be answered
+	 */
+	public boolean hasThreshold() {
+		return ! Double.isNaN(threshold);
+	}
+
+	/**
+	 * @param args
+	 * @param i - the index of an option that needs a value
+	 * @return the value after the option
+	 */
+	private static String nextArgument(String[] args, int i) {
+		if(i + 1 >= args.length) throw new IllegalArgumentException("Option '" + args[i] + "' needs a value");
+		return args[i + 1];
+	}
+
+	/**
+	 * @return how to use the solver from the command line
+	 */
+	public static String getUsage() {
+		return "Correct usage: java SsatSolver [options] <ssat file>\n" +
+				"Options:\n" +
+				"  -cache <megabytes>\tmemory for caching solved sub-formulas, 0 to turn off (default 64)\n" +
+				"  -learn <megabytes>\tmemory for clauses learned from conflicts, 0 to turn off (default 16)\n" +
+				"  -nocomponents\t\tdon't split the residual formula into independent components\n" +
+				"  -probonly\t\tonly work out the probability of success, not the plan\n" +
+				"  -threshold <p>\tonly find out if the probability of success is at least p\n" +
+				"  -plan <file>\t\twrite the plan to a compact binary file instead of printing it\n" +
+				"  -compile <file>\tcompile the formula into a decision diagram that can be solved again\n" +
+				"\t\t\twith other chance probabilities, and write it to the file\n" +
+				"  -sample <precision>\testimate the probability of success by sampling the chance variables,\n" +
+				"\t\t\tuntil the 95% confidence interval is within precision of it\n" +
+				"  -samples <n>\t\tthe most samples to take (default 1000000)\n" +
+				"  -seed <n>\t\tthe seed for the samples (default 1)\n" +
+				"  -preprocess <steps>\tsimplify the formula before solving it, with a comma separated list of\n" +
+				"\t\t\tunits, subsume, strengthen and pure, or all of them\n" +
+				"  -threads <n>\t\thow many threads to search with (default 1)\n" +
+				"  -timeout <seconds>\tgive up if the search takes longer than this\n" +
+				"  -nodes <n>\t\tgive up after exploring n nodes of the search tree\n" +
+				"  -anytime <seconds>\tprint bounds on the probability this often, and when the time or\n" +
+				"\t\t\tnodes run out, stop with the best plan found so far instead of giving up\n" +
+				"  -stats\t\tcount where the search spends its effort, and print it as JSON at the end\n" +
+				"  -progress <seconds>\tprint the counts this often while searching";
+	}
+}
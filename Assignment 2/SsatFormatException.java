@@ -0,0 +1,40 @@
+import java.io.IOException;
+
+/**
+ * SsatFormatException.java
+ * @author William Richard willster3021@gmail.com
+ * Thrown when a ssat file isn't in the format discussed in the lab.
+ */
+public class SsatFormatException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	//the line of the file the problem is on, or -1 if we don't know
+	private int line;
+
+	/**
+	 * Constructor.
+	 * @param message - what was wrong with the file
+	 */
+	public SsatFormatException(String message) {
+		super(message);
+		line = -1;
+	}
+
+	/**
+	 * Constructor.
+	 * @param line - the line of the file the problem is on, starting from 1
+	 * @param message - what was wrong with the file
+	 */
+	public SsatFormatException(int line, String message) {
+		super("Line " + line + ": " + message);
+		this.line = line;
+	}
+
+	/**
+	 * @return the line of the file the problem is on, or -1 if we don't know
+	 */
+	public int getLine() {
+		return line;
+	}
+}
@@ -0,0 +1,272 @@
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * SsatGenerator.java
+ * @author William Richard willster3021@gmail.com
+ * Makes random ssat formulas, for timing the solver on formulas of different sizes.
+ * The same settings and seed always make the same formula, so timings can be compared
+ * from one version of the solver to the next.
+ *
+ * Each clause has width different variables, each negated half of the time.  The variables
+ * are either picked from all of them, or, for a structured formula, from a window of nearby
+ * variables, so the formula is more like a plan, where each step only depends on the steps
+ * around it, and splits into components as the search goes.
+ *
+ * Since the variables are quantified in the order of their names, the order decides which
+ * of them are chance variables: picked at random, spread out evenly, or all the choice
+ * variables first, or all the chance variables first.
+ *
+ * Usage: java SsatGenerator [-vars <n>] [-clauses <n>] [-width <n>] [-chance <fraction>]
+ *                           [-order random|alternate|choicefirst|chancefirst] [-window <n>] [-seed <n>] [file]
+ * The formula is printed if no file is given.
+ */
+public class SsatGenerator {
+
+	//the ways the chance variables can be put in the quantifier order
+	public static final int ORDER_RANDOM = 0;
+	public static final int ORDER_ALTERNATE = 1;
+	public static final int ORDER_CHOICE_FIRST = 2;
+	public static final int ORDER_CHANCE_FIRST = 3;
+	private static final String[] ORDER_NAMES = {"random", "alternate", "choicefirst", "chancefirst"};
+
+	private int numVars;
+	private int numClauses;
+	private int width;
+	//the fraction of the variables that are chance variables
+	private double chanceFraction;
+	private int order;
+	//how many nearby variables a clause picks from, or 0 to pick from all of them
+	private int window;
+	private long seed;
+
+	/**
+	 * Constructor.
+	 * @param numVars - how many variables
+	 * @param numClauses - how many clauses
+	 * @param width - how many literals in each clause
+	 * @param chanceFraction - the fraction of the variables that are chance variables, from 0 to 1
+	 * @param order - one of the ORDER constants
+	 * @param window - how many nearby variables each clause picks from, or 0 to pick from all of them
+	 * @param seed - for the random numbers
+	 * @throws IllegalArgumentException if the settings don't make sense
+	 */
+	public SsatGenerator(int numVars, int numClauses, int width, double chanceFraction, int order, int window, long seed) {
+		if(numVars < 1 || numClauses < 0) throw new IllegalArgumentException("There has to be at least 1 variable, and the clauses can't be negative");
+		if(width < 1 || width > numVars) throw new IllegalArgumentException("The clause width has to be between 1 and the number of variables");
+		if(!(chanceFraction >= 0.0 && chanceFraction <= 1.0)) throw new IllegalArgumentException("The chance fraction has to be between 0 and 1");
+		if(order < ORDER_RANDOM || order > ORDER_CHANCE_FIRST) throw new IllegalArgumentException("Unknown order " + order);
+		if(window != 0 && (window < width || window > numVars)) throw new IllegalArgumentException("The window has to be between the clause width and the number of variables");
+		this.numVars = numVars;
+		this.numClauses = numClauses;
+		this.width = width;
+		this.chanceFraction = chanceFraction;
+		this.order = order;
+		this.window = window;
+		this.seed = seed;
+	}
+
+	/**
+	 * @param name - random, alternate, choicefirst or chancefirst
+	 * @return the ORDER constant with that name
+	 * @throws IllegalArgumentException if there isn't one
+	 */
+	public static int parseOrder(String name) {
+		for(int i = 0; i < ORDER_NAMES.length; i++) {
+			if(ORDER_NAMES[i].equals(name)) return i;
+		}
+		throw new IllegalArgumentException("Unknown order '" + name + "' - it has to be random, alternate, choicefirst or chancefirst");
+	}
+
+	/**
+	 * @param order - one of the ORDER constants
+	 * @return its name, the way parseOrder takes it
+	 */
+	public static String orderName(int order) {
+		return ORDER_NAMES[order];
+	}
+
+	/**
+	 * Writes the formula in the ssat format.
+	 * @param out - where to write it.  It isn't closed.
+	 * @throws IOException
+	 */
+	public void write(Writer out) throws IOException {
+		Random random = new Random(seed);
+		boolean[] chance = pickChance(random);
+
+		out.write("c random formula: " + numVars + " variables, " + numClauses + " clauses of width " + width +
+				", chance fraction " + chanceFraction + ", order " + ORDER_NAMES[order] + ", window " + window + ", seed " + seed + "\n");
+		out.write("p cnf " + numVars + " " + numClauses + "\n");
+		StringBuilder clause = new StringBuilder();
+		int[] names = new int[width];
+		for(int c = 0; c < numClauses; c++) {
+			clause.setLength(0);
+			//the variables are picked from first + 1 to first + span
+			int span = window == 0 ? numVars : window;
+			int first = window == 0 ? 0 : random.nextInt(numVars - window + 1);
+			for(int l = 0; l < width; l++) {
+				//a variable can't be in a clause twice
+				int name;
+				boolean used;
+				do {
+					name = first + random.nextInt(span) + 1;
+					used = false;
+					for(int k = 0; k < l; k++) used |= names[k] == name;
+				} while(used);
+				names[l] = name;
+				clause.append(random.nextBoolean() ? name : -name).append(' ');
+			}
+			clause.append("0\n");
+			out.write(clause.toString());
+		}
+		for(int v = 1; v <= numVars; v++) {
+			if(chance[v]) out.write(v + " " + (random.nextInt(999) + 1) / 1000.0 + "\n");
+			else out.write(v + " -1\n");
+		}
+	}
+
+	/**
+	 * @param random
+	 * @return which of the variables are chance variables, with a dummy in the 0th index
+	 */
+	private boolean[] pickChance(Random random) {
+		boolean[] chance = new boolean[numVars + 1];
+		int numChance = (int) Math.round(chanceFraction * numVars);
+		switch(order) {
+		case ORDER_RANDOM:
+			//the first numChance of a random shuffle
+			int[] names = new int[numVars];
+			for(int i = 0; i < numVars; i++) names[i] = i + 1;
+			for(int i = 0; i < numChance; i++) {
+				int j = i + random.nextInt(numVars - i);
+				int swap = names[i];
+				names[i] = names[j];
+				names[j] = swap;
+				chance[names[i]] = true;
+			}
+			break;
+		case ORDER_ALTERNATE:
+			//a variable is chance each time another fraction of a chance variable has built up
+			for(int v = 1; v <= numVars; v++) {
+				chance[v] = (long) v * numChance / numVars != (long) (v - 1) * numChance / numVars;
+			}
+			break;
+		case ORDER_CHOICE_FIRST:
+			for(int v = numVars - numChance + 1; v <= numVars; v++) chance[v] = true;
+			break;
+		default:
+			for(int v = 1; v <= numChance; v++) chance[v] = true;
+		}
+		return chance;
+	}
+
+	/**
+	 * @return the formula in the ssat format
+	 */
+	public String toString() {
+		StringWriter out = new StringWriter();
+		try {
+			write(out);
+		} catch(IOException e) {
+			//a StringWriter doesn't throw
+			throw new IllegalStateException(e);
+		}
+		return out.toString();
+	}
+
+	/**
+	 * @return the formula as the bytes of a ssat file, so it can be read without going to disk
+	 */
+	public byte[] toBytes() {
+		try {
+			return toString().getBytes("US-ASCII");
+		} catch(IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return the formula, read in and ready to be solved
+	 */
+	public ClauseDatabase generate() {
+		try {
+			return SsatParser.parse(new ByteArrayInputStream(toBytes()));
+		} catch(IOException e) {
+			//what we wrote is always in the right format
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Writes the formula to a file.
+	 * @param file
+	 * @throws IOException
+	 */
+	public void writeFile(File file) throws IOException {
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "US-ASCII"));
+		try {
+			write(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		int numVars = 50;
+		int numClauses = -1;
+		int width = 3;
+		double chanceFraction = 0.5;
+		int order = ORDER_ALTERNATE;
+		int window = 0;
+		long seed = 42;
+		String fileLocation = null;
+		SsatGenerator generator = null;
+		try {
+			for(int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if(arg.equals("-vars")) numVars = Integer.parseInt(nextArgument(args, i++));
+				else if(arg.equals("-clauses")) numClauses = Integer.parseInt(nextArgument(args, i++));
+				else if(arg.equals("-width")) width = Integer.parseInt(nextArgument(args, i++));
+				else if(arg.equals("-chance")) chanceFraction = Double.parseDouble(nextArgument(args, i++));
+				else if(arg.equals("-order")) order = parseOrder(nextArgument(args, i++));
+				else if(arg.equals("-window")) window = Integer.parseInt(nextArgument(args, i++));
+				else if(arg.equals("-seed")) seed = Long.parseLong(nextArgument(args, i++));
+				else if(arg.startsWith("-") || fileLocation != null) throw new IllegalArgumentException("Unknown argument '" + arg + "'");
+				else fileLocation = arg;
+			}
+			//by default, about where random 3-SAT formulas go from mostly satisfiable to mostly not
+			if(numClauses < 0) numClauses = (int) Math.round(numVars * 4.26);
+			generator = new SsatGenerator(numVars, numClauses, width, chanceFraction, order, window, seed);
+		} catch(IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			System.out.println("Usage: java SsatGenerator [-vars <n>] [-clauses <n>] [-width <n>] [-chance <fraction>]");
+			System.out.println("                          [-order random|alternate|choicefirst|chancefirst] [-window <n>] [-seed <n>] [file]");
+			System.exit(1);
+		}
+
+		if(fileLocation == null) {
+			System.out.print(generator);
+		} else {
+			generator.writeFile(new File(fileLocation));
+		}
+	}
+
+	/**
+	 * @param args
+	 * @param i - the index of an option that needs a value
+	 * @return the value after it
+	 * @throws IllegalArgumentException if there isn't one
+	 */
+	private static String nextArgument(String[] args, int i) {
+		if(i + 1 >= args.length) throw new IllegalArgumentException("Missing value after " + args[i]);
+		return args[i + 1];
+	}
+}
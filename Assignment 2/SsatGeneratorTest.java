@@ -0,0 +1,127 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * SsatGeneratorTest.java
+ * @author William Richard willster3021@gmail.com
+ * Tests that the random formulas have the settings they were made with, and that the same
+ * seed always makes the same formula.
+ */
+public class SsatGeneratorTest extends SsatTest {
+
+	public static void main(String[] args) {
+		run(new SsatGeneratorTest());
+	}
+
+	protected void runChecks() throws Exception {
+		checkSeeds();
+		for(int order = SsatGenerator.ORDER_RANDOM; order <= SsatGenerator.ORDER_CHANCE_FIRST; order++) {
+			check(SsatGenerator.parseOrder(SsatGenerator.orderName(order)) == order, "the name of order " + order + " is read back in");
+			checkSettings(new SsatGenerator(40, 100, 3, 0.25, order, 0, order), 40, 100, 3, 10, order, 0);
+			checkSettings(new SsatGenerator(50, 80, 4, 0.5, order, 8, order + 10), 50, 80, 4, 25, order, 8);
+		}
+		checkSettings(new SsatGenerator(10, 5, 10, 1.0, SsatGenerator.ORDER_RANDOM, 0, 3), 10, 5, 10, 10, SsatGenerator.ORDER_RANDOM, 0);
+		checkSettings(new SsatGenerator(10, 0, 1, 0.0, SsatGenerator.ORDER_RANDOM, 0, 3), 10, 0, 1, 0, SsatGenerator.ORDER_RANDOM, 0);
+		checkBadSettings();
+	}
+
+	/**
+	 * The same seed makes the same formula, and another seed makes a different one.
+	 */
+	private void checkSeeds() throws IOException {
+		byte[] first = new SsatGenerator(30, 90, 3, 0.5, SsatGenerator.ORDER_RANDOM, 0, 42).toBytes();
+		byte[] again = new SsatGenerator(30, 90, 3, 0.5, SsatGenerator.ORDER_RANDOM, 0, 42).toBytes();
+		byte[] other = new SsatGenerator(30, 90, 3, 0.5, SsatGenerator.ORDER_RANDOM, 0, 43).toBytes();
+		check(Arrays.equals(first, again), "the same seed makes the same formula");
+		check(! Arrays.equals(first, other), "another seed makes a different formula");
+		check(new String(first).startsWith("c random formula"), "the formula starts with a comment saying how it was made");
+
+		SsatGenerator generator = new SsatGenerator(30, 90, 3, 0.5, SsatGenerator.ORDER_ALTERNATE, 5, 7);
+		ClauseDatabase made = generator.generate();
+		ClauseDatabase read = SsatParser.parse(new ByteArrayInputStream(generator.toBytes()));
+		boolean same = made.getNumVariables() == read.getNumVariables() && made.getNumClauses() == read.getNumClauses();
+		for(int c = 0; same && c < made.getNumClauses(); c++) {
+			same = made.getClauseEnd(c) - made.getClauseStart(c) == read.getClauseEnd(c) - read.getClauseStart(c);
+			for(int k = 0; same && k < made.getClauseEnd(c) - made.getClauseStart(c); k++) {
+				same = made.getLiteral(made.getClauseStart(c) + k) == read.getLiteral(read.getClauseStart(c) + k);
+			}
+		}
+		for(int name = 1; same && name <= made.getNumVariables(); name++) {
+			same = made.getVariable(name).isChoice() == read.getVariable(name).isChoice()
+					&& (made.getVariable(name).isChoice() || made.getVariable(name).getChanceTrue() == read.getVariable(name).getChanceTrue());
+		}
+		check(same, "generating the formula gives the same one as reading it in");
+	}
+
+	/**
+	 * Checks that a generated formula has the settings it was made with.
+	 * @param numChance - how many chance variables it should have
+	 */
+	private void checkSettings(SsatGenerator generator, int numVars, int numClauses, int width, int numChance, int order, int window) {
+		String what = "the formula with " + numVars + " variables, order " + SsatGenerator.orderName(order) + " and window " + window;
+		ClauseDatabase formula = generator.generate();
+		check(formula.getNumVariables() == numVars && formula.getNumClauses() == numClauses, what + " has the right number of clauses");
+
+		boolean clausesRight = true;
+		for(int c = 0; c < formula.getNumClauses(); c++) {
+			int start = formula.getClauseStart(c);
+			int end = formula.getClauseEnd(c);
+			int[] names = new int[end - start];
+			for(int p = start; p < end; p++) names[p - start] = Math.abs(formula.getLiteral(p));
+			Arrays.sort(names);
+			clausesRight &= names.length == width;
+			for(int k = 1; k < names.length; k++) clausesRight &= names[k] != names[k - 1];
+			if(window > 0) clausesRight &= names[names.length - 1] - names[0] < window;
+		}
+		check(clausesRight, what + " has clauses of " + width + " different variables" + (window > 0 ? " close together" : ""));
+
+		int chance = 0;
+		int firstChance = 0;
+		int lastChoice = 0;
+		int mostInARow = 0;
+		int inARow = 0;
+		for(int name = 1; name <= numVars; name++) {
+			Variable v = formula.getVariable(name);
+			check(v.isChoice() || (v.getChanceTrue() > 0 && v.getChanceTrue() < 1), what + ": variable " + name + " has a chance between 0 and 1");
+			if(v.isChance()) {
+				chance++;
+				if(firstChance == 0) firstChance = name;
+				inARow++;
+				mostInARow = Math.max(mostInARow, inARow);
+			} else {
+				lastChoice = name;
+				inARow = 0;
+			}
+		}
+		check(chance == numChance, what + " has " + chance + " chance variables instead of " + numChance);
+		if(order == SsatGenerator.ORDER_CHOICE_FIRST && numChance > 0) {
+			check(firstChance == numVars - numChance + 1, what + " has the chance variables last");
+		} else if(order == SsatGenerator.ORDER_CHANCE_FIRST && numChance < numVars) {
+			check(lastChoice == numVars, what + " has the chance variables first");
+		} else if(order == SsatGenerator.ORDER_ALTERNATE && numChance < numVars) {
+			check(mostInARow <= (numChance + numVars - numChance - 1) / (numVars - numChance), what + " has the chance variables spread out");
+		}
+	}
+
+	/**
+	 * Settings that don't make sense are an IllegalArgumentException.
+	 */
+	private void checkBadSettings() {
+		int[][] bad = {{0, 10, 1, 0}, {10, -1, 3, 0}, {10, 10, 0, 0}, {10, 10, 11, 0}, {10, 10, 3, 2}, {10, 10, 3, 11}};
+		for(int[] settings : bad) {
+			try {
+				new SsatGenerator(settings[0], settings[1], settings[2], 0.5, SsatGenerator.ORDER_RANDOM, settings[3], 1);
+				check(false, "the settings " + Arrays.toString(settings) + " should be an error");
+			} catch(IllegalArgumentException e) {
+				check(true, "the settings " + Arrays.toString(settings) + " are an error");
+			}
+		}
+		try {
+			SsatGenerator.parseOrder("backwards");
+			check(false, "an order that doesn't exist should be an error");
+		} catch(IllegalArgumentException e) {
+			check(true, "an order that doesn't exist is an error");
+		}
+	}
+}
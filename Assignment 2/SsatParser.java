@@ -0,0 +1,492 @@
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Vector;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * SsatParser.java
+ * @author William Richard willster3021@gmail.com
+ * Reads a formula in the ssat format discussed in the lab: comment lines starting with c,
+ * the problem line "p cnf <num variables> <num clauses>", the clauses, each ending with a 0,
+ * and then each variable followed by its value.
+ *
+ * The input is read a byte at a time and the numbers go straight into the ClauseDatabase,
+ * without making a String for each one like a Scanner does.  Plain files are memory mapped,
+ * and everything else, like pipes, is read through a channel into a buffer.  Gzipped input is recognised
+ * by its first two bytes, whatever the file is called.
+ *
+ * Anything wrong with the input is reported with an SsatFormatException that has the line number.
+ */
+public class SsatParser {
+
+	//how much to read from a channel at once
+	private static final int BUFFER_SIZE = 1 << 16;
+	//the first two bytes of a gzipped file
+	private static final int GZIP_MAGIC_1 = 0x1f;
+	private static final int GZIP_MAGIC_2 = 0x8b;
+	//numbers with more digits than this are handed to Double.parseDouble
+	private static final int MAX_FAST_DIGITS = 15;
+	//the powers of ten that doubles can hold exactly
+	private static final double[] POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1.0;
+		for(int i = 1; i < POWERS_OF_TEN.length; i++) POWERS_OF_TEN[i] = POWERS_OF_TEN[i-1] * 10;
+	}
+
+	//where the bytes come from - a mapped file, or a channel.  They are null once they run out.
+	private ByteBuffer mapped;
+	private ReadableByteChannel channel;
+	//the bytes being parsed, the next one to parse, and where they end
+	private byte[] bytes;
+	private int position;
+	private int limit;
+	//the line we are on, starting from 1
+	private int line;
+	//the last word read, and how long it is
+	private byte[] word;
+	private int wordLength;
+	//the System.nanoTime() to give up at, or 0 to take as long as it needs
+	private long deadline;
+
+	/**
+	 * Constructor.
+	 * @param mapped - a mapped file to read, or null
+	 * @param channel - a channel to read, or null
+	 * @param deadline - the System.nanoTime() to give up at, or 0 for no limit
+	 */
+	private SsatParser(ByteBuffer mapped, ReadableByteChannel channel, long deadline) {
+		this.mapped = mapped;
+		this.channel = channel;
+		this.deadline = deadline;
+		bytes = new byte[BUFFER_SIZE];
+		position = 0;
+		limit = 0;
+		line = 1;
+		word = new byte[32];
+		wordLength = 0;
+	}
+
+	/**
+	 * Reads a formula from a ssat file, which can be gzipped.
+	 * @param fileLocation
+	 * @return the formula, ready to be solved
+	 * @throws IOException if the file can't be read, or SsatFormatException if it isn't in the ssat format
+	 */
+	public static ClauseDatabase parse(String fileLocation) throws IOException {
+		return parse(fileLocation, 0);
+	}
+
+	/**
+	 * Reads a formula from a ssat file, giving up if it takes too long.
+	 * @param fileLocation
+	 * @param deadline - the System.nanoTime() to give up at, or 0 for no limit
+	 * @return the formula, ready to be solved
+	 * @throws IOException if the file can't be read, or SsatFormatException if it isn't in the ssat format
+	 * @throws SsatTimeoutException if it is still being read at the deadline
+	 */
+	public static ClauseDatabase parse(String fileLocation, long deadline) throws IOException {
+		//pipes and devices like /dev/stdin can't be mapped, or even seeked back to the start,
+		//so they are read as a stream
+		if(! new File(fileLocation).isFile()) {
+			InputStream in = new FileInputStream(fileLocation);
+			try {
+				return parse(in, deadline);
+			} finally {
+				in.close();
+			}
+		}
+
+		RandomAccessFile file = new RandomAccessFile(fileLocation, "r");
+		try {
+			FileChannel fileChannel = file.getChannel();
+			long size = fileChannel.size();
+
+			//look at the start to see if it is gzipped
+			ByteBuffer start = ByteBuffer.allocate(2);
+			while(start.hasRemaining() && fileChannel.read(start) >= 0) {}
+			boolean gzipped = start.position() == 2 && (start.get(0) & 0xff) == GZIP_MAGIC_1 && (start.get(1) & 0xff) == GZIP_MAGIC_2;
+			fileChannel.position(0);
+
+			if(gzipped) {
+				InputStream in = new GZIPInputStream(Channels.newInputStream(fileChannel), BUFFER_SIZE);
+				return new SsatParser(null, Channels.newChannel(in), deadline).readFormula();
+			} else if(size <= Integer.MAX_VALUE) {
+				return new SsatParser(fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, size), null, deadline).readFormula();
+			} else {
+				//too big to map all at once
+				return new SsatParser(null, fileChannel, deadline).readFormula();
+			}
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Reads a formula in the ssat format, which can be gzipped.
+	 * @param in - the stream to read from.  It isn't closed.
+	 * @return the formula, ready to be solved
+	 * @throws IOException if the stream can't be read, or SsatFormatException if it isn't in the ssat format
+	 */
+	public static ClauseDatabase parse(InputStream in) throws IOException {
+		return parse(in, 0);
+	}
+
+	/**
+	 * Reads a formula in the ssat format, giving up if it takes too long.
+	 * @param in - the stream to read from.  It isn't closed.
+	 * @param deadline - the System.nanoTime() to give up at, or 0 for no limit
+	 * @return the formula, ready to be solved
+	 * @throws IOException if the stream can't be read, or SsatFormatException if it isn't in the ssat format
+	 * @throws SsatTimeoutException if it is still being read at the deadline
+	 */
+	public static ClauseDatabase parse(InputStream in, long deadline) throws IOException {
+		BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+		buffered.mark(2);
+		int first = buffered.read();
+		int second = buffered.read();
+		buffered.reset();
+
+		InputStream source = buffered;
+		if(first == GZIP_MAGIC_1 && second == GZIP_MAGIC_2) source = new GZIPInputStream(buffered, BUFFER_SIZE);
+		return new SsatParser(null, Channels.newChannel(source), deadline).readFormula();
+	}
+
+	/**
+	 * Reads the whole formula.
+	 * @return the formula
+	 * @throws IOException
+	 */
+	private ClauseDatabase readFormula() throws IOException {
+		Vector<String> comments = new Vector<String>();
+		ClauseDatabase database = null;
+		int numVars = -1;
+		int numClauses = -1;
+
+		//read in the comments and problem lines
+		//once we have read in the problem line, go onto the clauses
+		while(database == null) {
+			int b = peek();
+			if(b < 0) {
+				throw error("No problem line");
+			} else if(isSpace(b)) {
+				//skip blank lines
+				if(read() == '\n') line++;
+			} else if(b == 'c') {
+				//keep the comment lines
+				read();
+				comments.add(readLine());
+			} else if(b == 'p') {
+				//read in the problem line
+				//should look like this
+				//"p cnf <num variables> <num clauses>"
+				int problemLine = line;
+				String problem = readLine();
+				String[] parts = problem.trim().split("\\s+");
+				if(parts.length == 4) {
+					try {
+						numVars = Integer.parseInt(parts[2]);
+						numClauses = Integer.parseInt(parts[3]);
+					} catch(NumberFormatException e) {
+						//leave them negative
+					}
+				}
+				if(numVars < 0 || numClauses < 0) throw new SsatFormatException(problemLine, "Bad problem line '" + problem + "'");
+
+				//set up the database, which makes the variables
+				database = new ClauseDatabase(numVars, numClauses);
+			} else {
+				throw error("Got unexpected line in file. '" + readLine() + "'");
+			}
+		}
+		for(String comment : comments) database.addComment(comment);
+
+		//read in the clauses
+		for(int i = 1; i <= numClauses; i++) {
+			int literal = readInt("a literal of clause", i);
+			while(literal != 0) {
+				if(literal > numVars || literal < -numVars)
+					throw error("Clause " + i + " has variable " + literal + ", but there are only " + numVars);
+				//the database stores the literal just like it is in the file
+				database.addLiteral(literal);
+				literal = readInt("a literal of clause", i);
+			}
+			database.endClause();
+		}
+
+		//read in the variable values
+		for(int i = 1; i <= numVars; i++) {
+			int name = readInt("a variable number", 0);
+			if(name < 1 || name > numVars) throw error("Value given for variable " + name + ", but there are only " + numVars);
+			double value = readDouble("the value of variable", name);
+			if(value > 1.0) throw error("Variable " + name + " has a chance of " + value + " of being true");
+			database.getVariable(name).setValue(value);
+		}
+
+		//set up the watched literals, which also finds any unit clauses we start out with
+		database.initWatches();
+
+		return database;
+	}
+
+	/**
+	 * Reads the next number, which has to be an int.
+	 * Nearly everything in a ssat file is one of these, so the digits are read
+	 * straight from the buffer.
+	 * @param what - what the number is, for the error message
+	 * @param which - a number that goes after what in the error message, or 0 for none
+	 * @return the number
+	 * @throws IOException
+	 */
+	private int readInt(String what, int which) throws IOException {
+		int b = skipSpaces(what, which);
+		boolean negative = b == '-';
+		if(b == '-' || b == '+') b = nextInWord();
+
+		long value = 0;
+		boolean anyDigits = false;
+		while(b >= '0' && b <= '9') {
+			value = value * 10 + (b - '0');
+			if(value > Integer.MAX_VALUE) throw error("Expected " + describe(what, which) + " but the number is too big");
+			anyDigits = true;
+			b = nextInWord();
+		}
+		if(b >= 0 || ! anyDigits) {
+			//something that isn't a digit - get the whole word for the error message
+			String start = (negative ? "-" : "") + (anyDigits ? Long.toString(value) : "");
+			readWord(b);
+			throw error("Expected " + describe(what, which) + " but found '" + start + wordString() + "'");
+		}
+		return (int) (negative ? -value : value);
+	}
+
+	/**
+	 * Reads the next number, which can have a decimal point or an exponent.
+	 * The common case of a few digits with a decimal point is worked out here,
+	 * and anything else is handed to Double.parseDouble, so the answer is always
+	 * the same as Double.parseDouble would give.
+	 * @param what - what the number is, for the error message
+	 * @param which - a number that goes after what in the error message, or 0 for none
+	 * @return the number
+	 * @throws IOException
+	 */
+	private double readDouble(String what, int which) throws IOException {
+		readWord(skipSpaces(what, which));
+
+		int i = 0;
+		boolean negative = false;
+		if(word[0] == '-' || word[0] == '+') {
+			negative = word[0] == '-';
+			i++;
+		}
+
+		//the digits, without the decimal point, and how many came after the point
+		long digits = 0;
+		int numDigits = 0;
+		int afterPoint = -1;
+		for(; i < wordLength; i++) {
+			int b = word[i];
+			if(b == '.' && afterPoint < 0) {
+				afterPoint = 0;
+			} else if(b >= '0' && b <= '9') {
+				digits = digits * 10 + (b - '0');
+				numDigits++;
+				if(afterPoint >= 0) afterPoint++;
+			} else {
+				break;
+			}
+		}
+
+		if(i < wordLength || numDigits > MAX_FAST_DIGITS) {
+			//an exponent or a long number - let Java do it
+			try {
+				return Double.parseDouble(wordString());
+			} catch(NumberFormatException e) {
+				throw notANumber(what, which);
+			}
+		}
+		if(numDigits == 0) throw notANumber(what, which);
+
+		//digits and the power of ten are both exact, so dividing rounds the same way parseDouble does
+		double value = digits;
+		if(afterPoint > 0) value /= POWERS_OF_TEN[afterPoint];
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Skips any spaces, line breaks, and comment lines, and reads the first byte after them.
+	 * @param what - what should be next, for the error message if the input ends
+	 * @param which - a number that goes after what in the error message, or 0 for none
+	 * @return the first byte of the next word
+	 * @throws IOException
+	 */
+	private int skipSpaces(String what, int which) throws IOException {
+		int b = read();
+		while(true) {
+			if(b < 0) {
+				throw error("Expected " + describe(what, which) + " but the file ended");
+			} else if(b == '\n') {
+				line++;
+				b = read();
+				//a comment can be on its own line between any numbers
+				while(b == 'c') {
+					readLine();
+					b = read();
+				}
+			} else if(isSpace(b)) {
+				b = read();
+			} else {
+				return b;
+			}
+		}
+	}
+
+	/**
+	 * Reads the next byte if it is part of the word being read.
+	 * The space after the word isn't read, so line breaks are counted on the right line.
+	 * @return the byte, or -1 if the word is over
+	 * @throws IOException
+	 */
+	private int nextInWord() throws IOException {
+		int b = peek();
+		if(b < 0 || isSpace(b)) return -1;
+		position++;
+		return b;
+	}
+
+	/**
+	 * Reads the rest of a word into word.
+	 * @param first - the first byte of the word, which has already been read, or -1 for none
+	 * @throws IOException
+	 */
+	private void readWord(int first) throws IOException {
+		wordLength = 0;
+		int b = first >= 0 ? first : nextInWord();
+		while(b >= 0) {
+			if(wordLength == word.length) {
+				byte[] bigger = new byte[word.length * 2];
+				System.arraycopy(word, 0, bigger, 0, wordLength);
+				word = bigger;
+			}
+			word[wordLength++] = (byte) b;
+			b = nextInWord();
+		}
+	}
+
+	/**
+	 * Reads the rest of the current line, and the line break after it.
+	 * @return the rest of the line, without the line break
+	 * @throws IOException
+	 */
+	private String readLine() throws IOException {
+		wordLength = 0;
+		int b = read();
+		while(b >= 0 && b != '\n') {
+			if(wordLength == word.length) {
+				byte[] bigger = new byte[word.length * 2];
+				System.arraycopy(word, 0, bigger, 0, wordLength);
+				word = bigger;
+			}
+			word[wordLength++] = (byte) b;
+			b = read();
+		}
+		if(b == '\n') line++;
+		//don't keep the \r from windows line breaks
+		if(wordLength > 0 && word[wordLength - 1] == '\r') wordLength--;
+		return wordString();
+	}
+
+	/**
+	 * @return the next byte, without reading it, or -1 if there aren't any more
+	 * @throws IOException
+	 */
+	private int peek() throws IOException {
+		if(position == limit && ! fill()) return -1;
+		return bytes[position] & 0xff;
+	}
+
+	/**
+	 * @return the next byte, or -1 if there aren't any more
+	 * @throws IOException
+	 */
+	private int read() throws IOException {
+		if(position == limit && ! fill()) return -1;
+		return bytes[position++] & 0xff;
+	}
+
+	/**
+	 * Copies the next bytes from the mapped file, or reads them from the channel.
+	 * This is where the time is checked, once for every buffer full.
+	 * @return false if there aren't any more
+	 * @throws IOException
+	 */
+	private boolean fill() throws IOException {
+		if(deadline != 0 && System.nanoTime() - deadline > 0) {
+			throw new SsatTimeoutException("Gave up reading the formula after the time limit, on line " + line);
+		}
+		position = 0;
+		limit = 0;
+		if(mapped != null) {
+			limit = Math.min(bytes.length, mapped.remaining());
+			mapped.get(bytes, 0, limit);
+			if(! mapped.hasRemaining()) mapped = null;
+		} else if(channel != null) {
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			int read = 0;
+			while(read == 0) read = channel.read(buffer);
+			if(read < 0) channel = null;
+			else limit = read;
+		}
+		return limit > 0;
+	}
+
+	/**
+	 * @param b - a byte
+	 * @return if it is a space, tab or line break
+	 */
+	private static boolean isSpace(int b) {
+		return b == ' ' || b == '\n' || b == '\t' || b == '\r' || b == '\f';
+	}
+
+	/**
+	 * @return the last word read, as a String
+	 */
+	private String wordString() {
+		return new String(word, 0, wordLength);
+	}
+
+	/**
+	 * @param what - what the number is
+	 * @param which - a number that goes after what, or 0 for none
+	 * @return an error for when the last word read should have been a number
+	 */
+	private SsatFormatException notANumber(String what, int which) {
+		return error("Expected " + describe(what, which) + " but found '" + wordString() + "'");
+	}
+
+	/**
+	 * The error messages are only put together when they are needed, so reading
+	 * each number doesn't have to make a String.
+	 * @param what - what a number is
+	 * @param which - a number that goes after what, or 0 for none
+	 * @return what, with which after it
+	 */
+	private static String describe(String what, int which) {
+		return which > 0 ? what + " " + which : what;
+	}
+
+	/**
+	 * @param message - what is wrong
+	 * @return an error for the line we are on
+	 */
+	private SsatFormatException error(String message) {
+		return new SsatFormatException(line, message);
+	}
+}
@@ -0,0 +1,183 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * SsatParserTest.java
+ * @author William Richard willster3021@gmail.com
+ * Tests that ssat files are read the same way from plain files, gzipped files, pipes and
+ * streams that only hand over a few bytes at a time, and that what is wrong with a bad file
+ * is reported on the right line.
+ */
+public class SsatParserTest extends SsatTest {
+
+	//a formula with comments, blank lines, windows line breaks and a comment between the clauses
+	private static final String FORMULA = "c a comment\n\nc another one\r\np cnf 4 3\n1 -2  3 0\n" +
+			"c between the clauses\n-4\t2 0\r\n4 0\n1 -1\n2 0.25\n3 .5\n4 1e-1\n";
+
+	public static void main(String[] args) {
+		run(new SsatParserTest());
+	}
+
+	protected void runChecks() throws Exception {
+		ClauseDatabase expected = formula(FORMULA);
+		checkFormula(expected);
+
+		byte[] text = FORMULA.getBytes("US-ASCII");
+		checkSame(expected, SsatParser.parse(new TrickleInputStream(text, 1)), "a stream that hands over 1 byte at a time");
+		checkSame(expected, SsatParser.parse(new TrickleInputStream(text, 7)), "a stream that hands over 7 bytes at a time");
+		checkSame(expected, SsatParser.parse(new ByteArrayInputStream(gzip(text))), "a gzipped stream");
+
+		//a formula bigger than the parser's buffer
+		byte[] big = new SsatGenerator(3000, 30000, 3, 0.5, SsatGenerator.ORDER_RANDOM, 0, 1).toBytes();
+		ClauseDatabase bigFormula = SsatParser.parse(new ByteArrayInputStream(big));
+		checkSame(bigFormula, SsatParser.parse(new TrickleInputStream(big, 1000)), "a big formula from a stream");
+
+		File dir = Files.createTempDirectory("ssat").toFile();
+		try {
+			checkSame(bigFormula, SsatParser.parse(write(new File(dir, "big.ssat"), big).getPath()), "a big formula from a file");
+			checkSame(expected, SsatParser.parse(write(new File(dir, "small.ssat.gz"), gzip(text)).getPath()), "a gzipped file");
+			checkPipe(dir, big, bigFormula);
+		} finally {
+			for(File f : dir.listFiles()) f.delete();
+			dir.delete();
+		}
+
+		checkError("p cnf 2\n1 0\n", 1, "a problem line without the number of clauses");
+		checkError("c comment\np cnf 2 1\n1 3 0\n1 -1\n2 -1\n", 3, "a variable that isn't in the formula");
+		checkError("p cnf 2 1\n1 -2 0\n1 -1\n2 x\n", 4, "a value that isn't a number");
+		checkError("p cnf 2 1\n1 -2 0\n1 -1\n", 4, "a file that ends before the values");
+		checkError("p cnf 1 1\n1 0\n1 1.5\n", 3, "a chance of more than 1");
+	}
+
+	/**
+	 * Checks that the formula was read in right.
+	 */
+	private void checkFormula(ClauseDatabase formula) {
+		check(formula.getNumVariables() == 4 && formula.getNumClauses() == 3, "the formula has 4 variables and 3 clauses");
+		check(formula.getComments().size() == 2, "the 2 comment lines before the problem line are kept");
+		check(formula.getClauseEnd(1) - formula.getClauseStart(1) == 2 && formula.getLiteral(formula.getClauseStart(1)) == -4,
+				"the second clause is -4 2, with a tab and a windows line break");
+		check(formula.getVariable(1).isChoice() && formula.getVariable(2).getChanceTrue() == 0.25 &&
+				formula.getVariable(3).getChanceTrue() == 0.5 && formula.getVariable(4).getChanceTrue() == 0.1,
+				"the values are read the same as Double.parseDouble would");
+	}
+
+	/**
+	 * Reading a formula from a named pipe, which can't be mapped or seeked, works like reading it from a file.
+	 * Named pipes can only be made where there is a mkfifo command, so this is skipped anywhere else.
+	 */
+	private void checkPipe(File dir, final byte[] text, ClauseDatabase expected) throws Exception {
+		final File pipe = new File(dir, "pipe.ssat");
+		try {
+			if(new ProcessBuilder("mkfifo", pipe.getPath()).start().waitFor() != 0) return;
+		} catch(IOException e) {
+			return;
+		}
+		//opening a pipe to write blocks until it is opened to read, so it is written in another thread
+		Thread writer = new Thread() {
+			public void run() {
+				try {
+					write(pipe, text);
+				} catch(IOException e) {
+					//the reading side will fail
+				}
+			}
+		};
+		writer.start();
+		try {
+			checkSame(expected, SsatParser.parse(pipe.getPath()), "a named pipe");
+		} finally {
+			writer.join();
+		}
+	}
+
+	/**
+	 * Checks that reading the text fails with an SsatFormatException on the right line.
+	 */
+	private void checkError(String text, int line, String what) {
+		try {
+			formula(text);
+			check(false, what + " should be an error");
+		} catch(SsatFormatException e) {
+			check(e.getLine() == line, what + " should be an error on line " + line + ": " + e.getMessage());
+		} catch(IOException e) {
+			check(false, what + " should be a format error: " + e);
+		}
+	}
+
+	/**
+	 * Checks that two formulas have the same clauses and values.
+	 */
+	private void checkSame(ClauseDatabase expected, ClauseDatabase actual, String what) {
+		boolean same = expected.getNumVariables() == actual.getNumVariables() && expected.getNumClauses() == actual.getNumClauses();
+		for(int c = 0; same && c < expected.getNumClauses(); c++) {
+			same = expected.getClauseEnd(c) - expected.getClauseStart(c) == actual.getClauseEnd(c) - actual.getClauseStart(c);
+			for(int p = 0; same && p < expected.getClauseEnd(c) - expected.getClauseStart(c); p++) {
+				same = expected.getLiteral(expected.getClauseStart(c) + p) == actual.getLiteral(actual.getClauseStart(c) + p);
+			}
+		}
+		for(int name = 1; same && name <= expected.getNumVariables(); name++) {
+			same = expected.getVariable(name).getValue() == actual.getVariable(name).getValue();
+		}
+		check(same, what + " is read the same as the text");
+	}
+
+	/**
+	 * @return the bytes, gzipped
+	 */
+	private static byte[] gzip(byte[] bytes) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		OutputStream gzip = new GZIPOutputStream(out);
+		gzip.write(bytes);
+		gzip.close();
+		return out.toByteArray();
+	}
+
+	/**
+	 * @return the file, with the bytes written to it
+	 */
+	private static File write(File file, byte[] bytes) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	/**
+	 * A stream that never hands over more than a few bytes at once, like a slow pipe.
+	 */
+	private static class TrickleInputStream extends InputStream {
+		private byte[] bytes;
+		private int position;
+		private int most;
+
+		public TrickleInputStream(byte[] bytes, int most) {
+			this.bytes = bytes;
+			this.position = 0;
+			this.most = most;
+		}
+
+		public int read() {
+			return position < bytes.length ? bytes[position++] & 0xff : -1;
+		}
+
+		public int read(byte[] b, int off, int len) {
+			if(len == 0) return 0;
+			if(position == bytes.length) return -1;
+			int n = Math.min(Math.min(len, most), bytes.length - position);
+			System.arraycopy(bytes, position, b, off, n);
+			position += n;
+			return n;
+		}
+	}
+}
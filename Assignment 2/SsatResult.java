@@ -0,0 +1,210 @@
+/**
+ * SsatResult.java
+ * @author William Richard willster3021@gmail.com
+ * What came out of solving one ssat file: the probability of success and the plan,
+ * or what went wrong if it couldn't be solved.
+ */
+public class SsatResult {
+
+	//the ssat file that was solved
+	private String fileLocation;
+	//the probability of success of the best plan, or -1.0 if it couldn't be solved
+	private double probability;
+	//the best plan, or null if only the probability was worked out or it couldn't be solved
+	private Plan plan;
+	//how long reading and solving the formula took, in milliseconds
+	private long timeMillis;
+	//how many nodes of the search tree were explored
+	private long nodes;
+	//what went wrong, or null if it was solved
+	private Exception error;
+	//the probability that was asked about, or NaN if the probability was worked out exactly
+	private double threshold;
+	//the most any plan could succeed with.  The same as probability, unless an anytime search stopped early.
+	private double upperBound;
+	//what the search counted, or null if the stats weren't turned on
+	private SearchStats stats;
+
+	/**
+	 * Constructor for a formula that was solved.
+	 * @param fileLocation - the ssat file
+	 * @param probability - the probability of success of the best plan
+	 * @param plan - the best plan, or null if only the probability was worked out
+	 * @param timeMillis - how long it took
+	 * @param nodes - how many nodes of the search tree were explored
+	 */
+	public SsatResult(String fileLocation, double probability, Plan plan, long timeMillis, long nodes) {
+		this.fileLocation = fileLocation;
+		this.probability = probability;
+		this.plan = plan;
+		this.timeMillis = timeMillis;
+		this.nodes = nodes;
+		this.error = null;
+		this.threshold = Double.NaN;
+		this.upperBound = probability;
+	}
+
+	/**
+	 * Constructor for a formula solved with an anytime search, which may have stopped early.
+	 * @param fileLocation - the ssat file
+	 * @param lowerBound - the probability of success of the best plan found
+	 * @param upperBound - the most any plan could succeed with
+	 * @param plan - the best plan found, or null if only the probability was worked out
+	 * @param timeMillis - how long it took
+	 * @param nodes - how many nodes of the search tree were explored
+	 */
+	public SsatResult(String fileLocation, double lowerBound, double upperBound, Plan plan, long timeMillis, long nodes) {
+		this(fileLocation, lowerBound, plan, timeMillis, nodes);
+		this.upperBound = upperBound;
+	}
+
+	/**
+	 * Constructor for a formula where we only found out if the threshold was met.
+	 * @param fileLocation - the ssat file
+	 * @param threshold - the probability of success that was needed
+	 * @param bound - from SsatSolver.solveThreshold.  A lower bound on the probability of success
+	 * if it is at least threshold, or an upper bound if it isn't.
+	 * @param timeMillis - how long it took
+	 * @param nodes - how many nodes of the search tree were explored
+	 */
+	public SsatResult(String fileLocation, double threshold, double bound, long timeMillis, long nodes) {
+		this(fileLocation, bound, null, timeMillis, nodes);
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Constructor for a formula that couldn't be solved.
+	 * @param fileLocation - the ssat file
+	 * @param error - what went wrong
+	 * @param timeMillis - how long it took to go wrong
+	 * @param nodes - how many nodes of the search tree were explored before it went wrong
+	 */
+	public SsatResult(String fileLocation, Exception error, long timeMillis, long nodes) {
+		this.fileLocation = fileLocation;
+		this.probability = -1.0;
+		this.plan = null;
+		this.timeMillis = timeMillis;
+		this.nodes = nodes;
+		this.error = error;
+		this.threshold = Double.NaN;
+		this.upperBound = -1.0;
+	}
+
+	/**
+	 * @return the ssat file that was solved
+	 */
+	public String getFileLocation() {
+		return fileLocation;
+	}
+
+	/**
+	 * @return if the formula was solved
+	 */
+	public boolean isSolved() {
+		return error == null;
+	}
+
+	/**
+	 * @return the probability of success of the best plan, or -1.0 if it couldn't be solved.
+	 * If there is a threshold, it is only a bound - see the constructor.  If an anytime search
+	 * stopped early, it is the probability of the best plan found.
+	 */
+	public double getProbability() {
+		return probability;
+	}
+
+	/**
+	 * @return the most any plan could succeed with, or -1.0 if it couldn't be solved.
+	 * It is only more than getProbability if an anytime search stopped early.
+	 */
+	public double getUpperBound() {
+		return upperBound;
+	}
+
+	/**
+	 * @return if an anytime search stopped before it was sure it had the best plan
+	 */
+	public boolean isStoppedEarly() {
+		return upperBound > probability;
+	}
+
+	/**
+	 * @return if only the question of whether a threshold was met was answered
+	 */
+	public boolean hasThreshold() {
+		return ! Double.isNaN(threshold);
+	}
+
+	/**
+	 * @return the probability of success that was needed, or NaN if there wasn't a threshold
+	 */
+	public double getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * @return if the best plan succeeds with at least the threshold's probability
+	 */
+	public boolean meetsThreshold() {
+		return isSolved() && probability >= threshold;
+	}
+
+	/**
+	 * @return the best plan, or null if only the probability was worked out or it couldn't be solved
+	 */
+	public Plan getPlan() {
+		return plan;
+	}
+
+	/**
+	 * @return how long reading and solving the formula took, in milliseconds
+	 */
+	public long getTimeMillis() {
+		return timeMillis;
+	}
+
+	/**
+	 * @return how many nodes of the search tree were explored
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @return if the solver gave up because it ran out of time
+	 */
+	public boolean isTimedOut() {
+		return error instanceof SsatTimeoutException;
+	}
+
+	/**
+	 * @return what the search counted, or null if the stats weren't turned on
+	 */
+	public SearchStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * @param stats - what the search counted.  Set by SsatSolver.run.
+	 */
+	public void setStats(SearchStats stats) {
+		this.stats = stats;
+	}
+
+	/**
+	 * @return what went wrong, or null if it was solved
+	 */
+	public Exception getError() {
+		return error;
+	}
+
+	/**
+	 * @return the result in a human readable format
+	 */
+	public String toString() {
+		if(error != null) return fileLocation + "\tError: " + error.getMessage();
+		if(hasThreshold()) return fileLocation + "\t" + (meetsThreshold() ? ">= " : "< ") + threshold + "\t" + (timeMillis / 1000.0) + " seconds";
+		if(isStoppedEarly()) return fileLocation + "\t" + probability + " to " + upperBound + "\t" + (timeMillis / 1000.0) + " seconds";
+		return fileLocation + "\t" + probability + "\t" + (timeMillis / 1000.0) + " seconds";
+	}
+}
@@ -1,32 +1,133 @@
-import java.io.File;
 import java.io.FileNotFoundException;
-import java.util.Scanner;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * SsatSolver.java 
  * @author William Richard willster3021@gmail.com
  * Solves a SSAT problem.
+ * A solver works on one formula, and should only be used by one thread at a time,
+ * but any number of solvers can be used at once, e.g. with runAll.
  */
 public class SsatSolver {
 
 	//Stores the variables that are in this problem
-	private static Vector<Variable> variables;
+	private Vector<Variable> variables;
 	//stores the clauses that are in this problem
-	private static Vector<Clause> clauses;
+	private Vector<Clause> clauses;
+	//stores the literals of the clauses and the assignments of the variables in flat arrays.
+	//the variables and clauses above are views over it.
+	private ClauseDatabase database;
+	//remembers the plans for residual formulas we have already solved, or null if caching is off.
+	//solvers working in parallel share it.
+	private FormulaCache cache;
+	//if we should split the residual formula into components and solve them separately
+	private boolean useComponents;
+	//the component we are solving right now, or null if we are solving the whole formula
+	private Component scope;
+	//set by DPLL when the plan it returns was cut off because it couldn't do well enough,
+	//so its probability is only an upper bound.  DPLLProbability sets it the same way.
+	private boolean pruned;
+	//if the result of the last search was only found to be enough for what the caller needed,
+	//so its probability is a lower bound, and it wasn't worked out exactly
+	private boolean reached;
+	//how many threads to search with
+	private int threads;
+	//the threads that branches are solved in, or null if everything is solved in this thread
+	private ForkJoinPool pool;
+	//how many more levels of branching can be handed to other threads
+	private int forkDepth;
+	//how many nodes of the search tree this solver has explored, not counting branches still being solved by copies
+	private long nodes;
+	//how long the search may take, in nanoseconds, or 0 for as long as it needs
+	private long timeLimit;
+	//the System.nanoTime() when the search has to stop, if there is a time limit
+	private long deadline;
+	//the System.nanoTime() the search has to stop by, from setDeadline, or 0 to count timeLimit from when it starts
+	private long givenDeadline;
+	//how many nodes the search may explore, or 0 for as many as it needs
+	private long nodeLimit;
+	//the System.nanoTime() the search started
+	private long searchStart;
+	//for an anytime search, who to tell about the bounds, or null if no one is told,
+	//how often to tell them in nanoseconds, and the System.nanoTime() to tell them next
+	private BoundsListener listener;
+	private long reportInterval;
+	private long nextReport;
+	//where the search is counted, or null if it isn't
+	private SearchStats stats;
+	//where to print the stats every so often while searching, or null to not print them,
+	//how often to print them in nanoseconds, and the System.nanoTime() to print them next
+	private PrintStream progress;
+	private long progressInterval;
+	private long nextProgress;
+	//for an anytime search, if it makes the plan, the best plan found so far (null if it doesn't),
+	//the plan's probability, and the most any plan could succeed with
+	private boolean anytimePlan;
+	private PlanNode bestPlan;
+	private double lowerBound;
+	private double upperBound;
+	//the nodes of the search tree that are waiting for a branch to be solved, and how many there are
+	private SearchFrame[] frames;
+	private int stackSize;
+	//the result of the last node or branch solved, what the branch just started has to beat,
+	//and what would be enough for it
+	private PlanNode resultPlan;
+	private double resultProbability;
+	private double childLow;
+	private double childHigh;
 
 	//a debug flag.  If set, it will print out debug information.
 	public static final boolean DEBUG = false;
 
+	//how many more levels of branching than there are threads are handed out to other threads
+	private static final int FORK_EXTRA_LEVELS = 3;
+
+	//how many threads can really run at once.  Searching with more threads than this only adds the
+	//cost of copying the formula for every branch handed out, so the number of threads is cut down
+	//to it, and with one core the search isn't split up at all.  The tests change it, to check the
+	//threads on machines with one core.
+	static int availableProcessors = Runtime.getRuntime().availableProcessors();
+
+	//how many nodes are explored between looking at the clock, minus 1.  Has to be one less than a power of 2.
+	private static final long DEADLINE_CHECK_MASK = 1023;
+
+	//the kinds of frame on the search stack
+	//the variables assigned by unit propagation, which only has one branch
+	private static final int PROPAGATE_FRAME = 0;
+	//a choice or chance variable that is branched on
+	private static final int CHOICE_FRAME = 1;
+	private static final int CHANCE_FRAME = 2;
+	//a residual formula that was split into components
+	private static final int COMPONENTS_FRAME = 3;
+	//a pure variable, which only has one branch
+	private static final int PURE_FRAME = 4;
+	//how many frames the stack starts with room for
+	private static final int INITIAL_FRAMES = 64;
+
 
 	/**
 	 * @param args
 	 */
 	public static void main(String[] args) {		
 		//make sure we're passed the correct arguments
-		if(args.length != 1) { 
-			System.out.println("Incorrect number of arguments - given " + args.length);
-			System.out.println("Correct usage: java SsatSolver <ssat file>");
+		SolverOptions options = null;
+		try {
+			options = new SolverOptions(args);
+		} catch(IllegalArgumentException e) { 
+			System.out.println("Incorrect arguments - " + e.getMessage());
+			System.out.println(SolverOptions.getUsage());
 			System.out.print("Given : '");
 			for(String s : args) System.out.print(s + " ");
 			System.out.println("'");
@@ -37,12 +138,141 @@ public class SsatSolver {
 		long startTime = System.currentTimeMillis();
 
 		//read the SSAT formula
-		readFormula(args[0]);
+		ClauseDatabase formula = null;
+		try {
+			formula = readFormula(options.fileLocation);
+		} catch(FileNotFoundException e) {
+			System.out.println("File not found: '" + options.fileLocation + "'");
+			System.exit(1);
+		} catch(IOException e) {
+			System.out.println("Error: couldn't read '" + options.fileLocation + "': " + e.getMessage());
+			System.exit(2);
+		}
+
+		//just print out the comment lines
+		for(String comment : formula.getComments()) {
+			System.out.println(comment);
+		}
+
+		if(options.preprocesses()) {
+			Preprocessor preprocessor = new Preprocessor(options);
+			formula = preprocessor.preprocess(formula);
+			System.out.println(preprocessor);
+		}
+
+		if(options.compileFile != null) {
+			compile(formula, options, startTime);
+			return;
+		}
+		if(options.isSampling()) {
+			sample(formula, options, startTime);
+			return;
+		}
+
+		SsatSolver solver = new SsatSolver(formula, options);
+		if(options.progressSeconds > 0) solver.printProgress(System.out);
+
+		try {
+			if(options.hasThreshold()) {
+				//only find out if the formula can be satisfied with at least that probability
+				double bound = solver.solveThreshold(options.threshold);
+
+				//stop timing
+				long stopTime = System.currentTimeMillis();
+				solver.printTime(startTime, stopTime);
+
+				printThreshold(options.threshold, bound);
+			} else if(options.probabilityOnly) {
+				//solve the formula, only working out the probability
+				double overallProb = options.anytime ? solver.solveProbabilityAnytime(new BoundsPrinter()) : solver.solveProbability();
+
+				//stop timing
+				long stopTime = System.currentTimeMillis();
+				solver.printTime(startTime, stopTime);
+
+				printProbability(overallProb);
+				if(options.anytime) printUpperBound(solver);
+			} else {
+				//solve the formula, or as much of it as there is time for
+				Plan plan = options.anytime ? solver.solveAnytime(new BoundsPrinter()) : solver.solve();
+
+				//stop timing
+				long stopTime = System.currentTimeMillis();
+				solver.printTime(startTime, stopTime);
+
+				if(options.planFile != null) {
+					//write the plan out instead of printing all of its assignments
+					try {
+						plan.write(options.planFile);
+						System.out.println("Wrote the plan, with " + plan.getNumNodes() + " nodes, to " + options.planFile);
+					} catch(IOException e) {
+						System.out.println("Couldn't write the plan to '" + options.planFile + "': " + e.getMessage());
+						System.exit(1);
+					}
+				} else {
+					//print out the assignment.
+					printAssignments(plan);
+				}
+				//print out the total probablily of this plan, or if we don't have satisfaction
+				printProbability(plan.getProbability());
+				if(options.anytime) printUpperBound(solver);
+			}
+		} catch(SsatTimeoutException e) {
+			System.out.println(e.getMessage());
+			printStats(solver);
+			System.exit(3);
+		}
+		printStats(solver);
+	}
 
-		//check if we start out with any unit clauses
-		for(Clause c : clauses) {
-			c.checkUnitness();
+	/**
+	 * Constructor.  Gets the formula ready to be solved with the passed options.
+	 * @param formula - the formula, from readFormula.  The solver assigns variables in it while it works.
+	 * @param options - how to solve it
+	 */
+	public SsatSolver(ClauseDatabase formula, SolverOptions options) {
+		database = formula;
+		variables = new Vector<Variable>(database.getNumVariables() + 1);
+		//so we don't have off by one errors, put a null in the 0th index
+		variables.add(null);
+		for(int i = 1; i <= database.getNumVariables(); i++) {
+			variables.add(database.getVariable(i));
+		}
+		clauses = new Vector<Clause>(database.getNumClauses());
+		for(int c = 0; c < database.getNumClauses(); c++) {
+			clauses.add(database.getClause(c));
+		}
+
+		//set up the cache
+		if(options.cacheMegabytes > 0) {
+			cache = new FormulaCache(options.cacheMegabytes * 1024L * 1024L);
+		} else {
+			cache = null;
 		}
+		useComponents = options.useComponents;
+		scope = null;
+
+		//learn clauses from conflicts
+		if(options.learnMegabytes > 0) database.enableLearning(options.learnMegabytes * 1024L * 1024L);
+
+		//the threads are only made while solving
+		threads = Math.max(1, Math.min(options.threads, availableProcessors));
+		pool = null;
+		forkDepth = 0;
+
+		nodes = 0;
+		timeLimit = (long) (options.timeoutSeconds * 1e9);
+		deadline = 0;
+		givenDeadline = 0;
+		nodeLimit = options.nodeLimit;
+		listener = null;
+		reportInterval = (long) (options.reportSeconds * 1e9);
+		stats = options.stats ? new SearchStats() : null;
+		progress = null;
+		progressInterval = (long) (options.progressSeconds * 1e9);
+
+		frames = new SearchFrame[INITIAL_FRAMES];
+		stackSize = 0;
 
 		if(DEBUG) {
 			//print out the clauses for debug purposes
@@ -57,257 +287,878 @@ public class SsatSolver {
 				System.out.println(variables.get(i).getName() + "\t" + variables.get(i).getChanceTrue());
 			}
 		}
+	}
 
-		//solve the formula
-		Vector<Assignment> satAssignments = DPLL();
+	/**
+	 * Copy constructor, for solving a branch in another thread.
+	 * The copy gets its own copy of the formula and assignments, and shares the cache and threads.
+	 * @param other
+	 */
+	private SsatSolver(SsatSolver other) {
+		database = new ClauseDatabase(other.database);
+		variables = new Vector<Variable>(other.variables.size());
+		variables.add(null);
+		for(int i = 1; i < other.variables.size(); i++) {
+			variables.add(database.getVariable(i));
+		}
+		clauses = new Vector<Clause>(other.clauses.size());
+		for(int c = 0; c < other.clauses.size(); c++) {
+			clauses.add(database.getClause(c));
+		}
+		cache = other.cache;
+		useComponents = other.useComponents;
+		//components never change once they are being solved, so they can be shared
+		scope = other.scope;
+		threads = other.threads;
+		pool = other.pool;
+		forkDepth = other.forkDepth;
+		//the copy counts its own nodes, and they are added in when its branch is done
+		nodes = 0;
+		timeLimit = other.timeLimit;
+		deadline = other.deadline;
+		givenDeadline = other.givenDeadline;
+		nodeLimit = other.nodeLimit;
+		//the copy counts its own stats too.  It never prints them.
+		stats = other.stats != null ? new SearchStats() : null;
+		progress = null;
+		frames = new SearchFrame[INITIAL_FRAMES];
+		stackSize = 0;
+	}
 
-		//stop timing
-		long stopTime = System.currentTimeMillis();
+	/**
+	 * Reads in a ssat file and solves it.  Nothing is printed, and if anything goes wrong
+	 * it is put in the result instead of stopping the program.  The time limit is for all
+	 * of it, so a file that takes too long to read or preprocess times out too.
+	 * @param fileLocation - the ssat file
+	 * @param options - how to solve it.  options.fileLocation is ignored.
+	 * @return the probability of success, and the plan unless options.probabilityOnly is set,
+	 * and the stats if options.stats is set
+	 */
+	public static SsatResult run(String fileLocation, SolverOptions options) {
+		long startTime = System.currentTimeMillis();
+		SsatSolver solver = null;
+		SsatResult result;
+		try {
+			long deadline = options.timeoutSeconds > 0 ? System.nanoTime() + (long) (options.timeoutSeconds * 1e9) : 0;
+			ClauseDatabase formula = preprocess(SsatParser.parse(fileLocation, deadline), options, deadline);
+			solver = new SsatSolver(formula, options);
+			solver.setDeadline(deadline);
+			if(options.hasThreshold()) {
+				double bound = solver.solveThreshold(options.threshold);
+				result = new SsatResult(fileLocation, options.threshold, bound, System.currentTimeMillis() - startTime, solver.getNodes());
+			} else if(options.anytime) {
+				Plan plan = null;
+				if(options.probabilityOnly) solver.solveProbabilityAnytime(null);
+				else plan = solver.solveAnytime(null);
+				result = new SsatResult(fileLocation, solver.getLowerBound(), solver.getUpperBound(), plan, System.currentTimeMillis() - startTime, solver.getNodes());
+			} else if(options.probabilityOnly) {
+				double prob = solver.solveProbability();
+				result = new SsatResult(fileLocation, prob, null, System.currentTimeMillis() - startTime, solver.getNodes());
+			} else {
+				Plan plan = solver.solve();
+				result = new SsatResult(fileLocation, plan.getProbability(), plan, System.currentTimeMillis() - startTime, solver.getNodes());
+			}
+		} catch(Exception e) {
+			result = new SsatResult(fileLocation, e, System.currentTimeMillis() - startTime, solver == null ? 0 : solver.getNodes());
+		}
+		if(solver != null) result.setStats(solver.getStats());
+		return result;
+	}
 
-		//calculate and print out time taken
-		double totalTime = (stopTime - startTime) / 1000.0;
-		System.out.println("Time Taken = " + totalTime + " seconds.");
+	/**
+	 * Solves a batch of ssat files at the same time.  Each file gets its own solver,
+	 * which is only ever used by the thread solving that file.
+	 * @param fileLocations - the ssat files
+	 * @param options - how to solve each of them
+	 * @param numThreads - how many files to solve at once
+	 * @return the results, in the same order as the files
+	 */
+	public static Vector<SsatResult> runAll(Vector<String> fileLocations, final SolverOptions options, int numThreads) {
+		ExecutorService workers = Executors.newFixedThreadPool(numThreads);
+		try {
+			Vector<Future<SsatResult>> futures = new Vector<Future<SsatResult>>(fileLocations.size());
+			for(final String fileLocation : fileLocations) {
+				futures.add(workers.submit(new Callable<SsatResult>() {
+					public SsatResult call() {
+						return run(fileLocation, options);
+					}
+				}));
+			}
 
-		//print out the assignment.
-		printAssignments(satAssignments);
-		//print out the total probablily of this plan, or if we don't have satisfaction
-		double overallProb = Assignment.getTotalProbability(satAssignments);
-		if(overallProb == 0.0) {
-			System.out.println("No Satisfaction :-(");
+			Vector<SsatResult> results = new Vector<SsatResult>(fileLocations.size());
+			for(int i = 0; i < futures.size(); i++) {
+				try {
+					results.add(futures.get(i).get());
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					results.add(new SsatResult(fileLocations.get(i), e, 0, 0));
+				} catch(ExecutionException e) {
+					//run catches everything it can, so only errors like running out of memory get here
+					results.add(new SsatResult(fileLocations.get(i), new IllegalStateException(e.getCause()), 0, 0));
+				}
+			}
+			return results;
+		} finally {
+			workers.shutdownNow();
+		}
+	}
+
+	/**
+	 * Reads in the formula and finds the best plan for it.
+	 * @param options - the ssat file and how to solve it
+	 * @return the best plan
+	 * @throws IOException if the file can't be read
+	 */
+	public static Plan solve(SolverOptions options) throws IOException {
+		return new SsatSolver(preprocess(readFormula(options.fileLocation), options), options).solve();
+	}
+
+	/**
+	 * Reads in the formula and finds the probability of success of the best plan for it,
+	 * without making the plan.
+	 * @param options - the ssat file and how to solve it
+	 * @return the probability of success
+	 * @throws IOException if the file can't be read
+	 */
+	public static double solveProbability(SolverOptions options) throws IOException {
+		return new SsatSolver(preprocess(readFormula(options.fileLocation), options), options).solveProbability();
+	}
+
+	/**
+	 * Finds the best plan for the formula.
+	 * @return the best plan
+	 */
+	public Plan solve() {
+		startClock();
+		PlanNode root;
+		if(threads == 1) {
+			root = DPLL();
 		} else {
-			System.out.println("Success Probability = " + overallProb);
+			//the search has to start in the pool, so the branches it hands out go to the pool
+			startThreads();
+			try {
+				root = pool.invoke(new RecursiveTask<PlanNode>() {
+					protected PlanNode compute() {
+						return DPLL();
+					}
+				});
+			} finally {
+				stopThreads();
+			}
 		}
+		return new Plan(root, variables);
+	}
 
+	/**
+	 * Finds the probability of success of the best plan for the formula, without making the plan.
+	 * @return the probability of success
+	 */
+	public double solveProbability() {
+		startClock();
+		if(threads == 1) return DPLLProbability();
+		startThreads();
+		try {
+			return pool.invoke(new RecursiveTask<Double>() {
+				protected Double compute() {
+					return DPLLProbability();
+				}
+			});
+		} finally {
+			stopThreads();
+		}
+	}
+
+	/**
+	 * Finds out if the best plan for the formula succeeds with probability at least threshold,
+	 * without working out exactly what its probability is.  The search stops as soon as a plan
+	 * that does is found, or it is sure none can.
+	 * @param threshold - the probability of success that is needed
+	 * @return a bound on the probability of success.  If it is at least threshold, some plan
+	 * succeeds with at least that probability.  Otherwise, no plan succeeds with more than it.
+	 */
+	public double solveThreshold(final double threshold) {
+		startClock();
+		//anything that can't beat the probability just under threshold can't meet it
+		final double low = Math.nextDown(threshold);
+		double bound;
+		if(threads == 1) {
+			bound = DPLLProbability(low, threshold);
+		} else {
+			startThreads();
+			try {
+				bound = pool.invoke(new RecursiveTask<Double>() {
+					protected Double compute() {
+						return DPLLProbability(low, threshold);
+					}
+				});
+			} finally {
+				stopThreads();
+			}
+		}
+		//whether it was met comes from how the search stopped, not the bound, since rounding in
+		//the bounds passed down can leave a plan that was enough just under threshold, or a node
+		//that was cut off just over it
+		if(pruned) return Math.min(bound, low);
+		if(reached) return Math.max(bound, threshold);
+		return bound;
+	}
+
+	/**
+	 * Searches for the best plan, like solve, but keeps track of the best plan found so far.
+	 * If the time or node limit runs out, the search stops with that plan instead of giving up.
+	 * Every reportSeconds (from the options), and when the search stops, listener is told the
+	 * bounds on the probability of the best plan, which get closer together as the search goes on.
+	 * Once the search stops, they are in getLowerBound and getUpperBound.
+	 * Only searches with one thread.
+	 * @param listener - who to tell about the bounds, or null to not tell anyone
+	 * @return the best plan found.  If the search finished, it is the best plan there is.
+	 */
+	public Plan solveAnytime(BoundsListener listener) {
+		anytime(true, listener);
+		Plan plan = new Plan(bestPlan, variables);
+		bestPlan = null;
+		return plan;
 	}
 
+	/**
+	 * The same as solveAnytime, but only working out bounds on the probability, without the plan.
+	 * @param listener - who to tell about the bounds, or null to not tell anyone
+	 * @return the lower bound
+	 */
+	public double solveProbabilityAnytime(BoundsListener listener) {
+		anytime(false, listener);
+		return lowerBound;
+	}
 
-	public static void readFormula(String fileLocation) {
-		//open up the file
-		Scanner reader = null;
+	/**
+	 * @return after an anytime search, the probability of success of the best plan it found
+	 */
+	public double getLowerBound() {
+		return lowerBound;
+	}
+
+	/**
+	 * @return after an anytime search, the most any plan can succeed with.
+	 * It is the same as the lower bound if the search finished.
+	 */
+	public double getUpperBound() {
+		return upperBound;
+	}
+
+	/**
+	 * Does the work of solveAnytime and solveProbabilityAnytime.
+	 * @param wantPlan - if the plan should be made
+	 * @param listener - who to tell about the bounds, or null
+	 */
+	private void anytime(boolean wantPlan, BoundsListener listener) {
+		startClock();
+		this.listener = listener;
+		anytimePlan = wantPlan;
+		bestPlan = wantPlan ? PlanNode.FAILURE : null;
+		lowerBound = 0.0;
+		upperBound = 1.0;
+		nextReport = searchStart + reportInterval;
 		try {
-			reader = new Scanner(new File(fileLocation));
-		} catch (FileNotFoundException e) {
-			System.out.println("File not found: '" + fileLocation + "'");
-			System.exit(1);
+			search(-1.0, Double.POSITIVE_INFINITY, wantPlan);
+			bestPlan = resultPlan;
+			lowerBound = resultProbability;
+			upperBound = resultProbability;
+		} catch(SsatTimeoutException e) {
+			//the frames still hold everything the search found, so get the best plan out of them
+			updateBounds();
+			unwind();
+		} finally {
+			this.listener = null;
 		}
+		resultPlan = null;
+		if(listener != null) listener.bounds(lowerBound, upperBound, nodes, (System.nanoTime() - searchStart) / 1e9);
+	}
 
-		assert reader != null;
-
-		//read in the comments and problem lines
-		//once we have read in the problem line, go onto the clauses
-		while(reader.hasNextLine()) {
-			String nextLine = reader.nextLine();
-
-			if(nextLine.substring(0, 1).equals("c")) {
-				//just print out the comment lines
-				System.out.println(nextLine.substring(1));
-			} else if(nextLine.substring(0,1).equals("p")) {
-				//read in the problem line
-				//should look like this
-				//"p cnf <num variables> <num clauses>"
-
-				//set up a scanner to read the line
-				Scanner problemScanner = new Scanner(nextLine);
-
-				//advance the scanner to the ints
-				while(!problemScanner.hasNextInt()) problemScanner.next();
-
-				//read in the number of variables and set up the variables Vector
-				int numVars = problemScanner.nextInt();
-				variables = new Vector<Variable>(numVars+1);
-				//so we don't have off by one errors, put a null in the 0th index
-				for(int i = 0; i <= numVars; i++) {
-					Variable nextVar = new Variable(i);
-					variables.add(i, nextVar);
-					if(DEBUG) {
-						System.out.println("Added variable " + variables.get(i).getName());
+	/**
+	 * Works out bounds on the probability of the best plan from the search stack, part way
+	 * through an anytime search.  The branch being solved, and branches that haven't been
+	 * started, could do anything from never succeeding to always succeeding, and the rest of
+	 * the plan is built around a plan that always fails for them.
+	 * The bounds, and that plan, are kept if they are better than the ones found before.
+	 */
+	private void updateBounds() {
+		double lower = 0.0;
+		double upper = 1.0;
+		PlanNode plan = anytimePlan ? PlanNode.FAILURE : null;
+		for(int i = stackSize - 1; i >= 0; i--) {
+			SearchFrame frame = frames[i];
+			Variable v = frame.variable;
+			switch(frame.kind) {
+			case PROPAGATE_FRAME:
+				for(int j = frame.numAssigned - 1; j >= 0; j--) {
+					Variable unit = variables.get(frame.assigned[j]);
+					boolean value = unit.getAssignment() == Variable.TRUE;
+					if(unit.isChance()) {
+						double factor = value ? unit.getChanceTrue() : unit.getChanceFalse();
+						lower *= factor;
+						upper *= factor;
 					}
+					if(plan != null) plan = PlanNode.assign(unit.getName(), unit.getValue(), value, plan);
 				}
-				variables.set(0, null);
+				break;
 
-				//get the number of clauses, and use it to set up the clauses Vector
-				int numClauses = problemScanner.nextInt();
-				clauses = new Vector<Clause>(numClauses);
+			case PURE_FRAME:
+				if(plan != null) plan = PlanNode.assign(v.getName(), v.getValue(), frame.value, plan);
+				break;
 
-				if(DEBUG) System.out.println("read that we have " + numVars + " variables and " + numClauses + " clauses.");
+			case CHOICE_FRAME:
+				//the false branch could still do anything.  Once it is started, the true branch is
+				//finished, and was either worked out or cut off with an upper bound.
+				boolean useTrue = frame.value;
+				if(frame.value) {
+					upper = 1.0;
+				} else {
+					if(!frame.firstPruned && frame.firstProbability >= lower) {
+						useTrue = true;
+						lower = frame.firstProbability;
+						if(plan != null) plan = frame.firstPlan;
+					}
+					upper = Math.max(upper, frame.firstProbability);
+				}
+				if(plan != null) plan = PlanNode.assign(v.getName(), v.getValue(), useTrue, plan);
+				break;
 
-				//done reading in the problem line, so clauses should come next
-				//so break out of the while loop
+			case CHANCE_FRAME:
+				double chanceTrue = v.getChanceTrue();
+				double chanceFalse = v.getChanceFalse();
+				if(frame.value) {
+					lower = lower * chanceTrue;
+					upper = upper * chanceTrue + chanceFalse;
+					if(plan != null) plan = PlanNode.chance(v.getName(), chanceTrue, plan, PlanNode.FAILURE);
+				} else {
+					lower = frame.firstProbability * chanceTrue + lower * chanceFalse;
+					upper = frame.firstProbability * chanceTrue + upper * chanceFalse;
+					if(plan != null) plan = PlanNode.chance(v.getName(), chanceTrue, frame.firstPlan, plan);
+				}
 				break;
-			} else {
-				System.out.println("Error: got unexpected line in file. '" + nextLine + "'");
-				System.exit(2);
-			}
-		}		
-
-		//start reading in clauses
-		for(int i = 0; i < clauses.capacity(); i++) {
-			Clause nextClause = new Clause();
-			int nextVarNum = reader.nextInt();
-			Variable nextVar;
-			while(nextVarNum != 0) {
-				if(DEBUG) {
-					System.out.println("read variable " + nextVarNum + " in clause " + i);
+
+			default:
+				assert frame.kind == COMPONENTS_FRAME;
+				//the components after the one being solved haven't been started
+				if(frame.nextComponent < frame.components.size()) {
+					lower = 0.0;
+					if(plan != null) plan = PlanNode.FAILURE;
 				}
+				lower *= frame.probability;
+				upper *= frame.probability;
+				if(plan != null && frame.plan != null) plan = PlanNode.product(frame.plan, plan);
+			}
+		}
 
-				nextVar = variables.get(Math.abs(nextVarNum));
+		if(lower > lowerBound) {
+			lowerBound = lower;
+			bestPlan = plan;
+		}
+		upperBound = Math.min(upperBound, upper);
+	}
 
-				if(DEBUG) {
-					System.out.println("Got variable " + nextVar.getName() + " from array");
+	/**
+	 * Pops every frame off the search stack, unassigning what they assigned, after an anytime
+	 * search is stopped part way.  The formula is left how it was before the search.
+	 */
+	private void unwind() {
+		while(stackSize > 0) {
+			SearchFrame frame = frames[stackSize - 1];
+			if(frame.variable != null) unassign(frame.variable.getName());
+			if(frame.kind == PROPAGATE_FRAME) {
+				for(int i = frame.numAssigned - 1; i >= 0; i--) {
+					unassign(frame.assigned[i]);
 				}
+			} else if(frame.kind == COMPONENTS_FRAME) {
+				scope = frame.outerScope;
+			}
+			popFrame();
+		}
+		if(DEBUG) checkVariableStats();
+	}
 
+	/**
+	 * Makes the search stop at a set time, instead of the time limit after it starts, so the
+	 * time spent reading and preprocessing the formula can count against the time limit too.
+	 * @param deadline - the System.nanoTime() the search has to stop by, or 0 to go back to the time limit
+	 */
+	public void setDeadline(long deadline) {
+		givenDeadline = deadline;
+	}
 
-				nextClause.addVariable(nextVar, nextVarNum > 0);
+	/**
+	 * Starts counting nodes, and works out when the search has to stop if there is a time limit.
+	 * The formula is got ready for the search again, since an earlier search on this solver,
+	 * or on the formula, propagated its unit clauses and moved its watched literals.
+	 */
+	private void startClock() {
+		database.startSearch();
+		nodes = 0;
+		searchStart = System.nanoTime();
+		if(givenDeadline != 0) deadline = givenDeadline;
+		else deadline = timeLimit > 0 ? searchStart + timeLimit : 0;
+		nextProgress = searchStart + progressInterval;
+	}
 
-				nextVarNum = reader.nextInt();
-				if(DEBUG) System.out.println("\n");
+	/**
+	 * Counts a node of the search tree.  Every so often, makes sure there is still time left,
+	 * and if it is time to, reports the bounds of an anytime search and prints the stats.
+	 * @throws SsatTimeoutException if the time or node limit is up
+	 */
+	private void countNode() {
+		nodes++;
+		if(stats != null) stats.countNode(database.getTrailSize());
+		if(nodeLimit > 0 && nodes > nodeLimit) {
+			throw new SsatTimeoutException("Gave up after exploring " + nodeLimit + " nodes");
+		}
+		if((nodes & DEADLINE_CHECK_MASK) == 0 && (deadline != 0 || listener != null || progress != null)) {
+			long now = System.nanoTime();
+			if(deadline != 0 && now - deadline > 0) {
+				throw new SsatTimeoutException("Gave up after the time limit of " + (timeLimit / 1e9) + " seconds");
+			}
+			//an anytime search tells the listener how it is going every so often
+			if(listener != null && reportInterval > 0 && now - nextReport >= 0) {
+				updateBounds();
+				listener.bounds(lowerBound, upperBound, nodes, (now - searchStart) / 1e9);
+				nextReport = now + reportInterval;
+			}
+			if(progress != null && now - nextProgress >= 0) {
+				progress.println("After " + ((now - searchStart) / 1e9) + " seconds: " + stats);
+				nextProgress = now + progressInterval;
 			}
+		}
+	}
 
-			clauses.add(nextClause);
+	/**
+	 * @return what the search has been counting, or null if the stats weren't asked for.
+	 * Branches being solved by other threads are added in when they are done.
+	 */
+	public SearchStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * Prints the stats every progressSeconds (from the options) while the solver is searching.
+	 * The stats have to be turned on.
+	 * @param out - where to print them, or null to stop printing them
+	 */
+	public void printProgress(PrintStream out) {
+		if(out != null && (stats == null || progressInterval <= 0)) throw new IllegalStateException("Progress needs the stats and an interval");
+		progress = out;
+	}
+
+	/**
+	 * @return how many nodes of the search tree have been explored, including by other threads.
+	 * If the search stopped with an exception, branches other threads were solving may not be counted.
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Sets up the threads to search with.  Branches are handed out a few levels deeper than
+	 * it takes to give every thread one, so threads that finish early have more to pick up.
+	 */
+	private void startThreads() {
+		pool = new ForkJoinPool(threads);
+		forkDepth = 32 - Integer.numberOfLeadingZeros(threads - 1) + FORK_EXTRA_LEVELS;
+	}
+
+	/**
+	 * Gets rid of the threads once the search is done, so they don't hang around.
+	 */
+	private void stopThreads() {
+		pool.shutdown();
+		pool = null;
+		forkDepth = 0;
+	}
+
+	/**
+	 * Prints out how long solving took, how well the cache did, and how many clauses were learned.
+	 * @param startTime
+	 * @param stopTime
+	 */
+	private void printTime(long startTime, long stopTime) {
+		//calculate and print out time taken
+		double totalTime = (stopTime - startTime) / 1000.0;
+		System.out.println("Time Taken = " + totalTime + " seconds.");
+
+		if(cache != null) System.out.println(cache);
+		if(database.getLearnedClauses() != null) System.out.println(database.getLearnedClauses());
+	}
+
+	/**
+	 * Compiles the formula into a DecisionDiagram, writes it out, and prints the probability of success.
+	 * @param formula
+	 * @param options - the file to write the diagram to, and how to compile it
+	 * @param startTime - when the solver started, in milliseconds
+	 */
+	private static void compile(ClauseDatabase formula, SolverOptions options, long startTime) {
+		DiagramCompiler compiler = new DiagramCompiler(formula, options);
+		DecisionDiagram diagram = null;
+		try {
+			diagram = compiler.compile();
+		} catch(SsatTimeoutException e) {
+			System.out.println(e.getMessage());
+			System.exit(3);
 		}
+		long stopTime = System.currentTimeMillis();
+		System.out.println("Time Taken = " + ((stopTime - startTime) / 1000.0) + " seconds.");
 
-		//done reading in clauses - read in the variable probabilities
+		try {
+			diagram.write(options.compileFile);
+			System.out.println("Wrote the diagram, with " + diagram.getNumNodes() + " nodes from " + compiler.getNodes() +
+					" search nodes, to " + options.compileFile);
+		} catch(IOException e) {
+			System.out.println("Couldn't write the diagram to '" + options.compileFile + "': " + e.getMessage());
+			System.exit(1);
+		}
+		printProbability(diagram.getProbability());
+	}
 
-		//get to the next int
-		while(! reader.hasNextInt()) reader.next();
+	/**
+	 * Estimates the probability of success by sampling, and prints the estimate and how sure it is.
+	 * @param formula
+	 * @param options - the precision, and how to take the samples
+	 * @param startTime - when the solver started, in milliseconds
+	 */
+	private static void sample(ClauseDatabase formula, SolverOptions options, long startTime) {
+		MonteCarloSampler sampler = new MonteCarloSampler(formula, options);
+		double estimate = sampler.sample();
+		long stopTime = System.currentTimeMillis();
+		System.out.println("Time Taken = " + ((stopTime - startTime) / 1000.0) + " seconds.");
+
+		System.out.println("Samples = " + sampler.getSamples() + ", successes = " + sampler.getSuccesses());
+		if(!sampler.isPrecise()) System.out.println("Stopped before the estimate was within " + options.samplePrecision);
+		System.out.println("Estimated Success Probability = " + estimate + ", 95% confidence interval [" +
+				sampler.getLowerLimit() + ", " + sampler.getUpperLimit() + "]");
+		if(MonteCarloSampler.estimatesUpperBound(formula)) {
+			System.out.println("Some choice variables come before chance variables, but were set knowing how they turned out, " +
+					"so this estimates an upper bound");
+		}
+	}
 
-		//start reading in the variable information.
-		for(int i = 1; i < variables.size(); i++) {
-			int variableName = reader.nextInt();
-			double variableValue = reader.nextDouble();
+	/**
+	 * Prints out the probability of success, or if we don't have satisfaction.
+	 * @param overallProb
+	 */
+	public static void printProbability(double overallProb) {
+		if(overallProb == 0.0) {
+			System.out.println("No Satisfaction :-(");
+		} else {
+			System.out.println("Success Probability = " + overallProb);
+		}
+	}
 
-			if(DEBUG) 
-				System.out.println("Read in variable " + variableName + " with value " + variableValue);
+	/**
+	 * Prints out the stats as JSON, if they were turned on.
+	 * @param solver
+	 */
+	private static void printStats(SsatSolver solver) {
+		if(solver.getStats() != null) System.out.println(solver.getStats().toJson());
+	}
 
-			variables.get(variableName).setValue(variableValue);	
+	/**
+	 * After an anytime search, prints out how much better than the plan it found another plan
+	 * could do, if it stopped before it was sure it had the best one.
+	 * @param solver
+	 */
+	private static void printUpperBound(SsatSolver solver) {
+		if(solver.getUpperBound() > solver.getLowerBound()) {
+			System.out.println("Stopped early - no plan succeeds with probability more than " + solver.getUpperBound());
 		}
+	}
 
-		if(DEBUG) {
-			System.out.println("");
-			for(int i = 1; i < variables.size(); i++){
-				Variable v = variables.get(i);
-				System.out.println("Variable " + v.getName() + " is a choice variable? " + v.isChoice());
-				System.out.println("Variable " + v.getName() + " is a chance variable? " + v.isChance() + "\n");
-			}
+	/**
+	 * Prints out the bounds of an anytime search as they get better.
+	 */
+	private static class BoundsPrinter implements BoundsListener {
+		public void bounds(double lower, double upper, long nodes, double seconds) {
+			System.out.println("After " + seconds + " seconds and " + nodes + " nodes: " + lower + " <= Success Probability <= " + upper);
 		}
+	}
 
+	/**
+	 * Prints out if the threshold was met.
+	 * @param threshold - the probability of success that was needed
+	 * @param bound - from solveThreshold
+	 */
+	public static void printThreshold(double threshold, double bound) {
+		if(bound >= threshold) {
+			System.out.println("Success Probability >= " + threshold + " (a plan succeeds with probability at least " + bound + ")");
+		} else {
+			System.out.println("Success Probability < " + threshold + " (no plan succeeds with probability more than " + bound + ")");
+		}
 	}
 
 
 	/**
-	 * Solves the current configuration of vaiables and clauses in the static Vectors.
+	 * Reads in a formula from a ssat file, and gets it ready to be solved.
+	 * The file can be gzipped.  See SsatParser.
+	 * @param fileLocation
+	 * @return the formula
+	 * @throws IOException if the file can't be read, or SsatFormatException if it isn't a ssat file
+	 */
+	public static ClauseDatabase readFormula(String fileLocation) throws IOException {
+		return SsatParser.parse(fileLocation);
+	}
+
+	/**
+	 * Reads in a formula in the ssat format, and gets it ready to be solved.
+	 * The comment lines are kept in the formula, without the c.
+	 * @param in - the stream to read from, which can be gzipped.  It isn't closed.
+	 * @return the formula
+	 * @throws IOException if the stream can't be read, or SsatFormatException if it isn't in the ssat format
+	 */
+	public static ClauseDatabase readFormula(InputStream in) throws IOException {
+		return SsatParser.parse(in);
+	}
+
+	/**
+	 * Simplifies a formula with the preprocessing steps that are turned on.  See Preprocessor.
+	 * @param formula - the formula, from readFormula
+	 * @param options
+	 * @return the simplified formula, or the same one if no steps are turned on
+	 */
+	public static ClauseDatabase preprocess(ClauseDatabase formula, SolverOptions options) {
+		return preprocess(formula, options, 0);
+	}
+
+	/**
+	 * The same as preprocess(formula, options), but gives up if it goes on past deadline.
+	 * @param formula - the formula, from readFormula
+	 * @param options
+	 * @param deadline - the System.nanoTime() to give up at, or 0 for no limit
+	 * @return the simplified formula, or the same one if no steps are turned on
+	 * @throws SsatTimeoutException if it goes past the deadline
+	 */
+	public static ClauseDatabase preprocess(ClauseDatabase formula, SolverOptions options, long deadline) {
+		if(!options.preprocesses()) return formula;
+		Preprocessor preprocessor = new Preprocessor(options);
+		preprocessor.setDeadline(deadline);
+		return preprocessor.preprocess(formula);
+	}
+
+
+	/**
+	 * Solves the whole formula, or the component being solved, exactly.
+	 * @return the plan that it finds for the variables that are still unassigned.
+	 */
+	public PlanNode DPLL() {
+		return DPLL(-1.0);
+	}
+
+	/**
+	 * Solves the current configuration of vaiables and clauses in this solver's Vectors.
 	 * Does so using a variation of DPLL.
-	 * First, it looks for unit clauses, and assigns them if possible using tryAssign.
+	 * First, it looks for unit clauses, and assigns them.
 	 * Then, it tries to find and assign choice pure variable.
-	 * If it can't do that, it tries both assignments for the next unassigned variable
+	 * If it can't do that, it checks if the residual formula splits into independent components,
+	 * and if it does, solves each of them separately.
+	 * Otherwise, it tries both assignments for the next unassigned variable
 	 * and depending on if it is a chance or choice variable, returns the either the
 	 * best plan it can find, or both plans.
-	 * 
-	 * @return a Vector of assignments in the plan that it finds.
+	 *
+	 * If a component is being solved, only the variables and clauses in that component are looked at.
+	 *
+	 * Once the formula is SAT or UNSAT, the plan ends in a SUCCESS or FAILURE leaf straight away.
+	 * The chance variables that are still unassigned don't matter any more, so they are left out
+	 * of the plan, and show up as don't-cares when it is printed.
+	 *
+	 * The caller only needs the plan if it succeeds with probability more than low, so
+	 * branches that can't do that are cut off early.  If that happens, the plan returned
+	 * isn't finished - its probability is only an upper bound, and is at most low - and
+	 * pruned is set, so the caller knows not to use it.
+	 *
+	 * See search for how it is done without recursion.
+	 * @param low - the probability the plan has to beat to be any use
+	 * @return the plan that it finds for the variables that are still unassigned.
+	 */
+	public PlanNode DPLL(double low) {
+		search(low, Double.POSITIVE_INFINITY, true);
+		return resultPlan;
+	}
+
+	/**
+	 * Works out the probability of success of the best plan for the whole formula,
+	 * or the component being solved, exactly.
+	 * @return the probability of success of the best plan for the current formula.
+	 */
+	public double DPLLProbability() {
+		return DPLLProbability(-1.0);
+	}
+
+	/**
+	 * Works out the probability of success of the best plan, the same way DPLL does,
+	 * but without making the plan.  Nothing is allocated while searching, other than
+	 * the keys for the cache and the components, if they are turned on.
+	 *
+	 * Since the probabilities of all the ways the remaining chance variables can turn out
+	 * add up to 1, once the formula is SAT or UNSAT we don't need to assign them.
+	 *
+	 * Like DPLL, if the probability can't be more than low, the search is cut off early,
+	 * an upper bound that is at most low is returned, and pruned is set.
+	 * @param low - the probability that has to be beaten
+	 * @return the probability of success of the best plan for the current formula.
+	 */
+	public double DPLLProbability(double low) {
+		return DPLLProbability(low, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Like DPLLProbability(low), but the caller only needs to know if the probability is at least high.
+	 * As soon as a plan that does that is found, the search stops, and its probability, which
+	 * is only a lower bound, is returned with reached set.
+	 * @param low - the probability that has to be beaten
+	 * @param high - the probability that is enough, which is more than low
+	 * @return the probability of success of the best plan for the current formula, or a bound on it
 	 */
-	public static Vector<Assignment> DPLL() {
+	public double DPLLProbability(double low, double high) {
+		search(low, high, false);
+		return resultProbability;
+	}
 
-		if(DEBUG) System.out.println("\nStarting DPLL()"); 
+	/**
+	 * Does the work of DPLL and DPLLProbability without recursing, so formulas with any
+	 * number of variables can be solved without running out of stack.
+	 *
+	 * Each node of the search tree either gets its result straight away, or assigns a
+	 * variable and pushes a frame onto the stack, which remembers what to do with the
+	 * result of the branch under it.  The database's trail remembers what was assigned,
+	 * so when a branch is done its frame unassigns the variable and either starts its
+	 * next branch, or works out its own result and is popped, passing the result up.
+	 *
+	 * Branches that are solved in other threads still recurse, but only a few levels deep.
+	 *
+	 * The result is left in resultPlan (if wantPlan is set), resultProbability, pruned and reached.
+	 * @param low - the probability the plan has to beat
+	 * @param high - the probability that is enough, so the search can stop once it is reached
+	 * @param wantPlan - if the plan should be made, or only its probability worked out
+	 */
+	private void search(double low, double high, boolean wantPlan) {
+		//other searches can be started from inside this one, e.g. for branches solved in parallel,
+		//so this one only uses the frames above where the stack is now
+		int base = stackSize;
+		while(true) {
+			if(startNode(low, high, wantPlan)) {
+				//a branch was started
+				low = childLow;
+				high = childHigh;
+				continue;
+			}
 
-		//see if the formula is satisfied
-		if(Clause.isFormulaSAT(clauses)) {
-			if(DEBUG) System.out.println("Formula is SAT - returning the assignment");
-			//make sure we have assigned all the chance variables, so we know the probability of each possible plan
-			return assignNextChance();
+			//pass the result up until a frame has another branch to solve
+			boolean started = false;
+			while(stackSize > base && !started) {
+				started = finishBranch(frames[stackSize - 1], wantPlan);
+			}
+			if(!started) return;
+			low = childLow;
+			high = childHigh;
 		}
+	}
 
-		//see if the formula is un-satisfied
-		if(Clause.isFormulaUnSAT(clauses)) {
-			if(DEBUG) System.out.println("Formula is UNSAT - returning the assignment");
-			//make sure we have assigned all the chance variables, so we know the probability of each possible plan
-			return assignNextChance();
+	/**
+	 * Looks at a node of the search tree.  Either its result is found straight away,
+	 * or a frame is pushed and a variable is assigned to start its first branch.
+	 * @param low - the probability the plan has to beat
+	 * @param high - the probability that is enough
+	 * @param wantPlan - if the plan should be made
+	 * @return true if a branch was started, which has to beat childLow and only needs childHigh,
+	 * or false if the result is in resultPlan and resultProbability
+	 */
+	private boolean startNode(double low, double high, boolean wantPlan) {
+		countNode();
+		pruned = false;
+		reached = false;
+
+		//see if the formula is satisfied or un-satisfied
+		//the database keeps count of the satisfied and empty clauses, so these checks don't look at the clauses
+		long checkStart = stats != null ? System.nanoTime() : 0;
+		boolean sat = isSAT();
+		boolean unSat = !sat && database.isFormulaUnSAT();
+		if(stats != null) stats.addCheckTime(System.nanoTime() - checkStart);
+
+		if(sat) {
+			if(DEBUG) System.out.println("Formula is SAT");
+			//whatever the chance variables that are left turn out to be, the plan succeeds,
+			//so they don't need to be split on
+			return result(wantPlan ? PlanNode.SUCCESS : null, 1.0);
 		}
 
-		//try to find a variable to assign.
+		if(unSat) {
+			if(DEBUG) System.out.println("Formula is UNSAT");
+			if(stats != null) stats.countConflict();
+			//remember why, so the same conflict is found straight away next time
+			database.learnFromConflict();
+			//and it fails whatever they turn out to be
+			return result(wantPlan ? PlanNode.FAILURE : null, 0.0);
+		}
 
-		//first, look for a unit clause
-		for(int i = 1; i < variables.size(); i++) {
-			Variable v = variables.get(i);
+		//no plan can succeed more than all the time
+		if(low >= 1.0) return prunedResult(PlanNode.SUCCESS, 1.0);
+		//and every plan succeeds at least none of the time
+		if(high <= 0.0) return reachedResult(wantPlan ? PlanNode.FAILURE : null, 0.0);
 
-			//only consider variables that are unassigned
-			if(v.getAssignment() == Variable.UNASSIGNED) {
+		//try to find a variable to assign.
 
-				//see if it is unit
-				if(v.isUnit()) {
-					if(SsatSolver.DEBUG) System.out.println("Variable " + v.getName() + " is unit");
-					Clause unitClause = v.getFirstUnitClause();
-					assert unitClause != null;
-					Literal unitLiteral = unitClause.getLiteral(v);
-
-					//try the assignment, based on if it appears positively or negatively unit.
-					//return different vectors of assignments if it is choice or chance.
-					Vector<Assignment> unitAssignments;
-					if(unitLiteral.getSign()) {
-						if(SsatSolver.DEBUG) System.out.println("Assigning var " + v.getName() + " to true");
-						unitAssignments = tryAssign(unitLiteral.getVariable(), Variable.TRUE);
-						//depending on if v is choice or chance, we may need to adjust things
-						if(v.isChoice()) {
-							//v is choice, so we don't need to adjust the probability of success.
-							return unitAssignments;
-						} else {
-							//v is chance, so we need to adjust the probability of success for all
-							//the assignments we got back.
-							assert v.isChance();
-							for(Assignment a : unitAssignments) {
-								a.adjustProbability(v.getChanceTrue());
-							}
-							return unitAssignments;
-						}
-						//Do the same, but with assigning the variable to FALSE
-					} else {
-						if(SsatSolver.DEBUG) System.out.println("Assigning var " + v.getName() + " to false");
-						unitAssignments = tryAssign(unitLiteral.getVariable(), Variable.FALSE);
-						//depending on if v is choice or chance, we may need to adjust things
-						if(v.isChoice()) {
-							return unitAssignments;
-						} else {
-							assert v.isChance();
-							for(Assignment a : unitAssignments) {
-								a.adjustProbability(v.getChanceFalse());
-							}
-							return unitAssignments;
-						}
-					}
+		//first, assign the variables in unit clauses.  The database queues them up as their
+		//clauses become unit, so they are all assigned here, along with everything they imply,
+		//in one frame instead of a node each.
+		int unitLiteral = database.pollUnit(scope);
+		if(unitLiteral != 0) {
+			SearchFrame frame = pushFrame(PROPAGATE_FRAME, low, high, null);
+			frame.numAssigned = 0;
+			while(unitLiteral != 0) {
+				Variable unit = variables.get(Math.abs(unitLiteral));
+				if(DEBUG) System.out.println("Variable " + unit.getName() + " is unit");
+				boolean value = unitLiteral > 0;
+
+				//if the unit is chance, the probability is multiplied by the chance of this value,
+				//so the rest of the plan has to do better than low divided by that
+				double factor = 1.0;
+				if(unit.isChance()) factor = value ? unit.getChanceTrue() : unit.getChanceFalse();
+				if(factor <= low) {
+					//the units already assigned are added to the plan when the frame finishes
+					return prunedResult(wantPlan ? PlanNode.assign(unit.getName(), unit.getValue(), value, PlanNode.SUCCESS) : null, factor);
 				}
+
+				if(DEBUG) System.out.println("Assigning variable " + unit.getName() + " to " + (value ? "True" : "False"));
+				if(stats != null) stats.countUnit();
+				assignUnit(unitLiteral);
+				if(DEBUG) checkVariableStats();
+				frame.addAssigned(unit.getName());
+				low = low / factor;
+				high = high / factor;
+
+				//the node under this frame deals with a formula that is SAT or UNSAT, or can't be beaten
+				if(isSAT() || database.isFormulaUnSAT() || low >= 1.0) break;
+				unitLiteral = database.pollUnit(scope);
 			}
+			childLow = low;
+			childHigh = high;
+			return true;
 		}
 
-		//Next, look for a pure variable
-		for(int i = 1; i < variables.size(); i++) {
-			Variable v = variables.get(i);
-			//only consider variables that are choice variables and unassigned
-			if(v.isChoice() && v.getAssignment() == Variable.UNASSIGNED) {
-				//purity will be positive if v only appears positively,
-				//negative if v only appears negatively, or 0 otherwise.
-				int purity = v.isPure();
-				if(purity != 0) {
-					if(SsatSolver.DEBUG) System.out.println("Variable " + v.getName() + " is pure");
-					//we have a pure variable
-					//assign it accordingly
-					Vector<Assignment> pureAssignments;
-					if(purity > 0) {
-						if(SsatSolver.DEBUG) System.out.println("Assigning it true");
-						pureAssignments = tryAssign(v, Variable.TRUE);
-						return pureAssignments;
-					}
-					else { 
-						if(SsatSolver.DEBUG) System.out.println("Assigning it false");
-						pureAssignments = tryAssign(v, Variable.FALSE);
-						return pureAssignments;
-					}
-				}
-			}
+		//Next, look for a pure choice variable.  The database keeps track of which ones are pure.
+		int pureName = database.findPure(scope);
+		if(pureName != 0) {
+			Variable v = variables.get(pureName);
+			//purity will be positive if v only appears positively,
+			//negative if v only appears negatively, or 0 otherwise.
+			int purity = v.isPure();
+			assert purity != 0;
+			if(DEBUG) System.out.println("Variable " + v.getName() + " is pure");
+			SearchFrame frame = pushFrame(PURE_FRAME, low, high, null);
+			return startBranch(frame, v, purity > 0, low, high);
 		}
 
 		//We weren't able to find a pure or unit variable, so go to the next unassigned variable
+		//in a component, only its own variables need looking at
 		Variable nextAssignee = null;
-		for(int i = 1; i < variables.size(); i++) {
-			Variable v = variables.get(i);
+		int numCandidates = scope == null ? variables.size() - 1 : scope.getVariables().length;
+		for(int i = 0; i < numCandidates; i++) {
+			Variable v = variables.get(scope == null ? i + 1 : scope.getVariables()[i]);
 			if(v.getAssignment() == Variable.UNASSIGNED) {
 				nextAssignee = v;
 				break;
@@ -316,153 +1167,718 @@ public class SsatSolver {
 
 		assert nextAssignee != null;
 
-		if(SsatSolver.DEBUG) System.out.println("No pure or unit variables - trying to assign variable " + nextAssignee.getName());
+		//we have to branch, so see if we have already solved this residual formula
+		int[] residualKey = null;
+		if(cache != null) {
+			residualKey = database.getResidualKey(scope);
+			if(wantPlan) {
+				PlanNode cachedPlan = cache.get(residualKey);
+				//plans never change, so the cached one can be used as it is
+				if(cachedPlan != null) return result(cachedPlan, cachedPlan.getProbability());
+			} else {
+				double cachedProb = cache.getProbability(residualKey);
+				if(cachedProb >= 0.0) return result(null, cachedProb);
+			}
+		}
 
-		//try assigning the variable to true and to false
-		if(SsatSolver.DEBUG) System.out.println("Trying variable " + nextAssignee.getName() + " assigned to TRUE");
-		Vector<Assignment> trueAssignments = tryAssign(nextAssignee, Variable.TRUE);
-		if(SsatSolver.DEBUG) System.out.println("Trying variable " + nextAssignee.getName() + " assigned to FALSE");
-		Vector<Assignment> falseAssignments = tryAssign(nextAssignee, Variable.FALSE); 
+		//see if the residual formula falls apart into components that can be solved on their own
+		Vector<Component> components = null;
+		if(useComponents) components = database.findComponents(scope);
+		if(components != null && components.size() > 1) {
+			if(DEBUG) System.out.println("Residual formula splits into " + components.size() + " components");
+			SearchFrame frame = pushFrame(COMPONENTS_FRAME, low, high, residualKey);
+			frame.components = components;
+			frame.nextComponent = 0;
+			frame.outerScope = scope;
+			frame.plan = null;
+			frame.probability = 1.0;
+			return startComponent(frame);
+		}
+
+		if(forkDepth > 0) {
+			//solve the two branches at the same time.  This recurses, but only forkDepth levels deep.
+			long learnedUses = database.getLearnedUses();
+			if(wantPlan) {
+				PlanNode plan = branchOnInParallel(nextAssignee, low);
+				resultPlan = plan;
+				resultProbability = plan.getProbability();
+			} else {
+				resultProbability = branchProbabilityInParallel(nextAssignee, low, high);
+			}
+			if(!pruned && !reached) cacheResult(residualKey, learnedUses, wantPlan);
+			return false;
+		}
 
-		//depending on if the variable is chance or choice, do different things
+		if(DEBUG) System.out.println("No pure or unit variables - trying variable " + nextAssignee.getName() + " assigned to TRUE");
 		if(nextAssignee.isChoice()) {
-			//for a choice variable, return the set of assignments with the higher probability of sucess
-			//since we get to choose the assignment of choice variables to maximize success.
-			if(Assignment.getTotalProbability(trueAssignments) >= Assignment.getTotalProbability(falseAssignments))
-				return trueAssignments;
-			else 
-				return falseAssignments;
+			SearchFrame frame = pushFrame(CHOICE_FRAME, low, high, residualKey);
+			return startBranch(frame, nextAssignee, true, low, high);
 		} else {
-			//it is a chance variable
-			assert nextAssignee.isChance();
+			//each branch has to do well enough that the whole thing can beat low,
+			//even if the other branch succeeds all the time.
+			//the true branch is enough on its own if it gets high, even if the false branch never succeeds
+			double chanceTrue = nextAssignee.getChanceTrue();
+			SearchFrame frame = pushFrame(CHANCE_FRAME, low, high, residualKey);
+			return startBranch(frame, nextAssignee, true, chanceBranchLow(low, chanceTrue), chanceBranchHigh(high, chanceTrue));
+		}
+	}
+
+	/**
+	 * Called when the branch under the passed frame is done, with its result in resultPlan,
+	 * resultProbability and pruned.  Unassigns the variable the frame assigned, and then either
+	 * starts the frame's next branch, or works out the frame's result and pops it.
+	 * @param frame - the frame on top of the stack
+	 * @param wantPlan - if the plan should be made
+	 * @return true if another branch was started, which has to beat childLow,
+	 * or false if the frame was popped and its result is in resultPlan and resultProbability
+	 */
+	private boolean finishBranch(SearchFrame frame, boolean wantPlan) {
+		if(stats != null) stats.countBacktrack();
+		Variable v = frame.variable;
+		if(v != null) {
+			//unassign the variable, which also undoes everything that depended on it
+			unassign(v.getName());
+			if(DEBUG) checkVariableStats();
+		}
 
-			//adjust the probabilities of the true assignments by the chance that the variable is true
-			//and adjust the probabilities of the false assignmetns by the chance that the varible is false.
-			for(Assignment a : trueAssignments) {
-				a.adjustProbability(nextAssignee.getChanceTrue());
+		switch(frame.kind) {
+		case PROPAGATE_FRAME:
+			//unassign the units, last first, adding each one to the plan or multiplying in its chance.
+			//The result keeps whether it was cut off.
+			for(int i = frame.numAssigned - 1; i >= 0; i--) {
+				Variable unit = variables.get(frame.assigned[i]);
+				boolean value = unit.getAssignment() == Variable.TRUE;
+				if(wantPlan) {
+					resultPlan = PlanNode.assign(unit.getName(), unit.getValue(), value, resultPlan);
+				} else if(unit.isChance()) {
+					resultProbability = (value ? unit.getChanceTrue() : unit.getChanceFalse()) * resultProbability;
+				}
+				unassign(unit.getName());
+				if(DEBUG) checkVariableStats();
+			}
+			if(wantPlan) resultProbability = resultPlan.getProbability();
+			return popFrame();
+
+		case PURE_FRAME:
+			//a pure choice variable doesn't change the probability.  The branch keeps whether it was cut off.
+			if(wantPlan) {
+				resultPlan = PlanNode.assign(v.getName(), v.getValue(), frame.value, resultPlan);
+				resultProbability = resultPlan.getProbability();
+			}
+			return popFrame();
+
+		case CHOICE_FRAME:
+			if(frame.value) {
+				//for a choice variable, the false branch only matters if it can beat the true branch
+				if(!pruned && resultProbability >= 1.0) {
+					if(wantPlan) resultPlan = PlanNode.assign(v.getName(), v.getValue(), true, resultPlan);
+					if(!reached) cacheResult(frame.key, frame.learnedUses, wantPlan);
+					return popFrame();
+				}
+				//or if the true branch is already enough
+				if(!pruned && (reached || resultProbability >= frame.high)) {
+					if(wantPlan) resultPlan = PlanNode.assign(v.getName(), v.getValue(), true, resultPlan);
+					reached = true;
+					return popFrame();
+				}
+				rememberFirstBranch(frame);
+				if(DEBUG) System.out.println("Trying variable " + v.getName() + " assigned to FALSE");
+				return startBranch(frame, v, false, pruned ? frame.low : Math.max(frame.low, resultProbability), frame.high);
 			}
 
-			for(Assignment a : falseAssignments) {
-				a.adjustProbability(nextAssignee.getChanceFalse());
+			//return the plan with the higher probability of sucess, since we get to choose the
+			//assignment of choice variables to maximize success.  See useFirstBranch.
+			//the true branch was worked out exactly, so it is only a lower bound if the false branch is.
+			boolean useTrue = useFirstBranch(frame.firstProbability, frame.firstPruned, resultProbability, pruned, frame.low);
+			pruned = useTrue ? frame.firstPruned : pruned;
+			if(useTrue) {
+				resultPlan = frame.firstPlan;
+				resultProbability = frame.firstProbability;
+			}
+			if(wantPlan) resultPlan = PlanNode.assign(v.getName(), v.getValue(), useTrue, resultPlan);
+			if(!pruned && !reached) cacheResult(frame.key, frame.learnedUses, wantPlan);
+			return popFrame();
+
+		case CHANCE_FRAME:
+			double chanceTrue = v.getChanceTrue();
+			double chanceFalse = v.getChanceFalse();
+			if(frame.value) {
+				if(pruned) {
+					//the false branch can't help, so it is left as always succeeding
+					if(wantPlan) {
+						resultPlan = PlanNode.chance(v.getName(), chanceTrue, resultPlan, PlanNode.SUCCESS);
+						resultProbability = resultPlan.getProbability();
+					} else {
+						resultProbability = resultProbability * chanceTrue + chanceFalse;
+					}
+					return popFrame();
+				}
+				if(reached || resultProbability * chanceTrue >= frame.high) {
+					//the true branch is enough on its own, so the false branch is left as never succeeding
+					if(wantPlan) {
+						resultPlan = PlanNode.chance(v.getName(), chanceTrue, resultPlan, PlanNode.FAILURE);
+						resultProbability = resultPlan.getProbability();
+					} else {
+						resultProbability = resultProbability * chanceTrue;
+					}
+					reached = true;
+					return popFrame();
+				}
+				rememberFirstBranch(frame);
+				if(DEBUG) System.out.println("Trying variable " + v.getName() + " assigned to FALSE");
+				double falseLow = chanceFalse > 0 ? (frame.low - resultProbability * chanceTrue) / chanceFalse : -1.0;
+				double falseHigh = chanceFalse > 0 ? (frame.high - resultProbability * chanceTrue) / chanceFalse : Double.POSITIVE_INFINITY;
+				return startBranch(frame, v, false, falseLow, falseHigh);
 			}
 
-			//now, return a Vector containing the false and true assignments.
-			Vector<Assignment> allAssignmetns = new Vector<Assignment>(trueAssignments.size() + falseAssignments.size());
-			allAssignmetns.addAll(trueAssignments);
-			allAssignmetns.addAll(falseAssignments);
+			//the plan has to cover both outcomes.  It is cut off if the false branch was,
+			//and only a lower bound if the false branch is.
+			if(wantPlan) {
+				resultPlan = PlanNode.chance(v.getName(), chanceTrue, frame.firstPlan, resultPlan);
+				resultProbability = resultPlan.getProbability();
+			} else {
+				resultProbability = frame.firstProbability * chanceTrue + resultProbability * chanceFalse;
+			}
+			if(!pruned && !reached) cacheResult(frame.key, frame.learnedUses, wantPlan);
+			return popFrame();
+
+		default:
+			assert frame.kind == COMPONENTS_FRAME;
+			scope = frame.outerScope;
+
+			//every way the plan so far can turn out goes with every way this component can
+			if(wantPlan) {
+				frame.plan = frame.plan == null ? resultPlan : PlanNode.product(frame.plan, resultPlan);
+				frame.probability = frame.plan.getProbability();
+			} else {
+				frame.probability *= resultProbability;
+			}
+			if(pruned) return componentsResult(frame);
+
+			if(frame.nextComponent < frame.components.size()) {
+				//the rest of the components can only make it less likely to succeed
+				if(frame.probability <= frame.low) {
+					if(wantPlan) frame.plan = PlanNode.product(frame.plan, PlanNode.SUCCESS);
+					pruned = true;
+					return componentsResult(frame);
+				}
+				return startComponent(frame);
+			}
 
-			return allAssignmetns;
+			//the last component is only a lower bound if it was enough
+			int[] residualKey = frame.key;
+			long learnedUses = frame.learnedUses;
+			componentsResult(frame);
+			if(!reached) cacheResult(residualKey, learnedUses, wantPlan);
+			return false;
 		}
 	}
 
 	/**
-	 * When we find that the formula is SAT or UNSAT, we still need to assign all the chance variables
-	 * so that we know the probability of success for each possible assignment.
-	 * So, when that situation comes up, this method is called to makes sure we have 
-	 * calculated all of those assignments.
-	 * @return The assignments with all the chance variables assigned and probabilities calculated.
+	 * Starts solving the next component of a components frame.  Each component has to do better
+	 * than low divided by what the components before it got, since the ones after it can't do
+	 * better than always succeeding.  Only the last one can stop early once it is enough, since
+	 * until then we don't know what the others will get.
+	 * @param frame
+	 * @return true
 	 */
-	public static Vector<Assignment> assignNextChance() {
-		if(DEBUG) System.out.println("Making sure we have assigned all chance variables");
-		//get the next chance variable to assign
-		Variable nextChance = null;
-		for(int i = 1; i < variables.size(); i++) {
-			Variable v = variables.get(i);
-			if(v.isChance() && v.getAssignment() == Variable.UNASSIGNED) {
-				nextChance = v;
-				break;
-			}
+	private boolean startComponent(SearchFrame frame) {
+		Component component = frame.components.get(frame.nextComponent++);
+		if(DEBUG) System.out.println("Solving " + component);
+		component.setSatisfiedTarget(database.getNumSatisfiedClauses());
+		scope = component;
+		frame.variable = null;
+		childLow = frame.low / frame.probability;
+		childHigh = frame.nextComponent == frame.components.size() ? frame.high / frame.probability : Double.POSITIVE_INFINITY;
+		return true;
+	}
+
+	/**
+	 * Pops a components frame, with the product of its components as the result.
+	 * @param frame
+	 * @return false
+	 */
+	private boolean componentsResult(SearchFrame frame) {
+		resultPlan = frame.plan;
+		resultProbability = frame.probability;
+		return popFrame();
+	}
+
+	/**
+	 * Assigns a variable to start a branch under the passed frame.
+	 * @param frame
+	 * @param v - the variable to assign
+	 * @param value - what to assign it
+	 * @param low - the probability the branch has to beat
+	 * @param high - the probability that is enough for the branch
+	 * @return true
+	 */
+	private boolean startBranch(SearchFrame frame, Variable v, boolean value, double low, double high) {
+		frame.variable = v;
+		frame.value = value;
+		if(DEBUG) System.out.println("Assigning variable " + v.getName() + " to " + (value ? "True" : "False"));
+		if(stats != null) {
+			if(frame.kind == PURE_FRAME) stats.countPure();
+			else stats.countBranch();
 		}
+		//the database updates the stats of the clauses the variable is in, and the watches
+		assign(v.getName(), value ? Variable.TRUE : Variable.FALSE);
+		//if we're debugging, make sure everything is sane in the stored informaiton about variables.
+		if(DEBUG) checkVariableStats();
+		childLow = low;
+		childHigh = high;
+		return true;
+	}
+
+	/**
+	 * Keeps the result of a frame's first branch while the second one is solved.
+	 * @param frame
+	 */
+	private void rememberFirstBranch(SearchFrame frame) {
+		frame.firstPlan = resultPlan;
+		frame.firstProbability = resultProbability;
+		frame.firstPruned = pruned;
+	}
 
-		//if we cannot find a chance variable to assign, so they have all been assign.
-		//return the current assignment
-		if(nextChance == null) {
-			if(Clause.isFormulaSAT(clauses)) {		
-				//make an Assignment, and return it with a probably 1, since we are SAT
-				Vector<Assignment> SATAssignment = new Vector<Assignment>();
-				SATAssignment.add(new Assignment(variables, 1.0));
-				return SATAssignment;
-			} else if(Clause.isFormulaUnSAT(clauses)) {
-				//make an assignment with probability 0.0 (since we are UNSAT)
-				//and return it.
-				Vector<Assignment> UNSATAssignment = new Vector<Assignment>();
-				UNSATAssignment.add(new Assignment(variables, 0.0));
-				return UNSATAssignment;
+	/**
+	 * Sets the result of a node.
+	 * @return false, since no branch was started
+	 */
+	private boolean result(PlanNode plan, double probability) {
+		resultPlan = plan;
+		resultProbability = probability;
+		return false;
+	}
+
+	/**
+	 * Sets the result of a node that was cut off.
+	 * @param bound - an unfinished plan, whose probability is an upper bound
+	 * @param probability - the upper bound
+	 * @return false, since no branch was started
+	 */
+	private boolean prunedResult(PlanNode bound, double probability) {
+		pruned = true;
+		return result(bound, probability);
+	}
+
+	/**
+	 * Sets the result of a node that stopped once it was enough.
+	 * @param plan - a plan, whose probability is a lower bound
+	 * @param probability - the lower bound
+	 * @return false, since no branch was started
+	 */
+	private boolean reachedResult(PlanNode plan, double probability) {
+		reached = true;
+		return result(plan, probability);
+	}
+
+	/**
+	 * Remembers the result for the residual formula with the passed key.
+	 * Learned clauses follow from the whole formula, not from a component of it.  If a component's
+	 * result used any, it might only be right when the other components can be satisfied, which
+	 * doesn't matter here, since otherwise the product is 0, but would if it were looked up from
+	 * somewhere else.  So those results aren't cached.
+	 * @param residualKey - the key, or null if caching is off
+	 * @param learnedUses - how many times learned clauses had been used when the node started
+	 * @param wantPlan - if the result is a plan, or only a probability
+	 */
+	private void cacheResult(int[] residualKey, long learnedUses, boolean wantPlan) {
+		if(cache == null) return;
+		if(scope != null && database.getLearnedUses() != learnedUses) return;
+		if(wantPlan) cache.put(residualKey, resultPlan);
+		else cache.putProbability(residualKey, resultProbability);
+	}
+
+	/**
+	 * Pushes a frame onto the search stack.  The frames are reused, so the search doesn't
+	 * have to make new ones.
+	 * @param kind - what kind of node it is for
+	 * @param low - the probability the node has to beat
+	 * @param high - the probability that is enough for the node
+	 * @param residualKey - the key to cache its result with, or null if it isn't cached
+	 * @return the frame
+	 */
+	private SearchFrame pushFrame(int kind, double low, double high, int[] residualKey) {
+		if(stackSize == frames.length) {
+			SearchFrame[] bigger = new SearchFrame[frames.length * 2];
+			System.arraycopy(frames, 0, bigger, 0, stackSize);
+			frames = bigger;
+		}
+		SearchFrame frame = frames[stackSize];
+		if(frame == null) {
+			frame = new SearchFrame();
+			frames[stackSize] = frame;
+		}
+		stackSize++;
+		frame.kind = kind;
+		frame.low = low;
+		frame.high = high;
+		frame.key = residualKey;
+		frame.variable = null;
+		frame.learnedUses = database.getLearnedUses();
+		return frame;
+	}
+
+	/**
+	 * Pops the frame on top of the search stack, letting go of the plans it was holding.
+	 * @return false
+	 */
+	private boolean popFrame() {
+		SearchFrame frame = frames[--stackSize];
+		frame.key = null;
+		frame.variable = null;
+		frame.firstPlan = null;
+		frame.plan = null;
+		frame.components = null;
+		frame.outerScope = null;
+		return false;
+	}
+
+	/**
+	 * A node of the search tree that is waiting for one of its branches to be solved.
+	 */
+	private static class SearchFrame {
+		//what kind of node it is
+		private int kind;
+		//the probability the node has to beat, and what is enough for it
+		private double low;
+		private double high;
+		//the key to cache the node's result with, or null
+		private int[] key;
+		//how many times learned clauses had been used when the node started
+		private long learnedUses;
+		//the variable assigned for the branch being solved, or null if there isn't one
+		private Variable variable;
+		//what the variable was assigned.  For a choice or chance node, true means the first branch.
+		private boolean value;
+		//for unit propagation, the variables assigned, in order
+		private int[] assigned;
+		private int numAssigned;
+		//the result of the first branch, once it is done
+		private PlanNode firstPlan;
+		private double firstProbability;
+		private boolean firstPruned;
+		//for a components node, the components, the next one to solve,
+		//the scope to go back to, and the product of the ones solved so far
+		private Vector<Component> components;
+		private int nextComponent;
+		private Component outerScope;
+		private PlanNode plan;
+		private double probability;
+
+		/**
+		 * Remember a variable that unit propagation assigned.
+		 * @param name
+		 */
+		private void addAssigned(int name) {
+			if(assigned == null) assigned = new int[8];
+			else if(numAssigned == assigned.length) assigned = Arrays.copyOf(assigned, assigned.length * 2);
+			assigned[numAssigned++] = name;
+		}
+	}
+
+	/**
+	 * Assigns the passed variable, works out the probability of success, and unassigns it again.
+	 * @param assignedVar - the variable to assign
+	 * @param varSign - how we should try assigning it
+	 * @param low - the probability that has to be beaten
+	 * @param high - the probability that is enough
+	 * @return the probability of success with the variable assigned.
+	 */
+	public double tryAssignProbability(Variable assignedVar, int varSign, double low, double high) {
+		if(stats != null) stats.countBranch();
+		assign(assignedVar.getName(), varSign);
+		if(DEBUG) checkVariableStats();
+		double prob = DPLLProbability(low, high);
+		unassign(assignedVar.getName());
+		if(DEBUG) checkVariableStats();
+		return prob;
+	}
+
+	/**
+	 * Picks the better of the plans for the two values of a choice variable.  See useFirstBranch.
+	 * @return a plan that sets the variable the better way
+	 */
+	private PlanNode chooseBranch(Variable v, PlanNode truePlan, boolean truePruned, PlanNode falsePlan, boolean falsePruned, double low) {
+		boolean useTrue = useFirstBranch(truePlan.getProbability(), truePruned, falsePlan.getProbability(), falsePruned, low);
+		pruned = useTrue ? truePruned : falsePruned;
+		if(useTrue)
+			return PlanNode.assign(v.getName(), v.getValue(), true, truePlan);
+		else 
+			return PlanNode.assign(v.getName(), v.getValue(), false, falsePlan);
+	}
+
+	/**
+	 * Like branchOn, but the false branch is solved by a copy of this solver in another thread
+	 * while this thread solves the true branch.  Since neither branch knows how the other one
+	 * did, each is only cut off if it can't help no matter how the other one turns out.
+	 * @param nextAssignee - the variable to branch on
+	 * @param low - the probability the plan has to beat
+	 * @return the plan
+	 */
+	private PlanNode branchOnInParallel(Variable nextAssignee, double low) {
+		double trueLow = low;
+		double falseLow = low;
+		if(nextAssignee.isChance()) {
+			trueLow = chanceBranchLow(low, nextAssignee.getChanceTrue());
+			falseLow = chanceBranchLow(low, nextAssignee.getChanceFalse());
+		}
+
+		BranchTask falseTask = forkBranch(nextAssignee, Variable.FALSE, falseLow, Double.POSITIVE_INFINITY, false);
+		forkDepth--;
+		PlanNode truePlan = tryAssign(nextAssignee, Variable.TRUE, trueLow);
+		forkDepth++;
+		boolean truePruned = pruned;
+		falseTask.join();
+		addBranchCounts(falseTask.solver);
+
+		if(nextAssignee.isChoice()) 
+			return chooseBranch(nextAssignee, truePlan, truePruned, falseTask.plan, falseTask.pruned, low);
+		pruned = truePruned || falseTask.pruned;
+		return PlanNode.chance(nextAssignee.getName(), nextAssignee.getChanceTrue(), truePlan, falseTask.plan);
+	}
+
+	/**
+	 * Picks which branch of a choice variable to use.  A branch that was cut off has an upper bound
+	 * instead of its probability, so it is only used if that is more than the other branch's probability.
+	 * Then the result is an upper bound too, and is cut off.  Otherwise, the other branch's probability
+	 * is at least as good as anything the cut off branch could have done.
+	 * A branch is only cut off if it can't beat low, or what the other branch got, so a finished
+	 * branch that beat low is always better, even if rounding left the other one's bound a little higher.
+	 * @param first - the probability of the first branch, or its upper bound
+	 * @param firstPruned - if the first branch was cut off
+	 * @param second - the probability of the second branch, or its upper bound
+	 * @param secondPruned - if the second branch was cut off
+	 * @param low - the probability the choice node had to beat
+	 * @return if the first branch should be used
+	 */
+	private static boolean useFirstBranch(double first, boolean firstPruned, double second, boolean secondPruned, double low) {
+		if(firstPruned != secondPruned && (firstPruned ? second : first) > low) return secondPruned;
+		if(first != second) return first > second;
+		//on a tie, the one that was finished is better
+		return !firstPruned || secondPruned;
+	}
+
+	/**
+	 * The same as branchOnInParallel, but only working out the probability.
+	 * Either branch of a choice variable is enough on its own if it gets high, but the branches
+	 * of a chance variable don't know how much the other one will get, so they are worked out exactly.
+	 * @param nextAssignee - the variable to branch on
+	 * @param low - the probability that has to be beaten
+	 * @param high - the probability that is enough
+	 * @return the probability of success
+	 */
+	private double branchProbabilityInParallel(Variable nextAssignee, double low, double high) {
+		double trueLow = low;
+		double falseLow = low;
+		if(nextAssignee.isChance()) {
+			trueLow = chanceBranchLow(low, nextAssignee.getChanceTrue());
+			falseLow = chanceBranchLow(low, nextAssignee.getChanceFalse());
+			high = Double.POSITIVE_INFINITY;
+		}
+
+		BranchTask falseTask = forkBranch(nextAssignee, Variable.FALSE, falseLow, high, true);
+		forkDepth--;
+		double trueProb = tryAssignProbability(nextAssignee, Variable.TRUE, trueLow, high);
+		forkDepth++;
+		boolean truePruned = pruned;
+		boolean trueReached = reached;
+		falseTask.join();
+		addBranchCounts(falseTask.solver);
+		double falseProb = falseTask.probability;
+
+		if(nextAssignee.isChance()) {
+			pruned = truePruned || falseTask.pruned;
+			return trueProb * nextAssignee.getChanceTrue() + falseProb * nextAssignee.getChanceFalse();
+		}
+		boolean useTrue = useFirstBranch(trueProb, truePruned, falseProb, falseTask.pruned, low);
+		pruned = useTrue ? truePruned : falseTask.pruned;
+		reached = (!truePruned && trueReached) || (!falseTask.pruned && falseTask.reached);
+		return useTrue ? trueProb : falseProb;
+	}
+
+	/**
+	 * Adds what a copy of this solver counted while solving a branch in another thread to what this one has.
+	 * @param copy
+	 */
+	private void addBranchCounts(SsatSolver copy) {
+		nodes += copy.nodes;
+		database.addLearnedUses(copy.database.getLearnedUses());
+		if(stats != null) stats.add(copy.stats);
+	}
+
+	/**
+	 * Assigns a variable, timing how long it takes the database to update the clauses if the stats are on.
+	 * @param name - the variable
+	 * @param value - Variable.TRUE or Variable.FALSE
+	 */
+	private void assign(int name, int value) {
+		if(stats == null) {
+			database.assign(name, value);
+			return;
+		}
+		long start = System.nanoTime();
+		database.assign(name, value);
+		stats.addAssignTime(System.nanoTime() - start);
+	}
+
+	/**
+	 * Assigns the variable of a unit clause the same way.
+	 * @param literal - the literal that has to be true
+	 */
+	private void assignUnit(int literal) {
+		if(stats == null) {
+			database.assignUnit(literal);
+			return;
+		}
+		long start = System.nanoTime();
+		database.assignUnit(literal);
+		stats.addAssignTime(System.nanoTime() - start);
+	}
+
+	/**
+	 * Unassigns the most recently assigned variable the same way.
+	 * @param name - the variable
+	 */
+	private void unassign(int name) {
+		if(stats == null) {
+			database.unassign(name);
+			return;
+		}
+		long start = System.nanoTime();
+		database.unassign(name);
+		stats.addAssignTime(System.nanoTime() - start);
+	}
+
+	/**
+	 * @param low - the probability a chance node has to beat
+	 * @param chance - the chance of one of the outcomes of its variable
+	 * @return what that outcome has to beat, assuming the other outcome always succeeds.
+	 */
+	private static double chanceBranchLow(double low, double chance) {
+		if(chance <= 0) return -1.0;
+		return (low - (1.0 - chance)) / chance;
+	}
+
+	/**
+	 * @param high - the probability that is enough for a chance node
+	 * @param chance - the chance of one of the outcomes of its variable
+	 * @return what is enough for that outcome, assuming the other outcome never succeeds.
+	 */
+	private static double chanceBranchHigh(double high, double chance) {
+		if(chance <= 0) return Double.POSITIVE_INFINITY;
+		return high / chance;
+	}
+
+	/**
+	 * Starts solving a branch in another thread, with a copy of this solver.
+	 * @param v - the variable to branch on
+	 * @param varSign - how to assign it
+	 * @param low - the probability that has to be beaten
+	 * @param high - the probability that is enough
+	 * @param probabilityOnly - if only the probability is wanted, not the plan
+	 * @return the task solving it
+	 */
+	private BranchTask forkBranch(Variable v, int varSign, double low, double high, boolean probabilityOnly) {
+		SsatSolver copy = new SsatSolver(this);
+		copy.forkDepth = forkDepth - 1;
+		BranchTask task = new BranchTask(copy, v.getName(), varSign, low, high, probabilityOnly);
+		task.fork();
+		return task;
+	}
+
+	/**
+	 * Solves one branch with its own solver, in whichever thread of the pool picks it up.
+	 */
+	private static class BranchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private SsatSolver solver;
+		private int name;
+		private int varSign;
+		private double low;
+		private double high;
+		private boolean probabilityOnly;
+
+		//the results
+		private PlanNode plan;
+		private double probability;
+		private boolean pruned;
+		private boolean reached;
+
+		public BranchTask(SsatSolver solver, int name, int varSign, double low, double high, boolean probabilityOnly) {
+			this.solver = solver;
+			this.name = name;
+			this.varSign = varSign;
+			this.low = low;
+			this.high = high;
+			this.probabilityOnly = probabilityOnly;
+		}
+
+		protected void compute() {
+			Variable v = solver.variables.get(name);
+			if(probabilityOnly) {
+				probability = solver.tryAssignProbability(v, varSign, low, high);
 			} else {
-				//we are neither SAT or UNSAT, yet there are no more chance variables to assign - this shouldn't happen
-				//FREAK OUT!!!!
-				System.out.println("Tried to assign all the chance variables after finding out we were SAT/UNSAT, but now we are not SAT or UNSAT!!!!");
-				printFormulaInfo();
-				System.exit(5);
+				plan = solver.tryAssign(v, varSign, low);
+				probability = plan.getProbability();
 			}
+			pruned = solver.pruned;
+			reached = solver.reached;
 		}
+	}
 
-		//we have found a chance variable to assign
-		//assign it to true and false, adjust the resulting probabilities based on the variable's 
-		//chance that it is true or false
-		//and return all the resulting assignments
-		Vector<Assignment> trueAssignments = tryAssign(nextChance, Variable.TRUE);
-		for(Assignment a : trueAssignments)
-			a.adjustProbability(nextChance.getChanceTrue());
-		Vector<Assignment> falseAssignmetns = tryAssign(nextChance, Variable.FALSE);
-		for(Assignment a : falseAssignmetns)
-			a.adjustProbability(nextChance.getChanceFalse());
-
-		//return all of the assignments if it is true and false.
-		Vector<Assignment> allAssignments = new Vector<Assignment>();
-		allAssignments.addAll(trueAssignments);
-		allAssignments.addAll(falseAssignmetns);
-		return allAssignments;
+	/**
+	 * @return if all the clauses are satisfied, or all the clauses of the component we are solving.
+	 */
+	private boolean isSAT() {
+		if(scope == null) return database.isFormulaSAT();
+		return database.getNumSatisfiedClauses() == scope.getSatisfiedTarget();
 	}
 
 	/**
 	 * Tries to assigned the passed variable to the passed assignment,
-	 * gets the resulting assignments, and then unassign the variable
+	 * gets the resulting plan, and then unassign the variable
 	 * @param assignedVar - the variable to assign
 	 * @param varSign - how we should try assigning it
-	 * @return the assignments we get back from assigning the variable as requested.
+	 * @param low - the probability the plan has to beat
+	 * @return the plan we get back from assigning the variable as requested.
 	 */
-	public static Vector<Assignment> tryAssign(Variable assignedVar, int varSign) {
+	public PlanNode tryAssign(Variable assignedVar, int varSign, double low) {
 
 		if(SsatSolver.DEBUG) System.out.println("Assigning variable " + assignedVar.getName() + " to " + (varSign==Variable.TRUE?"True":"False"));
 		//assign the variable
-		assignedVar.setAssignment(varSign);
-		//make sure all the clauses update the stats of the variables
-		for(Clause c : clauses) {
-			c.variableAssigned(assignedVar);
-		}
+		//the database updates the stats of the clauses the variable is in, and the watches
+		if(stats != null) stats.countBranch();
+		assign(assignedVar.getName(), varSign);
 
 		//if we're debugging, make sure everything is sane in the stored informaiton about variables.
 		if(DEBUG) checkVariableStats();
 
 		//solve the formula with the assigned variable
-		//hold onto the assignments we get back
-		Vector<Assignment> assignments = DPLL();
+		//hold onto the plan we get back
+		PlanNode plan = DPLL(low);
 
-		if(SsatSolver.DEBUG) System.out.println("When assiging variable " + assignedVar.getName() + " to " + (varSign==Variable.TRUE?"True":"False") + " got " + assignments.size() + " possible assignments back.");
+		if(SsatSolver.DEBUG) System.out.println("When assiging variable " + assignedVar.getName() + " to " + (varSign==Variable.TRUE?"True":"False") + " got a plan with probability " + plan.getProbability());
 
 		if(SsatSolver.DEBUG) System.out.println("Unassigning variable " + assignedVar.getName());
 
-		//unassign the variable
-		assignedVar.setAssignment(Variable.UNASSIGNED);
-		//make sure the clauses update the stats of the variables
-		for(Clause c : clauses) {
-			c.variableUnassigned(assignedVar, varSign);
-		}
+		//unassign the variable, which also undoes everything that depended on it
+		unassign(assignedVar.getName());
 
 		if(DEBUG) checkVariableStats();
 
-		//return the assignments we got back
-		return assignments;
+		//return the plan we got back
+		return plan;
 	}
 
 	/**
-	 * Prints out all of the passed assignments
-	 * @param assignments - the assignments to print out.
+	 * Prints out all of the assignments in the passed plan
+	 * @param plan - the plan to print out.
 	 */
-	public static void printAssignments(Vector<Assignment> assignments) {
+	public static void printAssignments(Plan plan) {
 		System.out.println("Assignments with non-zero chance of sucess:");
-		for(Assignment a : assignments) {
+		for(Assignment a : plan) {
 			System.out.println(a);
 		}
 		System.out.println("");
@@ -472,7 +1888,7 @@ public class SsatSolver {
 	 * Print the information about the current formula.
 	 * Only really used for debugging.
 	 */
-	public static void printFormulaInfo() {
+	public void printFormulaInfo() {
 		System.out.println("*********************************\nVariable Information");
 
 		//print out the variables
@@ -482,7 +1898,7 @@ public class SsatSolver {
 					"\tAssignment:" + (v.getAssignment()==Variable.UNASSIGNED?"Unassign":(v.getAssignment()==Variable.TRUE?"True    ":"False   ")) +
 					"\tTimes pos: " + v.getTimesPositive() + 
 					"\tTimes neg: " + v.getTimesNegative() +
-					"\tUnit clauses: '" + v.getUnitClauses().toString() + "'");
+					"\tUnit: " + v.isUnit());
 		}
 		//print out the clauses
 		System.out.println("\nLiterals in Clauses: < # > means variable '#' has been assigned");
@@ -506,8 +1922,14 @@ public class SsatSolver {
 	 * 
 	 * Only used for debugging.
 	 */
-	public static void checkVariableStats() {
+	public void checkVariableStats() {
 		System.out.println("Checking variable stats");
+		//make sure the database's counts agree with the clauses
+		if(database.isFormulaSAT() != Clause.isFormulaSAT(clauses) || database.isFormulaUnSAT() != Clause.isFormulaUnSAT(clauses)) {
+			System.out.println("The database has the wrong number of satisfied or empty clauses");
+			printFormulaInfo();
+			System.exit(4);
+		}
 		for(int i = 1; i < variables.size(); i++) {
 			//gather information about the variable
 			int timesPos = 0;
@@ -538,16 +1960,22 @@ public class SsatSolver {
 				System.out.println("Variable " + v.getName() + " has wrong times pos/neg stats");
 				printFormulaInfo();
 				System.exit(4);
-			} else if(isUnit && v.getUnitClauses().size() == 0) {
+			} else if(isUnit && !v.isUnit()) {
 				System.out.println("Variable " + v.getName() + " thinks it is not unit, but is actually unit");
 				printFormulaInfo();
 				System.exit(4);
-			} else if(!isUnit && v.getUnitClauses().size() > 0) {
+			} else if(!isUnit && v.isUnit()) {
 				System.out.println("Variblae " + v.getName() + " thinks it is unit, but actually is not unit");
 				printFormulaInfo();
 				System.exit(4);
 			}
 			//check purity
+			boolean shouldBeInPureSet = v.isChoice() && v.getAssignment() == Variable.UNASSIGNED && v.isPure() != 0;
+			if(database.isInPureSet(v.getName()) != shouldBeInPureSet) {
+				System.out.println("Variable " + v.getName() + " is " + (shouldBeInPureSet ? "not " : "") + "in the pure set, but should" + (shouldBeInPureSet ? "" : "n't") + " be");
+				printFormulaInfo();
+				System.exit(4);
+			}
 			if(v.isPure() == 0) {
 				//thinks it is not pure
 				if(timesPos == 0 || timesNeg == 0) {
@@ -0,0 +1,469 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Vector;
+
+/**
+ * SsatSolverTest.java
+ * @author William Richard willster3021@gmail.com
+ * Tests that the solver finds the right probability of success with each of its options,
+ * by checking it against working out the probability the slow way on small random formulas.
+ */
+public class SsatSolverTest extends SsatTest {
+
+	//how many random formulas each check is done on
+	private static final int NUM_FORMULAS = 40;
+
+	//the probability of success of each of the random formulas
+	private double[] exact;
+
+	public static void main(String[] args) {
+		run(new SsatSolverTest());
+	}
+
+	protected void runChecks() throws Exception {
+		exact = new double[NUM_FORMULAS];
+		for(int i = 0; i < NUM_FORMULAS; i++) {
+			exact[i] = exact(testFormula(i));
+		}
+
+		checkSolves("");
+		checkSolves("-cache 0 -learn 0");
+		checkCacheSavesNodes();
+		checkSolves("-nocomponents");
+		checkComponentsMultiply();
+		checkProbabilityOnly("");
+		checkProbabilityOnly("-cache 0 -learn 0 -nocomponents");
+		checkPlanAndProbability();
+		checkReuse("-cache 0 -learn 0");
+		checkReuse("");
+		checkPruning("");
+		checkPruning("-cache 0 -learn 0 -nocomponents");
+		checkThreads();
+		checkDeepSearch();
+		checkUnitChain();
+		checkUnitClausesEverySearch();
+		checkLearnedClauses();
+		checkThresholds("");
+		checkThresholds("-cache 0 -learn 0 -nocomponents");
+		checkThresholdRounding();
+		checkAnytime(0);
+		checkAnytime(5);
+		checkAnytime(30);
+		checkStats("");
+		checkStats("-cache 0 -learn 0 -nocomponents");
+	}
+
+	/**
+	 * @param i
+	 * @return the ith random formula.  They have from 8 to 12 variables, and from 2 to 5 clauses per variable.
+	 */
+	private static ClauseDatabase testFormula(int i) {
+		int numVars = 8 + i % 5;
+		return randomFormula(numVars, numVars * (2 + i % 4), i % 4, i);
+	}
+
+	/**
+	 * Solves each of the random formulas, and checks the plan's probability of success.
+	 * @param args - the options, separated by spaces
+	 */
+	private void checkSolves(String args) {
+		SolverOptions options = options(split(args));
+		for(int i = 0; i < NUM_FORMULAS; i++) {
+			Plan plan = new SsatSolver(testFormula(i), options).solve();
+			checkClose(exact[i], plan.getProbability(), "formula " + i + " with options '" + args + "'");
+		}
+	}
+
+	/**
+	 * Remembering solved residual formulas means they aren't searched again.
+	 */
+	private void checkCacheSavesNodes() {
+		long withCache = 0;
+		long withoutCache = 0;
+		for(int i = 0; i < NUM_FORMULAS; i++) {
+			SsatSolver solver = new SsatSolver(testFormula(i), options("-learn", "0"));
+			solver.solve();
+			withCache += solver.getNodes();
+			solver = new SsatSolver(testFormula(i), options("-learn", "0", "-cache", "0"));
+			solver.solve();
+			withoutCache += solver.getNodes();
+		}
+		check(withCache < withoutCache, "the cache saves nodes: " + withCache + " nodes with it, " + withoutCache + " without");
+	}
+
+	/**
+	 * Two copies of a formula that don't share any variables succeed with the square of its probability,
+	 * whether or not they are solved as separate components.
+	 */
+	private void checkComponentsMultiply() throws Exception {
+		String clauses = "1 2 -3 0\n-1 3 0\n2 3 0\n";
+		String copy = "4 5 -6 0\n-4 6 0\n5 6 0\n";
+		String values = "1 -1\n2 0.3\n3 0.6\n4 -1\n5 0.3\n6 0.6\n";
+		double single = exact(formula("p cnf 3 3\n" + clauses + "1 -1\n2 0.3\n3 0.6\n"));
+		for(String args : new String[] {"", "-nocomponents"}) {
+			Plan plan = new SsatSolver(formula("p cnf 6 6\n" + clauses + copy + values), options(split(args))).solve();
+			checkClose(single * single, plan.getProbability(), "two separate copies with options '" + args + "'");
+		}
+	}
+
+	/**
+	 * Working out only the probability gets the same answer as making the plan.
+	 * @param args - the options, separated by spaces
+	 */
+	private void checkProbabilityOnly(String args) {
+		SolverOptions options = options(split(args));
+		for(int i = 0; i < NUM_FORMULAS; i++) {
+			double probability = new SsatSolver(testFormula(i), options).solveProbability();
+			checkClose(exact[i], probability, "formula " + i + " without the plan, with options '" + args + "'");
+		}
+	}
+
+	/**
+	 * One solver can make the plan and then work out only the probability, or the other way
+	 * round, with the cache holding what each of them stored.
+	 */
+	private void checkPlanAndProbability() {
+		for(int i = 0; i < NUM_FORMULAS; i++) {
+			SsatSolver solver = new SsatSolver(testFormula(i), options());
+			checkClose(exact[i], solver.solveProbability(), "formula " + i + " without the plan first");
+			checkClose(exact[i], solver.solve().getProbability(), "formula " + i + " with the plan after the probability");
+
+			solver = new SsatSolver(testFormula(i), options());
+			checkClose(exact[i], solver.solve().getProbability(), "formula " + i + " with the plan first");
+			checkClose(exact[i], solver.solveProbability(), "formula " + i + " without the plan after the plan");
+		}
+	}
+
+	/**
+	 * A solver can solve its formula again and again, and makes the same plan every time.
+	 * Without the cache or learned clauses, nothing is kept from one search to the next,
+	 * so each search takes as many nodes as the first.
+	 * @param args - the options, separated by spaces
+	 */
+	private void checkReuse(String args) {
+		SolverOptions options = options(split(args));
+		boolean remembers = options.cacheMegabytes > 0 || options.learnMegabytes > 0;
+		for(int i = 0; i < NUM_FORMULAS; i++) {
+			SsatSolver solver = new SsatSolver(testFormula(i), options);
+			String plan = assignments(solver.solve());
+			long nodes = solver.getNodes();
+			for(int search = 2; search <= 3; search++) {
+				String again = assignments(solver.solve());
+				String what = "formula " + i + " with options '" + args + "', search " + search;
+				check(again.equals(plan), what + " made the plan:\n" + again + "instead of:\n" + plan);
+				if(remembers) check(solver.getNodes() <= nodes, what + " took " + solver.getNodes() + " nodes, more than the first " + nodes);
+				else check(solver.getNodes() == nodes, what + " took " + solver.getNodes() + " nodes instead of " + nodes);
+			}
+		}
+	}
+
+	/**
+	 * When the probability only has to beat some bound, it is exact if it does, and otherwise
+	 * it is an upper bound that is at most the bound.  Cutting off the branches that can't
+	 * beat a bound searches fewer nodes.
+	 * @param args - the options, separated by spaces
+	 */
+	private void checkPruning(String args) {
+		SolverOptions options = options(split(args));
+		long exactNodes = 0;
+		long prunedNodes = 0;
+		for(int i = 0; i < NUM_FORMULAS; i++) {
+			for(double low : new double[] {-1, exact[i] - 0.05, exact[i], exact[i] + 0.05, 0.5}) {
+				SsatSolver solver = new SsatSolver(testFormula(i), options);
+				double probability = solver.DPLLProbability(low);
+				if(exact[i] > low) {
+					checkClose(exact[i], probability, "formula " + i + " beating " + low + " with options '" + args + "'");
+				} else {
+					check(probability <= low + TOLERANCE && probability >= exact[i] - TOLERANCE, "formula " + i + " can't beat " + low +
+							" with options '" + args + "', so it should be between " + exact[i] + " and that, but was " + probability);
+				}
+				if(low == -1) exactNodes += solver.getNodes();
+				if(low == exact[i] + 0.05) prunedNodes += solver.getNodes();
+			}
+		}
+		check(prunedNodes < exactNodes, "pruning saves nodes with options '" + args + "': " + prunedNodes +
+				" nodes with a bound that can't be beaten, " + exactNodes + " without one");
+	}
+
+	/**
+	 * Solving with threads gets the same answers.  The number of cores is faked, so the
+	 * branches really are handed out to other threads on a machine with one core.
+	 */
+	private void checkThreads() {
+		int processors = SsatSolver.availableProcessors;
+		try {
+			SsatSolver.availableProcessors = 4;
+			checkSolves("-threads 3");
+			checkProbabilityOnly("-threads 4 -cache 0");
+			SsatSolver.availableProcessors = 1;
+			checkSolves("-threads 4");
+		} finally {
+			SsatSolver.availableProcessors = processors;
+		}
+	}
+
+	/**
+	 * A chain of 30000 choice variables, each set as a pure variable on its own level of the search,
+	 * is solved, and its plan written out and read back in, in a thread with a small stack.
+	 * None of it can recurse as deep as the search goes.
+	 */
+	private void checkDeepSearch() throws Exception {
+		final int numVars = 30000;
+		StringBuilder text = new StringBuilder("p cnf " + numVars + " " + (numVars - 1) + "\n");
+		for(int i = 1; i < numVars; i++) text.append(i).append(' ').append(i + 1).append(" 0\n");
+		for(int i = 1; i <= numVars; i++) text.append(i).append(" -1\n");
+		final ClauseDatabase formula = formula(text.toString());
+
+		final Object[] results = new Object[3];
+		Thread thread = new Thread(null, new Runnable() {
+			public void run() {
+				try {
+					SsatSolver solver = new SsatSolver(formula, options("-stats"));
+					Plan plan = solver.solve();
+					results[0] = plan.getProbability();
+					results[1] = solver.getStats().getMaxDepth();
+					ByteArrayOutputStream out = new ByteArrayOutputStream();
+					plan.write(out);
+					results[2] = Plan.read(new ByteArrayInputStream(out.toByteArray())).getProbability();
+				} catch(Throwable e) {
+					results[0] = e;
+				}
+			}
+		}, "small stack", 256 * 1024);
+		thread.start();
+		thread.join();
+		check(results[0] instanceof Double && (Double) results[0] == 1.0, "the chain always succeeds: " + results[0]);
+		check(results[1] != null && ((Number) results[1]).longValue() >= numVars - 1, "the search went " + results[1] + " levels deep");
+		check(results[2] != null && (Double) results[2] == 1.0, "the plan is read back in");
+	}
+
+	/**
+	 * A chain of chance variables that each force the next one is propagated all at once, in one
+	 * node of the search, and succeeds with all of their chances multiplied together.
+	 */
+	private void checkUnitChain() throws Exception {
+		int numVars = 200;
+		StringBuilder text = new StringBuilder("p cnf " + numVars + " " + numVars + "\n1 0\n");
+		for(int i = 1; i < numVars; i++) text.append(-i).append(' ').append(i + 1).append(" 0\n");
+		double expected = 1;
+		for(int i = 1; i <= numVars; i++) {
+			double chance = 0.99 + (i % 10) / 1000.0;
+			text.append(i).append(' ').append(chance).append('\n');
+			expected *= chance;
+		}
+		for(String args : new String[] {"-stats", "-stats -cache 0 -learn 0 -nocomponents"}) {
+			SsatSolver solver = new SsatSolver(formula(text.toString()), options(split(args)));
+			checkClose(expected, solver.solveProbability(), "the chain with options '" + args + "'");
+			check(solver.getStats().getUnits() == numVars && solver.getNodes() <= 2, "the chain with options '" + args +
+					"' is " + solver.getStats().getUnits() + " units in " + solver.getNodes() + " nodes");
+		}
+	}
+
+	/**
+	 * A clause with only 1 literal is propagated at the start of every search on a solver, not just
+	 * the first one, so searching again takes as many nodes and makes the same plan.
+	 */
+	private void checkUnitClausesEverySearch() throws Exception {
+		String text = "p cnf 3 3\n1 0\n-1 2 3 0\n-2 3 0\n1 0.5\n2 -1\n3 0.5\n";
+		SsatSolver solver = new SsatSolver(formula(text), options("-cache", "0", "-learn", "0"));
+		String plan = assignments(solver.solve());
+		long nodes = solver.getNodes();
+		for(int search = 2; search <= 3; search++) {
+			String again = assignments(solver.solve());
+			check(again.equals(plan) && solver.getNodes() == nodes, "search " + search + " took " + solver.getNodes() +
+					" nodes instead of " + nodes + ", and made the plan:\n" + again);
+			checkClose(0.25, solver.solveProbability(), "the probability after search " + search);
+		}
+	}
+
+	/**
+	 * Every clause learned from a conflict has to be satisfied by every assignment that satisfies
+	 * the formula, or it would cut off plans that work.  Keeping only a few of them still gets
+	 * the right answer, and learning saves nodes.
+	 */
+	private void checkLearnedClauses() {
+		long learnedNodes = 0;
+		long unlearnedNodes = 0;
+		long evicted = 0;
+		long learned = 0;
+		for(int i = 0; i < NUM_FORMULAS; i++) {
+			ClauseDatabase formula = testFormula(i);
+			SsatSolver solver = new SsatSolver(formula, options("-cache", "0"));
+			solver.solveProbability();
+			learnedNodes += solver.getNodes();
+			checkImplied(formula, formula.getLearnedClauses().getClauses(), i);
+			learned += formula.getLearnedClauses().getNumClauses();
+
+			solver = new SsatSolver(testFormula(i), options("-cache", "0", "-learn", "0"));
+			solver.solveProbability();
+			unlearnedNodes += solver.getNodes();
+
+			//room for only a couple of clauses
+			formula = testFormula(i);
+			formula.enableLearning(150);
+			solver = new SsatSolver(formula, options("-cache", "0", "-learn", "0"));
+			checkClose(exact[i], solver.solveProbability(), "formula " + i + " keeping only a couple of learned clauses");
+			check(formula.getLearnedClauses().getNumClauses() <= 3, "formula " + i + " kept " +
+					formula.getLearnedClauses().getNumClauses() + " learned clauses");
+			evicted += formula.getLearnedClauses().getNumEvicted();
+		}
+		check(learned > 0, "clauses are learned");
+		check(evicted > 0, "learned clauses are thrown out when there isn't room for them");
+		check(learnedNodes < unlearnedNodes, "learning saves nodes: " + learnedNodes + " nodes with it, " + unlearnedNodes + " without");
+	}
+
+	/**
+	 * @param formula - a formula with nothing assigned
+	 * @param learned - clauses learned while solving it
+	 * @param i - which formula it is
+	 */
+	private void checkImplied(ClauseDatabase formula, Vector<int[]> learned, int i) {
+		int numVars = formula.getNumVariables();
+		boolean[] values = new boolean[numVars + 1];
+		int broken = 0;
+		for(int bits = 0; bits < 1 << numVars; bits++) {
+			for(int name = 1; name <= numVars; name++) values[name] = (bits >> (name - 1) & 1) == 1;
+			if(!satisfies(formula, values)) continue;
+			for(int[] clause : learned) {
+				boolean satisfied = false;
+				for(int literal : clause) satisfied |= values[Math.abs(literal)] == (literal > 0);
+				if(!satisfied) broken++;
+			}
+		}
+		check(broken == 0, "formula " + i + ": " + broken + " times a learned clause isn't satisfied by an assignment that satisfies the formula");
+	}
+
+	/**
+	 * Asking if the probability is at least a threshold gets the right answer either side of it,
+	 * with a bound on the right side of the probability.
+	 * @param args - the options, separated by spaces
+	 */
+	private void checkThresholds(String args) {
+		SolverOptions options = options(split(args));
+		for(int i = 0; i < NUM_FORMULAS; i++) {
+			for(double threshold : new double[] {0, exact[i] - 0.01, exact[i] - 1e-6, exact[i] + 1e-6, exact[i] + 0.01, 1}) {
+				if(threshold < 0 || threshold > 1) continue;
+				checkThreshold(new SsatSolver(testFormula(i), options), exact[i], threshold, "formula " + i + " with options '" + args + "'");
+			}
+		}
+	}
+
+	/**
+	 * The bounds passed down the search are rounded, which used to make this formula meet a
+	 * threshold of 1, when it only succeeds with probability 0.788124.
+	 */
+	private void checkThresholdRounding() throws Exception {
+		String text = "p cnf 3 6\n2 -2 3 0\n1 2 0\n2 1 3 0\n3 2 -3 -3 0\n3 1 -1 0\n-3 1 1 -3 0\n1 0.678\n2 0.342\n3 -1\n";
+		checkClose(0.788124, exact(formula(text)), "the formula's probability");
+		for(double threshold : new double[] {1.0, 0.8, 0.7882, 0.788, 0.5}) {
+			checkThreshold(new SsatSolver(formula(text), options()), 0.788124, threshold, "the rounding formula");
+		}
+	}
+
+	/**
+	 * @param solver - a solver for a formula that hasn't been solved yet
+	 * @param exact - the formula's probability of success
+	 * @param threshold
+	 * @param what - what is being solved
+	 */
+	private void checkThreshold(SsatSolver solver, double exact, double threshold, String what) {
+		double bound = solver.solveThreshold(threshold);
+		boolean met = new SsatResult("test.ssat", threshold, bound, 0, 0).meetsThreshold();
+		String where = what + " with threshold " + threshold + " and probability " + exact + " got " + bound;
+		check(met == (exact >= threshold), where + ", so it " + (met ? "met" : "didn't meet") + " it");
+		if(met) check(bound >= threshold && bound <= exact + TOLERANCE, where + ", which should be between the threshold and the probability");
+		else check(bound < threshold && bound >= exact - TOLERANCE, where + ", which should be between the probability and the threshold");
+	}
+
+	/**
+	 * An anytime search that runs out of nodes stops with the best plan it found, and bounds either
+	 * side of the probability, which only ever get closer together.  One that finishes has the
+	 * exact probability for both bounds.
+	 * @param nodeLimit - the most nodes to search, or 0 for as many as it takes
+	 */
+	private void checkAnytime(long nodeLimit) {
+		int stoppedEarly = 0;
+		for(int i = 0; i < NUM_FORMULAS; i++) {
+			for(boolean wantPlan : new boolean[] {true, false}) {
+				String what = "formula " + i + " with " + (nodeLimit == 0 ? "no node limit" : nodeLimit + " nodes") +
+						(wantPlan ? "" : ", without the plan");
+				SsatSolver solver = new SsatSolver(testFormula(i), options("-anytime", "0.000001", "-nodes", Long.toString(nodeLimit)));
+				final Vector<double[]> reports = new Vector<double[]>();
+				BoundsListener listener = new BoundsListener() {
+					public void bounds(double lower, double upper, long nodes, double seconds) {
+						reports.add(new double[] {lower, upper});
+					}
+				};
+				double lower;
+				if(wantPlan) {
+					Plan plan = solver.solveAnytime(listener);
+					lower = plan.getProbability();
+					checkClose(solver.getLowerBound(), lower, what + ": the plan is the best one found");
+				} else {
+					lower = solver.solveProbabilityAnytime(listener);
+				}
+				double upper = solver.getUpperBound();
+				check(lower <= exact[i] + TOLERANCE && upper >= exact[i] - TOLERANCE, what + ": " + exact[i] +
+						" should be between the bounds " + lower + " and " + upper);
+				if(nodeLimit == 0) checkClose(lower, upper, what + ": the bounds are the same when the search finishes");
+				if(upper - lower > TOLERANCE) stoppedEarly++;
+
+				boolean closer = ! reports.isEmpty();
+				for(int r = 1; r < reports.size(); r++) {
+					closer &= reports.get(r)[0] >= reports.get(r - 1)[0] && reports.get(r)[1] <= reports.get(r - 1)[1];
+				}
+				closer &= ! reports.isEmpty() && reports.lastElement()[0] == lower && reports.lastElement()[1] == upper;
+				check(closer, what + ": the bounds reported only get closer together, and end at the bounds");
+			}
+		}
+		if(nodeLimit > 0 && nodeLimit < 10) check(stoppedEarly > 0, "some of the searches with " + nodeLimit + " nodes stop early");
+	}
+
+	/**
+	 * Counting the stats doesn't change the search, and what they count adds up: they count the
+	 * same nodes as the solver, the search never goes deeper than there are variables, and each
+	 * backtrack is from a node or a forced value.  The stats of branches solved in other threads
+	 * are added in.
+	 * @param args - the options, separated by spaces
+	 */
+	private void checkStats(String args) {
+		SolverOptions options = options(split(args));
+		SolverOptions withStats = options(split(args.isEmpty() ? "-stats" : args + " -stats"));
+		boolean sameSearch = true;
+		boolean addsUp = true;
+		for(int i = 0; i < NUM_FORMULAS; i++) {
+			SsatSolver solver = new SsatSolver(testFormula(i), options);
+			double probability = solver.solveProbability();
+			sameSearch &= solver.getStats() == null;
+			long nodes = solver.getNodes();
+
+			solver = new SsatSolver(testFormula(i), withStats);
+			sameSearch &= solver.solveProbability() == probability && solver.getNodes() == nodes;
+			SearchStats stats = solver.getStats();
+			addsUp &= stats.getNodes() == nodes && stats.getMaxDepth() <= testFormula(i).getNumVariables() &&
+					stats.getBranches() > 0 && stats.getBacktracks() <= stats.getNodes() + stats.getUnits() + stats.getPures();
+			addsUp &= stats.toJson().startsWith("{\"nodes\":" + nodes + ",");
+		}
+		check(sameSearch, "the stats are only counted with -stats, and counting them doesn't change the search, with options '" + args + "'");
+		check(addsUp, "the stats add up with options '" + args + "'");
+
+		int processors = SsatSolver.availableProcessors;
+		try {
+			SsatSolver.availableProcessors = 4;
+			SsatSolver solver = new SsatSolver(testFormula(NUM_FORMULAS - 1), options(split("-threads 4 -stats " + args)));
+			solver.solveProbability();
+			check(solver.getStats().getNodes() == solver.getNodes(), "with threads, the stats count " + solver.getStats().getNodes() +
+					" nodes, and the solver " + solver.getNodes());
+		} finally {
+			SsatSolver.availableProcessors = processors;
+		}
+	}
+
+	/**
+	 * @param args - options separated by spaces
+	 * @return each of them
+	 */
+	private static String[] split(String args) {
+		return args.isEmpty() ? new String[0] : args.split(" ");
+	}
+}
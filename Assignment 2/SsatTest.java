@@ -0,0 +1,164 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * SsatTest.java
+ * @author William Richard willster3021@gmail.com
+ * What all the tests have in common.  There is no test framework, so each test is a class
+ * whose main method runs its checks and prints the ones that failed.  java -ea AllTests runs
+ * all of them, and exits with 1 if any failed.
+ *
+ * Answers are checked against exact, which works out the probability of success the slow way,
+ * by trying every assignment in the quantifier order, so the formulas tested have to be small.
+ */
+public abstract class SsatTest {
+
+	//how close two probabilities have to be to count as the same
+	protected static final double TOLERANCE = 1e-9;
+
+	private int numChecks;
+	private int numFailures;
+
+	/**
+	 * Runs all of the test's checks.
+	 * @throws Exception - anything thrown counts as a failure
+	 */
+	protected abstract void runChecks() throws Exception;
+
+	/**
+	 * Runs the checks, and prints how many of them passed.
+	 * @return true if they all did
+	 */
+	public boolean runTests() {
+		numChecks = 0;
+		numFailures = 0;
+		try {
+			runChecks();
+		} catch(Throwable e) {
+			check(false, "threw " + e);
+			e.printStackTrace(System.out);
+		}
+		System.out.println(getClass().getName() + ": " + (numChecks - numFailures) + " of " + numChecks + " checks passed");
+		return numFailures == 0;
+	}
+
+	/**
+	 * Runs some tests, and exits with 1 if any of them failed.
+	 * @param tests
+	 */
+	public static void run(SsatTest... tests) {
+		boolean passed = true;
+		for(SsatTest test : tests) {
+			passed &= test.runTests();
+		}
+		if(!passed) System.exit(1);
+	}
+
+	/**
+	 * @param ok - if the check passed
+	 * @param what - what was checked, printed if it didn't pass
+	 */
+	protected void check(boolean ok, String what) {
+		numChecks++;
+		if(!ok) {
+			numFailures++;
+			System.out.println("FAILED: " + what);
+		}
+	}
+
+	/**
+	 * Checks that two probabilities are the same, give or take rounding.
+	 * @param expected
+	 * @param actual
+	 * @param what - what was checked, printed if it didn't pass
+	 */
+	protected void checkClose(double expected, double actual, String what) {
+		check(Math.abs(expected - actual) <= TOLERANCE, what + ": expected " + expected + " but got " + actual);
+	}
+
+	/**
+	 * @param text - a formula in the ssat format
+	 * @return the formula, read in and ready to be solved
+	 * @throws IOException if it isn't in the ssat format
+	 */
+	protected static ClauseDatabase formula(String text) throws IOException {
+		return SsatParser.parse(new ByteArrayInputStream(text.getBytes("US-ASCII")));
+	}
+
+	/**
+	 * @param numVars
+	 * @param numClauses
+	 * @param order - one of the SsatGenerator ORDER constants
+	 * @param seed
+	 * @return a random formula with clauses of 3 literals, half of whose variables are chance variables
+	 */
+	protected static ClauseDatabase randomFormula(int numVars, int numClauses, int order, long seed) {
+		return new SsatGenerator(numVars, numClauses, 3, 0.5, order, 0, seed).generate();
+	}
+
+	/**
+	 * @param args - command line options for the solver, without the ssat file
+	 * @return the options
+	 */
+	protected static SolverOptions options(String... args) {
+		String[] withFile = new String[args.length + 1];
+		System.arraycopy(args, 0, withFile, 0, args.length);
+		withFile[args.length] = "test.ssat";
+		return new SolverOptions(withFile);
+	}
+
+	/**
+	 * Works out the probability of success by trying both values of every variable, in the
+	 * quantifier order, and taking the best of them for choice variables and the expected
+	 * value for chance variables.
+	 * @param formula - a formula with nothing assigned
+	 * @return the probability of success of the best plan
+	 */
+	protected static double exact(ClauseDatabase formula) {
+		return exact(formula, new boolean[formula.getNumVariables() + 1], 1);
+	}
+
+	/**
+	 * @param formula
+	 * @param values - the values of the variables before name
+	 * @param name - the next variable to try both ways
+	 * @return the probability of success from here
+	 */
+	private static double exact(ClauseDatabase formula, boolean[] values, int name) {
+		if(name > formula.getNumVariables()) return satisfies(formula, values) ? 1.0 : 0.0;
+		values[name] = true;
+		double whenTrue = exact(formula, values, name + 1);
+		values[name] = false;
+		double whenFalse = exact(formula, values, name + 1);
+		Variable v = formula.getVariable(name);
+		if(v.isChoice()) return Math.max(whenTrue, whenFalse);
+		return v.getChanceTrue() * whenTrue + v.getChanceFalse() * whenFalse;
+	}
+
+	/**
+	 * @param formula
+	 * @param values - the value of every variable, with a dummy in the 0th index
+	 * @return if every clause has a true literal
+	 */
+	protected static boolean satisfies(ClauseDatabase formula, boolean[] values) {
+		for(int c = 0; c < formula.getNumClauses(); c++) {
+			boolean satisfied = false;
+			for(int p = formula.getClauseStart(c); p < formula.getClauseEnd(c) && !satisfied; p++) {
+				int literal = formula.getLiteral(p);
+				satisfied = values[Math.abs(literal)] == (literal > 0);
+			}
+			if(!satisfied) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param plan
+	 * @return the plan's assignments, one to a line, the way they are printed
+	 */
+	protected static String assignments(Plan plan) {
+		StringBuilder text = new StringBuilder();
+		for(Assignment a : plan) text.append(a).append('\n');
+		return text.toString();
+	}
+}
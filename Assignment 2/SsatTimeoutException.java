@@ -0,0 +1,19 @@
+/**
+ * SsatTimeoutException.java
+ * @author William Richard willster3021@gmail.com
+ * Thrown when the solver runs out of the time it was given, from deep in the search.
+ * It isn't a checked exception so that it can get out of the recursion, and out of
+ * the threads branches are solved in, without every method having to declare it.
+ */
+public class SsatTimeoutException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructor.
+	 * @param message - how long the solver had
+	 */
+	public SsatTimeoutException(String message) {
+		super(message);
+	}
+}
@@ -1,13 +1,11 @@
-import java.util.Vector;
-
 /**
  * Variable.java 
  * @author William Richard willster3021@gmail.com
  * Stores a Variable in a SSAT formula.
- * This constitutes it's "name" i.e. integer value, it's current assignment 
- * as defined by the constants in this class, it's value, how many times it
- * appears positively in non-satisfied clauses, how many times it appears 
- * negatively in non-satisfied clauses, and what clauses it appears as unit in.
+ * This constitutes it's "name" i.e. integer value, and it's value.
+ * It's current assignment as defined by the constants in this class, how many times it
+ * appears positively in non-satisfied clauses and how many times it appears 
+ * negatively in non-satisfied clauses are stored in the ClauseDatabase it belongs to.
  */
 public class Variable {
 	
@@ -19,53 +17,42 @@ public class Variable {
 	//the "name" of the variable, i.e. it's integer value
 	private int name;
 	
-	//how the variable has been assigned, or if it is not yet assigned
-	private int assignment;
+	//the database that stores the variable's assignment and statistics
+	private ClauseDatabase database;
 	
 	//The "value" of the variable is it's probability of being true if it is chance
 	//or -1 if it is a choice variable
 	private double value;
 	
-	//holds how many times the variable appears in unsatisfied clauses positively
-	private int timesPositive;
-	//holds how many times the variable appears in unsatisfied clauses negatively
-	private int timesNegative;
-	
-	//if the variable is unit in any of it's unsatisfied clauses,
-	//this stores the clause that it is unit in
-	private Vector<Clause> unitClauses;
-	
 	/** Default constructor
 	 * Sets instance variables with default values
+	 * Only the ClauseDatabase should make these.
 	 */
-	public Variable(int _name){
+	public Variable(int _name, ClauseDatabase db){
 		//assign it's name
 		name = _name;
-		
-		//it starts UNASSIGNED
-		assignment = UNASSIGNED;
+		database = db;
 		
 		//assume variables are choice
 		value = -1.0;		
-		
-		timesPositive = 0;
-		timesNegative = 0;
-		//assumes it does not appear unit in any clauses.
-		unitClauses = new Vector<Clause>();
 	}
 
 	/**
-	 * @return the assignment
+	 * Copy constructor, used when a ClauseDatabase is copied.
+	 * @param other - the variable to copy
+	 * @param db - the copy of other's database
 	 */
-	public int getAssignment() {
-		return assignment;
+	public Variable(Variable other, ClauseDatabase db) {
+		name = other.name;
+		database = db;
+		value = other.value;
 	}
 
 	/**
-	 * @param assignment the assignment to set
+	 * @return the assignment
 	 */
-	public void setAssignment(int assignment) {
-		this.assignment = assignment;
+	public int getAssignment() {
+		return database.getAssignment(name);
 	}
 
 	/**
@@ -119,107 +106,16 @@ public class Variable {
 	 * @return the timesPositive
 	 */
 	public int getTimesPositive() {
-		return timesPositive;
-	}
-	
-	/**
-	 * @param timesPositive the timesPositive to set
-	 */
-	protected void setTimesPositive(int timesPositive) {
-		this.timesPositive = timesPositive;
+		return database.getTimesPositive(name);
 	}
 
-	/** Decrement the number of times this variable appears positively in unsatisfied clauses
-	 * 
-	 */
-	public void decTimesPositive(){
-		timesPositive--;
-		
-		assert timesPositive >= 0;
-		
-	}
-	
-	/** Increment the number of times this variable appears positively in unsatisfied clauses
-	 * 
-	 */
-	public void incTimesPositive(){
-		timesPositive++;
-	}
-	
-
 	/**
 	 * @return the timesNegative
 	 */
 	public int getTimesNegative() {
-		return timesNegative;
-	}
-	
-	/**
-	 * @param timesNegative the timesNegative to set
-	 */
-	protected void setTimesNegative(int timesNegative) {
-		this.timesNegative = timesNegative;
+		return database.getTimesNegative(name);
 	}
 
-	/** Decrement the number of times this variable appears negatively in unsatisfied clauses
-	 * 
-	 */
-	public void decTimesNegative(){
-		timesNegative--;
-		
-		assert timesNegative >= 0;
-	}
-	
-	/** Increment the number of times this variable appears negatively in unsatisfied clauses
-	 * 
-	 */
-	public void incTimesNegative(){
-		timesNegative++;
-	}
-
-	/**
-	 * @return the unitClauses of this variable
-	 */
-	public Vector<Clause> getUnitClauses() {
-		return unitClauses;
-	}
-
-	/**
-	 * Adds a unit clause to this Variable's list of unit clauses.
-	 * @param newUnitClause - the new unit clause to add.
-	 */
-	public void addUnitClause(Clause newUnitClause) {
-		assert newUnitClause != null;
-		assert ! unitClauses.contains(newUnitClause);
-		unitClauses.add(newUnitClause);
-	}
-	
-	/**
-	 * Remove a unit clause to this Variable's list of unit clauses.
-	 * @param oldUnitClause - the clause to remove from this variable's list of unit clauses.
-	 */
-	public void removeUnitClause(Clause oldUnitClause) {
-		assert oldUnitClause != null;
-		assert unitClauses.contains(oldUnitClause);
-		unitClauses.remove(oldUnitClause);
-	}
-	
-	/**
-	 * @param hasClause the clause we want to check.
-	 * @return if this variable has the passed cause as a unit clause.
-	 */
-	public boolean hasUnitClause(Clause hasClause) {
-		assert hasClause != null;
-		return unitClauses.contains(hasClause);
-	}
-	
-	/**
-	 * @return the first unit clause this variable has stored.
-	 */
-	public Clause getFirstUnitClause() {
-		return unitClauses.firstElement();
-	}
-		
 	/**
 	 * @return the name
 	 */
@@ -228,10 +124,12 @@ public class Variable {
 	}
 
 	/**
-	 * @return if this variable appears in a unit clause
+	 * Looks through the clauses for one the variable is unit in, so it is slow.
+	 * Only used for debugging - the solver gets its units from ClauseDatabase.pollUnit.
+	 * @return if this variable is unassigned, and appears in a unit clause
 	 */
 	public boolean isUnit() {
-		return unitClauses.size() > 0;
+		return getAssignment() == UNASSIGNED && database.findUnitClause(name) >= 0;
 	}
 	
 	/** 
@@ -241,6 +139,8 @@ public class Variable {
 	 * 			a negative number if it only appears negatively, or 0 otherwise.
 	 */
 	public int isPure() {
+		int timesPositive = getTimesPositive();
+		int timesNegative = getTimesNegative();
 		if(timesPositive > 0 && timesNegative > 0) return 0;
 		//catch the situation where both timesPositive and timesNegative are 0
 		else if(timesPositive == 0 && timesNegative == 0) return 1;